@@ -223,6 +223,27 @@ public final class AssetManager implements ProjectChangeListener {
 
   private void refreshAssets1() {
     boolean loadInProgress = false;
+    if (!assets.isEmpty() && hasFetchAssets()) {
+      // The Companion fetches the assets itself, so they are all sent in one request
+      JsArrayString fileIds = JsArrayString.createArray().cast();
+      for (AssetInfo a : assets.values()) {
+        if (!a.loaded) {
+          fileIds.push(a.fileId);
+        }
+      }
+      if (fileIds.length() > 0) {
+        ConnectProgressBar.setProgress(50, MESSAGES.sendingAssetToCompanion(fileIds.get(0)));
+        if (doPutAssets(Long.toString(projectId), fileIds)) {
+          for (AssetInfo a : assets.values()) {
+            a.loaded = true;
+            a.fileContent = null;
+          }
+          assetTransferProgress = assets.size();
+          return;
+        }
+        // The Companion can't sync them all at once, send them one at a time below
+      }
+    }
     for (AssetInfo a : assets.values()) {
       if (!a.loaded) {
         loadInProgress = true;
@@ -301,6 +322,45 @@ public final class AssetManager implements ProjectChangeListener {
     return  true;
   }
 
+  public static boolean markAssetsTransferred(JsArrayString transferredAssets) {
+    if (INSTANCE == null)
+      return false;
+    INSTANCE.markAssetsTransferred1(transferredAssets);
+    return true;
+  }
+
+  /**
+   * Marks several assets as transferred at once, updating the progress bar, and fires the
+   * assetsTransferredCallback if they were the last ones.
+   */
+  public void markAssetsTransferred1(JsArrayString transferredAssets) {
+    if (transferredAssets == null || assets == null)
+      return;
+    for (int i = 0; i < transferredAssets.length(); i++) {
+      AssetInfo assetInfo = assets.get(transferredAssets.get(i));
+      if (assetInfo != null) {
+        assetInfo.transferred = true;
+      }
+    }
+    int transferred = 0;
+    for (AssetInfo a : assets.values()) {
+      if (a.transferred) {
+        transferred++;
+      }
+    }
+    if (transferred < assets.size()) {
+      if (transferredAssets.length() > 0) {
+        ConnectProgressBar.setProgress(50 + 50 * transferred / assets.size(),
+            MESSAGES.sendingAssetToCompanion(transferredAssets.get(0)));
+      }
+      return;
+    }
+    // Dismiss the progress bar if showing
+    ConnectProgressBar.hide();
+    // All assets have been transferred to the device
+    doCallBack(assetsTransferredCallback);
+  }
+
   public static JsArrayString getExtensionsToLoad() {
     JsArrayString result = JsArrayString.createArray().cast();
     if (INSTANCE != null) {
@@ -346,6 +406,8 @@ public final class AssetManager implements ProjectChangeListener {
       $entry(@com.google.appinventor.client.AssetManager::reset(Ljava/lang/String;));
     $wnd.AssetManager_markAssetTransferred =
       $entry(@com.google.appinventor.client.AssetManager::markAssetTransferred(Ljava/lang/String;));
+    $wnd.AssetManager_markAssetsTransferred =
+      $entry(@com.google.appinventor.client.AssetManager::markAssetsTransferred(Lcom/google/gwt/core/client/JsArrayString;));
     $wnd.AssetManager_getExtensions =
       $entry(@com.google.appinventor.client.AssetManager::getExtensionsToLoad());
   }-*/;
@@ -354,6 +416,10 @@ public final class AssetManager implements ProjectChangeListener {
     return Blockly.ReplMgr.putAsset(projectId, filename, content, function() { window.parent.AssetManager_markAssetTransferred(filename) });
   }-*/;
 
+  private static native boolean doPutAssets(String projectId, JsArrayString filenames) /*-{
+    return Blockly.ReplMgr.putAssets(projectId, filenames);
+  }-*/;
+
   private static native void doCallBack(JavaScriptObject callback) /*-{
     if (typeof callback === 'function') callback.call(null);
   }-*/;
@@ -16,7 +16,6 @@ import com.google.appinventor.client.explorer.dialogs.ProgressBarDialogBox;
 import com.google.appinventor.shared.rpc.RpcResult;
 import com.google.appinventor.shared.rpc.project.ProjectNode;
 import com.google.gwt.i18n.client.DateTimeFormat;
-import com.google.gwt.user.client.Timer;
 
 /**
  * Command for displaying a barcode for the target of a project.
@@ -32,12 +31,13 @@ public class ShowProgressBarCommand extends ChainableCommand {
   // The build target
   private int counter = 0;
   private int currentProgress = 0;
+  // The last build progress received from the server, or -1 before the first answer
+  private int lastProgress = -1;
   // 0 means just initialize, 1 means click once, 2 means click twice
   private int progressBarShow = 0;
   private String target;
   private ChainableCommand nextCommand;
   private final String buildRequestTime;
-  private static final int WAIT_INTERVAL_MILLIS = 5000;
   private ProjectNode projectNode;
   private ProgressBarDialogBox minPB;
   private String serviceName;
@@ -83,15 +83,14 @@ public class ShowProgressBarCommand extends ChainableCommand {
           if (result.succeeded()) {
             minPB.hide();
           } else if (inProgress && progressBarShow != 2) {
-            // Build isn't done yet
-            Timer timer = new Timer() {
-                @Override
-                  public void run() {
-                  execute(node);
-                }
-              };
-            // TODO(user): Maybe do an exponential backoff here.
-            timer.schedule(WAIT_INTERVAL_MILLIS);
+            // Build isn't done yet. The server holds the next request until the progress
+            // changes, so it can be sent right away.
+            try {
+              lastProgress = Integer.parseInt(result.getOutput());
+            } catch (NumberFormatException e) {
+              // Keep waiting on the progress we last knew about.
+            }
+            execute(node);
           }
         }
 
@@ -101,7 +100,8 @@ public class ShowProgressBarCommand extends ChainableCommand {
           executionFailedOrCanceled();
         }
     };
-    ode.getProjectService().getBuildResult(node.getProjectId(), target, callback);
+    ode.getProjectService().waitForBuildResult(node.getProjectId(), target, lastProgress,
+        callback);
   }
 
   /**
@@ -653,6 +653,11 @@ public final class YoungAndroidFormUpgrader {
       // No properties need to be modified to upgrade to version 8.
       srcCompVersion = 8;
     }
+    if (srcCompVersion < 9) {
+      // The ReceiveInBackground and MessageSize properties and the DataReceived event were added.
+      // No properties need to be modified to upgrade to version 9.
+      srcCompVersion = 9;
+    }
     return srcCompVersion;
   }
 
@@ -679,6 +684,11 @@ public final class YoungAndroidFormUpgrader {
       // No properties need to be modified to upgrade to version 5.
       srcCompVersion = 5;
     }
+    if (srcCompVersion < 6) {
+      // The ReceiveInBackground and MessageSize properties and the DataReceived event were added.
+      // No properties need to be modified to upgrade to version 6.
+      srcCompVersion = 6;
+    }
     return srcCompVersion;
   }
   private static int upgradeSliderProperties(Map<String, JSONValue> componentProperties,
@@ -852,6 +862,10 @@ public final class YoungAndroidFormUpgrader {
       // Assets helper block was added.
       srcCompVersion = 15;
     }
+    if (srcCompVersion < 16) {
+      // The FrameSynchronizedAnimation property was added in version 16.
+      srcCompVersion = 16;
+    }
     return srcCompVersion;
   }
 
@@ -1998,6 +2012,11 @@ public final class YoungAndroidFormUpgrader {
       // Properties related to this component have now been upgraded to version 9
       srcCompVersion = 9;
     }
+    if (srcCompVersion < 10) {
+      // The UseCaches property was added.
+      // No properties need to be modified to upgrade to version 10.
+      srcCompVersion = 10;
+    }
     return srcCompVersion;
   }
 
@@ -15,13 +15,15 @@ import com.google.appinventor.server.util.CacheHeaders;
 import com.google.appinventor.server.util.CacheHeadersImpl;
 
 import com.google.appinventor.shared.rpc.ServerLayout;
-import com.google.appinventor.shared.rpc.project.ProjectSourceZip;
 import com.google.appinventor.shared.rpc.project.RawFile;
 
 import com.google.appinventor.shared.storage.StorageUtil;
 
+import com.google.common.io.CharStreams;
+
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
 
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -31,14 +33,21 @@ import java.security.NoSuchAlgorithmException;
 
 import java.util.ArrayList;
 import java.util.Formatter;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Set;
 import java.util.logging.Logger;
 
 import javax.servlet.ServletOutputStream;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import org.json.JSONException;
+import org.json.JSONObject;
+
 
 /**
  * Servlet for downloading project source and output files.
@@ -54,6 +63,9 @@ public class DownloadServlet extends OdeServlet {
    *    /<baseurl>/download/all-projects-source
    *    /<baseurl>/download/file/<projectId>/<file-path>
    *    /<baseurl>/download/userfile/<file-path>
+   *
+   * URIs for POST requests are structured as follows:
+   *    /<baseurl>/download/manifest/<projectId>
    */
 
   // Constants for accessing split URI
@@ -94,6 +106,9 @@ public class DownloadServlet extends OdeServlet {
   private static final int SPLIT_LIMIT_USERFILE = 5;
 
 
+  // Number of files read at once when hashing the files of a manifest request
+  private static final int MANIFEST_BATCH_SIZE = 16;
+
   // Logging support
   private static final Logger LOG = Logger.getLogger(DownloadServlet.class.getName());
 
@@ -105,6 +120,14 @@ public class DownloadServlet extends OdeServlet {
 
   private final FileExporter fileExporter = new FileExporterImpl();
 
+  /*
+   * Writes a zip straight to the response as it is produced, so that large projects are never
+   * held in memory.
+   */
+  private interface ZipWriter {
+    void write(OutputStream out) throws IOException;
+  }
+
   @Override
   public void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
     // Set a default http header to avoid security vulnerabilities.
@@ -113,6 +136,10 @@ public class DownloadServlet extends OdeServlet {
 
     RawFile downloadableFile = null;
 
+    // Set instead of downloadableFile for zips that are streamed to the response
+    String zipFileName = null;
+    ZipWriter zipWriter = null;
+
     String userId = null;
 
     int statusCode = HttpServletResponse.SC_OK;
@@ -143,13 +170,23 @@ public class DownloadServlet extends OdeServlet {
             StringUtils.normalizeForFilename(projectTitle) + ".aia";
         // If the requester is an Admin, we include any Yail files in the
         // project in the export
-        boolean includeYail = userInfoProvider.getIsAdmin();
-        boolean includeScreenShots = includeYail;
+        final boolean includeYail = userInfoProvider.getIsAdmin();
+        final boolean includeScreenShots = includeYail;
         StorageIoInstanceHolder.getInstance().assertUserHasProject(userId, projectId);
-        ProjectSourceZip zipFile = fileExporter.exportProjectSourceZip(userId,
-          projectId, includeProjectHistory, false, zipName, includeYail,
-          includeScreenShots, false, false);
-        downloadableFile = zipFile.getRawFile();
+        if (zipName == null) {
+          zipName = StorageIoInstanceHolder.getInstance().getProjectName(userId, projectId)
+              + ".aia";
+        }
+        final String exportUserId = userId;
+        final long exportProjectId = projectId;
+        zipFileName = zipName;
+        zipWriter = new ZipWriter() {
+          @Override
+          public void write(OutputStream out) throws IOException {
+            fileExporter.writeProjectSourceZip(exportUserId, exportProjectId,
+                includeProjectHistory, false, includeYail, includeScreenShots, false, false, out);
+          }
+        };
 
       } else if (downloadKind.equals(ServerLayout.DOWNLOAD_USER_PROJECT_SOURCE)) {
         if (!userInfoProvider.getIsAdmin()) {
@@ -202,23 +239,41 @@ public class DownloadServlet extends OdeServlet {
         } else {
           zipName = "u" + projectUserId + "_p" + projectId + ".aia";
         }
-        ProjectSourceZip zipFile = fileExporter.exportProjectSourceZip(projectUserId,
-          projectId, /* include history*/ true, /* include keystore */ true, zipName, true, true, false, false);
-        downloadableFile = zipFile.getRawFile();
+        final String exportUserId = projectUserId;
+        final long exportProjectId = projectId;
+        zipFileName = zipName;
+        zipWriter = new ZipWriter() {
+          @Override
+          public void write(OutputStream out) throws IOException {
+            fileExporter.writeProjectSourceZip(exportUserId, exportProjectId,
+                /* include history*/ true, /* include keystore */ true, true, true, false, false,
+                out);
+          }
+        };
       } else if (downloadKind.equals(ServerLayout.DOWNLOAD_SELECTED_PROJECTS_SOURCE)) {
         String[] projectIdStrings = uriComponents[PROJECT_ID_INDEX].split("-");
-        List<Long> projectIds = new ArrayList<Long>();
+        final List<Long> projectIds = new ArrayList<Long>();
         for (String projectId : projectIdStrings) {
           projectIds.add(Long.valueOf(projectId));
         }
-        ProjectSourceZip zipFile = fileExporter.exportSelectedProjectsSourceZip(
-          userId, "selected-projects.zip", projectIds);
-        downloadableFile = zipFile.getRawFile();
+        final String exportUserId = userId;
+        zipFileName = "selected-projects.zip";
+        zipWriter = new ZipWriter() {
+          @Override
+          public void write(OutputStream out) throws IOException {
+            fileExporter.writeSelectedProjectsSourceZip(exportUserId, projectIds, out);
+          }
+        };
       } else if (downloadKind.equals(ServerLayout.DOWNLOAD_ALL_PROJECTS_SOURCE)) {
         // Download all project source files as a zip of zips.
-        ProjectSourceZip zipFile = fileExporter.exportAllProjectsSourceZip(
-            userId, "all-projects.zip");
-        downloadableFile = zipFile.getRawFile();
+        final String exportUserId = userId;
+        zipFileName = "all-projects.zip";
+        zipWriter = new ZipWriter() {
+          @Override
+          public void write(OutputStream out) throws IOException {
+            fileExporter.writeAllProjectsSourceZip(exportUserId, out);
+          }
+        };
 
       } else if (downloadKind.equals(ServerLayout.DOWNLOAD_FILE)) {
         // Download a specific file.
@@ -232,9 +287,7 @@ public class DownloadServlet extends OdeServlet {
         downloadableFile = fileExporter.exportFile(userId, projectId, filePath);
         byte[] fileContent = downloadableFile.getContent();
 
-        MessageDigest md = MessageDigest.getInstance("SHA-1");
-        // Note: We put quotes around the hash to confirm with RFC7232
-        String fileHash = "\"" + byteArray2Hex(md.digest(fileContent)) + "\"";
+        String fileHash = fileHash(fileContent);
         // if equal, return 304
         if (fileHash.equals(req.getHeader("If-None-Match"))) {
           statusCode = HttpServletResponse.SC_NOT_MODIFIED;
@@ -258,13 +311,7 @@ public class DownloadServlet extends OdeServlet {
     } catch (SecurityException e) {
       // Not having appropriate permission is akin to not being able to find the project anyway,
       // so we use 404 here to not leak that the project may exist.
-      final String message = "404 Not Found";
-      resp.setStatus(HttpServletResponse.SC_NOT_FOUND);
-      resp.setContentType("text/plain");
-      resp.setContentLength(message.length());
-      ServletOutputStream out = resp.getOutputStream();
-      out.write(message.getBytes());
-      out.close();
+      sendNotFound(resp);
       return;
     } catch (NoSuchAlgorithmException e) {
       throw CrashReport.createAndLogError(LOG, req, "user=" + userId, e);
@@ -272,15 +319,29 @@ public class DownloadServlet extends OdeServlet {
 
     resp.setStatus(statusCode);
 
-    if (statusCode == HttpServletResponse.SC_OK) {
+    if (zipWriter != null) {
+      LOG.fine("Streaming Zip!");
+      setDownloadHeaders(req, resp, zipFileName);
+      // The length is not known up front, so the zip is sent chunked.
+      ServletOutputStream out = resp.getOutputStream();
+      try {
+        zipWriter.write(out);
+      } catch (IOException | RuntimeException e) {
+        // A download that fails partway must not look complete. If nothing has been sent yet the
+        // client gets an error status. Otherwise the exception makes the servlet container abort
+        // the connection instead of ending the chunked response, and out is never closed.
+        if (!resp.isCommitted()) {
+          resp.reset();
+        }
+        throw CrashReport.createAndLogError(LOG, req, "user=" + userId, e);
+      }
+      out.close();
+    } else if (statusCode == HttpServletResponse.SC_OK) {
       LOG.fine("Sending File!");
       String fileName = downloadableFile.getFileName();
       byte[] content = downloadableFile.getContent();
       // Set http response information
-      resp.setHeader(
-        "content-disposition",
-        req.getParameter("inline") != null ? "inline" : "attachment" + "; filename=\"" + fileName + "\"");
-      resp.setContentType(StorageUtil.getContentTypeForFilePath(fileName));
+      setDownloadHeaders(req, resp, fileName);
       resp.setContentLength(content.length);
 
       // Attach download data
@@ -295,6 +356,104 @@ public class DownloadServlet extends OdeServlet {
     }
   }
 
+  /*
+   * Answers a manifest request. The body is a JSON object that maps the project files the client
+   * wants to the ETags of the copies it has, or empty strings for files it doesn't have. The reply
+   * maps each of those files whose ETag differs to its current ETag, so that the client only has
+   * to download the files in the reply. Files that don't exist are mapped to empty strings.
+   */
+  @Override
+  public void doPost(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+    CACHE_HEADERS.setNotCacheable(resp);
+    String userId = userInfoProvider.getUserId();
+    JSONObject changed = new JSONObject();
+    try {
+      String[] uriComponents = req.getRequestURI().split("/");
+      if (uriComponents.length <= PROJECT_ID_INDEX
+          || !uriComponents[DOWNLOAD_KIND_INDEX].equals(ServerLayout.DOWNLOAD_MANIFEST)) {
+        throw new IllegalArgumentException("Unknown download request: " + req.getRequestURI());
+      }
+      long projectId = Long.parseLong(uriComponents[PROJECT_ID_INDEX]);
+      StorageIo storageIo = StorageIoInstanceHolder.getInstance();
+      storageIo.assertUserHasProject(userId, projectId);
+      JSONObject manifest = new JSONObject(CharStreams.toString(req.getReader()));
+
+      // Only hash files that exist, a batch at a time so that large projects aren't read into
+      // memory all at once
+      Set<String> sourceFiles = new HashSet<String>(
+          storageIo.getProjectSourceFiles(userId, projectId));
+      List<String> batch = new ArrayList<String>();
+      Iterator<?> keys = manifest.keys();
+      while (keys.hasNext()) {
+        String fileName = (String) keys.next();
+        if (sourceFiles.contains(fileName)) {
+          batch.add(fileName);
+        } else {
+          changed.put(fileName, "");
+        }
+        if (batch.size() == MANIFEST_BATCH_SIZE || (!keys.hasNext() && !batch.isEmpty())) {
+          Map<String, byte[]> contents = storageIo.downloadRawFiles(userId, projectId, batch);
+          for (String batchFileName : batch) {
+            byte[] content = contents.get(batchFileName);
+            if (content == null) {  // Deleted since the file list was read
+              changed.put(batchFileName, "");
+              continue;
+            }
+            String fileHash = fileHash(content);
+            if (!fileHash.equals(manifest.optString(batchFileName))) {
+              changed.put(batchFileName, fileHash);
+            }
+          }
+          batch.clear();
+        }
+      }
+    } catch (SecurityException e) {
+      sendNotFound(resp);
+      return;
+    } catch (JSONException e) {
+      throw CrashReport.createAndLogError(LOG, req, "user=" + userId, e);
+    } catch (IllegalArgumentException e) {
+      throw CrashReport.createAndLogError(LOG, req, "user=" + userId, e);
+    } catch (NoSuchAlgorithmException e) {
+      throw CrashReport.createAndLogError(LOG, req, "user=" + userId, e);
+    }
+
+    byte[] content = changed.toString().getBytes(StorageUtil.DEFAULT_CHARSET);
+    resp.setStatus(HttpServletResponse.SC_OK);
+    resp.setContentType("application/json; charset=utf-8");
+    resp.setContentLength(content.length);
+    ServletOutputStream out = resp.getOutputStream();
+    out.write(content);
+    out.close();
+  }
+
+  private static void sendNotFound(HttpServletResponse resp) throws IOException {
+    final String message = "404 Not Found";
+    resp.setStatus(HttpServletResponse.SC_NOT_FOUND);
+    resp.setContentType("text/plain");
+    resp.setContentLength(message.length());
+    ServletOutputStream out = resp.getOutputStream();
+    out.write(message.getBytes());
+    out.close();
+  }
+
+  /*
+   * Returns the ETag of a file's content.
+   */
+  private static String fileHash(byte[] content) throws NoSuchAlgorithmException {
+    MessageDigest md = MessageDigest.getInstance("SHA-1");
+    // Note: We put quotes around the hash to confirm with RFC7232
+    return "\"" + byteArray2Hex(md.digest(content)) + "\"";
+  }
+
+  private static void setDownloadHeaders(HttpServletRequest req, HttpServletResponse resp,
+      String fileName) {
+    resp.setHeader(
+      "content-disposition",
+      req.getParameter("inline") != null ? "inline" : "attachment" + "; filename=\"" + fileName + "\"");
+    resp.setContentType(StorageUtil.getContentTypeForFilePath(fileName));
+  }
+
   private static String byteArray2Hex(final byte[] hash) {
     Formatter formatter = new Formatter();
     for (byte b : hash) {
@@ -10,6 +10,7 @@ import com.google.appinventor.shared.rpc.project.ProjectSourceZip;
 import com.google.appinventor.shared.rpc.project.RawFile;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.List;
 
 import javax.annotation.Nullable;
@@ -58,6 +59,30 @@ public interface FileExporter {
     boolean includeScreenShots,
     boolean fatalError, boolean forGallery) throws IOException;
 
+  /**
+   * Writes the project source files as a zip to {@code out} as they are read, without holding
+   * the whole zip in memory. The zip is finished but {@code out} is left open.
+   *
+   * @param userId the userId
+   * @param projectId the project id belonging to the userId
+   * @param includeProjectHistory indicates whether to include a file
+   *        containing the project's history in the zip
+   * @param includeAndroidKeystore indicates whether to include the user's android.keystore file
+   * @param fatalError set to true to cause missing GCS file to throw exception
+   * @param out the stream to write the zip to
+   * @return the number of files in the zip
+   * @throws IllegalArgumentException if download request cannot be fulfilled
+   *         (no source files), in which case nothing has been written
+   * @throws IOException if files cannot be written
+   */
+  int writeProjectSourceZip(String userId, long projectId,
+    boolean includeProjectHistory,
+    boolean includeAndroidKeystore,
+    boolean includeYail,
+    boolean includeScreenShots,
+    boolean fatalError, boolean forGallery,
+    OutputStream out) throws IOException;
+
   /**
    * Exports projects selected by the user as a zip of zips.
    *
@@ -71,6 +96,21 @@ public interface FileExporter {
    */
   ProjectSourceZip exportSelectedProjectsSourceZip(String userId, String zipName, List<Long> projectIds) throws IOException;
 
+  /**
+   * Writes projects selected by the user as a zip of zips to {@code out}, holding only one
+   * project in memory at a time. The zip is finished but {@code out} is left open.
+   *
+   * @param userId the userId
+   * @param projectIds the list of project ids corresponding to selected projects
+   * @param out the stream to write the zip to
+   * @return the number of files in the zip
+   * @throws IllegalArgumentException if download request cannot be fulfilled
+   *         (no projects), in which case nothing has been written
+   * @throws IOException if files cannot be written
+   */
+  int writeSelectedProjectsSourceZip(String userId, List<Long> projectIds, OutputStream out)
+      throws IOException;
+
   /**
    * Exports all of the user's projects' source files as a zip of zips.
    *
@@ -83,6 +123,19 @@ public interface FileExporter {
    */
   ProjectSourceZip exportAllProjectsSourceZip(String userId, String zipName) throws IOException;
 
+  /**
+   * Writes all of the user's projects' source files as a zip of zips to {@code out}, holding
+   * only one project in memory at a time. The zip is finished but {@code out} is left open.
+   *
+   * @param userId the userId
+   * @param out the stream to write the zip to
+   * @return the number of files in the zip
+   * @throws IllegalArgumentException if download request cannot be fulfilled
+   *         (no projects), in which case nothing has been written
+   * @throws IOException if files cannot be written
+   */
+  int writeAllProjectsSourceZip(String userId, OutputStream out) throws IOException;
+
   /**
    * Exports a specific project file.
    *
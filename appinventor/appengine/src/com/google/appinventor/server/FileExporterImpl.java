@@ -15,6 +15,7 @@ import com.google.appinventor.shared.storage.StorageUtil;
 import java.io.ByteArrayOutputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.zip.ZipEntry;
@@ -70,93 +71,72 @@ public final class FileExporterImpl implements FileExporter {
       includeProjectHistory, includeAndroidKeystore, zipName, includeYail, includeScreenShots, forGallery, fatalError);
   }
 
+  @Override
+  public int writeProjectSourceZip(String userId, long projectId,
+    boolean includeProjectHistory,
+    boolean includeAndroidKeystore,
+    boolean includeYail,
+    boolean includeScreenShots,
+    boolean fatalError,
+    boolean forGallery,
+    OutputStream out) throws IOException {
+    // Stream project source files as a zip.
+    return storageIo.writeProjectSourceZip(userId, projectId, includeProjectHistory,
+      includeAndroidKeystore, includeYail, includeScreenShots, forGallery, fatalError, out);
+  }
+
   @Override
   public ProjectSourceZip exportSelectedProjectsSourceZip(String userId,
       String zipName, List<Long> projectIds) throws IOException {
-      // Create a zip file for each project's sources.
-    if (projectIds.size() == 0) {
-      throw new IllegalArgumentException("No projects to download");
-    }
-
     ByteArrayOutputStream zipFile = new ByteArrayOutputStream();
-    ZipOutputStream out = new ZipOutputStream(zipFile);
-    int count = 0;
-    String metadata = "";
-    for (Long projectId : projectIds) {
-      try {
-        ProjectSourceZip projectSourceZip =
-            exportProjectSourceZip(userId, projectId, false, false, null, false, false, false, false);
-        byte[] data = projectSourceZip.getContent();
-        String name = projectSourceZip.getFileName();
-
-        // If necessary, renae duplicate projects
-        while (true) {
-          try {
-            out.putNextEntry(new ZipEntry(name));
-            break;
-          } catch (IOException e) {
-            name = "duplicate-" + name;
-          }
-        }
-        metadata += projectSourceZip.getMetadata() + "\n";
-
-        out.write(data, 0, data.length);
-        out.closeEntry();
-        count++;
-      } catch (IllegalArgumentException e) {
-        System.err.println("No files found for userid: " + userId +
-            " for projectid: " + projectId);
-      } catch (IOException e) {
-        System.err.println("IOException while reading files found for userid: " +
-            userId + " for projectid: " + projectId);
-        continue;
-      }
-    }
-    if (count == 0) {
-      throw new IllegalArgumentException("No files to download");
-    }
-
-    List<String> userFiles = storageIo.getUserFiles(userId);
-    if (userFiles.contains(StorageUtil.ANDROID_KEYSTORE_FILENAME)) {
-      byte[] androidKeystoreBytes =
-          storageIo.downloadRawUserFile(userId, StorageUtil.ANDROID_KEYSTORE_FILENAME);
-      if (androidKeystoreBytes.length > 0) {
-        out.putNextEntry(new ZipEntry(StorageUtil.ANDROID_KEYSTORE_FILENAME));
-        out.write(androidKeystoreBytes, 0, androidKeystoreBytes.length);
-        out.closeEntry();
-        count++;
-      }
-    }
-
-    out.close();
+    StringBuilder metadata = new StringBuilder();
+    int count = writeProjectsSourceZip(userId, projectIds, zipFile, metadata);
 
     // Package the big zip file up as a ProjectSourceZip and return it.
     byte[] content = zipFile.toByteArray();
     ProjectSourceZip projectSourceZip = new ProjectSourceZip(zipName, content, count);
-    projectSourceZip.setMetadata(metadata);
+    projectSourceZip.setMetadata(metadata.toString());
     return projectSourceZip;
   }
 
+  @Override
+  public int writeSelectedProjectsSourceZip(String userId, List<Long> projectIds,
+      OutputStream out) throws IOException {
+    return writeProjectsSourceZip(userId, projectIds, out, new StringBuilder());
+  }
+
   @Override
   public ProjectSourceZip exportAllProjectsSourceZip(String userId,
       String zipName) throws IOException {
+    return exportSelectedProjectsSourceZip(userId, zipName, storageIo.getProjects(userId));
+  }
+
+  @Override
+  public int writeAllProjectsSourceZip(String userId, OutputStream out) throws IOException {
+    return writeSelectedProjectsSourceZip(userId, storageIo.getProjects(userId), out);
+  }
+
+  /*
+   * Writes a zip of zips of the given projects' sources to destination, which is left open.
+   * Only one project's zip is held in memory at a time. Returns the number of entries written
+   * and appends the metadata of each project to metadata.
+   */
+  private int writeProjectsSourceZip(String userId, List<Long> projectIds,
+      OutputStream destination, StringBuilder metadata) throws IOException {
     // Create a zip file for each project's sources.
-    List<Long> projectIds = storageIo.getProjects(userId);
     if (projectIds.size() == 0) {
       throw new IllegalArgumentException("No projects to download");
     }
 
-    ByteArrayOutputStream zipFile = new ByteArrayOutputStream();
-    ZipOutputStream out = new ZipOutputStream(zipFile);
+    ZipOutputStream out = new ZipOutputStream(destination);
     int count = 0;
-    String metadata = "";
     for (Long projectId : projectIds) {
       try {
-        // Note: We never include Yail files when exporting all source projects
+        // Note: We never include Yail files when exporting multiple source projects
         // even for Admins. If you are an admin and want to debug a project, download
         // it explicitly.
         ProjectSourceZip projectSourceZip =
-          exportProjectSourceZip(userId, projectId, false, false, null, false, false, false, false);
+            exportProjectSourceZip(userId, projectId, false, false, null, false, false, false, false);
         byte[] data = projectSourceZip.getContent();
         String name = projectSourceZip.getFileName();
 
@@ -169,7 +149,7 @@ public final class FileExporterImpl implements FileExporter {
             name = "duplicate-" + name;
           }
         }
-        metadata += projectSourceZip.getMetadata() + "\n";
+        metadata.append(projectSourceZip.getMetadata()).append("\n");
 
         out.write(data, 0, data.length);
         out.closeEntry();
@@ -177,11 +157,9 @@ public final class FileExporterImpl implements FileExporter {
       } catch (IllegalArgumentException e) {
         System.err.println("No files found for userid: " + userId +
             " for projectid: " + projectId);
-        continue;
       } catch (IOException e) {
         System.err.println("IOException while reading files found for userid: " +
             userId + " for projectid: " + projectId);
-        continue;
       }
     }
     if (count == 0) {
@@ -200,13 +178,9 @@ public final class FileExporterImpl implements FileExporter {
       }
     }
 
-    out.close();
-
-    // Package the big zip file up as a ProjectSourceZip and return it.
-    byte[] content = zipFile.toByteArray();
-    ProjectSourceZip projectSourceZip = new ProjectSourceZip(zipName, content, count);
-    projectSourceZip.setMetadata(metadata);
-    return projectSourceZip;
+    out.finish();
+    out.flush();
+    return count;
   }
 
   @Override
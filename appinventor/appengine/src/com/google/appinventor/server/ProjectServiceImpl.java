@@ -45,6 +45,8 @@ import java.io.FileReader;
 import java.io.IOException;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.logging.Level;
@@ -611,14 +613,29 @@ public class ProjectServiceImpl extends OdeRemoteServiceServlet implements Proje
    */
   @Override
   public List<FileDescriptorWithContent> load(List<FileDescriptor> files) {
-    List<FileDescriptorWithContent> result = Lists.newArrayList();
     final String userId = userInfoProvider.getUserId();
+    // Group the files by project so that each project's files are fetched in one batch.
+    Map<Long, List<String>> filesByProject = new LinkedHashMap<Long, List<String>>();
+    for (FileDescriptor file : files) {
+      List<String> fileIds = filesByProject.get(file.getProjectId());
+      if (fileIds == null) {
+        fileIds = new ArrayList<String>();
+        filesByProject.put(file.getProjectId(), fileIds);
+      }
+      fileIds.add(file.getFileId());
+    }
+    Map<Long, Map<String, String>> contents = new HashMap<Long, Map<String, String>>();
+    for (Map.Entry<Long, List<String>> entry : filesByProject.entrySet()) {
+      long projectId = entry.getKey();
+      contents.put(projectId,
+          getProjectRpcImpl(userId, projectId).load(userId, projectId, entry.getValue()));
+    }
+    List<FileDescriptorWithContent> result = Lists.newArrayList();
     for (FileDescriptor file : files) {
       long projectId = file.getProjectId();
       String fileId = file.getFileId();
-      result.add(new FileDescriptorWithContent(
-          projectId, fileId,
-          getProjectRpcImpl(userId, projectId).load(userId, projectId, fileId)));
+      result.add(new FileDescriptorWithContent(projectId, fileId,
+          contents.get(projectId).get(fileId)));
     }
     return result;
   }
@@ -680,13 +697,28 @@ public class ProjectServiceImpl extends OdeRemoteServiceServlet implements Proje
       BlocksTruncatedException {
     validateSessionId(sessionId);
     final String userId = userInfoProvider.getUserId();
-    long date = 0;
+    // Group the files by project so that each project's files are saved in one batch.
+    Map<Long, Map<String, String>> filesByProject = new LinkedHashMap<Long, Map<String, String>>();
     for (FileDescriptorWithContent fileAndContent : filesAndContent) {
-     long projectId = fileAndContent.getProjectId();
-     date = getProjectRpcImpl(userId, projectId).
-         save(userId, projectId, fileAndContent.getFileId(), fileAndContent.getContent());
+      Map<String, String> files = filesByProject.get(fileAndContent.getProjectId());
+      if (files == null) {
+        files = new LinkedHashMap<String, String>();
+        filesByProject.put(fileAndContent.getProjectId(), files);
+      }
+      files.put(fileAndContent.getFileId(), fileAndContent.getContent());
+    }
+    // Return the modification date of the project of the last file, as when the files were saved
+    // one at a time.
+    Map<Long, Long> dates = new HashMap<Long, Long>();
+    for (Map.Entry<Long, Map<String, String>> entry : filesByProject.entrySet()) {
+      long projectId = entry.getKey();
+      dates.put(projectId,
+          getProjectRpcImpl(userId, projectId).save(userId, projectId, entry.getValue()));
     }
-    return date;
+    if (filesAndContent.isEmpty()) {
+      return 0;
+    }
+    return dates.get(filesAndContent.get(filesAndContent.size() - 1).getProjectId());
   }
 
   @Override
@@ -733,6 +765,23 @@ public class ProjectServiceImpl extends OdeRemoteServiceServlet implements Proje
       userInfoProvider.getUser(), projectId, target);
   }
 
+  /**
+   * Waits for the progress of a build to change, and then gets the result of the build.
+   *
+   * @param projectId  project ID
+   * @param target  build target (optional, implementation dependent)
+   * @param lastProgress  the progress the client already knows about
+   *
+   * @return  results of build, as for {@link #getBuildResult(long, String)}
+   */
+  @Override
+  public RpcResult waitForBuildResult(long projectId, String target, int lastProgress) {
+    // Dispatch
+    final String userId = userInfoProvider.getUserId();
+    return getProjectRpcImpl(userId, projectId).waitForBuildResult(
+      userInfoProvider.getUser(), projectId, target, lastProgress);
+  }
+
   /*
    * Write the serialized response out to stdout. This is a very unusual thing
    * to do, but it allows us to create a static file version of the response
@@ -63,6 +63,7 @@ public class ReceiveBuildServlet extends OdeServlet {
     try {
       String buildFileDirPath = uriComponents[4];
       ZipInputStream zipInputStream = new ZipInputStream(req.getInputStream());
+      boolean savedOutput = false;
       while (true) {
         ZipEntry zipEntry = zipInputStream.getNextEntry();
         if (zipEntry == null) {
@@ -75,17 +76,36 @@ public class ReceiveBuildServlet extends OdeServlet {
           storageIo.addFilesToUser(userId, StorageUtil.ANDROID_KEYSTORE_FILENAME);
           storageIo.uploadRawUserFile(userId, fileName, fileBytes);
         } else if (fileName.equals("build.status")) {
-          int progress = Integer.parseInt((new String(fileBytes)).trim());
+          // The first line is the progress. Queued builds add a line with their position in the
+          // build server's queue and the estimated wait in seconds. Running builds add a line for
+          // each task that started, finished or failed since the last report.
+          String[] status = (new String(fileBytes)).trim().split("\n");
+          int progress = Integer.parseInt(status[0].trim());
           LOG.info("Received a build.status file contents = " + progress);
-          storageIo.storeBuildStatus(userId, projectId, progress);
+          // Events are reported in order, so the last one names the latest task.
+          String stage = null;
+          for (int i = 1; i < status.length; i++) {
+            String[] event = status[i].trim().split(" ");
+            if (event.length > 2 && event[0].equals("stage")) {
+              stage = event[2];
+            } else {
+              LOG.info("Build status: " + status[i].trim());
+            }
+          }
+          storageIo.storeBuildStatus(userId, projectId, progress, stage);
         } else {
           String filePath = buildFileDirPath + "/" + fileName;
           LOG.info("Saving build output files: " + filePath);
           storageIo.addOutputFilesToProject(userId, projectId, filePath);
           storageIo.uploadRawFileForce(projectId, filePath, userId, fileBytes);
-          storageIo.storeBuildStatus(userId, projectId, 0); // Reset for the next build
+          savedOutput = true;
         }
       }
+      if (savedOutput) {
+        // Reset for the next build. This is done after all of the output files are saved, because
+        // it wakes clients waiting for the build, who then look for the build result.
+        storageIo.storeBuildStatus(userId, projectId, 0);
+      }
     } finally {
       odeFilter.removeUser();
     }
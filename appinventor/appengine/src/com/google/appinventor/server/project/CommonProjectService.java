@@ -25,6 +25,7 @@ import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.List;
+import java.util.Map;
 
 /**
  * The base class for classes that provide project services for a specific
@@ -192,6 +193,20 @@ public abstract class CommonProjectService {
     return storageIo.downloadFile(userId, projectId, fileId, StorageUtil.DEFAULT_CHARSET);
   }
 
+  /**
+   * Loads the file information associated with several nodes in the project
+   * tree at once.
+   *
+   * @param userId the user id
+   * @param projectId  project root node ID
+   * @param fileIds  project nodes whose sources should be loaded
+   *
+   * @return  map from file ID to the result of {@link #load(String, long, String)}
+   */
+  public Map<String, String> load(String userId, long projectId, List<String> fileIds) {
+    return storageIo.downloadFiles(userId, projectId, fileIds, StorageUtil.DEFAULT_CHARSET);
+  }
+
   /**
    * Loads the file information associated with a node in the project tree. The
    * actual return value depends on the file kind. Source (text) files should
@@ -302,6 +317,26 @@ public abstract class CommonProjectService {
     }
   }
 
+  /**
+   * Saves the contents of several files associated with nodes in the project
+   * tree at once. Either all of the files are saved or none of them are.
+   * Like {@link #save(String, long, String, String)}, this always sets force
+   * to true.
+   *
+   * @param userId the user id
+   * @param projectId  project root node ID
+   * @param files  map from file ID to content to be saved
+   * @return modification date for project
+   */
+  public long save(String userId, long projectId, Map<String, String> files) {
+    try {
+      return storageIo.uploadFiles(projectId, files, userId, true, StorageUtil.DEFAULT_CHARSET);
+    } catch (BlocksTruncatedException e) {
+      // Won't happen because it isn't thrown when the force argument is true
+      return 0;
+    }
+  }
+
   /**
    * Saves a screenshot of a current blocks editor. This is called from the client side
    * whenever the user leaves a blocks editor. The data is shipped to us in base64 encoding
@@ -350,6 +385,19 @@ public abstract class CommonProjectService {
    */
   public abstract RpcResult getBuildResult(User user, long projectId, String target);
 
+  /**
+   * Waits until the build progress differs from the progress the client already knows about, or
+   * until a timeout, and then gets the result of the build.
+   *
+   * @param user the User that owns the {@code projectId}.
+   * @param projectId  project id to be built
+   * @param target  build target (optional, implementation dependent.
+   * @param lastProgress  the progress the client already knows about
+   * @return  build results, as for {@link #getBuildResult(User, long, String)}
+   */
+  public abstract RpcResult waitForBuildResult(User user, long projectId, String target,
+      int lastProgress);
+
   public TextFile importMedia(String userId, long projectId, String urlString, boolean save) throws IOException {
     InputStream is = null;
     try {
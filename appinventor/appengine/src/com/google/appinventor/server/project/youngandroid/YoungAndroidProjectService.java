@@ -35,7 +35,6 @@ import com.google.appinventor.shared.rpc.project.Project;
 import com.google.appinventor.shared.rpc.project.ProjectNode;
 import com.google.appinventor.shared.rpc.project.ProjectRootNode;
 import com.google.appinventor.shared.rpc.project.ProjectSourceZip;
-import com.google.appinventor.shared.rpc.project.RawFile;
 import com.google.appinventor.shared.rpc.project.TextFile;
 import com.google.appinventor.shared.rpc.project.UserProject;
 import com.google.appinventor.shared.rpc.project.youngandroid.NewYoungAndroidProjectParameters;
@@ -67,9 +66,11 @@ import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
 import java.io.FileNotFoundException;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.StringReader;
 import java.io.UnsupportedEncodingException;
 import java.net.ConnectException;
@@ -77,6 +78,7 @@ import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLEncoder;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
@@ -100,6 +102,11 @@ public final class YoungAndroidProjectService extends CommonProjectService {
 
   private static final Flag<Integer> MAX_PROJECT_SIZE =
       Flag.createFlag("project.maxsize", 30);
+
+  // How long a client waiting for build progress is held before it is answered anyway. This must
+  // be well below the request deadline.
+  private static final Flag<Integer> BUILD_STATUS_WAIT_SECONDS =
+      Flag.createFlag("build.status.wait.seconds", 20);
   private static final String ERROR_LARGE_PROJECT =
       "Sorry, can't package projects larger than %1$d MB. Yours is %2$3.2f MB.";
 
@@ -127,6 +134,10 @@ public final class YoungAndroidProjectService extends CommonProjectService {
   // Build folder path
   private static final String BUILD_FOLDER = "build";
 
+  // The build server queue lane for the APK and AAB builds requested from ODE. The build server
+  // serves its "companion" lane, used for builds of the Companion, before this one.
+  private static final String BUILD_LANE = "app";
+
   public static final String PROJECT_KEYSTORE_LOCATION = "android.keystore";
 
   // host[:port] to use for connecting to the build server
@@ -300,43 +311,29 @@ public final class YoungAndroidProjectService extends CommonProjectService {
     newProject.setProjectHistory(oldProjectHistory);
 
     // Get the old project's source files and add them to new project, modifying where necessary.
+    // Only the project properties file changes. The other files are copied by the storage layer,
+    // which shares their stored contents with the old project instead of downloading them.
+    Map<String, String> copiedFiles = new LinkedHashMap<String, String>();
     for (String oldSourceFileName : storageIo.getProjectSourceFiles(userId, oldProjectId)) {
-      String newSourceFileName;
-
-      String newContents = null;
       if (oldSourceFileName.equals(PROJECT_PROPERTIES_FILE_NAME)) {
         // This is the project properties file. The name of the file doesn't contain the old
-        // project name.
-        newSourceFileName = oldSourceFileName;
-        // For the contents of the project properties file, generate the file with the new project
-        // name and qualified name.
+        // project name. For its contents, generate the file with the new project name and
+        // qualified name.
         String qualifiedFormName = StringUtils.getQualifiedFormName(
             storageIo.getUser(userId).getUserEmail(), newName);
         builder.setProjectName(newName).setQualifiedFormName(qualifiedFormName);
-        newContents = builder.toProperties();
+        newProject.addTextFile(new TextFile(oldSourceFileName, builder.toProperties()));
       } else {
         // This is some file other than the project properties file.
         // oldSourceFileName may contain the old project name as a path segment, surrounded by /.
         // Replace the old name with the new name.
-        newSourceFileName = StringUtils.replaceLastOccurrence(oldSourceFileName,
-            "/" + oldName + "/", "/" + newName + "/");
-      }
-
-      if (newContents != null) {
-        // We've determined (above) that the contents of the file must change for the new project.
-        // Use newContents when adding the file to the new project.
-        newProject.addTextFile(new TextFile(newSourceFileName, newContents));
-      } else {
-        // If we get here, we know that the contents of the file can just be copied from the old
-        // project. Since it might be a binary file, we copy it as a raw file (that works for both
-        // text and binary files).
-        byte[] contents = storageIo.downloadRawFile(userId, oldProjectId, oldSourceFileName);
-        newProject.addRawFile(new RawFile(newSourceFileName, contents));
+        copiedFiles.put(oldSourceFileName, StringUtils.replaceLastOccurrence(oldSourceFileName,
+            "/" + oldName + "/", "/" + newName + "/"));
       }
     }
 
     // Create the new project and return the new project's id.
-    return storageIo.createProject(userId, newProject, builder.build());
+    return storageIo.copyProject(userId, oldProjectId, newProject, builder.build(), copiedFiles);
   }
 
   @Override
@@ -493,6 +490,53 @@ public final class YoungAndroidProjectService extends CommonProjectService {
         "{\"maxSize\":%d,\"aiaSize\":%f}", MAX_PROJECT_SIZE.get(), size / MB));
   }
 
+  /**
+   * Counts the bytes written through it and stops passing them on once they exceed a limit, so
+   * that a project streamed to the build server is cut off as soon as it is known to be too
+   * large. The bytes past the limit are still counted so that the user can be told the real size
+   * of the project.
+   */
+  private static class SizeLimitedOutputStream extends FilterOutputStream {
+    private final long limit;
+    private long count = 0;
+
+    SizeLimitedOutputStream(OutputStream out, long limit) {
+      super(out);
+      this.limit = limit;
+    }
+
+    long getCount() {
+      return count;
+    }
+
+    boolean isOverLimit() {
+      return count > limit;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      count++;
+      if (!isOverLimit()) {
+        out.write(b);
+      }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      count += len;
+      if (!isOverLimit()) {
+        out.write(b, off, len);
+      }
+    }
+
+    @Override
+    public void flush() throws IOException {
+      if (!isOverLimit()) {
+        out.flush();
+      }
+    }
+  }
+
   /**
    * Make a request to the Build Server to build a project.  The Build Server will asynchronously
    * post the results of the build via the {@link com.google.appinventor.server.ReceiveBuildServlet}
@@ -523,7 +567,7 @@ public final class YoungAndroidProjectService extends CommonProjectService {
       storageIo.deleteFile(userId, projectId, buildOutputFile);
     }
     URL buildServerUrl = null;
-    ProjectSourceZip zipFile = null;
+    SizeLimitedOutputStream zipStream = null;
     try {
       buildServerUrl = new URL(getBuildServerUrlStr(
           user.getUserEmail(),
@@ -535,26 +579,36 @@ public final class YoungAndroidProjectService extends CommonProjectService {
       HttpURLConnection connection = (HttpURLConnection) buildServerUrl.openConnection();
       connection.setDoOutput(true);
       connection.setRequestMethod("POST");
+      // Stream the project to the build server as it is zipped instead of building the whole
+      // zip in memory first.
+      connection.setChunkedStreamingMode(0);
 
-      BufferedOutputStream bufferedOutputStream = new BufferedOutputStream(connection.getOutputStream());
-      FileExporter fileExporter = new FileExporterImpl();
-      zipFile = fileExporter.exportProjectSourceZip(userId, projectId, false,
-          /* includeAndroidKeystore */ true,
-        projectName + ".aia", true, false, true, false);
-      // The code below tests the size of the compressed project before
-      // we send it off to the buildserver. When using URLFetch we know that
+      // The stream below limits the size of the compressed project we send
+      // off to the buildserver. When using URLFetch we know that
       // this size is limited to 10MB based on Google's documentation.
       // It isn't clear if this is also enforced in the Java 8 environment
       // when not using URLFetch. However we are being conservative for now.
       // Keep in mind that large projects can lead to large APK files which
       // may not be loadable into many memory restricted devices, so we
       // may not want to encourage large projects...
-      if (zipFile.getContent().length > MAX_PROJECT_SIZE.get() * MB) {
-        return fileTooBigResult(zipFile.getContent().length);
+      zipStream = new SizeLimitedOutputStream(
+          new BufferedOutputStream(connection.getOutputStream()),
+          (long) MAX_PROJECT_SIZE.get() * MB);
+      FileExporter fileExporter = new FileExporterImpl();
+      try {
+        fileExporter.writeProjectSourceZip(userId, projectId, false,
+            /* includeAndroidKeystore */ true, true, false, true, false, zipStream);
+      } catch (IOException | RuntimeException e) {
+        connection.disconnect();
+        throw e;
       }
-      bufferedOutputStream.write(zipFile.getContent());
-      bufferedOutputStream.flush();
-      bufferedOutputStream.close();
+      if (zipStream.isOverLimit()) {
+        // Abandon the request so the build server never builds a truncated project.
+        connection.disconnect();
+        return fileTooBigResult(zipStream.getCount());
+      }
+      zipStream.flush();
+      zipStream.close();
 
       int responseCode = 0;
       responseCode = connection.getResponseCode();
@@ -607,7 +661,7 @@ public final class YoungAndroidProjectService extends CommonProjectService {
       return new RpcResult(false, "", e.getMessage());
     } catch (IOException e) {
       // As of App Engine 1.9.0 we get these when UrlFetch is asked to send too much data
-      int zipFileLength = zipFile == null ? -1 : zipFile.getContent().length;
+      long zipFileLength = zipStream == null ? -1 : zipStream.getCount();
       if (zipFileLength >= MAX_PROJECT_SIZE.get() * MB) {
         return fileTooBigResult(zipFileLength);
       } else {
@@ -621,8 +675,8 @@ public final class YoungAndroidProjectService extends CommonProjectService {
       // In particular, we often see RequestTooLargeException (if the zip is too
       // big) and ApiProxyException. There may be others.
       Throwable wrappedException = e;
-      if (e instanceof ApiProxy.RequestTooLargeException && zipFile != null) {
-        int zipFileLength = zipFile.getContent().length;
+      if (e instanceof ApiProxy.RequestTooLargeException && zipStream != null) {
+        long zipFileLength = zipStream.getCount();
         if (zipFileLength >= MAX_PROJECT_SIZE.get() * MB) {
           return fileTooBigResult(zipFileLength);
         } else {
@@ -792,7 +846,8 @@ public final class YoungAndroidProjectService extends CommonProjectService {
             ServerLayout.RECEIVE_BUILD_SERVLET + "/" +
             Security.encryptUserAndProjectId(userId, projectId) + "/" +
             fileName)
-        .add("ext", isAab ? "aab" : "apk");
+        .add("ext", isAab ? "aab" : "apk")
+        .add("lane", BUILD_LANE);
     if (sendGitVersion.get()) {
       uriBuilder.add("gitBuildVersion", GitBuildId.getVersion());
     }
@@ -844,12 +899,20 @@ public final class YoungAndroidProjectService extends CommonProjectService {
    */
   @Override
   public RpcResult getBuildResult(User user, long projectId, String target) {
+    return getBuildResult(user, projectId, target, getCurrentProgress(user, projectId, target));
+  }
+
+  /*
+   * Returns the build result, reporting the given progress if the build isn't finished.
+   */
+  private RpcResult getBuildResult(User user, long projectId, String target, int progress) {
     String userId = user.getUserId();
     String buildOutputFileName = BUILD_FOLDER + '/' + target + '/' + "build.out";
     List<String> outputFiles = storageIo.getProjectOutputFiles(userId, projectId);
+    String stage = storageIo.getBuildStage(userId, projectId);
     RpcResult buildResult = new RpcResult(-1,
-        Integer.toString(getCurrentProgress(user, projectId, target)),
-        ""); // Build not finished
+        Integer.toString(progress),
+        "", stage == null ? "" : stage); // Build not finished
     for (String outputFile : outputFiles) {
       if (buildOutputFileName.equals(outputFile)) {
         String outputStr = storageIo.downloadFile(userId, projectId, outputFile, "UTF-8");
@@ -871,6 +934,23 @@ public final class YoungAndroidProjectService extends CommonProjectService {
     return buildResult;
   }
 
+  /**
+   * Waits until the build progress differs from {@code lastProgress}, or until a timeout, and
+   * then returns the same result as {@link #getBuildResult(User, long, String)}.
+   *
+   * @param user the User that owns the {@code projectId}.
+   * @param projectId  project id to be built
+   * @param target  build target (optional, implementation dependent)
+   * @param lastProgress  the progress the client already knows about
+   */
+  @Override
+  public RpcResult waitForBuildResult(User user, long projectId, String target,
+      int lastProgress) {
+    int progress = storageIo.waitForBuildStatus(user.getUserId(), projectId, lastProgress,
+        BUILD_STATUS_WAIT_SECONDS.get() * 1000L);
+    return getBuildResult(user, projectId, target, progress);
+  }
+
   /**
    * Check if there are any build progress available for the given user's project
    *
@@ -0,0 +1,86 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2024 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.server.storage;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An in-memory registry of the progress of running builds, kept by each server instance.
+ *
+ * <p>Requests waiting for the progress of a build to change block on the registry and are woken
+ * as soon as a build server callback handled by the same instance reports new progress. Callbacks
+ * may be handled by other instances, so waiters also recheck memcache, the shared copy of the
+ * progress, every so often. See {@link ObjectifyStorageIo#waitForBuildStatus}.</p>
+ */
+final class BuildProgressRegistry {
+  /**
+   * The progress of a single build.
+   */
+  static final class Status {
+    final int progress;
+    final String stage;
+
+    Status(int progress, String stage) {
+      this.progress = progress;
+      this.stage = stage;
+    }
+  }
+
+  private final Cache<String, Status> statuses;
+
+  /**
+   * Creates a BuildProgressRegistry.
+   *
+   * @param maxEntries the maximum number of builds tracked
+   * @param expireSeconds how long the progress of a build is kept after its last update
+   */
+  BuildProgressRegistry(long maxEntries, long expireSeconds) {
+    statuses = CacheBuilder.newBuilder()
+        .maximumSize(maxEntries)
+        .expireAfterWrite(expireSeconds, TimeUnit.SECONDS)
+        .build();
+  }
+
+  /**
+   * Returns the progress of the build, or null if this instance doesn't know it.
+   */
+  Status get(String key) {
+    return statuses.getIfPresent(key);
+  }
+
+  /**
+   * Records the progress of the build and wakes the requests waiting for it.
+   */
+  synchronized void update(String key, int progress, String stage) {
+    statuses.put(key, new Status(progress, stage));
+    notifyAll();
+  }
+
+  /**
+   * Waits until the progress of the build is updated on this instance, or until the timeout
+   * expires.
+   *
+   * @param key the build
+   * @param timeoutMillis the maximum time to wait
+   * @return true if the progress was updated
+   */
+  synchronized boolean await(String key, long timeoutMillis) throws InterruptedException {
+    Status last = statuses.getIfPresent(key);
+    long deadline = System.currentTimeMillis() + timeoutMillis;
+    while (statuses.getIfPresent(key) == last) {
+      long remaining = deadline - System.currentTimeMillis();
+      if (remaining <= 0) {
+        return false;
+      }
+      // Any update wakes every waiter, which is cheap since each build has few waiters.
+      wait(remaining);
+    }
+    return true;
+  }
+}
@@ -0,0 +1,162 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2024 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.server.storage;
+
+import com.google.appinventor.server.storage.StoredData.ProjectData;
+import com.google.appinventor.shared.rpc.user.User;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * An in-memory cache of user and project metadata, kept by each server instance in front of
+ * memcache and the datastore.
+ *
+ * <p>{@link ObjectifyStorageIo} invalidates entries whenever it changes the underlying data, so
+ * an instance always sees its own writes. Other instances do not see those invalidations, so
+ * entries expire after a short time to bound how stale they can be.</p>
+ *
+ * <p>Cached {@link ProjectData} objects are shared and must not be modified. Users are copied
+ * on the way in and on the way out, because callers modify the User objects they get.</p>
+ */
+final class MetadataCache {
+  private static final Logger LOG = Logger.getLogger(MetadataCache.class.getName());
+
+  // How often the hit rates are logged
+  private static final long STATS_LOG_INTERVAL_MILLIS = 10 * 60 * 1000;
+
+  private final Cache<String, User> users;
+  private final Cache<Long, ProjectData> projects;
+  private final Cache<String, List<Long>> projectIds;
+  private final Cache<String, Boolean> userProjects;
+  private volatile long lastStatsLog = System.currentTimeMillis();
+
+  /**
+   * Creates a MetadataCache.
+   *
+   * @param maxEntries the maximum number of entries of each kind
+   * @param expireSeconds how long an entry may be used after it was loaded
+   */
+  MetadataCache(long maxEntries, long expireSeconds) {
+    users = newCache(maxEntries, expireSeconds);
+    projects = newCache(maxEntries, expireSeconds);
+    projectIds = newCache(maxEntries, expireSeconds);
+    userProjects = newCache(maxEntries, expireSeconds);
+  }
+
+  private static <K, V> Cache<K, V> newCache(long maxEntries, long expireSeconds) {
+    return CacheBuilder.newBuilder()
+        .maximumSize(maxEntries)
+        .expireAfterWrite(expireSeconds, TimeUnit.SECONDS)
+        .recordStats()
+        .build();
+  }
+
+  /**
+   * Returns a copy of the cached user, or null if the user isn't cached.
+   */
+  User getUser(String userId) {
+    User user = users.getIfPresent(userId);
+    maybeLogStats();
+    return user == null ? null : copy(user);
+  }
+
+  void putUser(String userId, User user) {
+    users.put(userId, copy(user));
+  }
+
+  void invalidateUser(String userId) {
+    users.invalidate(userId);
+  }
+
+  /**
+   * Returns the cached project, or null if the project isn't cached. The result must not be
+   * modified.
+   */
+  ProjectData getProject(long projectId) {
+    ProjectData projectData = projects.getIfPresent(projectId);
+    maybeLogStats();
+    return projectData;
+  }
+
+  void putProject(ProjectData projectData) {
+    projects.put(projectData.id, projectData);
+  }
+
+  void invalidateProject(long projectId) {
+    projects.invalidate(projectId);
+  }
+
+  /**
+   * Returns a copy of the cached list of the user's project ids, or null if it isn't cached.
+   */
+  List<Long> getProjectIds(String userId) {
+    List<Long> ids = projectIds.getIfPresent(userId);
+    return ids == null ? null : new ArrayList<Long>(ids);
+  }
+
+  void putProjectIds(String userId, List<Long> ids) {
+    projectIds.put(userId, Collections.unmodifiableList(new ArrayList<Long>(ids)));
+  }
+
+  /**
+   * Returns whether the user is known to have the project. A false result means the cache
+   * doesn't know, not that the user doesn't have it.
+   */
+  boolean hasProject(String userId, long projectId) {
+    return userProjects.getIfPresent(userProjectKey(userId, projectId)) != null;
+  }
+
+  void putHasProject(String userId, long projectId) {
+    userProjects.put(userProjectKey(userId, projectId), Boolean.TRUE);
+  }
+
+  /**
+   * Invalidates everything cached about the user's projects, to be called when a project is
+   * added to or removed from the user.
+   */
+  void invalidateUserProject(String userId, long projectId) {
+    projectIds.invalidate(userId);
+    userProjects.invalidate(userProjectKey(userId, projectId));
+  }
+
+  CacheStats getUserStats() {
+    return users.stats();
+  }
+
+  CacheStats getProjectStats() {
+    return projects.stats().plus(projectIds.stats()).plus(userProjects.stats());
+  }
+
+  private void maybeLogStats() {
+    long now = System.currentTimeMillis();
+    if (now - lastStatsLog > STATS_LOG_INTERVAL_MILLIS) {
+      lastStatsLog = now;
+      CacheStats userStats = getUserStats();
+      CacheStats projectStats = getProjectStats();
+      LOG.info(String.format("Metadata cache: users %d hits, %d misses, hit rate %.3f; "
+          + "projects %d hits, %d misses, hit rate %.3f",
+          userStats.hitCount(), userStats.missCount(), userStats.hitRate(),
+          projectStats.hitCount(), projectStats.missCount(), projectStats.hitRate()));
+    }
+  }
+
+  private static String userProjectKey(String userId, long projectId) {
+    return userId + "|" + projectId;
+  }
+
+  private static User copy(User user) {
+    User copy = user.copy();
+    copy.setPassword(user.getPassword());
+    return copy;
+  }
+}
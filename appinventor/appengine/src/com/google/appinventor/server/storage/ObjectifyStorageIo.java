@@ -6,12 +6,14 @@
 
 package com.google.appinventor.server.storage;
 
+import com.google.appengine.api.ThreadManager;
 import com.google.appengine.api.appidentity.AppIdentityService;
 import com.google.appengine.api.appidentity.AppIdentityServiceFactory;
 import com.google.appengine.api.appidentity.AppIdentityServiceFailureException;
 import com.google.appengine.api.blobstore.BlobKey;
 import com.google.appengine.api.blobstore.BlobstoreInputStream;
 import com.google.appengine.api.blobstore.BlobstoreServiceFactory;
+import com.google.appengine.api.datastore.TransactionOptions;
 import com.google.appengine.api.memcache.ErrorHandlers;
 import com.google.appengine.api.memcache.MemcacheService;
 import com.google.appengine.api.memcache.MemcacheServiceFactory;
@@ -32,6 +34,7 @@ import com.google.appinventor.server.storage.StoredData.Backpack;
 import com.google.appinventor.server.storage.StoredData.CorruptionRecord;
 import com.google.appinventor.server.storage.StoredData.FeedbackData;
 import com.google.appinventor.server.storage.StoredData.FileData;
+import com.google.appinventor.server.storage.StoredData.GcsRefData;
 import com.google.appinventor.server.storage.StoredData.MotdData;
 import com.google.appinventor.server.storage.StoredData.NonceData;
 import com.google.appinventor.server.storage.StoredData.ProjectData;
@@ -63,12 +66,15 @@ import com.google.appinventor.shared.storage.StorageUtil;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
+import com.google.common.base.Throwables;
 import com.google.common.collect.Lists;
 import com.google.common.io.ByteSource;
 import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.Futures;
 
 import com.googlecode.objectify.Key;
 import com.googlecode.objectify.Objectify;
+import com.googlecode.objectify.ObjectifyOpts;
 import com.googlecode.objectify.ObjectifyService;
 import com.googlecode.objectify.Query;
 
@@ -87,6 +93,7 @@ import com.google.appengine.tools.cloudstorage.RetryParams;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.nio.ByteBuffer;
 import java.util.Arrays;
@@ -96,7 +103,13 @@ import java.util.ConcurrentModificationException;
 import java.util.List;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.zip.ZipEntry;
@@ -132,6 +145,19 @@ public class ObjectifyStorageIo implements StorageIo {
 
   private final MemcacheService memcache = MemcacheServiceFactory.getMemcacheService();
 
+  // In-memory cache of user and project metadata, in front of memcache and the datastore.
+  // Entries live only briefly because other instances don't see our invalidations.
+  private final MetadataCache metadataCache = new MetadataCache(
+      Flag.createFlag("metadata.cache.size", 10000).get(),
+      Flag.createFlag("metadata.cache.seconds", 10).get());
+
+  // Progress of the builds reported to this instance, used to wake requests waiting for progress.
+  private final BuildProgressRegistry buildProgress = new BuildProgressRegistry(10000, 3600);
+
+  // How often requests waiting for build progress recheck memcache, since build servers may report
+  // progress to other instances.
+  private static final long BUILD_STATUS_RECHECK_MILLIS = 2000;
+
   private final GcsService gcsService;
 
   private static final String GCS_BUCKET_NAME;
@@ -141,6 +167,10 @@ public class ObjectifyStorageIo implements StorageIo {
 
   private static final boolean DEBUG = Flag.createFlag("appinventor.debugging", false).get();
 
+  // The number of blob or GCS files read ahead of the file being written when exporting a
+  // project.
+  private static final int EXPORT_READ_AHEAD = 4;
+
   // Use this class to define the work of a job that can be
   // retried. The "datastore" argument to run() is the Objectify
   // object for this job (created with
@@ -181,6 +211,12 @@ public class ObjectifyStorageIo implements StorageIo {
     public IOException getIOException() {
       return exception;
     }
+    /*
+     * Returns true if the job's transaction spans more than one entity group.
+     */
+    public boolean isCrossGroup() {
+      return false;
+    }
   }
 
   // Create a final object of this class to hold a modifiable result value that
@@ -196,6 +232,7 @@ public class ObjectifyStorageIo implements StorageIo {
     ObjectifyService.register(UserProjectData.class);
     ObjectifyService.register(FileData.class);
     ObjectifyService.register(UserFileData.class);
+    ObjectifyService.register(GcsRefData.class);
     ObjectifyService.register(MotdData.class);
     ObjectifyService.register(RendezvousData.class);
     ObjectifyService.register(WhiteListData.class);
@@ -269,7 +306,10 @@ public class ObjectifyStorageIo implements StorageIo {
   @Override
   public User getUser(final String userId, final String email) {
     String cachekey = User.usercachekey + "|" + userId;
-    User tuser = (User) memcache.get(cachekey);
+    User tuser = metadataCache.getUser(userId);
+    if (tuser == null) {
+      tuser = (User) memcache.get(cachekey);
+    }
     if (tuser != null && tuser.getUserTosAccepted() && ((email == null) || (tuser.getUserEmail().equals(email)))) {
       return tuser;
     } else {                    // If not in memcache, or tos
@@ -330,6 +370,7 @@ public class ObjectifyStorageIo implements StorageIo {
       throw CrashReport.createAndLogError(LOG, null, collectUserErrorInfo(userId), e);
     }
     memcache.put(cachekey, user, Expiration.byDeltaSeconds(60)); // Remember for one minute
+    metadataCache.putUser(userId, user);
     // The choice of one minute here is arbitrary. getUser() is called on every authenticated
     // RPC call to the system (out of OdeAuthFilter), so using memcache will save a significant
     // number of calls to the datastore. If someone is idle for more then a minute, it isn't
@@ -378,6 +419,12 @@ public class ObjectifyStorageIo implements StorageIo {
     return userData;
   }
 
+  // Flushes the cached copies of the user. Call after changing the user's UserData.
+  private void invalidateUser(String userId) {
+    memcache.delete(User.usercachekey + "|" + userId);
+    metadataCache.invalidateUser(userId);
+  }
+
   @Override
   public void setTosAccepted(final String userId) {
     try {
@@ -394,6 +441,7 @@ public class ObjectifyStorageIo implements StorageIo {
     } catch (ObjectifyException e) {
       throw CrashReport.createAndLogError(LOG, null, collectUserErrorInfo(userId), e);
     }
+    invalidateUser(userId);
   }
 
   @Override
@@ -413,6 +461,7 @@ public class ObjectifyStorageIo implements StorageIo {
     } catch (ObjectifyException e) {
       throw CrashReport.createAndLogError(LOG, null, collectUserErrorInfo(userId), e);
     }
+    invalidateUser(userId);
   }
 
   @Override
@@ -421,8 +470,6 @@ public class ObjectifyStorageIo implements StorageIo {
       runJobWithRetries(new JobRetryHelper() {
         @Override
         public void run(Objectify datastore) {
-          String cachekey = User.usercachekey + "|" + userId;
-          memcache.delete(cachekey);  // Flush cached copy prior to update
           UserData userData = datastore.find(userKey(userId));
           if (userData != null) {
             userData.sessionid = sessionId;
@@ -433,6 +480,7 @@ public class ObjectifyStorageIo implements StorageIo {
     } catch (ObjectifyException e) {
       throw CrashReport.createAndLogError(LOG, null, collectUserErrorInfo(userId), e);
     }
+    invalidateUser(userId);
   }
 
   @Override
@@ -441,8 +489,6 @@ public class ObjectifyStorageIo implements StorageIo {
       runJobWithRetries(new JobRetryHelper() {
         @Override
         public void run(Objectify datastore) {
-          String cachekey = User.usercachekey + "|" + userId;
-          memcache.delete(cachekey);  // Flush cached copy prior to update
           UserData userData = datastore.find(userKey(userId));
           if (userData != null) {
             userData.password = password;
@@ -453,6 +499,7 @@ public class ObjectifyStorageIo implements StorageIo {
     } catch (ObjectifyException e) {
       throw CrashReport.createAndLogError(LOG, null, collectUserErrorInfo(userId), e);
     }
+    invalidateUser(userId);
   }
 
   @Override
@@ -498,6 +545,94 @@ public class ObjectifyStorageIo implements StorageIo {
   @Override
   public long createProject(final String userId, final Project project,
       final String projectSettings) {
+    return createProject(userId, project, projectSettings, new ArrayList<FileData>());
+  }
+
+  @Override
+  public long copyProject(final String userId, final long oldProjectId, final Project project,
+      final String projectSettings, final Map<String, String> copiedFiles) {
+    validateGCS();
+    final Key<ProjectData> oldProjectKey = projectKey(oldProjectId);
+    final Map<String, FileData> oldFiles = new HashMap<String, FileData>();
+    try {
+      runJobWithRetries(new JobRetryHelper() {
+        @Override
+        public void run(Objectify datastore) {
+          List<Key<FileData>> keys = new ArrayList<Key<FileData>>();
+          for (String fileName : copiedFiles.keySet()) {
+            keys.add(projectFileKey(oldProjectKey, fileName));
+          }
+          for (FileData fd : datastore.get(keys).values()) {
+            oldFiles.put(fd.fileName, fd);
+          }
+        }
+      }, false); // Transaction not needed
+    } catch (ObjectifyException e) {
+      throw CrashReport.createAndLogError(LOG, null,
+          collectUserProjectErrorInfo(userId, oldProjectId), e);
+    }
+
+    // Files in GCS are shared with the old project rather than read and written again. The others
+    // are small enough to copy, or are old Blobstore files that get moved out of the Blobstore.
+    Project newProject = new Project(project.getProjectName());
+    newProject.setProjectType(project.getProjectType());
+    newProject.setProjectHistory(project.getProjectHistory());
+    for (TextFile file : project.getSourceFiles()) {
+      newProject.addTextFile(file);
+    }
+    for (RawFile file : project.getRawSourceFiles()) {
+      newProject.addRawFile(file);
+    }
+    List<FileData> sharedFiles = new ArrayList<FileData>();
+    for (Map.Entry<String, String> entry : copiedFiles.entrySet()) {
+      FileData oldFile = oldFiles.get(entry.getKey());
+      if (oldFile == null) {
+        continue;
+      }
+      if (!isTrue(oldFile.isGCS) || oldFile.gcsName == null) {
+        newProject.addRawFile(new RawFile(entry.getValue(),
+            readFileContent(userId, oldProjectId, entry.getKey(), oldFile)));
+        continue;
+      }
+      if (oldFile.userId != null && !oldFile.userId.equals("")
+          && !oldFile.userId.equals(userId)) {
+        throw CrashReport.createAndLogError(LOG, null,
+            collectUserProjectErrorInfo(userId, oldProjectId),
+            new UnauthorizedAccessException(userId, oldProjectId, null));
+      }
+      try {
+        // Count the reference before the file exists, so that a failure can only leak the object
+        oldFile = addGcsReference(oldProjectKey, entry.getKey());
+      } catch (ObjectifyException e) {
+        releaseGcsReferences(sharedFiles);
+        throw CrashReport.createAndLogError(LOG, null,
+            collectProjectErrorInfo(userId, oldProjectId, entry.getKey()), e);
+      }
+      if (oldFile == null) {
+        continue;  // Deleted since it was read
+      }
+      if (!isTrue(oldFile.isGCS) || oldFile.gcsName == null) {
+        newProject.addRawFile(new RawFile(entry.getValue(),
+            readFileContent(userId, oldProjectId, entry.getKey(), oldFile)));
+        continue;
+      }
+      FileData file = new FileData();
+      file.fileName = entry.getValue();
+      file.role = FileData.RoleEnum.SOURCE;
+      file.userId = userId;
+      file.isGCS = true;
+      file.gcsName = oldFile.gcsName;
+      sharedFiles.add(file);
+    }
+    return createProject(userId, newProject, projectSettings, sharedFiles);
+  }
+
+  /*
+   * Creates a project from the files of the given project and the already stored files in
+   * sharedFiles, whose projectKey is filled in here.
+   */
+  private long createProject(final String userId, final Project project,
+      final String projectSettings, final List<FileData> sharedFiles) {
     final Result<Long> projectId = new Result<Long>();
     final List<FileData> addedFiles = new ArrayList<FileData>();
 
@@ -546,7 +681,11 @@ public class ObjectifyStorageIo implements StorageIo {
                 collectProjectErrorInfo(userId, projectId.t, file.getFileName()), e);
             }
           }
+          for (FileData file : sharedFiles) {
+            file.projectKey = projectKey;
+          }
           datastore.put(addedFiles);  // batch put
+          datastore.put(sharedFiles);
         }
 
         @Override
@@ -575,7 +714,10 @@ public class ObjectifyStorageIo implements StorageIo {
           datastore.put(upd);
         }
       }, true);
+      metadataCache.invalidateUserProject(userId, projectId.t);
     } catch (ObjectifyException e) {
+      releaseGcsReferences(sharedFiles);
+      sharedFiles.clear();
       for (FileData addedFile : addedFiles) {
         if (isTrue(addedFile.isGCS)) {  // Do something
           if (addedFile.gcsName != null) {
@@ -639,11 +781,15 @@ public class ObjectifyStorageIo implements StorageIo {
           // delete any FileData objects associated with this project
         }
       }, true);
+      metadataCache.invalidateUserProject(userId, projectId);
       // second job deletes the project files and ProjectData in the project's
       // entity group
       runJobWithRetries(new JobRetryHelper() {
         @Override
         public void run(Objectify datastore) {
+          // Only the files of the attempt that commits are released.
+          blobKeys.clear();
+          gcsPaths.clear();
           Key<ProjectData> projectKey = projectKey(projectId);
           Query<FileData> fdq = datastore.query(FileData.class).ancestor(projectKey);
           for (FileData fd: fdq) {
@@ -658,6 +804,7 @@ public class ObjectifyStorageIo implements StorageIo {
           datastore.delete(projectKey);
         }
       }, true);
+      metadataCache.invalidateProject(projectId);
       // have to delete the blobs outside of the user and project jobs
       for (String blobKeyString: blobKeys) {
         deleteBlobstoreFile(blobKeyString);
@@ -665,7 +812,7 @@ public class ObjectifyStorageIo implements StorageIo {
       // Now delete the gcs files
       for (String gcsName: gcsPaths) {
         try {
-          gcsService.delete(new GcsFilename(getGcsBucketToUse(FileData.RoleEnum.SOURCE), gcsName));
+          releaseGcsFile(gcsName);
         } catch (IOException e) {
           // Note: this warning will happen if we attempt to remove an APK file, because we may be looking
           // in the wrong bucket. But that's OK. Things in the apk bucket will go away on their own.
@@ -694,15 +841,21 @@ public class ObjectifyStorageIo implements StorageIo {
     } catch (ObjectifyException e) {
       throw CrashReport.createAndLogError(LOG, null, collectUserErrorInfo(userId), e);
     }
+    metadataCache.invalidateProject(projectId);
   }
 
   @Override
   public List<Long> getProjects(final String userId) {
+    List<Long> cached = metadataCache.getProjectIds(userId);
+    if (cached != null) {
+      return cached;
+    }
     final List<Long> projects = new ArrayList<Long>();
     try {
       runJobWithRetries(new JobRetryHelper() {
         @Override
         public void run(Objectify datastore) {
+          projects.clear();
           Key<UserData> userKey = userKey(userId);
           for (UserProjectData upd : datastore.query(UserProjectData.class).ancestor(userKey)) {
             projects.add(upd.projectId);
@@ -712,30 +865,14 @@ public class ObjectifyStorageIo implements StorageIo {
     } catch (ObjectifyException e) {
       throw CrashReport.createAndLogError(LOG, null, collectUserErrorInfo(userId), e);
     }
-
+    metadataCache.putProjectIds(userId, projects);
     return projects;
   }
 
   @Override
   public String loadProjectSettings(final String userId, final long projectId) {
-    final Result<String> settings = new Result<String>();
-    try {
-      runJobWithRetries(new JobRetryHelper() {
-        @Override
-        public void run(Objectify datastore) {
-          ProjectData pd = datastore.find(projectKey(projectId));
-          if (pd != null) {
-            settings.t = pd.settings;
-          } else {
-            settings.t = "";
-          }
-        }
-      }, false);
-    } catch (ObjectifyException e) {
-      throw CrashReport.createAndLogError(LOG, null,
-          collectUserProjectErrorInfo(userId, projectId), e);
-    }
-    return settings.t;
+    ProjectData pd = findProjectData(userId, projectId);
+    return pd != null ? pd.settings : "";
   }
 
   @Override
@@ -756,6 +893,7 @@ public class ObjectifyStorageIo implements StorageIo {
       throw CrashReport.createAndLogError(LOG, null,
           collectUserProjectErrorInfo(userId, projectId), e);
     }
+    metadataCache.invalidateProject(projectId);
   }
 
   /**
@@ -796,132 +934,81 @@ public class ObjectifyStorageIo implements StorageIo {
 
   @Override
   public UserProject getUserProject(final String userId, final long projectId) {
-    final Result<ProjectData> projectData = new Result<ProjectData>();
-    try {
-      runJobWithRetries(new JobRetryHelper() {
-        @Override
-        public void run(Objectify datastore) {
-          ProjectData pd = datastore.find(projectKey(projectId));
-          if (pd != null) {
-            projectData.t = pd;
-          } else {
-            projectData.t = null;
-          }
-        }
-      }, false);
-    } catch (ObjectifyException e) {
-      throw CrashReport.createAndLogError(LOG, null,
-          collectUserProjectErrorInfo(userId, projectId), e);
-    }
-    if (projectData.t == null) {
+    ProjectData projectData = findProjectData(userId, projectId);
+    if (projectData == null) {
       return null;
     } else {
-      return new UserProject(projectId, projectData.t.name,
-          projectData.t.type, projectData.t.dateCreated,
-          projectData.t.dateModified, projectData.t.dateBuilt, projectData.t.projectMovedToTrashFlag);
+      return new UserProject(projectId, projectData.name,
+          projectData.type, projectData.dateCreated,
+          projectData.dateModified, projectData.dateBuilt, projectData.projectMovedToTrashFlag);
     }
   }
 
   @Override
   public List<UserProject> getUserProjects(final String userId, final List<Long> projectIds) {
-    final Result<Map<Long,ProjectData>> projectDatas = new Result<Map<Long,ProjectData>>();
-    try {
-      runJobWithRetries(new JobRetryHelper() {
-        @Override
-        public void run(Objectify datastore) {
-          Map<Long,ProjectData> pd = datastore.get(ProjectData.class, projectIds);
-          if (pd != null) {
-            projectDatas.t = pd;
-          } else {
-            projectDatas.t = null;
+    // Take what we can from the metadata cache and fetch the rest in a single batch get.
+    final Map<Long, ProjectData> projectDatas = new HashMap<Long, ProjectData>();
+    final List<Long> missing = new ArrayList<Long>();
+    for (Long projectId : projectIds) {
+      ProjectData cached = metadataCache.getProject(projectId);
+      if (cached != null) {
+        projectDatas.put(projectId, cached);
+      } else {
+        missing.add(projectId);
+      }
+    }
+    if (!missing.isEmpty()) {
+      final Result<Map<Long,ProjectData>> fetched = new Result<Map<Long,ProjectData>>();
+      try {
+        runJobWithRetries(new JobRetryHelper() {
+          @Override
+          public void run(Objectify datastore) {
+            fetched.t = datastore.get(ProjectData.class, missing);
           }
-        }
-      }, false);
-    } catch (ObjectifyException e) {
-      throw CrashReport.createAndLogError(LOG, null,
-        collectUserErrorInfo(userId), e);
+        }, false);
+      } catch (ObjectifyException e) {
+        throw CrashReport.createAndLogError(LOG, null,
+          collectUserErrorInfo(userId), e);
+      }
+      if (fetched.t == null) {
+        throw new RuntimeException("getUserProjects wants to return null, userId = " + userId);
+        // Note we directly throw a RuntimeException instead of calling CrashReport
+        // because we don't have an explicitly caught exception to hand it.
+      }
+      for (ProjectData projectData : fetched.t.values()) {
+        metadataCache.putProject(projectData);
+        projectDatas.put(projectData.id, projectData);
+      }
     }
-    if (projectDatas.t == null) {
-      throw new RuntimeException("getUserProjects wants to return null, userId = " + userId);
-      // Note we directly throw a RuntimeException instead of calling CrashReport
-      // because we don't have an explicitly caught exception to hand it.
-    } else {
-      List<UserProject> uProjects = Lists.newArrayListWithExpectedSize(projectDatas.t.size());
-      for (ProjectData projectData : projectDatas.t.values()) {
-        uProjects.add(new UserProject(projectData.id, projectData.name,
-            projectData.type, projectData.dateCreated,
-            projectData.dateModified, projectData.dateBuilt, projectData.projectMovedToTrashFlag));
+    List<UserProject> uProjects = Lists.newArrayListWithExpectedSize(projectDatas.size());
+    for (Long projectId : projectIds) {
+      ProjectData projectData = projectDatas.get(projectId);
+      if (projectData == null) {
+        continue;  // The project no longer exists
       }
-      return uProjects;
+      uProjects.add(new UserProject(projectData.id, projectData.name,
+          projectData.type, projectData.dateCreated,
+          projectData.dateModified, projectData.dateBuilt, projectData.projectMovedToTrashFlag));
     }
+    return uProjects;
   }
 
   @Override
   public String getProjectName(final String userId, final long projectId) {
-    final Result<String> projectName = new Result<String>();
-    try {
-      runJobWithRetries(new JobRetryHelper() {
-        @Override
-        public void run(Objectify datastore) {
-          ProjectData pd = datastore.find(projectKey(projectId));
-          if (pd != null) {
-            projectName.t = pd.name;
-          } else {
-            projectName.t = "";
-          }
-        }
-      }, false);
-    } catch (ObjectifyException e) {
-      throw CrashReport.createAndLogError(LOG, null,
-          collectUserProjectErrorInfo(userId, projectId), e);
-    }
-    return projectName.t;
+    ProjectData pd = findProjectData(userId, projectId);
+    return pd != null ? pd.name : "";
   }
 
   @Override
   public long getProjectDateModified(final String userId, final long projectId) {
-    final Result<Long> modDate = new Result<Long>();
-    try {
-      runJobWithRetries(new JobRetryHelper() {
-        @Override
-        public void run(Objectify datastore) {
-          ProjectData pd = datastore.find(projectKey(projectId));
-          if (pd != null) {
-            modDate.t = pd.dateModified;
-          } else {
-            modDate.t = (long) 0;
-          }
-        }
-      }, false); // Transaction not needed, and we want the caching we get if we don't
-                 // use them.
-    } catch (ObjectifyException e) {
-      throw CrashReport.createAndLogError(LOG, null,
-          collectUserProjectErrorInfo(userId, projectId), e);
-    }
-    return modDate.t;
+    ProjectData pd = findProjectData(userId, projectId);
+    return pd != null ? pd.dateModified : 0;
   }
 
   @Override
   public long getProjectDateBuilt(final String userId, final long projectId) {
-    final Result<Long> builtDate = new Result<Long>();
-    try {
-      runJobWithRetries(new JobRetryHelper() {
-        @Override
-        public void run(Objectify datastore) {
-          ProjectData pd = datastore.find(projectKey(projectId));
-          if (pd != null) {
-            builtDate.t = pd.dateBuilt;
-          } else {
-            builtDate.t = (long) 0;
-          }
-        }
-      }, false); // Transaction not needed, and we want the caching we get if we don't
-                 // use them.
-    } catch (ObjectifyException e) {
-      throw CrashReport.createAndLogError(LOG, null,
-          collectUserProjectErrorInfo(userId, projectId), e);
-    }
-    return builtDate.t;
+    ProjectData pd = findProjectData(userId, projectId);
+    return pd != null ? pd.dateBuilt : 0;
   }
 
   @Override
@@ -942,53 +1029,50 @@ public class ObjectifyStorageIo implements StorageIo {
       throw CrashReport.createAndLogError(LOG, null,
           collectUserProjectErrorInfo(userId, projectId), e);
     }
+    metadataCache.invalidateProject(projectId);
     return builtDate;
   }
 
   @Override
   public String getProjectHistory(final String userId, final long projectId) {
-    final Result<String> projectHistory = new Result<String>();
-    try {
-      runJobWithRetries(new JobRetryHelper() {
-        @Override
-        public void run(Objectify datastore) {
-          ProjectData pd = datastore.find(projectKey(projectId));
-          if (pd != null) {
-            projectHistory.t = pd.history;
-          } else {
-            projectHistory.t = "";
-          }
-        }
-      }, true);
-    } catch (ObjectifyException e) {
-      throw CrashReport.createAndLogError(LOG, null,
-          collectUserProjectErrorInfo(userId, projectId), e);
-    }
-    return projectHistory.t;
+    ProjectData pd = findProjectData(userId, projectId);
+    return pd != null ? pd.history : "";
   }
 
   // JIS XXX
 
   @Override
   public long getProjectDateCreated(final String userId, final long projectId) {
-    final Result<Long> dateCreated = new Result<Long>();
+    ProjectData pd = findProjectData(userId, projectId);
+    return pd != null ? pd.dateCreated : 0;
+  }
+
+  /*
+   * Returns the project's ProjectData from the metadata cache, or from the datastore if it isn't
+   * cached. Returns null if the project doesn't exist. The result must not be modified.
+   */
+  private ProjectData findProjectData(final String userId, final long projectId) {
+    ProjectData cached = metadataCache.getProject(projectId);
+    if (cached != null) {
+      return cached;
+    }
+    final Result<ProjectData> projectData = new Result<ProjectData>();
     try {
       runJobWithRetries(new JobRetryHelper() {
         @Override
         public void run(Objectify datastore) {
-          ProjectData pd = datastore.find(projectKey(projectId));
-          if (pd != null) {
-            dateCreated.t = pd.dateCreated;
-          } else {
-            dateCreated.t = (long) 0;
-          }
+          projectData.t = datastore.find(projectKey(projectId));
         }
-      }, true);
+      }, false); // Transaction not needed, and we want the caching we get if we don't
+                 // use them.
     } catch (ObjectifyException e) {
       throw CrashReport.createAndLogError(LOG, null,
           collectUserProjectErrorInfo(userId, projectId), e);
     }
-    return dateCreated.t;
+    if (projectData.t != null) {
+      metadataCache.putProject(projectData.t);
+    }
+    return projectData.t;
   }
 
   @Override
@@ -1204,6 +1288,9 @@ public class ObjectifyStorageIo implements StorageIo {
       throw CrashReport.createAndLogError(LOG, null,
           collectProjectErrorInfo(userId, projectId, fileNames[0]), e);
     }
+    if (changeModDate) {
+      metadataCache.invalidateProject(projectId);
+    }
   }
 
   @Override
@@ -1270,6 +1357,9 @@ public class ObjectifyStorageIo implements StorageIo {
       throw CrashReport.createAndLogError(LOG, null,
           collectProjectErrorInfo(userId, projectId, fileNames[0]), e);
     }
+    if (changeModDate) {
+      metadataCache.invalidateProject(projectId);
+    }
   }
 
   @Override
@@ -1380,6 +1470,79 @@ public class ObjectifyStorageIo implements StorageIo {
     }
   }
 
+  @Override
+  public long uploadFiles(final long projectId, final Map<String, String> files,
+      final String userId, final boolean force, final String encoding)
+      throws BlocksTruncatedException {
+    validateGCS();
+    final Map<String, byte[]> contents = new LinkedHashMap<String, byte[]>();
+    for (Map.Entry<String, String> file : files.entrySet()) {
+      try {
+        contents.put(file.getKey(), file.getValue().getBytes(encoding));
+      } catch (UnsupportedEncodingException e) {
+        throw CrashReport.createAndLogError(LOG, null, "Unsupported file content encoding,"
+            + collectProjectErrorInfo(userId, projectId, file.getKey()), e);
+      }
+    }
+    final Result<Long> modTime = new Result<Long>();
+    final Map<String, FileData> saved = new HashMap<String, FileData>();
+    final List<String> released = new ArrayList<String>();
+
+    try {
+      runJobWithRetries(new JobRetryHelper() {
+        @Override
+        public void run(Objectify datastore) throws ObjectifyException {
+          // The files all belong to the project's entity group, so a single transaction covers
+          // all of them and the project's modification date.
+          saved.clear();
+          released.clear();
+          Key<ProjectData> projectKey = projectKey(projectId);
+          List<Key<FileData>> keys = new ArrayList<Key<FileData>>();
+          for (String fileName : contents.keySet()) {
+            keys.add(projectFileKey(projectKey, fileName));
+          }
+          Map<Key<FileData>, FileData> existing = datastore.get(keys);
+          for (Map.Entry<String, byte[]> file : contents.entrySet()) {
+            String fileName = file.getKey();
+            Key<FileData> key = projectFileKey(projectKey, fileName);
+            FileData fd = existing.get(key);
+
+            // <Screen>.yail files are missing when user converts AI1 project to AI2
+            if (fd == null && (fileName.endsWith(".yail") || (fileName.endsWith(".png")))) {
+              fd = createProjectFile(datastore, projectKey, FileData.RoleEnum.SOURCE, fileName);
+              fd.userId = userId;
+            }
+
+            Preconditions.checkState(fd != null);
+
+            updateFileContent(datastore, fd, projectId, fileName, userId, force, file.getValue(),
+                released);
+            saved.put(key.getString(), fd);
+          }
+          datastore.put(saved.values());
+          modTime.t = updateProjectModDate(datastore, projectId);
+        }
+      }, true);
+    } catch (ObjectifyException e) {
+      if (e.getMessage().startsWith("Blocks")) { // Convert Exception
+        throw new BlocksTruncatedException();
+      }
+      throw CrashReport.createAndLogError(LOG, null,
+          collectUserProjectErrorInfo(userId, projectId), e);
+    }
+    // Only update the caches and release the replaced GCS objects once the transaction has
+    // committed.
+    memcache.putAll(saved);
+    metadataCache.invalidateProject(projectId);
+    releaseGcsFiles(released);
+    return modTime.t;
+  }
+
+  /*
+   * Updates the modification date of a project within the caller's job. The caller must
+   * invalidate the project in the metadata cache once the job has committed; doing it here would
+   * let a concurrent reader cache the ProjectData from before the commit.
+   */
   private long updateProjectModDate(Objectify datastore, long projectId) {
     long modDate = System.currentTimeMillis();
     ProjectData pd = datastore.find(projectKey(projectId));
@@ -1416,19 +1579,16 @@ public class ObjectifyStorageIo implements StorageIo {
       final boolean force, final byte[] content) throws BlocksTruncatedException {
     validateGCS();
     final Result<Long> modTime = new Result<Long>();
-    final boolean useGCS = useGCSforFile(fileName, content.length);
-
-    final boolean considerBackup = (fileName.contains("src/") &&
-      (fileName.endsWith(".bky") || fileName.endsWith(".scm")));
+    final Result<FileData> saved = new Result<FileData>();
+    final List<String> released = new ArrayList<String>();
+    final Key<FileData> key = projectFileKey(projectKey(projectId), fileName);
 
     try {
       runJobWithRetries(new JobRetryHelper() {
-        FileData fd;
-
         @Override
         public void run(Objectify datastore) throws ObjectifyException {
-          Key<FileData> key = projectFileKey(projectKey(projectId), fileName);
-          fd = (FileData) memcache.get(key.getString());
+          released.clear();
+          FileData fd = (FileData) memcache.get(key.getString());
           if (fd == null) {
             fd = datastore.find(projectFileKey(projectKey(projectId), fileName));
           } else {
@@ -1446,80 +1606,14 @@ public class ObjectifyStorageIo implements StorageIo {
 
           Preconditions.checkState(fd != null);
 
-          if (fd.userId != null && !fd.userId.equals("")) {
-            if (!fd.userId.equals(userId)) {
-              throw CrashReport.createAndLogError(LOG, null,
-                collectUserProjectErrorInfo(userId, projectId),
-                new UnauthorizedAccessException(userId, projectId, null));
-            }
-          }
-
-          if ((content.length < 125) && (fileName.endsWith(".bky"))) { // Likely this is an empty blocks workspace
-            if (!force) {            // force is true if we *really* want to save it!
-              checkForBlocksTruncation(fd); // See if we had previous content and throw and exception if so
-            }
-          }
-
-          if (useGCS) {
-            fd.isGCS = true;
-            fd.gcsName = makeGCSfileName(fileName, projectId);
-            try {
-              GcsOutputChannel outputChannel =
-                  gcsService.createOrReplace(new GcsFilename(getGcsBucketToUse(fd.role), fd.gcsName), GcsFileOptions.getDefaultInstance());
-              outputChannel.write(ByteBuffer.wrap(content));
-              outputChannel.close();
-            } catch (IOException e) {
-              throw CrashReport.createAndLogError(LOG, null,
-                collectProjectErrorInfo(userId, projectId, fileName), e);
-            }
-            // If the content was previously stored in the datastore, clear it out.
-            fd.content = null;
-            fd.isBlob = false;  // in case we are converting from a blob
-            fd.blobstorePath = null;
-          } else {
-            if (isTrue(fd.isGCS)) {     // Was a GCS file, must have gotten smaller
-              try {             // and is now stored in the data store
-                gcsService.delete(new GcsFilename(getGcsBucketToUse(fd.role), fd.gcsName));
-              } catch (IOException e) {
-                throw CrashReport.createAndLogError(LOG, null,
-                  collectProjectErrorInfo(userId, projectId, fileName), e);
-              }
-              fd.isGCS = false;
-              fd.gcsName = null;
-            }
-            // Note, Don't have to do anything if the file was in the
-            // Blobstore and shrank because the code above (3 lines
-            // into the function) already handles removing the old
-            // contents from the Blobstore.
-            fd.isBlob = false;
-            fd.blobstorePath = null;
-            fd.content = content;
-          }
-          if (considerBackup) {
-            if ((fd.lastBackup + TWENTYFOURHOURS) < System.currentTimeMillis()) {
-              try {
-                String gcsName = makeGCSfileName(fileName + "." + formattedTime() + ".backup", projectId);
-                GcsOutputChannel outputChannel =
-                    gcsService.createOrReplace((new GcsFilename(getGcsBucketToUse(FileData.RoleEnum.SOURCE), gcsName)), GcsFileOptions.getDefaultInstance());
-                outputChannel.write(ByteBuffer.wrap(content));
-                outputChannel.close();
-                fd.lastBackup = System.currentTimeMillis();
-              } catch (IOException e) {
-                throw CrashReport.createAndLogError(LOG, null,
-                    collectProjectErrorInfo(userId, projectId, fileName + "(backup)"), e);
-              }
-            }
-          }
-          // Old file not marked with ownership, mark it now
-          if (fd.userId == null || fd.userId.equals("")) {
-            fd.userId = userId;
-          }
+          updateFileContent(datastore, fd, projectId, fileName, userId, force, content,
+              released);
           datastore.put(fd);
-          memcache.put(key.getString(), fd); // Store the updated data in memcache
+          saved.t = fd;
           modTime.t = updateProjectModDate(datastore, projectId);
         }
-      }, false); // Use transaction for blobstore, otherwise we don't need one
-                 // and without one the caching code comes into play.
+      }, true); // A copy that shares the file's GCS object meanwhile makes the transaction run
+                // again, and write a new object
 
     } catch (ObjectifyException e) {
       if (e.getMessage().startsWith("Blocks")) { // Convert Exception
@@ -1528,9 +1622,100 @@ public class ObjectifyStorageIo implements StorageIo {
       throw CrashReport.createAndLogError(LOG, null,
           collectProjectErrorInfo(userId, projectId, fileName), e);
     }
+    memcache.put(key.getString(), saved.t); // Store the updated data in memcache
+    metadataCache.invalidateProject(projectId);
+    releaseGcsFiles(released);
     return modTime.t;
   }
 
+  /*
+   * Stores content in the given FileData, either in the datastore entity itself or in GCS, and
+   * takes a backup of blocks and form files if one is due. The caller must put fd, and release
+   * the GCS objects added to released once fd has been stored. Releasing them earlier could
+   * release them twice if the caller's job is retried. The caller's job must be a transaction on
+   * the project, so that a copy sharing the GCS object meanwhile makes it run again.
+   */
+  private void updateFileContent(Objectify datastore, FileData fd, long projectId,
+      String fileName, String userId, boolean force, byte[] content, List<String> released)
+      throws ObjectifyException {
+    boolean useGCS = useGCSforFile(fileName, content.length);
+    boolean considerBackup = (fileName.contains("src/") &&
+      (fileName.endsWith(".bky") || fileName.endsWith(".scm")));
+
+    if (fd.userId != null && !fd.userId.equals("")) {
+      if (!fd.userId.equals(userId)) {
+        throw CrashReport.createAndLogError(LOG, null,
+          collectUserProjectErrorInfo(userId, projectId),
+          new UnauthorizedAccessException(userId, projectId, null));
+      }
+    }
+
+    if ((content.length < 125) && (fileName.endsWith(".bky"))) { // Likely this is an empty blocks workspace
+      if (!force) {            // force is true if we *really* want to save it!
+        checkForBlocksTruncation(fd); // See if we had previous content and throw and exception if so
+      }
+    }
+
+    if (useGCS) {
+      String oldGcsName = isTrue(fd.isGCS) ? fd.gcsName : null;
+      String gcsName = oldGcsName == null ? makeGCSfileName(fileName, projectId) : oldGcsName;
+      if (isSharedGcsFile(datastore, projectId, gcsName)) {
+        // Copy on write: leave the shared object alone and give this file its own
+        gcsName = makeGCSfileName(fileName + "." + UUID.randomUUID(), projectId);
+      }
+      try {
+        GcsOutputChannel outputChannel =
+            gcsService.createOrReplace(new GcsFilename(getGcsBucketToUse(fd.role), gcsName), GcsFileOptions.getDefaultInstance());
+        outputChannel.write(ByteBuffer.wrap(content));
+        outputChannel.close();
+      } catch (IOException e) {
+        throw CrashReport.createAndLogError(LOG, null,
+          collectProjectErrorInfo(userId, projectId, fileName), e);
+      }
+      if (oldGcsName != null && !oldGcsName.equals(gcsName)) {
+        released.add(oldGcsName);
+      }
+      fd.isGCS = true;
+      fd.gcsName = gcsName;
+      // If the content was previously stored in the datastore, clear it out.
+      fd.content = null;
+      fd.isBlob = false;  // in case we are converting from a blob
+      fd.blobstorePath = null;
+    } else {
+      if (isTrue(fd.isGCS)) {     // Was a GCS file, must have gotten smaller
+        released.add(fd.gcsName); // and is now stored in the data store
+        fd.isGCS = false;
+        fd.gcsName = null;
+      }
+      // Note, Don't have to do anything if the file was in the
+      // Blobstore and shrank because the code above (3 lines
+      // into the function) already handles removing the old
+      // contents from the Blobstore.
+      fd.isBlob = false;
+      fd.blobstorePath = null;
+      fd.content = content;
+    }
+    if (considerBackup) {
+      if ((fd.lastBackup + TWENTYFOURHOURS) < System.currentTimeMillis()) {
+        try {
+          String gcsName = makeGCSfileName(fileName + "." + formattedTime() + ".backup", projectId);
+          GcsOutputChannel outputChannel =
+              gcsService.createOrReplace((new GcsFilename(getGcsBucketToUse(FileData.RoleEnum.SOURCE), gcsName)), GcsFileOptions.getDefaultInstance());
+          outputChannel.write(ByteBuffer.wrap(content));
+          outputChannel.close();
+          fd.lastBackup = System.currentTimeMillis();
+        } catch (IOException e) {
+          throw CrashReport.createAndLogError(LOG, null,
+              collectProjectErrorInfo(userId, projectId, fileName + "(backup)"), e);
+        }
+      }
+    }
+    // Old file not marked with ownership, mark it now
+    if (fd.userId == null || fd.userId.equals("")) {
+      fd.userId = userId;
+    }
+  }
+
   protected void deleteBlobstoreFile(String blobKeyString) {
     // It would be nice if there were an AppEngineFile.delete() method but alas there isn't, so we
     // have to get the BlobKey and delete via the BlobstoreService.
@@ -1563,6 +1748,116 @@ public class ObjectifyStorageIo implements StorageIo {
     return (projectId + "/" + fileName);
   }
 
+  /*
+   * Returns true if the GCS object used by a file of the given project has been shared between
+   * projects, in which case it must not be written again. An object written by another project
+   * is always shared. Otherwise the check reads the project's entity group, so it must be made
+   * in the transaction that stores the file.
+   */
+  @VisibleForTesting
+  boolean isSharedGcsFile(Objectify datastore, long projectId, String gcsName) {
+    if (!gcsName.startsWith(projectId + "/")) {
+      return true;
+    }
+    return datastore.find(gcsRefKey(gcsName)) != null;
+  }
+
+  /*
+   * Adds a reference to the GCS object of a project file for a new file that shares it, and
+   * returns the file as read in the same transaction, or null if it no longer exists. No
+   * reference is added if the file isn't in GCS any more. An object that wasn't shared yet starts
+   * with the reference of the file it belongs to.
+   */
+  private FileData addGcsReference(final Key<ProjectData> projectKey, final String fileName)
+      throws ObjectifyException {
+    final Result<FileData> file = new Result<FileData>();
+    runJobWithRetries(new JobRetryHelper() {
+      @Override
+      public void run(Objectify datastore) {
+        // Reading the file here makes a concurrent write or delete of it either come first or
+        // run again and see the reference.
+        file.t = datastore.find(projectFileKey(projectKey, fileName));
+        if (file.t == null || !isTrue(file.t.isGCS) || file.t.gcsName == null) {
+          return;
+        }
+        GcsRefData ref = datastore.find(gcsRefKey(file.t.gcsName));
+        if (ref == null) {
+          ref = new GcsRefData();
+          ref.gcsName = file.t.gcsName;
+          ref.projectKey = gcsRefKey(file.t.gcsName).getParent();
+          ref.refs = 1;
+        }
+        ref.refs++;
+        datastore.put(ref);
+      }
+
+      @Override
+      public boolean isCrossGroup() {
+        // The object may have been written by the project this one was copied from
+        return true;
+      }
+    }, true);
+    return file.t;
+  }
+
+  /*
+   * Removes a reference to a GCS object from a file that no longer uses it, and deletes the
+   * object if that was the last reference. Source files are the only ones that are shared.
+   */
+  private void releaseGcsFile(final String gcsName) throws IOException {
+    final Result<Boolean> delete = new Result<Boolean>();
+    try {
+      runJobWithRetries(new JobRetryHelper() {
+        @Override
+        public void run(Objectify datastore) {
+          GcsRefData ref = datastore.find(gcsRefKey(gcsName));
+          if (ref == null) {
+            delete.t = true;
+          } else if (--ref.refs <= 0) {
+            datastore.delete(ref);
+            delete.t = true;
+          } else {
+            datastore.put(ref);
+            delete.t = false;
+          }
+        }
+      }, true);
+    } catch (ObjectifyException e) {
+      // Keeping an object we might still need is better than deleting one still in use
+      LOG.log(Level.WARNING, "Unable to release " + gcsName + ", leaving it in GCS", e);
+      return;
+    }
+    if (delete.t) {
+      gcsService.delete(new GcsFilename(getGcsBucketToUse(FileData.RoleEnum.SOURCE), gcsName));
+    }
+  }
+
+  /*
+   * Releases the GCS objects no longer used by files that have been stored.
+   */
+  private void releaseGcsFiles(List<String> gcsNames) {
+    for (String gcsName : gcsNames) {
+      try {
+        releaseGcsFile(gcsName);
+      } catch (IOException e) {
+        LOG.log(Level.WARNING, "Unable to delete " + gcsName + " from GCS.", e);
+      }
+    }
+  }
+
+  /*
+   * Gives back the references taken for files that were never stored.
+   */
+  private void releaseGcsReferences(List<FileData> files) {
+    for (FileData file : files) {
+      try {
+        releaseGcsFile(file.gcsName);
+      } catch (IOException e) {
+        LOG.log(Level.WARNING, "Unable to release " + file.gcsName + " from GCS.", e);
+      }
+    }
+  }
+
   @Override
   public long deleteFile(final String userId, final long projectId, final String fileName) {
     validateGCS();
@@ -1597,12 +1892,13 @@ public class ObjectifyStorageIo implements StorageIo {
       throw CrashReport.createAndLogError(LOG, null,
           collectProjectErrorInfo(userId, projectId, fileName), e);
     }
+    metadataCache.invalidateProject(projectId);
     if (oldBlobKeyString.t != null) {
       deleteBlobstoreFile(oldBlobKeyString.t);
     }
     if (oldgcsName.t != null) {
       try {
-        gcsService.delete(new GcsFilename(getGcsBucketToUse(FileData.RoleEnum.SOURCE), oldgcsName.t));
+        releaseGcsFile(oldgcsName.t);
       } catch (IOException e) {
         // This may get logged if we attempt to delete an APK file. But we can ignore
         // this case because APK files will be deleted on their own
@@ -1626,6 +1922,22 @@ public class ObjectifyStorageIo implements StorageIo {
     }
   }
 
+  @Override
+  public Map<String, String> downloadFiles(final String userId, final long projectId,
+      final List<String> fileNames, final String encoding) {
+    Map<String, String> result = new LinkedHashMap<String, String>();
+    for (Map.Entry<String, byte[]> file :
+        downloadRawFiles(userId, projectId, fileNames).entrySet()) {
+      try {
+        result.put(file.getKey(), new String(file.getValue(), encoding));
+      } catch (UnsupportedEncodingException e) {
+        throw CrashReport.createAndLogError(LOG, null, "Unsupported file content encoding, "
+            + collectProjectErrorInfo(userId, projectId, file.getKey()), e);
+      }
+    }
+    return result;
+  }
+
   @Override
   public void recordCorruption(String userId, long projectId, String fileId, String message) {
     Objectify datastore = ObjectifyService.begin();
@@ -1651,7 +1963,6 @@ public class ObjectifyStorageIo implements StorageIo {
   @Override
   public byte[] downloadRawFile(final String userId, final long projectId, final String fileName) {
     validateGCS();
-    final Result<byte[]> result = new Result<byte[]>();
     final Result<FileData> fd = new Result<FileData>();
     try {
       runJobWithRetries(new JobRetryHelper() {
@@ -1669,7 +1980,62 @@ public class ObjectifyStorageIo implements StorageIo {
           collectProjectErrorInfo(userId, projectId, fileName), e);
     }
     // read the blob/GCS File outside of the job
-    FileData fileData = fd.t;
+    return readFileContent(userId, projectId, fileName, fd.t);
+  }
+
+  @Override
+  public Map<String, byte[]> downloadRawFiles(final String userId, final long projectId,
+      final List<String> fileNames) {
+    validateGCS();
+    Key<ProjectData> projectKey = projectKey(projectId);
+    List<String> cacheKeys = new ArrayList<String>();
+    for (String fileName : fileNames) {
+      cacheKeys.add(projectFileKey(projectKey, fileName).getString());
+    }
+    // Look in memcache for all of the files in a single call, then fetch the rest from the
+    // datastore in a single batch get.
+    Map<String, Object> cached = memcache.getAll(cacheKeys);
+    final Map<String, FileData> fileData = new HashMap<String, FileData>();
+    final List<Key<FileData>> missing = new ArrayList<Key<FileData>>();
+    for (String fileName : fileNames) {
+      Key<FileData> fileKey = projectFileKey(projectKey, fileName);
+      FileData fd = (FileData) cached.get(fileKey.getString());
+      if (fd == null) {
+        missing.add(fileKey);
+      } else {
+        fileData.put(fileName, fd);
+      }
+    }
+    if (!missing.isEmpty()) {
+      try {
+        runJobWithRetries(new JobRetryHelper() {
+          @Override
+          public void run(Objectify datastore) {
+            for (FileData fd : datastore.get(missing).values()) {
+              fileData.put(fd.fileName, fd);
+            }
+          }
+        }, false); // Transaction not needed
+      } catch (ObjectifyException e) {
+        throw CrashReport.createAndLogError(LOG, null,
+            collectUserProjectErrorInfo(userId, projectId), e);
+      }
+    }
+    // read the blob/GCS Files outside of the job
+    Map<String, byte[]> result = new LinkedHashMap<String, byte[]>();
+    for (String fileName : fileNames) {
+      result.put(fileName, readFileContent(userId, projectId, fileName, fileData.get(fileName)));
+    }
+    return result;
+  }
+
+  /*
+   * Returns the content of a project file, reading it from GCS or the Blobstore if it isn't
+   * stored in the datastore. fileData may be null if the file doesn't exist.
+   */
+  private byte[] readFileContent(String userId, long projectId, String fileName,
+      FileData fileData) {
+    final Result<byte[]> result = new Result<byte[]>();
     if (fileData != null) {
       if (fileData.userId != null && !fileData.userId.equals("")) {
         if (!fileData.userId.equals(userId)) {
@@ -1799,9 +2165,58 @@ public class ObjectifyStorageIo implements StorageIo {
     final boolean includeScreenShots,
     final boolean forGallery,
     final boolean fatalError) throws IOException {
+    ByteArrayOutputStream zipFile = new ByteArrayOutputStream();
+    ZipOutputStream out = new ZipOutputStream(zipFile);
+    Result<Integer> fileCount = new Result<Integer>();
+    String projectName = writeProjectSourceZip(userId, projectId, includeProjectHistory,
+        includeAndroidKeystore, includeYail, includeScreenShots, forGallery, fatalError, out,
+        fileCount);
+    out.close();
+
+    if (zipName == null) {
+      zipName = projectName + ".aia";
+    }
+    ProjectSourceZip projectSourceZip =
+        new ProjectSourceZip(zipName, zipFile.toByteArray(), fileCount.t);
+    projectSourceZip.setMetadata(projectName);
+    return projectSourceZip;
+  }
+
+  @Override
+  public int writeProjectSourceZip(String userId, long projectId,
+    boolean includeProjectHistory,
+    boolean includeAndroidKeystore,
+    boolean includeYail,
+    boolean includeScreenShots,
+    boolean forGallery,
+    boolean fatalError,
+    OutputStream destination) throws IOException {
+    ZipOutputStream out = new ZipOutputStream(destination);
+    Result<Integer> fileCount = new Result<Integer>();
+    writeProjectSourceZip(userId, projectId, includeProjectHistory, includeAndroidKeystore,
+        includeYail, includeScreenShots, forGallery, fatalError, out, fileCount);
+    // Write the central directory but leave the destination open for the caller.
+    out.finish();
+    out.flush();
+    return fileCount.t;
+  }
+
+  /*
+   * Writes the project files to out, reading blob and GCS files a few at a time ahead of the
+   * file being written. Returns the name of the project and sets fileCount to the number of
+   * files written. Nothing is written if the project has no files.
+   */
+  private String writeProjectSourceZip(final String userId, final long projectId,
+    final boolean includeProjectHistory,
+    final boolean includeAndroidKeystore,
+    final boolean includeYail,
+    final boolean includeScreenShots,
+    final boolean forGallery,
+    final boolean fatalError,
+    final ZipOutputStream out,
+    final Result<Integer> fileCount) throws IOException {
     final boolean forBuildserver = includeAndroidKeystore && includeYail;
     validateGCS();
-    final Result<Integer> fileCount = new Result<Integer>();
     fileCount.t = 0;
     final Result<String> projectHistory = new Result<String>();
     projectHistory.t = null;
@@ -1815,10 +2230,9 @@ public class ObjectifyStorageIo implements StorageIo {
     projectName.t = null;
     String fileName = null;
 
-    ByteArrayOutputStream zipFile = new ByteArrayOutputStream();
-    final ZipOutputStream out = new ZipOutputStream(zipFile);
     out.setComment("Built with MIT App Inventor");
 
+    ExecutorService readers = null;
     try {
       JobRetryHelper job = new JobRetryHelper() {
         @Override
@@ -1882,80 +2296,42 @@ public class ObjectifyStorageIo implements StorageIo {
         throw error;
       }
       // Process the file contents outside of the job since we can't read
-      // blobs in the job.
-      for (FileData fd : fileData) {
-        fileName = fd.fileName;
-        byte[] data = null;
-        if (fd.isBlob) {
-          try {
-            if (fd.blobKey == null) {
-              throw new BlobReadException("blobKey is null");
-            }
-            data = getBlobstoreBytes(fd.blobKey);
-          } catch (BlobReadException e) {
-            throw CrashReport.createAndLogError(LOG, null,
-                collectProjectErrorInfo(userId, projectId, fileName), e);
-          }
-        } else if (isTrue(fd.isGCS)) {
-          try {
-            int count;
-            boolean npfHappened = false;
-            boolean recovered = false;
-            for (count = 0; count < 5; count++) {
-              GcsFilename gcsFileName = new GcsFilename(getGcsBucketToUse(fd.role), fd.gcsName);
-              int bytesRead = 0;
-              int fileSize = 0;
-              ByteBuffer resultBuffer;
-              try {
-                fileSize = (int) gcsService.getMetadata(gcsFileName).getLength();
-                resultBuffer = ByteBuffer.allocate(fileSize);
-                GcsInputChannel readChannel = gcsService.openReadChannel(gcsFileName, 0);
-                try {
-                  while (bytesRead < fileSize) {
-                    bytesRead += readChannel.read(resultBuffer);
-                    if (bytesRead < fileSize) {
-                      if (DEBUG) {
-                        LOG.log(Level.INFO, "readChannel: bytesRead = " + bytesRead + " fileSize = " + fileSize);
-                      }
-                    }
-                  }
-                  recovered = true;
-                  data = resultBuffer.array();
-                  break;        // We got the data, break out of the loop!
-                } finally {
-                  readChannel.close();
-                }
-              } catch (NullPointerException e) {
-                // This happens if the object in GCS is non-existent, which would happen
-                // when people uploaded a zero length object. As of this change, we now
-                // store zero length objects into GCS, but there are plenty of older objects
-                // that are missing in GCS.
-                LOG.log(Level.WARNING, "exportProjectFile: NPF recorded for " + fd.gcsName);
-                npfHappened = true;
-                resultBuffer = ByteBuffer.allocate(0);
-                data = resultBuffer.array();
-              }
+      // blobs in the job. Blob and GCS files are read on request threads, at
+      // most EXPORT_READ_AHEAD at a time, so that only those files and the one
+      // being written are held in memory.
+      List<Future<byte[]>> contents = new ArrayList<Future<byte[]>>();
+      for (int i = 0; i < fileData.size(); i++) {
+        for (int next = contents.size(); next < fileData.size()
+            && next <= i + EXPORT_READ_AHEAD; next++) {
+          final FileData fd = fileData.get(next);
+          if (fd.isBlob || isTrue(fd.isGCS)) {
+            if (readers == null) {
+              readers = Executors.newFixedThreadPool(EXPORT_READ_AHEAD,
+                  ThreadManager.currentRequestThreadFactory());
             }
-
-            // report out on how things went above
-            if (npfHappened) {    // We lost at least once
-              if (recovered) {
-                LOG.log(Level.WARNING, "recovered from NPF in exportProjectFile filename = " + fd.gcsName +
-                  " count = " + count);
-              } else {
-                LOG.log(Level.WARNING, "FATAL NPF in exportProjectFile filename = " + fd.gcsName);
-                if (fatalError) {
-                  throw new IOException("FATAL Error reading file from GCS filename = " + fd.gcsName);
-                }
+            contents.add(readers.submit(new Callable<byte[]>() {
+              @Override
+              public byte[] call() throws IOException {
+                return readExportedFile(userId, projectId, fd, fatalError);
               }
-            }
-          } catch (IOException e) {
-            throw CrashReport.createAndLogError(LOG, null,
-              collectProjectErrorInfo(userId, projectId, fileName), e);
+            }));
+          } else {
+            contents.add(Futures.immediateFuture(fd.content));
           }
-        } else {
-          data = fd.content;
         }
+        fileName = fileData.get(i).fileName;
+        byte[] data;
+        try {
+          data = contents.get(i).get();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new IOException("Interrupted while reading " + fileName, e);
+        } catch (ExecutionException e) {
+          Throwables.propagateIfPossible(e.getCause(), IOException.class);
+          throw new IOException(e.getCause());
+        }
+        // Let the content be collected once it has been written.
+        contents.set(i, null);
         if (data == null) {     // This happens if file creation is interrupted
           data = new byte[0];
         }
@@ -1981,6 +2357,10 @@ public class ObjectifyStorageIo implements StorageIo {
           collectProjectErrorInfo(userId, projectId, fileName), e);
       throw new IOException("Reflecting exception for userid " + userId +
           " projectId " + projectId + ", original exception " + e.getMessage());
+    } finally {
+      if (readers != null) {
+        readers.shutdownNow();
+      }
     }
 
     if (fileCount.t == 0) {
@@ -2016,15 +2396,85 @@ public class ObjectifyStorageIo implements StorageIo {
       }
     }
 
-    out.close();
+    return projectName.t;
+  }
 
-    if (zipName == null) {
-      zipName = projectName.t + ".aia";
+  /*
+   * Reads the content of a blob or GCS file being exported.
+   */
+  private byte[] readExportedFile(String userId, long projectId, FileData fd,
+      boolean fatalError) throws IOException {
+    String fileName = fd.fileName;
+    byte[] data = null;
+    if (fd.isBlob) {
+      try {
+        if (fd.blobKey == null) {
+          throw new BlobReadException("blobKey is null");
+        }
+        data = getBlobstoreBytes(fd.blobKey);
+      } catch (BlobReadException e) {
+        throw CrashReport.createAndLogError(LOG, null,
+            collectProjectErrorInfo(userId, projectId, fileName), e);
+      }
+    } else {
+      try {
+        int count;
+        boolean npfHappened = false;
+        boolean recovered = false;
+        for (count = 0; count < 5; count++) {
+          GcsFilename gcsFileName = new GcsFilename(getGcsBucketToUse(fd.role), fd.gcsName);
+          int bytesRead = 0;
+          int fileSize = 0;
+          ByteBuffer resultBuffer;
+          try {
+            fileSize = (int) gcsService.getMetadata(gcsFileName).getLength();
+            resultBuffer = ByteBuffer.allocate(fileSize);
+            GcsInputChannel readChannel = gcsService.openReadChannel(gcsFileName, 0);
+            try {
+              while (bytesRead < fileSize) {
+                bytesRead += readChannel.read(resultBuffer);
+                if (bytesRead < fileSize) {
+                  if (DEBUG) {
+                    LOG.log(Level.INFO, "readChannel: bytesRead = " + bytesRead + " fileSize = " + fileSize);
+                  }
+                }
+              }
+              recovered = true;
+              data = resultBuffer.array();
+              break;        // We got the data, break out of the loop!
+            } finally {
+              readChannel.close();
+            }
+          } catch (NullPointerException e) {
+            // This happens if the object in GCS is non-existent, which would happen
+            // when people uploaded a zero length object. As of this change, we now
+            // store zero length objects into GCS, but there are plenty of older objects
+            // that are missing in GCS.
+            LOG.log(Level.WARNING, "exportProjectFile: NPF recorded for " + fd.gcsName);
+            npfHappened = true;
+            resultBuffer = ByteBuffer.allocate(0);
+            data = resultBuffer.array();
+          }
+        }
+
+        // report out on how things went above
+        if (npfHappened) {    // We lost at least once
+          if (recovered) {
+            LOG.log(Level.WARNING, "recovered from NPF in exportProjectFile filename = " + fd.gcsName +
+              " count = " + count);
+          } else {
+            LOG.log(Level.WARNING, "FATAL NPF in exportProjectFile filename = " + fd.gcsName);
+            if (fatalError) {
+              throw new IOException("FATAL Error reading file from GCS filename = " + fd.gcsName);
+            }
+          }
+        }
+      } catch (IOException e) {
+        throw CrashReport.createAndLogError(LOG, null,
+          collectProjectErrorInfo(userId, projectId, fileName), e);
+      }
     }
-    ProjectSourceZip projectSourceZip =
-        new ProjectSourceZip(zipName, zipFile.toByteArray(), fileCount.t);
-    projectSourceZip.setMetadata(projectName.t);
-    return projectSourceZip;
+    return data;
   }
 
   @Override
@@ -2335,6 +2785,13 @@ public class ObjectifyStorageIo implements StorageIo {
     return new Key<UserFileData>(userKey, UserFileData.class, fileName);
   }
 
+  // The reference count belongs to the project named by the object's prefix (see
+  // makeGCSfileName).
+  private Key<GcsRefData> gcsRefKey(String gcsName) {
+    long projectId = Long.parseLong(gcsName.substring(0, gcsName.indexOf('/')));
+    return new Key<GcsRefData>(projectKey(projectId), GcsRefData.class, gcsName);
+  }
+
   private Key<FileData> projectFileKey(Key<ProjectData> projectKey, String fileName) {
     return new Key<FileData>(projectKey, FileData.class, fileName);
   }
@@ -2362,7 +2819,10 @@ public class ObjectifyStorageIo implements StorageIo {
     int tries = 0;
     while (tries <= MAX_JOB_RETRIES) {
       Objectify datastore;
-      if (useTransaction) {
+      if (useTransaction && job.isCrossGroup()) {
+        datastore = ObjectifyService.begin(new ObjectifyOpts().setBeginTransaction(true)
+            .setTransactionOptions(TransactionOptions.Builder.withXG(true)));
+      } else if (useTransaction) {
         datastore = ObjectifyService.beginTransaction();
       } else {
         datastore = ObjectifyService.begin();
@@ -2650,6 +3110,9 @@ public class ObjectifyStorageIo implements StorageIo {
       }
       throw CrashReport.createAndLogError(LOG, null, null, e);
     }
+    if (user.getId() != null) {
+      invalidateUser(user.getId());
+    }
   }
 
   /* Store a shared backpack.
@@ -2702,25 +3165,86 @@ public class ObjectifyStorageIo implements StorageIo {
 
   @Override
   public void storeBuildStatus(String userId, long projectId, int progress) {
-    String prelim = "40bae275-070f-478b-9a5f-d50361809b99";
-    String cacheKey = prelim + userId + projectId;
+    storeBuildStatus(userId, projectId, progress, null);
+  }
+
+  @Override
+  public void storeBuildStatus(String userId, long projectId, int progress, String stage) {
+    String cacheKey = buildStatusKey(userId, projectId);
     memcache.put(cacheKey, progress);
+    if (stage == null) {
+      memcache.delete(cacheKey + ":stage");
+    } else {
+      memcache.put(cacheKey + ":stage", stage);
+    }
+    buildProgress.update(cacheKey, progress, stage);
   }
 
   @Override
   public int getBuildStatus(String userId, long projectId) {
-    String prelim = "40bae275-070f-478b-9a5f-d50361809b99";
-    String cacheKey = prelim + userId + projectId;
+    Integer progress = lookupBuildStatus(buildStatusKey(userId, projectId));
+    return progress == null ? 50 : progress;
+  }
+
+  /*
+   * Returns the progress of the build, or null if neither memcache nor this instance knows it.
+   */
+  private Integer lookupBuildStatus(String cacheKey) {
     Integer ival = (Integer) memcache.get(cacheKey);
-    if (ival == null) {         // not in memcache (or memcache service down)
-      return 50;
-    } else {
-      return ival.intValue();
+    if (ival != null) {
+      return ival;
     }
+    // Not in memcache (or memcache service down). Use what was reported to this instance, if
+    // anything.
+    BuildProgressRegistry.Status status = buildProgress.get(cacheKey);
+    return status == null ? null : status.progress;
+  }
+
+  @Override
+  public String getBuildStage(String userId, long projectId) {
+    String cacheKey = buildStatusKey(userId, projectId);
+    String stage = (String) memcache.get(cacheKey + ":stage");
+    if (stage == null) {
+      BuildProgressRegistry.Status status = buildProgress.get(cacheKey);
+      if (status != null) {
+        stage = status.stage;
+      }
+    }
+    return stage;
+  }
+
+  @Override
+  public int waitForBuildStatus(String userId, long projectId, int lastProgress,
+      long timeoutMillis) {
+    String cacheKey = buildStatusKey(userId, projectId);
+    long deadline = System.currentTimeMillis() + timeoutMillis;
+    while (true) {
+      // An unknown progress is treated as unchanged rather than reported as the 50 that
+      // getBuildStatus falls back to, which would make the client's progress bar jump.
+      Integer known = lookupBuildStatus(cacheKey);
+      int progress = known == null ? lastProgress : known;
+      long remaining = deadline - System.currentTimeMillis();
+      if (progress != lastProgress || remaining <= 0) {
+        return progress;
+      }
+      try {
+        buildProgress.await(cacheKey, Math.min(remaining, BUILD_STATUS_RECHECK_MILLIS));
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return progress;
+      }
+    }
+  }
+
+  private static String buildStatusKey(String userId, long projectId) {
+    return "40bae275-070f-478b-9a5f-d50361809b99" + userId + projectId;
   }
 
   @Override
   public void assertUserHasProject(final String userId, final long projectId) {
+    if (metadataCache.hasProject(userId, projectId)) {
+      return;
+    }
     try {
       runJobWithRetries(new JobRetryHelper() {
         @SuppressWarnings("RedundantThrows")
@@ -2738,6 +3262,7 @@ public class ObjectifyStorageIo implements StorageIo {
     } catch(ObjectifyException e) {
       throw CrashReport.createAndLogError(LOG, null, null, e);
     }
+    metadataCache.putHasProject(userId, projectId);
   }
 
   @Override
@@ -2795,11 +3320,10 @@ public class ObjectifyStorageIo implements StorageIo {
           public void run(Objectify datastore) {
             // Delete the UserData object
             datastore.delete(userKey(userId));
-            // And remove it from memcache
-            String cachekey = User.usercachekey + "|" + userId;
-            memcache.delete(cachekey);
           }
         }, true);
+      // And remove it from the caches
+      invalidateUser(userId);
       return true;
     } catch (ObjectifyException e) {
       throw CrashReport.createAndLogError(LOG, null, collectUserErrorInfo(userId), e);
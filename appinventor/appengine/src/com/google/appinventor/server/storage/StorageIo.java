@@ -19,8 +19,10 @@ import com.google.appinventor.shared.rpc.user.SplashConfig;
 
 import java.io.InputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
 
 import javax.annotation.Nullable;
@@ -134,6 +136,27 @@ public interface StorageIo {
    */
   long createProject(String userId, Project project, String projectSettings);
 
+  /**
+   * Creates a new project that is a copy of an existing project of the user.
+   *
+   * <p>
+   * The files of the new project are the files of the given project plus the
+   * files copied from the old project. Copied files that are kept in Cloud
+   * Storage are not read or written again; both projects refer to the same
+   * object until one of them changes its file.
+   *
+   * @param userId user id
+   * @param oldProjectId id of the project to copy
+   * @param project new project information and the files that differ from the
+   *     old project
+   * @param projectSettings project settings
+   * @param copiedFiles map from the name of each file to copy from the old
+   *     project to its name in the new project
+   * @return project id
+   */
+  long copyProject(String userId, long oldProjectId, Project project, String projectSettings,
+      Map<String, String> copiedFiles);
+
   /**
    * Deletes a project and all its files.
    *
@@ -442,6 +465,19 @@ public interface StorageIo {
    */
   long uploadRawFileForce(long projectId, String fileId, String userId, byte[] content);
 
+  /**
+   * Uploads several files of a project at once. Either all of the files are
+   * saved or none of them are.
+   * @param projectId  project ID
+   * @param files  map from file ID to file content
+   * @param userId the user who owns the files
+   * @param force write files even if they are trivial workspaces
+   * @param encoding encoding of content
+   * @return modification date for project
+   */
+  long uploadFiles(long projectId, Map<String, String> files, String userId, boolean force,
+      String encoding) throws BlocksTruncatedException;
+
   /**
    * Deletes a file.
    * @param userId a user Id (the request is made on behalf of this user)
@@ -483,6 +519,28 @@ public interface StorageIo {
    */
   byte[] downloadRawFile(String userId, long projectId, String fileId);
 
+  /**
+   * Downloads text file data for several files of a project at once.
+   * @param userId a user Id (the request is made on behalf of this user)
+   * @param projectId  project ID
+   * @param fileIds  file IDs
+   * @param encoding  encoding of text files
+   *
+   * @return  map from file ID to text file content, in the order of fileIds
+   */
+  Map<String, String> downloadFiles(String userId, long projectId, List<String> fileIds,
+      String encoding);
+
+  /**
+   * Downloads raw file data for several files of a project at once.
+   * @param userId a user Id (the request is made on behalf of this user)
+   * @param projectId  project ID
+   * @param fileIds  file IDs
+   *
+   * @return  map from file ID to file content, in the order of fileIds
+   */
+  Map<String, byte[]> downloadRawFiles(String userId, long projectId, List<String> fileIds);
+
   /**
    * Creates a temporary file with the given content and returns
    * its file name, which will always begin with __TEMP__
@@ -543,6 +601,33 @@ public interface StorageIo {
     final boolean forGallery,
     final boolean fatalError) throws IOException;
 
+  /**
+   * Writes project files as a zip archive to {@code out} as they are read, without holding the
+   * whole archive in memory. The archive is finished but {@code out} is left open.
+   *
+   * @param userId a user Id (the request is made on behalf of this user)
+   * @param projectId  project ID
+   * @param includeProjectHistory  whether or not to include the project history
+   * @param includeAndroidKeystore  whether or not to include the Android keystore
+   * @param includeYail include any yail files in the project
+   * @param includeScreenShots include any screen shots stored with the project
+   * @param forGallery flag to indicate we are exporting for the gallery
+   * @param fatalError set true to cause missing GCS file to throw exception
+   * @param out the stream to write the zip archive to
+   *
+   * @return  the number of files written to the archive
+   * @throws IllegalArgumentException if the project has no files, in which case nothing has
+   *         been written to {@code out}
+   */
+  int writeProjectSourceZip(String userId, long projectId,
+    boolean includeProjectHistory,
+    boolean includeAndroidKeystore,
+    boolean includeYail,
+    boolean includeScreenShots,
+    boolean forGallery,
+    boolean fatalError,
+    OutputStream out) throws IOException;
+
   /**
    * Find a user's id given their email address. Note that this query is case
    * sensitive!
@@ -652,6 +737,39 @@ public interface StorageIo {
 
   public int getBuildStatus(String userId, long projectId);
 
+  /**
+   * Stores the progress of a build together with the latest task the build server reported.
+   *
+   * @param userId the user id
+   * @param projectId the project id
+   * @param progress the build progress
+   * @param stage the name of the task, or null if it isn't known
+   */
+  public void storeBuildStatus(String userId, long projectId, int progress, String stage);
+
+  /**
+   * Returns the name of the latest task the build server reported for the project, or null if it
+   * isn't known.
+   *
+   * @param userId the user id
+   * @param projectId the project id
+   */
+  public String getBuildStage(String userId, long projectId);
+
+  /**
+   * Waits until the progress of the build differs from {@code lastProgress}, so clients can wait
+   * for the next progress update with a single request instead of polling.
+   *
+   * @param userId the user id
+   * @param projectId the project id
+   * @param lastProgress the progress the client already knows about
+   * @param timeoutMillis the maximum time to wait
+   * @return the progress of the build, which equals {@code lastProgress} if the wait timed out
+   *     or the progress isn't known
+   */
+  public int waitForBuildStatus(String userId, long projectId, int lastProgress,
+      long timeoutMillis);
+
   /**
    * Checks that the user identified by {@code userId} has a reference to the project identified
    * by {@code projectId}. If a corresponding UserProjectData is not found, this function throws
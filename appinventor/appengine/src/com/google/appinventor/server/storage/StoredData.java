@@ -202,6 +202,24 @@ public class StoredData {
                                 // it yet
   }
 
+  // Tracks a GCS object that is shared by the files of more than one project, which happens when
+  // a project is copied. Once this entity exists the object is never written again; a project
+  // that changes its copy of the file writes a new object instead. The object is deleted when
+  // the last file referring to it goes away. Objects without one of these have a single owner.
+  // The entity belongs to the project whose name prefixes the object's, so that the owner's
+  // writes check it in the same transaction as they store the file.
+  @Unindexed
+  static final class GcsRefData {
+    // The GCS filename, sans bucket name
+    @Id String gcsName;
+
+    // The key of the project that wrote the object
+    @Parent Key<ProjectData> projectKey;
+
+    // The number of files that refer to the object
+    int refs;
+  }
+
   // MOTD data.
   @Unindexed
   static final class MotdData {
@@ -122,6 +122,12 @@ public class ServerLayout {
    */
   public static final String DOWNLOAD_USERFILE = "userfile";
 
+  /**
+   * Relative path within {@link com.google.appinventor.server.DownloadServlet}
+   * for finding out which of a project's files differ from a client's copies
+   */
+  public static final String DOWNLOAD_MANIFEST = "manifest";
+
   /**
    * Relative path of the {@link com.google.appinventor.server.UploadServlet}
    * within the ODE GWT module.
@@ -345,6 +345,21 @@ public interface ProjectService extends RemoteService {
    */
   RpcResult getBuildResult(long projectId, String target);
 
+  /**
+   * Waits until the progress of a build differs from the progress the client already knows
+   * about, and then gets the result of the build. The server answers after a timeout even if the
+   * progress hasn't changed, so clients can call this again right away instead of polling.
+   *
+   * @param projectId  project ID
+   * @param target  build target (optional, implementation dependent)
+   * @param lastProgress  the progress the client already knows about, or -1 for none
+   *
+   * @return  results of build, as for {@link #getBuildResult(long, String)}. While the build is
+   *          not yet done, the output is the progress and the extra is the name of the latest
+   *          build task, if known.
+   */
+  RpcResult waitForBuildResult(long projectId, String target, int lastProgress);
+
   /**
    * Adds a new file to the given project.
    *
@@ -8,10 +8,10 @@ package com.google.appinventor.server;
 
 import com.google.appinventor.server.storage.StorageIo;
 import com.google.appinventor.server.storage.StorageIoInstanceHolder;
-import com.google.appinventor.shared.rpc.project.ProjectSourceZip;
 import com.google.appinventor.shared.rpc.project.RawFile;
 import com.riq.MockHttpServletRequest;
 import com.riq.MockHttpServletResponse;
+import org.json.JSONObject;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -21,10 +21,18 @@ import org.powermock.modules.junit4.PowerMockRunner;
 
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Formatter;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import static junit.framework.Assert.assertEquals;
 import static junit.framework.Assert.fail;
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.eq;
 import static org.easymock.EasyMock.expect;
 
 /**
@@ -42,12 +50,8 @@ public class DownloadServletTest {
   private static final long PROJECT_ID = 1234L;
   private static final String DUMMY_FILENAME = "filename123";
   private static final String DUMMY_APK_FILENAME = "filename123.apk";
-  private static final String DUMMY_ZIP_FILENAME = "filename123.aia";
-  private static final String DUMMY_ZIP_FILENAME_WITH_TITLE = "MyProjectTitle123.aia";
   private static final String DOWNLOAD_URL = "http://localhost/baseUrl/download/";
 
-  private ProjectSourceZip dummyZip;
-  private ProjectSourceZip dummyZipWithTitle;
   private RawFile dummyApk;
   private RawFile dummyFile;
 
@@ -67,8 +71,6 @@ public class DownloadServletTest {
     storageIoMock = PowerMock.createNiceMock(StorageIo.class);
     StorageIoInstanceHolder.setInstance(storageIoMock);
 
-    dummyZip = new ProjectSourceZip(DUMMY_ZIP_FILENAME, new byte[] {}, 2);
-    dummyZipWithTitle = new ProjectSourceZip(DUMMY_ZIP_FILENAME_WITH_TITLE, new byte[] {}, 2);
     dummyApk = new RawFile(DUMMY_APK_FILENAME, new byte[] {});
     dummyFile = new RawFile(DUMMY_FILENAME, new byte[] {});
   }
@@ -85,8 +87,10 @@ public class DownloadServletTest {
     PowerMock.expectLastCall().once();
     MockHttpServletRequest request = new MockHttpServletRequest(DOWNLOAD_URL +
         "project-source/1234");
-    expect(exporterMock.exportProjectSourceZip(USER_ID, PROJECT_ID, true, false, null, false, false, false, false))
-        .andReturn(dummyZip);
+    expect(storageIoMock.getProjectName(USER_ID, PROJECT_ID)).andReturn(DUMMY_FILENAME);
+    expect(exporterMock.writeProjectSourceZip(eq(USER_ID), eq(PROJECT_ID), eq(true), eq(false),
+        eq(false), eq(false), eq(false), eq(false), anyObject(OutputStream.class)))
+        .andReturn(2);
     PowerMock.replayAll();
     DownloadServlet download = new DownloadServlet();
     MockHttpServletResponse response = new MockHttpServletResponse();
@@ -102,9 +106,9 @@ public class DownloadServletTest {
     PowerMock.expectLastCall().once();
     MockHttpServletRequest request = new MockHttpServletRequest(DOWNLOAD_URL +
         "project-source/1234/My Project Title 123");
-    expect(exporterMock.exportProjectSourceZip(USER_ID, PROJECT_ID, true, false,
-        "MyProjectTitle123.aia", false, false, false, false))
-        .andReturn(dummyZipWithTitle);
+    expect(exporterMock.writeProjectSourceZip(eq(USER_ID), eq(PROJECT_ID), eq(true), eq(false),
+        eq(false), eq(false), eq(false), eq(false), anyObject(OutputStream.class)))
+        .andReturn(2);
     PowerMock.replayAll();
     DownloadServlet download = new DownloadServlet();
     MockHttpServletResponse response = new MockHttpServletResponse();
@@ -114,6 +118,28 @@ public class DownloadServletTest {
     PowerMock.verifyAll();
   }
 
+  @Test
+  public void testDownloadProjectSourceZipFailingAfterCommit() throws IOException {
+    storageIoMock.assertUserHasProject(USER_ID, PROJECT_ID);
+    PowerMock.expectLastCall().once();
+    MockHttpServletRequest request = new MockHttpServletRequest(DOWNLOAD_URL +
+        "project-source/1234/My Project Title 123");
+    expect(exporterMock.writeProjectSourceZip(eq(USER_ID), eq(PROJECT_ID), eq(true), eq(false),
+        eq(false), eq(false), eq(false), eq(false), anyObject(OutputStream.class)))
+        .andThrow(new IOException("Storage is unavailable"));
+    PowerMock.replayAll();
+    DownloadServlet download = new DownloadServlet();
+    MockHttpServletResponse response = new MockHttpServletResponse();
+    response.setCommitted(true);
+    try {
+      download.doGet(request, response);
+      fail("A failed download must not complete normally");
+    } catch (RuntimeException e) {
+      // The servlet container aborts the response
+    }
+    PowerMock.verifyAll();
+  }
+
   @Test
   public void testDownloadProjectSourceZipWithNonExistingProject() throws IOException {
     storageIoMock.assertUserHasProject(USER_ID, 12345L);
@@ -247,6 +273,67 @@ public class DownloadServletTest {
     PowerMock.verifyAll();
     }
 
+  @Test
+  public void testManifestListsChangedFiles() throws Exception {
+    byte[] current = new byte[] { 1, 2, 3 };
+    byte[] changed = new byte[] { 4, 5, 6 };
+    JSONObject manifest = new JSONObject();
+    manifest.put("assets/current.png", sha1(current));
+    manifest.put("assets/changed.png", sha1(new byte[] { 7 }));
+    manifest.put("assets/missing.png", "");
+    manifest.put("assets/deleted.png", sha1(new byte[] { 8 }));
+    MockHttpServletRequest request = new MockHttpServletRequest(DOWNLOAD_URL +
+        "manifest/1234");
+    request.setPostData(manifest.toString(), "UTF-8");
+
+    storageIoMock.assertUserHasProject(USER_ID, PROJECT_ID);
+    PowerMock.expectLastCall().once();
+    expect(storageIoMock.getProjectSourceFiles(USER_ID, PROJECT_ID))
+        .andReturn(Arrays.asList("assets/current.png", "assets/changed.png",
+            "assets/deleted.png"));
+    Map<String, byte[]> files = new HashMap<String, byte[]>();
+    files.put("assets/current.png", current);
+    files.put("assets/changed.png", changed);
+    expect(storageIoMock.downloadRawFiles(eq(USER_ID), eq(PROJECT_ID),
+        anyObject(List.class))).andReturn(files).once();
+    PowerMock.replayAll();
+    DownloadServlet download = new DownloadServlet();
+    MockHttpServletResponse response = new MockHttpServletResponse();
+    download.doPost(request, response);
+    assertEquals(HttpServletResponse.SC_OK, response.getStatus());
+    assertEquals("application/json; charset=utf-8", response.getContentType());
+    JSONObject reply = new JSONObject(response.getContentAsString());
+    assertEquals(3, reply.length());
+    assertEquals(sha1(changed), reply.getString("assets/changed.png"));
+    // Files that don't exist are listed too, so that the client doesn't keep its copies
+    assertEquals("", reply.getString("assets/missing.png"));
+    assertEquals("", reply.getString("assets/deleted.png"));
+    PowerMock.verifyAll();
+  }
+
+  @Test
+  public void testManifestWithNonExistingProject() throws Exception {
+    MockHttpServletRequest request = new MockHttpServletRequest(DOWNLOAD_URL +
+        "manifest/12345");
+    request.setPostData("{}", "UTF-8");
+    storageIoMock.assertUserHasProject(USER_ID, 12345L);
+    PowerMock.expectLastCall().andThrow(new SecurityException());
+    PowerMock.replayAll();
+    DownloadServlet download = new DownloadServlet();
+    MockHttpServletResponse response = new MockHttpServletResponse();
+    download.doPost(request, response);
+    assertEquals(HttpServletResponse.SC_NOT_FOUND, response.getStatus());
+    PowerMock.verifyAll();
+  }
+
+  private static String sha1(byte[] content) throws Exception {
+    Formatter formatter = new Formatter();
+    for (byte b : MessageDigest.getInstance("SHA-1").digest(content)) {
+      formatter.format("%02x", b);
+    }
+    return "\"" + formatter.toString() + "\"";
+  }
+
   // TODO(user): Add testDownloadAllProjectsSource* to test
   // downloading all projects.
 }
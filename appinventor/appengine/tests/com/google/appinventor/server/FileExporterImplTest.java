@@ -125,6 +125,44 @@ public class FileExporterImplTest extends LocalDatastoreTestCase {
         StorageUtil.DEFAULT_CHARSET));
   }
 
+  public void testWriteProjectSourceZip() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    int count = exporter.writeProjectSourceZip(USER_ID, projectId,
+      true, false, false, false, false, false, out);
+    Map<String, byte[]> content = testExportProjectSourceZipHelper(
+        new ProjectSourceZip(PROJECT_NAME + ".aia", out.toByteArray(), count));
+    assertEquals(3, content.size());
+    assertEquals(HISTORY, new String(content.get(FileExporter.REMIX_INFORMATION_FILE_PATH),
+        StorageUtil.DEFAULT_CHARSET));
+  }
+
+  public void testWriteProjectSourceZipWithNonExistingProject() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try {
+      exporter.writeProjectSourceZip(USER_ID, projectId + 1, false, false, false, false, false,
+          false, out);
+      fail();
+    } catch (Exception e) {
+      assertTrue(e instanceof IllegalArgumentException ||
+                 e.getCause() instanceof IllegalArgumentException);
+    }
+    assertEquals(0, out.size());
+  }
+
+  public void testWriteAllProjectsSourceZip() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    assertEquals(1, exporter.writeAllProjectsSourceZip(USER_ID, out));
+    ZipInputStream zis = new ZipInputStream(new ByteArrayInputStream(out.toByteArray()));
+    ZipEntry zipEntry = zis.getNextEntry();
+    assertEquals(PROJECT_NAME + ".aia", zipEntry.getName());
+    ByteArrayOutputStream project = new ByteArrayOutputStream();
+    ByteStreams.copy(zis, project);
+    Map<String, byte[]> content = testExportProjectSourceZipHelper(
+        new ProjectSourceZip(zipEntry.getName(), project.toByteArray(), 2));
+    assertEquals(2, content.size());
+    assertNull(zis.getNextEntry());
+  }
+
   public void testExportProjectSourceZipWithNonExistingProject() throws IOException {
     try {
       exporter.exportProjectSourceZip(USER_ID, projectId + 1, false, false, null, false, false, false, false);
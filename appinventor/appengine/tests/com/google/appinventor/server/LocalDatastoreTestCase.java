@@ -7,6 +7,7 @@
 package com.google.appinventor.server;
 
 import com.google.appinventor.common.testutils.TestUtils;
+import com.google.appinventor.server.storage.StorageIoInstanceHolder;
 
 import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
 import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
@@ -30,6 +31,8 @@ public abstract class LocalDatastoreTestCase extends TestCase {
     super.setUp();
     System.setProperty("appengine.generated.dir", APPENGINE_GENERATED_DIR);
     helper.setUp();
+    // Each test starts with an empty datastore, so it also needs a StorageIo with empty caches.
+    StorageIoInstanceHolder.setInstance(null);
   }
 
   @Override
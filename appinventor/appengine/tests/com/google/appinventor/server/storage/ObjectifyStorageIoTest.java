@@ -21,6 +21,8 @@ import com.google.appinventor.shared.rpc.user.User;
 import com.google.appinventor.shared.storage.StorageUtil;
 
 import com.google.common.base.Charsets;
+import com.googlecode.objectify.Objectify;
+import com.googlecode.objectify.ObjectifyService;
 
 import java.io.BufferedReader;
 import java.io.FileNotFoundException;
@@ -31,7 +33,9 @@ import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.ConcurrentModificationException;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.json.JSONObject;
 
@@ -333,6 +337,156 @@ public class ObjectifyStorageIoTest extends LocalDatastoreTestCase {
     assertFalse(storage.getProjectOutputFiles(USER_ID, projectId).contains(FILE_NAME_OUTPUT));
   }
 
+  public void testDownloadFiles() {
+    final String USER_ID = "1210";
+    final String USER_EMAIL = "newuser1210@test.com";
+    storage.getUser(USER_ID, USER_EMAIL);
+    long projectId = storage.createProject(USER_ID, project, SETTINGS);
+
+    Map<String, String> files = storage.downloadFiles(USER_ID, projectId,
+        Arrays.asList(FILE_NAME2, FILE_NAME1), StorageUtil.DEFAULT_CHARSET);
+    assertEquals(Arrays.asList(FILE_NAME2, FILE_NAME1), new ArrayList<String>(files.keySet()));
+    assertEquals(FILE_CONTENT1, files.get(FILE_NAME1));
+    assertEquals(FILE_CONTENT2, files.get(FILE_NAME2));
+
+    Map<String, byte[]> rawFiles = storage.downloadRawFiles(USER_ID, projectId,
+        Arrays.asList(RAW_FILE_NAME1, FILE_NAME1));
+    assertTrue(Arrays.equals(RAW_FILE_CONTENT1, rawFiles.get(RAW_FILE_NAME1)));
+    assertEquals(FILE_CONTENT1, new String(rawFiles.get(FILE_NAME1), Charsets.UTF_8));
+
+    try {
+      storage.downloadFiles(USER_ID, projectId, Arrays.asList(FILE_NAME1, "src/Missing.scm"),
+          StorageUtil.DEFAULT_CHARSET);
+      fail();
+    } catch (RuntimeException e) {
+      assertTrue(e.getCause() instanceof FileNotFoundException);
+    }
+  }
+
+  public void testUploadFiles() throws BlocksTruncatedException {
+    final String USER_ID = "1220";
+    final String USER_EMAIL = "newuser1220@test.com";
+    storage.getUser(USER_ID, USER_EMAIL);
+    long projectId = storage.createProject(USER_ID, project, SETTINGS);
+
+    Map<String, String> files = new LinkedHashMap<String, String>();
+    files.put(FILE_NAME1, FILE_CONTENT2);
+    files.put(FILE_NAME2, FILE_CONTENT1);
+    long modificationDate = storage.uploadFiles(projectId, files, USER_ID, true,
+        StorageUtil.DEFAULT_CHARSET);
+    assertEquals(modificationDate, storage.getProjectDateModified(USER_ID, projectId));
+    assertEquals(files, storage.downloadFiles(USER_ID, projectId,
+        Arrays.asList(FILE_NAME1, FILE_NAME2), StorageUtil.DEFAULT_CHARSET));
+
+    // A file that doesn't exist must not be saved, and neither may any other file in the batch.
+    files.put(FILE_NAME1, FILE_CONTENT1);
+    files.put("src/Missing.scm", FILE_CONTENT1);
+    try {
+      storage.uploadFiles(projectId, files, USER_ID, true, StorageUtil.DEFAULT_CHARSET);
+      fail();
+    } catch (IllegalStateException e) {
+      // expected
+    }
+    assertEquals(FILE_CONTENT2, storage.downloadFile(USER_ID, projectId, FILE_NAME1,
+        StorageUtil.DEFAULT_CHARSET));
+  }
+
+  public void testUploadFilesWrongUserThrowsException() throws BlocksTruncatedException {
+    final String USER_ID = "1230";
+    final String USER_EMAIL = "newuser1230@test.com";
+    final String USER_ID2 = "1240";
+    storage.getUser(USER_ID, USER_EMAIL);
+    long projectId = storage.createProject(USER_ID, project, SETTINGS);
+
+    Map<String, String> files = new LinkedHashMap<String, String>();
+    files.put(FILE_NAME1, FILE_CONTENT2);
+    try {
+      storage.uploadFiles(projectId, files, USER_ID2, true, StorageUtil.DEFAULT_CHARSET);
+      fail();
+    } catch (Exception e) {
+      assertTrue(e instanceof UnauthorizedAccessException
+                 || e.getCause() instanceof UnauthorizedAccessException);
+    }
+    assertEquals(FILE_CONTENT1, storage.downloadFile(USER_ID, projectId, FILE_NAME1,
+        StorageUtil.DEFAULT_CHARSET));
+  }
+
+  public void testCachedMetadataSeesWrites() {
+    final String USER_ID = "1250";
+    final String USER_EMAIL = "newuser1250@test.com";
+    storage.getUser(USER_ID, USER_EMAIL);
+    long projectId = storage.createProject(USER_ID, project, SETTINGS);
+    assertEquals(Arrays.asList(projectId), storage.getProjects(USER_ID));
+    storage.assertUserHasProject(USER_ID, projectId);
+    assertFalse(storage.getUserProject(USER_ID, projectId).isInTrash());
+
+    storage.setMoveToTrashFlag(USER_ID, projectId, true);
+    assertTrue(storage.getUserProject(USER_ID, projectId).isInTrash());
+    storage.updateProjectBuiltDate(USER_ID, projectId, 1234);
+    assertEquals(1234, storage.getProjectDateBuilt(USER_ID, projectId));
+    storage.storeProjectSettings(USER_ID, projectId, "{}");
+    assertEquals("{}", storage.loadProjectSettings(USER_ID, projectId));
+
+    storage.deleteProject(USER_ID, projectId);
+    assertTrue(storage.getProjects(USER_ID).isEmpty());
+    assertNull(storage.getUserProject(USER_ID, projectId));
+    try {
+      storage.assertUserHasProject(USER_ID, projectId);
+      fail();
+    } catch (SecurityException e) {
+      // expected
+    }
+  }
+
+  public void testCachedUserSeesWrites() {
+    final String USER_ID = "1260";
+    final String USER_EMAIL = "newuser1260@test.com";
+    User user = storage.getUser(USER_ID, USER_EMAIL);
+    // Changes the caller makes to the user must not leak into the cache.
+    user.setIsAdmin(true);
+    assertFalse(storage.getUser(USER_ID).getIsAdmin());
+
+    storage.setUserSessionId(USER_ID, "session2");
+    assertEquals("session2", storage.getUser(USER_ID).getSessionId());
+  }
+
+  public void testWaitForBuildStatus() throws Exception {
+    final String USER_ID = "1270";
+    final long PROJECT_ID = 1270;
+    storage.storeBuildStatus(USER_ID, PROJECT_ID, 10, "CompileJava");
+    assertEquals(10, storage.waitForBuildStatus(USER_ID, PROJECT_ID, -1, 10000));
+    assertEquals("CompileJava", storage.getBuildStage(USER_ID, PROJECT_ID));
+    // Nothing changes, so the wait times out.
+    assertEquals(10, storage.waitForBuildStatus(USER_ID, PROJECT_ID, 10, 100));
+
+    Thread reporter = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          Thread.sleep(100);
+        } catch (InterruptedException e) {
+          return;
+        }
+        storage.storeBuildStatus(USER_ID, PROJECT_ID, 20, "RunD8");
+      }
+    });
+    reporter.start();
+    long start = System.currentTimeMillis();
+    assertEquals(20, storage.waitForBuildStatus(USER_ID, PROJECT_ID, 10, 10000));
+    assertTrue(System.currentTimeMillis() - start < 10000);
+    assertEquals("RunD8", storage.getBuildStage(USER_ID, PROJECT_ID));
+    reporter.join();
+
+    storage.storeBuildStatus(USER_ID, PROJECT_ID, 0);
+    assertNull(storage.getBuildStage(USER_ID, PROJECT_ID));
+  }
+
+  public void testWaitForUnknownBuildStatus() throws Exception {
+    // Nothing was reported for this project, so the client's progress is kept rather than
+    // replaced by the 50 getBuildStatus falls back to.
+    assertEquals(20, storage.waitForBuildStatus("1271", 1271, 20, 100));
+  }
+
   public void testAddRemoveUserFile() {
     // Note that neither FILE_NAME1 nor FILE_NAME_OUTPUT should exist
     // at the start of this test
@@ -474,6 +628,106 @@ public class ObjectifyStorageIoTest extends LocalDatastoreTestCase {
           USER_ID, projectId, BLOCK_FILE_NAME)));
  }
 
+  public void testCopyProjectSharesGcsFiles() throws BlocksTruncatedException {
+    final String USER_ID = "1350";
+    final String USER_EMAIL = "newuser1350@test.com";
+    storage.getUser(USER_ID, USER_EMAIL);
+    long projectId = storage.createProject(USER_ID, project, SETTINGS);
+    assertTrue(storage.isGcsFile(projectId, RAW_FILE_NAME1));
+
+    Project copy = new Project(PROJECT_NAME + "_copy");
+    copy.setProjectType(FAKE_PROJECT_TYPE);
+    copy.addTextFile(new TextFile(FILE_NAME1, FILE_CONTENT2));
+    Map<String, String> copiedFiles = new LinkedHashMap<String, String>();
+    copiedFiles.put(FILE_NAME2, FILE_NAME2);
+    copiedFiles.put(RAW_FILE_NAME1, RAW_FILE_NAME1);
+    copiedFiles.put(RAW_FILE_NAME2, RAW_FILE_NAME2);
+    long copyId = storage.copyProject(USER_ID, projectId, copy, SETTINGS, copiedFiles);
+    assertEquals(FILE_CONTENT2, storage.downloadFile(USER_ID, copyId, FILE_NAME1,
+        StorageUtil.DEFAULT_CHARSET));
+    assertEquals(FILE_CONTENT2, storage.downloadFile(USER_ID, copyId, FILE_NAME2,
+        StorageUtil.DEFAULT_CHARSET));
+    assertTrue(Arrays.equals(RAW_FILE_CONTENT1,
+        storage.downloadRawFile(USER_ID, copyId, RAW_FILE_NAME1)));
+    String sharedName = storage.makeGCSfileName(RAW_FILE_NAME1, projectId);
+    assertTrue(storage.isSharedGcsFile(ObjectifyService.begin(), projectId, sharedName));
+
+    // Writing either copy leaves the other one alone
+    storage.uploadRawFile(copyId, RAW_FILE_NAME1, USER_ID, true, RAW_FILE_CONTENT3);
+    storage.uploadRawFile(projectId, RAW_FILE_NAME2, USER_ID, true, RAW_FILE_CONTENT3);
+    assertTrue(Arrays.equals(RAW_FILE_CONTENT3,
+        storage.downloadRawFile(USER_ID, copyId, RAW_FILE_NAME1)));
+    assertTrue(Arrays.equals(RAW_FILE_CONTENT1,
+        storage.downloadRawFile(USER_ID, projectId, RAW_FILE_NAME1)));
+    assertTrue(Arrays.equals(RAW_FILE_CONTENT3,
+        storage.downloadRawFile(USER_ID, projectId, RAW_FILE_NAME2)));
+    assertTrue(Arrays.equals(RAW_FILE_CONTENT2,
+        storage.downloadRawFile(USER_ID, copyId, RAW_FILE_NAME2)));
+
+    // The last project referring to an object keeps it
+    storage.deleteProject(USER_ID, projectId);
+    assertTrue(Arrays.equals(RAW_FILE_CONTENT2,
+        storage.downloadRawFile(USER_ID, copyId, RAW_FILE_NAME2)));
+    storage.deleteProject(USER_ID, copyId);
+    assertFalse(storage.isSharedGcsFile(ObjectifyService.begin(), projectId,
+        storage.makeGCSfileName(RAW_FILE_NAME2, projectId)));
+  }
+
+  public void testCopyOfCopyKeepsSharingTheObject() throws BlocksTruncatedException {
+    final String USER_ID = "1355";
+    final String USER_EMAIL = "newuser1355@test.com";
+    storage.getUser(USER_ID, USER_EMAIL);
+    long projectId = storage.createProject(USER_ID, project, SETTINGS);
+    Map<String, String> copiedFiles = new LinkedHashMap<String, String>();
+    copiedFiles.put(RAW_FILE_NAME1, RAW_FILE_NAME1);
+    Project copy = new Project(PROJECT_NAME + "_copy");
+    copy.setProjectType(FAKE_PROJECT_TYPE);
+    copy.addTextFile(new TextFile(FILE_NAME1, FILE_CONTENT2));
+    long copyId = storage.copyProject(USER_ID, projectId, copy, SETTINGS, copiedFiles);
+    long secondCopyId = storage.copyProject(USER_ID, copyId, copy, SETTINGS, copiedFiles);
+
+    // The object belongs to the first project, so the copies never write it
+    String sharedName = storage.makeGCSfileName(RAW_FILE_NAME1, projectId);
+    assertTrue(storage.isSharedGcsFile(ObjectifyService.begin(), copyId, sharedName));
+    storage.uploadRawFile(secondCopyId, RAW_FILE_NAME1, USER_ID, true, RAW_FILE_CONTENT3);
+    assertTrue(Arrays.equals(RAW_FILE_CONTENT1,
+        storage.downloadRawFile(USER_ID, copyId, RAW_FILE_NAME1)));
+
+    storage.deleteProject(USER_ID, projectId);
+    storage.deleteProject(USER_ID, secondCopyId);
+    assertTrue(Arrays.equals(RAW_FILE_CONTENT1,
+        storage.downloadRawFile(USER_ID, copyId, RAW_FILE_NAME1)));
+    storage.deleteProject(USER_ID, copyId);
+    assertFalse(storage.isSharedGcsFile(ObjectifyService.begin(), projectId, sharedName));
+  }
+
+  public void testRetriedJobsReleaseSharedGcsFilesOnce() throws BlocksTruncatedException {
+    final String USER_ID = "1360";
+    final String USER_EMAIL = "newuser1360@test.com";
+    storage.getUser(USER_ID, USER_EMAIL);
+    long projectId = storage.createProject(USER_ID, project, SETTINGS);
+    Project copy = new Project(PROJECT_NAME + "_copy");
+    copy.setProjectType(FAKE_PROJECT_TYPE);
+    copy.addTextFile(new TextFile(FILE_NAME1, FILE_CONTENT2));
+    Map<String, String> copiedFiles = new LinkedHashMap<String, String>();
+    copiedFiles.put(RAW_FILE_NAME1, RAW_FILE_NAME1);
+    copiedFiles.put(RAW_FILE_NAME2, RAW_FILE_NAME2);
+    long copyId = storage.copyProject(USER_ID, projectId, copy, SETTINGS, copiedFiles);
+
+    // Every transaction of this storage fails once after running its job
+    RetryingJobObjectifyStorageIo retrying = new RetryingJobObjectifyStorageIo();
+    Map<String, String> files = new LinkedHashMap<String, String>();
+    files.put(RAW_FILE_NAME1, "new content");
+    retrying.uploadFiles(copyId, files, USER_ID, true, StorageUtil.DEFAULT_CHARSET);
+    assertTrue(retrying.retries > 0);
+    assertTrue(Arrays.equals(RAW_FILE_CONTENT1,
+        storage.downloadRawFile(USER_ID, projectId, RAW_FILE_NAME1)));
+
+    retrying.deleteProject(USER_ID, copyId);
+    assertTrue(Arrays.equals(RAW_FILE_CONTENT2,
+        storage.downloadRawFile(USER_ID, projectId, RAW_FILE_NAME2)));
+  }
+
   public void testGetProject() {
     final String USER_ID = "1400";
     final String USER_EMAIL = "newuser1400@test.com";
@@ -613,6 +867,51 @@ public class ObjectifyStorageIoTest extends LocalDatastoreTestCase {
     }
   }
 
+  /*
+   * Makes the first attempt of every transaction fail after its job has run, as if another
+   * request had changed the same entities, so that the job is run again.
+   */
+  private static class RetryingJobObjectifyStorageIo extends ObjectifyStorageIo {
+    private int retries = 0;
+
+    @Override
+    void runJobWithRetries(final JobRetryHelper job, boolean useTransaction)
+        throws ObjectifyException {
+      if (!useTransaction) {
+        super.runJobWithRetries(job, false);
+        return;
+      }
+      super.runJobWithRetries(new JobRetryHelper() {
+        private boolean failed = false;
+
+        @Override
+        public void run(Objectify datastore) throws ObjectifyException, IOException {
+          job.run(datastore);
+          if (!failed) {
+            failed = true;
+            retries++;
+            throw new ConcurrentModificationException("job retried (on purpose)");
+          }
+        }
+
+        @Override
+        public void onNonFatalError() {
+          job.onNonFatalError();
+        }
+
+        @Override
+        public void onIOException(IOException error) {
+          job.onIOException(error);
+        }
+
+        @Override
+        public boolean isCrossGroup() {
+          return job.isCrossGroup();
+        }
+      }, true);
+    }
+  }
+
   private long createProject(String userId, String name, String type, String fileName) {
     return createProject(userId, name, type, fileName, storage);
   }
@@ -1122,6 +1122,9 @@ Blockly.ReplMgr.processRetvals = function(responses) {
         case "assetTransferred":
             top.AssetManager_markAssetTransferred(r.value);
             break;
+        case "assetsTransferred":
+            top.AssetManager_markAssetsTransferred(r.value);
+            break;
         case "extensionsLoaded":
             rs.state = Blockly.ReplMgr.rsState.CONNECTED;
             Blockly.mainWorkspace.fireChangeListener(new AI.Events.CompanionConnect());
@@ -1502,6 +1505,8 @@ Blockly.ReplMgr.getFromRendezvous = function() {
                 rs.webrtc = json.webrtc === "true";
                 rs.useproxy = json.useproxy === "true";
                 rs.hasfetchassets = rs.android || rs.webrtc;
+                // AssetFetcher:syncAssets is only in the Android Companion (2.74 and later)
+                rs.hassyncassets = rs.android;
 
                 // Let's see if the Rendezvous server gave us a second level to contact
                 // as well as a list of ice servers to override our defaults
@@ -1860,6 +1865,30 @@ Blockly.ReplMgr.getCookie = function() {
     return cookie;
 };
 
+// Bring all of the given assets up to date on the Companion with a single
+// request. The Companion asks the server which of its copies are out of date,
+// downloads only those and reports the assets back in batches (see
+// "assetsTransferred" above). Returns false if nothing was sent, for example
+// because the Companion is an iOS one without syncAssets, in which case the
+// assets have to be sent one at a time with putAsset.
+Blockly.ReplMgr.putAssets = function(projectid, filenames) {
+    if (top.ReplState === undefined)
+        return false;
+    if (top.ReplState.state != this.rsState.ASSET && top.ReplState.state != this.rsState.CONNECTED)
+        return false;           // We didn't really do anything
+    if (!top.ReplState.hasfetchassets || !top.ReplState.hassyncassets)
+        return false;
+    var uri = window.location.origin;
+    var cookie = this.getCookie();
+    var assetJson = Blockly.Yail.quotifyForREPL(JSON.stringify(filenames));
+    var yail = "(AssetFetcher:syncAssets \"" + cookie + "\" \"" + projectid +
+        "\" \"" + uri + "\" " + assetJson + ")";
+    this.putYail();         // This sets up the internal context variable
+                            // inside of the Closure for putYail and friends
+    this.putYail.putAsset(yail);
+    return true;
+};
+
 Blockly.ReplMgr.putAsset = function(projectid, filename, blob, success, fail, force) {
     if (top.ReplState === undefined)
         return false;
@@ -1688,7 +1688,12 @@ Blockly.Versioning.AllUpgradeMaps =
 
     // The BluetoothClient.NoLocationNeeded property was added.
     // No blocks need to be modified to upgrade to version 8.
-    8: "noUpgrade"
+    8: "noUpgrade",
+
+    // The BluetoothClient.ReceiveInBackground and MessageSize properties and the DataReceived
+    // event were added.
+    // No blocks need to be modified to upgrade to version 9.
+    9: "noUpgrade"
 
   }, // End BluetoothClient upgraders
 
@@ -1714,7 +1719,12 @@ Blockly.Versioning.AllUpgradeMaps =
 
     // The BluetoothServer.Secure property was added.
     // No blocks need to be modified to upgrade to version 5.
-    5: "noUpgrade"
+    5: "noUpgrade",
+
+    // The BluetoothServer.ReceiveInBackground and MessageSize properties and the DataReceived
+    // event were added.
+    // No blocks need to be modified to upgrade to version 6.
+    6: "noUpgrade"
 
   }, // End BluetoothServer upgraders
 
@@ -1845,7 +1855,11 @@ Blockly.Versioning.AllUpgradeMaps =
 
     // Assets helper block was added.
     15: Blockly.Versioning.makeSetterUseHelper(
-        'Canvas', 'BackgroundImage', Blockly.Versioning.tryReplaceBlockWithAssets)
+        'Canvas', 'BackgroundImage', Blockly.Versioning.tryReplaceBlockWithAssets),
+
+    // FrameSynchronizedAnimation was added
+    // No blocks need to be modified to upgrade to version 16.
+    16: "noUpgrade"
 
   }, // End Canvas upgraders
 
@@ -3463,7 +3477,10 @@ Blockly.Versioning.AllUpgradeMaps =
     8: "noUpgrade",
 
     // AI2: Added ResponseTextEncoding property
-    9: "noUpgrade"
+    9: "noUpgrade",
+
+    // AI2: Added UseCaches property
+    10: "noUpgrade"
 
   }, // End Web upgraders
 
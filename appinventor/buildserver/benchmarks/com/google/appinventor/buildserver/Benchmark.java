@@ -0,0 +1,70 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2024 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.buildserver;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * An operation measured by the {@link BenchmarkRunner}.
+ *
+ * <p>{@link #setUp()} is called once, then {@link #run()} is called for the warmup and measured
+ * iterations, and finally {@link #tearDown()} is called.</p>
+ */
+abstract class Benchmark {
+  private final String name;
+  private final String project;
+
+  /**
+   * Creates a Benchmark.
+   *
+   * @param name the name of the benchmark
+   * @param project the name of the corpus project the benchmark uses
+   */
+  Benchmark(String name, String project) {
+    this.name = name;
+    this.project = project;
+  }
+
+  String getName() {
+    return name;
+  }
+
+  String getProject() {
+    return project;
+  }
+
+  void setUp() throws Exception {
+  }
+
+  /**
+   * Runs a single operation of the benchmark.
+   */
+  abstract void run() throws Exception;
+
+  void tearDown() throws Exception {
+  }
+
+  /**
+   * Returns whether the operation runs entirely on the calling thread. The allocations of such
+   * operations are measured exactly. Operations that use other threads are measured only if the
+   * JVM can report the allocations of all threads.
+   */
+  boolean isSingleThreaded() {
+    return true;
+  }
+
+  /**
+   * Returns the average time spent in each stage of the last operations, for benchmarks whose
+   * operations have stages.
+   *
+   * @param operations the number of operations to average over
+   * @return the average time of each stage in milliseconds, in the order the stages finished
+   */
+  Map<String, Double> getStageMillis(int operations) {
+    return Collections.emptyMap();
+  }
+}
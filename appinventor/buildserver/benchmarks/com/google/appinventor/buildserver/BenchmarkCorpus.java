@@ -0,0 +1,291 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2024 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.buildserver;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.logging.Logger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * The sample projects used by the build server benchmarks.
+ *
+ * <p>The projects are generated from sources already in the repository, so the benchmarks run
+ * offline and the corpus doesn't need to be checked in as binary files. Every project is based
+ * on the PaintPot test project of the blocks editor, whose YAIL is known, and they are always
+ * generated the same way so results can be compared between runs:</p>
+ *
+ * <ul>
+ *   <li>{@link #TINY}: PaintPot itself.</li>
+ *   <li>{@link #MANY_SCREENS}: PaintPot with {@value #SCREEN_COUNT} screens.</li>
+ *   <li>{@link #EXTENSION_HEAVY}: PaintPot using {@value #EXTENSION_COUNT} extensions, which are
+ *       compiled against the component runtime when the corpus is generated.</li>
+ *   <li>{@link #ASSET_HEAVY}: PaintPot with the HelloPurr media and {@value #ASSET_COUNT}
+ *       incompressible assets of {@value #ASSET_SIZE} bytes each.</li>
+ * </ul>
+ */
+final class BenchmarkCorpus {
+  static final String TINY = "tiny";
+  static final String MANY_SCREENS = "many-screens";
+  static final String EXTENSION_HEAVY = "extension-heavy";
+  static final String ASSET_HEAVY = "asset-heavy";
+  static final List<String> PROJECTS =
+      ImmutableList.of(TINY, MANY_SCREENS, EXTENSION_HEAVY, ASSET_HEAVY);
+
+  static final int SCREEN_COUNT = 20;
+  static final int EXTENSION_COUNT = 10;
+  static final int ASSET_COUNT = 200;
+  static final int ASSET_SIZE = 64 * 1024;
+
+  private static final Logger LOG = Logger.getLogger(BenchmarkCorpus.class.getName());
+
+  private static final String PAINT_POT_DIR =
+      "blocklyeditor/tests/com/google/appinventor/blocklyeditor/data/paintPot/";
+  private static final String HELLO_PURR_ZIP = "appengine/war/templates/HelloPurr/HelloPurr.zip";
+  private static final String EXTENSION_PACKAGE = "com.google.appinventor.benchmark.ext";
+  private static final String EXTENSION_CLASS = "BenchmarkExtension";
+
+  private final File corpusDir;
+  private final File appInventorDir;
+
+  /**
+   * Creates a BenchmarkCorpus.
+   *
+   * @param corpusDir the directory in which the generated projects are kept
+   * @param appInventorDir the appinventor directory of the repository
+   */
+  BenchmarkCorpus(File corpusDir, File appInventorDir) {
+    this.corpusDir = corpusDir;
+    this.appInventorDir = appInventorDir;
+  }
+
+  /**
+   * Returns the project file of the given corpus project, generating it if needed.
+   *
+   * @param name the name of the project, one of {@link #PROJECTS}
+   * @return the .aia file of the project
+   */
+  File get(String name) throws IOException {
+    File aia = new File(corpusDir, name + ".aia");
+    if (aia.isFile()) {
+      return aia;
+    }
+    if (!corpusDir.isDirectory() && !corpusDir.mkdirs()) {
+      throw new IOException("Unable to create corpus directory " + corpusDir);
+    }
+    LOG.info("Generating corpus project " + aia);
+    Map<String, byte[]> entries = generate(name);
+    File tmp = new File(corpusDir, name + ".aia.tmp");
+    ZipOutputStream out = new ZipOutputStream(new FileOutputStream(tmp));
+    try {
+      for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+        out.putNextEntry(new ZipEntry(entry.getKey()));
+        out.write(entry.getValue());
+        out.closeEntry();
+      }
+    } finally {
+      out.close();
+    }
+    if (!tmp.renameTo(aia)) {
+      throw new IOException("Unable to create " + aia);
+    }
+    return aia;
+  }
+
+  private Map<String, byte[]> generate(String name) throws IOException {
+    String projectName;
+    int screens = 1;
+    int extensions = 0;
+    boolean assets = false;
+    switch (name) {
+      case TINY:
+        projectName = "Tiny";
+        break;
+      case MANY_SCREENS:
+        projectName = "ManyScreens";
+        screens = SCREEN_COUNT;
+        break;
+      case EXTENSION_HEAVY:
+        projectName = "ExtensionHeavy";
+        extensions = EXTENSION_COUNT;
+        break;
+      case ASSET_HEAVY:
+        projectName = "AssetHeavy";
+        assets = true;
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown corpus project " + name);
+    }
+
+    String srcDir = "src/appinventor/ai_benchmark/" + projectName + "/";
+    Map<String, byte[]> entries = new LinkedHashMap<>();
+    entries.put("youngandroidproject/project.properties", utf8("main=appinventor.ai_benchmark."
+        + projectName + ".Screen1\nname=" + projectName + "\nassets=../assets\nsource=../src\n"
+        + "build=../build\nversioncode=1\nversionname=1.0\nuseslocation=False\naname="
+        + projectName + "\nsizing=Responsive\nshowlistsasjson=True\n"));
+
+    String scm = read(PAINT_POT_DIR + "Screen1.scm");
+    String bky = read(PAINT_POT_DIR + "Screen1.bky");
+    String yail = read(PAINT_POT_DIR + "PaintPotExpected.yail")
+        .replace("fakepackagename", "appinventor.ai_benchmark." + projectName + ".Screen1");
+    if (extensions > 0) {
+      StringBuilder components = new StringBuilder();
+      StringBuilder adds = new StringBuilder();
+      for (int i = 1; i <= extensions; i++) {
+        String type = EXTENSION_PACKAGE + i + "." + EXTENSION_CLASS + i;
+        components.append(",{\"$Name\":\"").append(EXTENSION_CLASS).append(i).append("1\",")
+            .append("\"$Type\":\"").append(EXTENSION_CLASS).append(i).append("\",")
+            .append("\"$Version\":\"1\",\"Uuid\":\"").append(1000 + i).append("\"}");
+        adds.append("(add-component Screen1 ").append(type).append(' ')
+            .append(EXTENSION_CLASS).append(i).append("1 \n)\n");
+        entries.putAll(generateExtension(i));
+      }
+      // The screen's components end with the Wipe button, the last component of PaintPot.
+      int end = scm.lastIndexOf("}]}}");
+      scm = scm.substring(0, end + 1) + components + scm.substring(end + 1);
+      yail = yail.replace("(init-runtime)", adds + "(init-runtime)");
+    }
+    for (int i = 1; i <= screens; i++) {
+      String screen = "Screen" + i;
+      entries.put(srcDir + screen + ".scm", utf8(scm.replace("Screen1", screen)));
+      entries.put(srcDir + screen + ".bky", utf8(bky.replace("Screen1", screen)));
+      entries.put(srcDir + screen + ".yail", utf8(yail.replace("Screen1", screen)));
+    }
+
+    if (assets) {
+      ZipFile helloPurr = new ZipFile(new File(appInventorDir, HELLO_PURR_ZIP));
+      try {
+        Enumeration<? extends ZipEntry> it = helloPurr.entries();
+        while (it.hasMoreElements()) {
+          ZipEntry entry = it.nextElement();
+          if (entry.getName().startsWith("assets/")) {
+            InputStream in = helloPurr.getInputStream(entry);
+            try {
+              entries.put(entry.getName(), ByteStreams.toByteArray(in));
+            } finally {
+              in.close();
+            }
+          }
+        }
+      } finally {
+        helloPurr.close();
+      }
+      // A fixed seed, so every run builds the same project.
+      Random random = new Random(ASSET_COUNT);
+      for (int i = 1; i <= ASSET_COUNT; i++) {
+        byte[] content = new byte[ASSET_SIZE];
+        random.nextBytes(content);
+        entries.put("assets/asset" + i + ".dat", content);
+      }
+    }
+    return entries;
+  }
+
+  /*
+   * Generates the files of a non-visible extension with a single method, in the layout the
+   * extension importer leaves in the project's assets.
+   */
+  private Map<String, byte[]> generateExtension(int index) throws IOException {
+    String pkg = EXTENSION_PACKAGE + index;
+    String cls = EXTENSION_CLASS + index;
+    String type = pkg + "." + cls;
+    String source = "package " + pkg + ";\n"
+        + "import com.google.appinventor.components.runtime.AndroidNonvisibleComponent;\n"
+        + "import com.google.appinventor.components.runtime.ComponentContainer;\n"
+        + "public class " + cls + " extends AndroidNonvisibleComponent {\n"
+        + "  public " + cls + "(ComponentContainer container) {\n"
+        + "    super(container.$form());\n"
+        + "  }\n"
+        + "  public int Value() {\n"
+        + "    return " + index + ";\n"
+        + "  }\n"
+        + "}\n";
+    byte[] jar = compile(pkg, cls, source);
+
+    String dir = "assets/external_comps/" + type + "/";
+    Map<String, byte[]> entries = new LinkedHashMap<>();
+    entries.put(dir + "component.json", utf8("{\"name\":\"" + cls + "\",\"type\":\"" + type
+        + "\",\"external\":\"true\",\"version\":\"1\",\"categoryString\":\"EXTENSION\","
+        + "\"helpString\":\"\",\"showOnPalette\":\"true\",\"nonVisible\":\"true\","
+        + "\"iconName\":\"\",\"properties\":[],\"blockProperties\":[],\"events\":[],"
+        + "\"methods\":[{\"name\":\"Value\",\"description\":\"\",\"deprecated\":\"false\","
+        + "\"params\":[],\"returnType\":\"number\"}]}"));
+    entries.put(dir + "extension.properties", utf8("type=external\n"));
+    entries.put(dir + "classes.jar", jar);
+    entries.put(dir + "files/AndroidRuntime.jar", jar);
+    entries.put(dir + "files/component_build_info.json", utf8("{\"type\":\"" + type
+        + "\",\"assets\":[],\"native\":[],\"permissions\":[],\"activities\":[],"
+        + "\"broadcastReceivers\":[],\"libraries\":[]}"));
+    return entries;
+  }
+
+  /*
+   * Compiles a single class against the classpath of the benchmarks, which includes the
+   * component runtime, and returns it as a jar.
+   */
+  private static byte[] compile(String pkg, String cls, String source) throws IOException {
+    JavaCompiler javac = ToolProvider.getSystemJavaCompiler();
+    if (javac == null) {
+      throw new IllegalStateException("Generating the extensions requires a JDK");
+    }
+    File tmpDir = Files.createTempDir();
+    try {
+      File sourceFile = new File(tmpDir, cls + ".java");
+      Files.write(source, sourceFile, Charsets.UTF_8);
+      File classesDir = new File(tmpDir, "classes");
+      classesDir.mkdirs();
+      int result = javac.run(null, null, null, "-nowarn", "-source", "1.8", "-target", "1.8",
+          "-classpath", System.getProperty("java.class.path"),
+          "-d", classesDir.getPath(), sourceFile.getPath());
+      if (result != 0) {
+        throw new IOException("Unable to compile extension " + pkg + "." + cls);
+      }
+      String classPath = pkg.replace('.', '/') + "/" + cls + ".class";
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      JarOutputStream jar = new JarOutputStream(bytes);
+      try {
+        jar.putNextEntry(new JarEntry(classPath));
+        jar.write(Files.toByteArray(new File(classesDir, classPath)));
+        jar.closeEntry();
+      } finally {
+        jar.close();
+      }
+      return bytes.toByteArray();
+    } finally {
+      FileUtils.deleteQuietly(tmpDir);
+    }
+  }
+
+  private String read(String path) throws IOException {
+    return Files.toString(new File(appInventorDir, path), Charsets.UTF_8);
+  }
+
+  private static byte[] utf8(String s) {
+    return s.getBytes(Charsets.UTF_8);
+  }
+}
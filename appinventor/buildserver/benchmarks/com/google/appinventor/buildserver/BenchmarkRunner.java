@@ -0,0 +1,186 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2024 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.buildserver;
+
+import com.google.appinventor.buildserver.interfaces.Task;
+import com.google.appinventor.buildserver.tasks.android.AndroidBuildFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.kohsuke.args4j.CmdLineException;
+import org.kohsuke.args4j.CmdLineParser;
+import org.kohsuke.args4j.Option;
+
+/**
+ * Runs the build server benchmarks and prints the throughput and allocation rate of each.
+ *
+ * <p>Each task of the build pipeline is measured in isolation with a {@link TaskBenchmark}, and
+ * complete builds are measured with a {@link ProjectBuilderBenchmark}, for every project of the
+ * {@link BenchmarkCorpus}. Use the {@code BuildServerBenchmarks} ant target to run them.</p>
+ */
+public final class BenchmarkRunner {
+
+  static class CommandLineOptions {
+    @Option(name = "--appInventorDir", required = true,
+        usage = "the appinventor directory of the repository")
+    File appInventorDir;
+
+    @Option(name = "--corpusDir", required = true,
+        usage = "the directory in which to generate the corpus projects")
+    File corpusDir;
+
+    @Option(name = "--filter",
+        usage = "Only run the benchmarks whose project/name contains this text, "
+            + "e.g. tiny/RunD8 or many-screens/")
+    String filter = "";
+
+    @Option(name = "--warmupIterations",
+        usage = "The number of operations run before measuring.")
+    int warmupIterations = 3;
+
+    @Option(name = "--iterations",
+        usage = "The number of operations measured.")
+    int iterations = 10;
+
+    @Option(name = "--childProcessRamMb",
+        usage = "Maximum ram that can be used by a child processes, in MB.")
+    int childProcessRamMb = 2048;
+
+    @Option(name = "--ext",
+        usage = "Specifies the build type to use.")
+    String ext = "apk";
+  }
+
+  private static final Logger LOG = Logger.getLogger(BenchmarkRunner.class.getName());
+
+  private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+  private BenchmarkRunner() {
+  }
+
+  /**
+   * Main entry point.
+   *
+   * @param args command line arguments
+   */
+  public static void main(String[] args) throws IOException {
+    CommandLineOptions options = new CommandLineOptions();
+    CmdLineParser cmdLineParser = new CmdLineParser(options);
+    try {
+      cmdLineParser.parseArgument(args);
+    } catch (CmdLineException e) {
+      System.err.println(e.getMessage());
+      cmdLineParser.printUsage(System.err);
+      System.exit(1);
+    }
+
+    AndroidBuildFactory.install();
+
+    BenchmarkCorpus corpus = new BenchmarkCorpus(options.corpusDir, options.appInventorDir);
+    List<Benchmark> benchmarks = new ArrayList<>();
+    for (String project : BenchmarkCorpus.PROJECTS) {
+      File aia = corpus.get(project);
+      for (Class<? extends Task<?>> task : TaskBenchmark.getPipeline(aia, options.ext)) {
+        benchmarks.add(new TaskBenchmark(project, aia, options.ext, task));
+      }
+      benchmarks.add(
+          new ProjectBuilderBenchmark(project, aia, options.ext, options.childProcessRamMb));
+    }
+
+    List<String> results = new ArrayList<>();
+    boolean failed = false;
+    for (Benchmark benchmark : benchmarks) {
+      String id = benchmark.getProject() + "/" + benchmark.getName();
+      if (!id.contains(options.filter)) {
+        continue;
+      }
+      LOG.info("Running " + id);
+      try {
+        results.addAll(measure(benchmark, options.warmupIterations, options.iterations));
+      } catch (Exception e) {
+        LOG.log(Level.SEVERE, "Benchmark " + id + " failed", e);
+        results.add(String.format("%-24s %-16s FAILED: %s", benchmark.getName(),
+            benchmark.getProject(), e));
+        failed = true;
+      }
+    }
+
+    System.out.println();
+    System.out.println(String.format("%-24s %-16s %6s %12s %12s %12s", "Benchmark", "Project",
+        "Ops", "ms/op", "ops/s", "MB/op"));
+    for (String result : results) {
+      System.out.println(result);
+    }
+    // Builds leave idle executor threads behind, so exit explicitly.
+    System.exit(failed ? 1 : 0);
+  }
+
+  /*
+   * Runs the benchmark and returns its result lines: one for the benchmark and one for each of
+   * its stages.
+   */
+  private static List<String> measure(Benchmark benchmark, int warmupIterations, int iterations)
+      throws Exception {
+    List<String> lines = new ArrayList<>();
+    benchmark.setUp();
+    try {
+      for (int i = 0; i < warmupIterations; i++) {
+        benchmark.run();
+      }
+      long startBytes = getAllocatedBytes(benchmark.isSingleThreaded());
+      long start = System.nanoTime();
+      for (int i = 0; i < iterations; i++) {
+        benchmark.run();
+      }
+      long nanos = System.nanoTime() - start;
+      long endBytes = getAllocatedBytes(benchmark.isSingleThreaded());
+
+      double millisPerOp = nanos / 1e6 / iterations;
+      String allocation = startBytes < 0 || endBytes < 0 ? "n/a"
+          : String.format("%.3f", (endBytes - startBytes) / 1048576.0 / iterations);
+      lines.add(String.format("%-24s %-16s %6d %12.3f %12.3f %12s", benchmark.getName(),
+          benchmark.getProject(), iterations, millisPerOp, 1000 / millisPerOp, allocation));
+      for (Map.Entry<String, Double> stage : benchmark.getStageMillis(iterations).entrySet()) {
+        lines.add(String.format("  %-22s %-16s %6s %12.3f", stage.getKey(), "", "",
+            stage.getValue()));
+      }
+    } finally {
+      benchmark.tearDown();
+    }
+    return lines;
+  }
+
+  /*
+   * Returns the number of bytes allocated so far by the current thread, or by all threads, or -1
+   * if the JVM can't tell.
+   */
+  private static long getAllocatedBytes(boolean currentThread) {
+    if (!(THREADS instanceof com.sun.management.ThreadMXBean)) {
+      return -1;
+    }
+    com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) THREADS;
+    if (currentThread) {
+      return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+    // Available from Java 21, and counts the threads that have already finished.
+    try {
+      Method total = com.sun.management.ThreadMXBean.class
+          .getMethod("getTotalThreadAllocatedBytes");
+      return (Long) total.invoke(threads);
+    } catch (ReflectiveOperationException e) {
+      return -1;
+    }
+  }
+}
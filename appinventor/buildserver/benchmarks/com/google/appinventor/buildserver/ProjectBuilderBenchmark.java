@@ -0,0 +1,97 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2024 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.buildserver;
+
+import com.google.appinventor.buildserver.stats.SimpleStatReporter;
+import com.google.appinventor.buildserver.stats.SimpleStatReporter.BuildStats;
+import com.google.common.io.Files;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.ZipFile;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Measures complete builds of a corpus project with {@link ProjectBuilder}, the way the build
+ * server runs them.
+ *
+ * <p>The dex cache is shared by the operations of the benchmark, so the warmup iterations fill it
+ * and the measured builds see the steady state of a running build server.</p>
+ */
+final class ProjectBuilderBenchmark extends Benchmark {
+  private final File aia;
+  private final String ext;
+  private final int childProcessRamMb;
+  private final SimpleStatReporter stats = new SimpleStatReporter();
+  private File outputDir;
+  private File dexCacheDir;
+  private ZipFile zip;
+
+  /**
+   * Creates a ProjectBuilderBenchmark.
+   *
+   * @param project the name of the corpus project
+   * @param aia the project file
+   * @param ext the build type, such as "apk"
+   * @param childProcessRamMb the maximum memory of the build's child processes
+   */
+  ProjectBuilderBenchmark(String project, File aia, String ext, int childProcessRamMb) {
+    super("ProjectBuilder.build", project);
+    this.aia = aia;
+    this.ext = ext;
+    this.childProcessRamMb = childProcessRamMb;
+  }
+
+  @Override
+  void setUp() throws Exception {
+    outputDir = Files.createTempDir();
+    dexCacheDir = Files.createTempDir();
+    zip = new ZipFile(aia);
+  }
+
+  @Override
+  void run() throws Exception {
+    Result result = new ProjectBuilder(stats).build("benchmark", zip, outputDir, null, false,
+        false, false, null, childProcessRamMb, dexCacheDir.getPath(), null, ext);
+    if (result.getResult() != Result.SUCCESS) {
+      throw new IllegalStateException("Build failed: " + result.getError());
+    }
+  }
+
+  @Override
+  void tearDown() throws Exception {
+    if (zip != null) {
+      zip.close();
+    }
+    FileUtils.deleteQuietly(outputDir);
+    FileUtils.deleteQuietly(dexCacheDir);
+  }
+
+  @Override
+  boolean isSingleThreaded() {
+    return false;
+  }
+
+  @Override
+  Map<String, Double> getStageMillis(int operations) {
+    Map<String, Double> totals = new LinkedHashMap<>();
+    // The most recent builds come first.
+    Iterator<BuildStats> it = stats.getOrderedStats().iterator();
+    for (int i = 0; i < operations && it.hasNext(); i++) {
+      for (Map.Entry<String, Long> stage : it.next().getStages().entrySet()) {
+        Double total = totals.get(stage.getKey());
+        totals.put(stage.getKey(), (total == null ? 0 : total) + stage.getValue());
+      }
+    }
+    for (Map.Entry<String, Double> entry : totals.entrySet()) {
+      entry.setValue(entry.getValue() / operations);
+    }
+    return totals;
+  }
+}
@@ -0,0 +1,158 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2024 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.buildserver;
+
+import com.google.appinventor.buildserver.context.CompilerContext;
+import com.google.appinventor.buildserver.context.Paths;
+import com.google.appinventor.buildserver.interfaces.Task;
+import com.google.appinventor.buildserver.stats.NullStatReporter;
+import com.google.appinventor.buildserver.tasks.common.BuildFactory;
+import com.google.appinventor.buildserver.util.ProjectUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.ZipFile;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Measures a single task of the build pipeline in isolation.
+ *
+ * <p>The setup extracts a corpus project and runs the tasks that come before the measured task,
+ * once, so each operation runs only the measured task against a fully prepared context. Tasks
+ * overwrite their outputs, so they can run repeatedly. Tasks that run child processes do part of
+ * their work, and their allocations, outside the benchmark's JVM.</p>
+ */
+final class TaskBenchmark extends Benchmark {
+  private final File aia;
+  private final String ext;
+  private final Class<? extends Task<?>> task;
+  private Fixture fixture;
+
+  /**
+   * Creates a TaskBenchmark.
+   *
+   * @param project the name of the corpus project
+   * @param aia the project file
+   * @param ext the build type, such as "apk"
+   * @param task the task to measure
+   */
+  TaskBenchmark(String project, File aia, String ext, Class<? extends Task<?>> task) {
+    super(task.getSimpleName(), project);
+    this.aia = aia;
+    this.ext = ext;
+    this.task = task;
+  }
+
+  /**
+   * Returns the tasks of the build pipeline for the given project, in the order they run when
+   * the build is not parallelized.
+   */
+  static List<Class<? extends Task<?>>> getPipeline(File aia, String ext) throws IOException {
+    Fixture fixture = new Fixture(aia, ext);
+    try {
+      return fixture.tasks;
+    } finally {
+      fixture.close();
+    }
+  }
+
+  @Override
+  void setUp() throws Exception {
+    fixture = new Fixture(aia, ext);
+    int index = fixture.tasks.indexOf(task);
+    if (index < 0) {
+      throw new IllegalStateException(task.getSimpleName() + " is not part of the build");
+    }
+    for (Class<? extends Task<?>> prerequisite : fixture.tasks.subList(0, index)) {
+      execute(prerequisite, fixture.context);
+    }
+  }
+
+  @Override
+  void run() throws Exception {
+    execute(task, fixture.context);
+  }
+
+  @Override
+  void tearDown() throws Exception {
+    if (fixture != null) {
+      fixture.close();
+      fixture = null;
+    }
+  }
+
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  private static void execute(Class<? extends Task<?>> task, CompilerContext<?> context)
+      throws ReflectiveOperationException {
+    Task instance = task.getDeclaredConstructor().newInstance();
+    TaskResult result = instance.execute(context);
+    if (result == null || !result.isSuccess()) {
+      throw new IllegalStateException(task.getSimpleName() + " failed",
+          result == null ? null : result.getError());
+    }
+  }
+
+  /**
+   * An extracted corpus project and the context for building it, prepared the way
+   * {@link ProjectBuilder} prepares a build.
+   */
+  private static class Fixture {
+    private final File projectRoot;
+    private final CompilerContext<Paths> context;
+    private final List<Class<? extends Task<?>>> tasks = new ArrayList<>();
+
+    Fixture(File aia, String ext) throws IOException {
+      projectRoot = ProjectUtils.createNewTempDir();
+      try {
+        List<String> sourceFiles;
+        ZipFile zip = new ZipFile(aia);
+        try {
+          sourceFiles = ProjectUtils.extractProjectFiles(zip, projectRoot);
+        } finally {
+          zip.close();
+        }
+        Project project = ProjectUtils.getProjectProperties(projectRoot);
+        Set<String> componentTypes =
+            ProjectBuilder.getComponentTypes(sourceFiles, project.getAssetsDirectory());
+        String keystore = ProjectBuilder.createKeyStore("benchmark", projectRoot,
+            YoungAndroidConstants.PROJECT_KEYSTORE_LOCATION);
+        BuildFactory<?, CompilerContext<Paths>> factory = BuildFactory.get(ext);
+        context = new CompilerContext.Builder<Paths, CompilerContext<Paths>>(project, ext)
+            .withClass(factory.getContextClass())
+            .withTypes(componentTypes)
+            .withBlocks(Collections.<String, Set<String>>emptyMap())
+            .withBlockPermissions(Collections.<String>emptySet())
+            .withFormOrientations(Collections.<String, String>emptyMap())
+            .withReporter(new Reporter(null))
+            .withStatReporter(new NullStatReporter())
+            .withCompanion(false)
+            .withEmulator(false)
+            .withDangerousPermissions(false)
+            .withKeystore(keystore)
+            .withRam(2048)
+            .withCache(null)
+            .withOutput(project.getProjectName() + "." + factory.getExtension())
+            .build();
+        tasks.addAll(factory.makeCompiler(context).getTasks());
+      } catch (IOException | RuntimeException e) {
+        close();
+        throw e;
+      } catch (Exception e) {
+        close();
+        throw new IOException(e);
+      }
+    }
+
+    void close() {
+      FileUtils.deleteQuietly(projectRoot);
+    }
+  }
+}
@@ -0,0 +1,53 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2024 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.buildserver;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Declares the build artifacts a task reads and writes, which the {@link Compiler} uses to run
+ * independent tasks in parallel.
+ *
+ * <p>A task waits for every task added before it that writes one of its inputs, writes one of
+ * its outputs, or reads one of its outputs. Tasks without this annotation wait for all earlier
+ * tasks, and all later tasks wait for them.</p>
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface Artifacts {
+  /**
+   * The artifacts the annotated task reads.
+   */
+  String[] inputs() default {};
+
+  /**
+   * The artifacts the annotated task creates or modifies.
+   */
+  String[] outputs() default {};
+
+  // Build info and runtime files of the components in the project
+  String BUILD_INFO = "buildInfo";
+  // Permissions, libraries, assets, etc. needed by the components in the project
+  String COMPONENT_INFO = "componentInfo";
+  String APP_ICON = "appIcon";
+  String THEME = "theme";
+  String MANIFEST = "manifest";
+  String NATIVE_LIBS = "nativeLibs";
+  String AAR_LIBS = "aarLibs";
+  String ASSETS = "assets";
+  String MERGED_RESOURCES = "mergedResources";
+  // Shared libraries needed to run the build tools on the host
+  String HOST_LIBS = "hostLibs";
+  // The compiled resources and the R.txt symbols produced by aapt
+  String RESOURCE_PACKAGE = "resourcePackage";
+  String CLASSES = "classes";
+  String R_CLASSES = "rClasses";
+  String DEX = "dex";
+  String APP_PACKAGE = "appPackage";
+}
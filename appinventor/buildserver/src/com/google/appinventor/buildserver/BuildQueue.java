@@ -0,0 +1,319 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2024 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.buildserver;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.logging.Logger;
+
+/**
+ * Admits builds to the build server, allowing only a certain number of simultaneous builds.
+ *
+ * <p>Builds that arrive while the server is at capacity wait in a bounded queue instead of being
+ * rejected. Companion builds wait in their own lane, which is always served before the lane for
+ * regular app builds. Within a lane, users take turns, so a user who submits several builds
+ * cannot hold up everyone else. Builds are rejected only when the queue is full or the user
+ * already has the maximum number of builds waiting.</p>
+ *
+ * <p>With a queue depth of 0, builds are rejected as soon as the server is at capacity.</p>
+ */
+final class BuildQueue {
+  /**
+   * The priority lanes, in the order they are served.
+   */
+  enum Lane {
+    COMPANION,
+    APP;
+
+    /**
+     * Returns the lane requested with the {@code lane} parameter of a build request. Requests
+     * without a known lane are built in the {@link #APP} lane.
+     *
+     * @param name the name of the lane, in any case, or null
+     * @return the lane
+     */
+    static Lane forName(String name) {
+      for (Lane lane : values()) {
+        if (lane.name().equalsIgnoreCase(name)) {
+          return lane;
+        }
+      }
+      return APP;
+    }
+  }
+
+  /**
+   * Receives the position and estimated wait of a build that had to be queued.
+   */
+  interface Listener {
+    /**
+     * Called once when the build is queued.
+     *
+     * @param position the position of the build in the queue, starting at 1
+     * @param estimatedWaitMillis the estimated time until the build starts
+     */
+    void queued(int position, long estimatedWaitMillis);
+  }
+
+  // Used to estimate waits until a build has completed.
+  static final long DEFAULT_BUILD_MILLIS = 60000;
+
+  // The number of recent waits kept to compute percentiles
+  private static final int MAX_WAITS = 1000;
+
+  private static final Logger LOG = Logger.getLogger(BuildQueue.class.getName());
+
+  private static class Entry {
+    private final String user;
+    private final Runnable build;
+    private final long enqueued = System.currentTimeMillis();
+
+    Entry(String user, Runnable build) {
+      this.user = user;
+      this.build = build;
+    }
+  }
+
+  // The maximum number of active builds. O means unlimited.
+  private final int maxActiveTasks;
+  private final int maxQueuedTasks;
+  private final int maxQueuedTasksPerUser;
+
+  // The builds waiting in each lane, grouped by user. Users are kept in the order they will be
+  // served.
+  private final Map<Lane, LinkedHashMap<String, Deque<Entry>>> lanes = new EnumMap<>(Lane.class);
+  private final Map<Lane, Integer> queuedTaskCounts = new EnumMap<>(Lane.class);
+  private int activeTaskCount = 0;
+  private int completedTaskCount = 0;
+  private int queuedTaskCount = 0;
+  private int maximumQueuedTaskCount = 0;
+  private int rejectedQueueFullCount = 0;
+  private int rejectedUserLimitCount = 0;
+  private long averageBuildMillis = DEFAULT_BUILD_MILLIS;
+
+  // Ring buffer of the time recent builds spent waiting in the queue
+  private final long[] waits = new long[MAX_WAITS];
+  private int waitCount = 0;
+
+  /**
+   * Creates a BuildQueue.
+   *
+   * @param maxActiveTasks the maximum number of active builds, or 0 for unlimited
+   * @param maxQueuedTasks the maximum number of builds waiting to start
+   * @param maxQueuedTasksPerUser the maximum number of builds a single user may have waiting
+   */
+  BuildQueue(int maxActiveTasks, int maxQueuedTasks, int maxQueuedTasksPerUser) {
+    this.maxActiveTasks = maxActiveTasks;
+    this.maxQueuedTasks = maxQueuedTasks;
+    this.maxQueuedTasksPerUser = maxQueuedTasksPerUser;
+    for (Lane lane : Lane.values()) {
+      lanes.put(lane, new LinkedHashMap<String, Deque<Entry>>());
+      queuedTaskCounts.put(lane, 0);
+    }
+  }
+
+  /**
+   * Runs the build now if the server has capacity, or queues it otherwise.
+   *
+   * @param user the user requesting the build
+   * @param lane the lane of the build
+   * @param build the build to run
+   * @param listener notified if the build is queued, or null
+   * @throws RejectedExecutionException if the build can neither run nor be queued
+   */
+  void execute(String user, Lane lane, Runnable build, Listener listener) {
+    Entry entry = new Entry(user, build);
+    int position;
+    long estimatedWait;
+    synchronized (this) {
+      if (maxActiveTasks == 0 || activeTaskCount < maxActiveTasks) {
+        start(entry);
+        return;
+      }
+      if (queuedTaskCount >= maxQueuedTasks) {
+        rejectedQueueFullCount++;
+        throw new RejectedExecutionException("The build queue is full");
+      }
+      if (getQueuedTaskCount(user) >= maxQueuedTasksPerUser) {
+        rejectedUserLimitCount++;
+        throw new RejectedExecutionException("Too many builds queued for " + user);
+      }
+      Deque<Entry> entries = lanes.get(lane).get(user);
+      if (entries == null) {
+        entries = new ArrayDeque<>();
+        lanes.get(lane).put(user, entries);
+      }
+      entries.add(entry);
+      queuedTaskCount++;
+      queuedTaskCounts.put(lane, queuedTaskCounts.get(lane) + 1);
+      maximumQueuedTaskCount = Math.max(maximumQueuedTaskCount, queuedTaskCount);
+      position = getPosition(lane, user, entries.size());
+      estimatedWait = (position * averageBuildMillis) / maxActiveTasks;
+    }
+    LOG.info("Queued build for " + user + " at position " + position + ", estimated wait "
+        + estimatedWait + " ms");
+    if (listener != null) {
+      listener.queued(position, estimatedWait);
+    }
+  }
+
+  public int getMaxActiveTasks() {
+    return maxActiveTasks;
+  }
+
+  public int getMaxQueuedTasks() {
+    return maxQueuedTasks;
+  }
+
+  public int getMaxQueuedTasksPerUser() {
+    return maxQueuedTasksPerUser;
+  }
+
+  public synchronized int getActiveTaskCount() {
+    return activeTaskCount;
+  }
+
+  public synchronized int getCompletedTaskCount() {
+    return completedTaskCount;
+  }
+
+  public synchronized int getQueuedTaskCount() {
+    return queuedTaskCount;
+  }
+
+  public synchronized int getQueuedTaskCount(Lane lane) {
+    return queuedTaskCounts.get(lane);
+  }
+
+  public synchronized int getMaximumQueuedTaskCount() {
+    return maximumQueuedTaskCount;
+  }
+
+  public synchronized int getRejectedQueueFullCount() {
+    return rejectedQueueFullCount;
+  }
+
+  public synchronized int getRejectedUserLimitCount() {
+    return rejectedUserLimitCount;
+  }
+
+  public synchronized long getAverageBuildMillis() {
+    return averageBuildMillis;
+  }
+
+  /**
+   * Returns the given percentile of the time recent builds spent waiting to start.
+   *
+   * @param percentile the percentile, between 0 and 100
+   * @return the wait in milliseconds, or 0 if no builds have started
+   */
+  public long getWaitPercentile(double percentile) {
+    long[] sorted;
+    synchronized (this) {
+      sorted = Arrays.copyOf(waits, Math.min(waitCount, MAX_WAITS));
+    }
+    if (sorted.length == 0) {
+      return 0;
+    }
+    Arrays.sort(sorted);
+    int index = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+    return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+  }
+
+  // Must be called while holding the lock on this.
+  private int getQueuedTaskCount(String user) {
+    int count = 0;
+    for (LinkedHashMap<String, Deque<Entry>> users : lanes.values()) {
+      Deque<Entry> entries = users.get(user);
+      if (entries != null) {
+        count += entries.size();
+      }
+    }
+    return count;
+  }
+
+  // Must be called while holding the lock on this. Users take turns, so each other user in the
+  // lane gets at most as many builds ahead of the new one as the user has waiting.
+  private int getPosition(Lane lane, String user, int turns) {
+    int position = 0;
+    for (Lane other : Lane.values()) {
+      if (other == lane) {
+        break;
+      }
+      position += queuedTaskCounts.get(other);
+    }
+    for (Map.Entry<String, Deque<Entry>> entry : lanes.get(lane).entrySet()) {
+      if (Objects.equals(entry.getKey(), user)) {
+        position += turns;
+      } else {
+        position += Math.min(entry.getValue().size(), turns);
+      }
+    }
+    return position;
+  }
+
+  // Must be called while holding the lock on this.
+  private Entry poll() {
+    for (Lane lane : Lane.values()) {
+      LinkedHashMap<String, Deque<Entry>> users = lanes.get(lane);
+      Iterator<Map.Entry<String, Deque<Entry>>> it = users.entrySet().iterator();
+      if (it.hasNext()) {
+        Map.Entry<String, Deque<Entry>> next = it.next();
+        it.remove();
+        Entry entry = next.getValue().poll();
+        if (!next.getValue().isEmpty()) {
+          // Move the user to the back of the line.
+          users.put(next.getKey(), next.getValue());
+        }
+        queuedTaskCount--;
+        queuedTaskCounts.put(lane, queuedTaskCounts.get(lane) - 1);
+        return entry;
+      }
+    }
+    return null;
+  }
+
+  // Must be called while holding the lock on this.
+  private void start(final Entry entry) {
+    waits[waitCount % MAX_WAITS] = System.currentTimeMillis() - entry.enqueued;
+    waitCount++;
+    activeTaskCount++;
+    Thread thread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        long start = System.currentTimeMillis();
+        try {
+          entry.build.run();
+        } finally {
+          finished(System.currentTimeMillis() - start);
+        }
+      }
+    });
+    thread.start();
+  }
+
+  private synchronized void finished(long buildMillis) {
+    activeTaskCount--;
+    completedTaskCount++;
+    if (completedTaskCount == 1) {
+      averageBuildMillis = buildMillis;
+    } else {
+      // Exponential moving average, so the estimate follows changes in load.
+      averageBuildMillis = (averageBuildMillis * 7 + buildMillis) / 8;
+    }
+    Entry next = poll();
+    if (next != null) {
+      start(next);
+    }
+  }
+}
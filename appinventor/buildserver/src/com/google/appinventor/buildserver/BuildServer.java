@@ -11,6 +11,10 @@ import com.google.appinventor.buildserver.stats.StatCalculator;
 import com.google.appinventor.buildserver.stats.StatCalculator.Stats;
 import com.google.appinventor.buildserver.stats.StatReporter;
 import com.google.appinventor.buildserver.tasks.android.AndroidBuildFactory;
+import com.google.appinventor.buildserver.tasks.android.RunD8;
+import com.google.appinventor.buildserver.util.BuildCache;
+import com.google.appinventor.buildserver.util.KawaCompilerPool;
+import com.google.appinventor.buildserver.util.PreDexCache;
 import com.google.appinventor.common.version.GitBuildId;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.io.ByteStreams;
@@ -49,6 +53,7 @@ import java.net.URL;
 import java.text.DateFormat;
 import java.util.Date;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -90,12 +95,44 @@ public class BuildServer {
     }
 
     public void report(int progress) {
+      send(progress + "");
+    }
+
+    /**
+     * Report the build progress together with the task events since the last report. The first
+     * line of build.status is still the progress, and each event follows on its own line, so
+     * receivers that only understand progress are unaffected.
+     *
+     * @param progress build progress
+     * @param events the task events, such as "stage start CompileJava"
+     */
+    public void report(int progress, List<String> events) {
+      StringBuilder status = new StringBuilder();
+      status.append(progress);
+      for (String event : events) {
+        status.append('\n').append(event);
+      }
+      send(status.toString());
+    }
+
+    /**
+     * Report that the build is waiting in the build queue. The first line of build.status is
+     * still the progress, so receivers that only understand progress are unaffected.
+     *
+     * @param position the position of the build in the queue, starting at 1
+     * @param estimatedWaitMillis the estimated time until the build starts
+     */
+    public void reportQueued(int position, long estimatedWaitMillis) {
+      send("0\nqueued " + position + " " + (estimatedWaitMillis + 999) / 1000);
+    }
+
+    private void send(String status) {
       try {
         ByteArrayOutputStream output = new ByteArrayOutputStream();
         ZipOutputStream zipoutput = new ZipOutputStream(output);
         zipoutput.putNextEntry(new ZipEntry("build.status"));
         PrintWriter pout = new PrintWriter(zipoutput);
-        pout.println(progress);
+        pout.println(status);
         pout.flush();
         zipoutput.flush();
         zipoutput.close();
@@ -144,6 +181,15 @@ public class BuildServer {
       usage = "Maximum number of builds that can run in parallel. O means unlimited.")
     int maxSimultaneousBuilds = 0;  // The default is unlimited.
 
+    @Option(name = "--maxQueuedBuilds",
+      usage = "Maximum number of builds waiting for one of the --maxSimultaneousBuilds to finish. "
+          + "0 means builds are rejected when the server is at capacity.")
+    int maxQueuedBuilds = 50;
+
+    @Option(name = "--maxQueuedBuildsPerUser",
+      usage = "Maximum number of builds a single user may have waiting in the build queue.")
+    int maxQueuedBuildsPerUser = 2;
+
     @Option(name = "--port",
       usage = "The port number to bind to on the local machine.")
     int port = 9990;
@@ -161,10 +207,38 @@ public class BuildServer {
             usage = "the directory to cache the pre-dexed libraries")
     String dexCacheDir = null;
 
+    @Option(name = "--dexCacheSizeMb",
+        usage = "Maximum size of the pre-dexed library cache on disk, in MB.")
+    int dexCacheSizeMb = 2048;
+
     @Option(name = "--statreporter",
         usage = "the reporter to use for collecting stats")
     String statReporter = "com.google.appinventor.buildserver.stats.SimpleStatReporter";
 
+    @Option(name = "--maxKawaWorkers",
+        usage = "Maximum number of warm Kawa compiler processes, which bounds parallel YAIL compiles.")
+    int maxKawaWorkers = KawaCompilerPool.DEFAULT_MAX_WORKERS;
+
+    @Option(name = "--kawaWorkerCompiles",
+        usage = "Number of compiles after which a Kawa compiler process is replaced.")
+    int kawaWorkerCompiles = KawaCompilerPool.DEFAULT_MAX_COMPILES_PER_WORKER;
+
+    @Option(name = "--kawaCompileTimeout",
+        usage = "Seconds after which a Kawa compiler process that has not responded is killed.")
+    int kawaCompileTimeout = KawaCompilerPool.DEFAULT_COMPILE_TIMEOUT_SECONDS;
+
+    @Option(name = "--maxParallelTasks",
+        usage = "Maximum number of tasks a single build runs at the same time.")
+    int maxParallelTasks = Compiler.DEFAULT_MAX_PARALLEL_TASKS;
+
+    @Option(name = "--buildCacheDir",
+        usage = "the directory to cache compiled screens between builds (disabled if unset)")
+    String buildCacheDir = null;
+
+    @Option(name = "--buildCacheSizeMb",
+        usage = "Maximum size of the build cache on disk, in MB.")
+    int buildCacheSizeMb = 1024;
+
   }
 
   private static final CommandLineOptions commandLineOptions = new CommandLineOptions();
@@ -203,7 +277,7 @@ public class BuildServer {
   // NOTE(lizlooney) - the buildExecutor must be created after the command line options are
   // processed in main(). If it is created here, the number of simultaneous builds will always be
   // the default value, even if the --maxSimultaneousBuilds option is on the command line.
-  private static NonQueuingExecutor buildExecutor;
+  private static BuildQueue buildExecutor;
 
   // The input zip file. It will be deleted in cleanUp.
   private File inputZip;
@@ -236,7 +310,11 @@ public class BuildServer {
   //                DRAINING:   We have reached > 2/3 of max permitted jobs
   //                            We return bad health (but accept jobs) until
   //                            the number of active jobs is < 1/3 of max
-  private enum ShutdownState { UP, SHUTTING, TURNING, DOWN, DRAINING };
+  //                WARMING:    We are pre-dexing the common libraries after startup
+  //                            We return bad health, but accept jobs
+  private enum ShutdownState { UP, SHUTTING, TURNING, DOWN, DRAINING, WARMING };
+
+  private static volatile boolean warmingUp = false;
 
   private static volatile boolean draining = false; // We have exceeded 2/3 max load, waiting for
                                                     // the load to become < 1/3 max load
@@ -258,6 +336,9 @@ public class BuildServer {
     } else if (shut == ShutdownState.TURNING) {
       LOG.info("Healthcheck: TURNING");
       return Response.status(Response.Status.FORBIDDEN).type(MediaType.TEXT_PLAIN_TYPE).entity("Build Server is turning on").build();
+    } else if (shut == ShutdownState.WARMING) {
+      LOG.info("Healthcheck: WARMING");
+      return Response.status(Response.Status.FORBIDDEN).type(MediaType.TEXT_PLAIN_TYPE).entity("Build Server is warming up").build();
     } else {
       LOG.info("Healthcheck: SHUTTING");
       return Response.status(Response.Status.FORBIDDEN).type(MediaType.TEXT_PLAIN_TYPE).entity("Build Server is shutting down").build();
@@ -329,6 +410,57 @@ public class BuildServer {
     maximumActiveBuildTasks = Math.max(maximumActiveBuildTasks, buildExecutor.getActiveTaskCount());
     variables.put("maximum-simultaneous-build-tasks-occurred", maximumActiveBuildTasks + "");
     variables.put("active-build-tasks", buildExecutor.getActiveTaskCount() + "");
+    variables.put("maximum-parallel-tasks-per-build", Compiler.getMaxParallelTasks() + "");
+
+    // Build queue
+    variables.put("maximum-queued-builds-allowed", buildExecutor.getMaxQueuedTasks() + "");
+    variables.put("maximum-queued-builds-per-user-allowed",
+        buildExecutor.getMaxQueuedTasksPerUser() + "");
+    variables.put("maximum-queued-builds-occurred", buildExecutor.getMaximumQueuedTaskCount() + "");
+    variables.put("queued-builds", buildExecutor.getQueuedTaskCount() + "");
+    variables.put("queued-companion-builds",
+        buildExecutor.getQueuedTaskCount(BuildQueue.Lane.COMPANION) + "");
+    variables.put("queued-app-builds", buildExecutor.getQueuedTaskCount(BuildQueue.Lane.APP) + "");
+    variables.put("rejected-builds-queue-full", buildExecutor.getRejectedQueueFullCount() + "");
+    variables.put("rejected-builds-user-limit", buildExecutor.getRejectedUserLimitCount() + "");
+    variables.put("average-build-time-ms", buildExecutor.getAverageBuildMillis() + "");
+
+    // Kawa compiler workers
+    KawaCompilerPool kawaPool = KawaCompilerPool.getInstance();
+    variables.put("maximum-kawa-workers", kawaPool.getMaxWorkers() + "");
+    variables.put("active-kawa-compiles", kawaPool.getActiveCompiles() + "");
+    variables.put("idle-kawa-workers", kawaPool.getIdleWorkers() + "");
+    variables.put("completed-kawa-compiles", kawaPool.getCompletedCompiles() + "");
+    variables.put("failed-kawa-compiles", kawaPool.getFailedCompiles() + "");
+    variables.put("started-kawa-workers", kawaPool.getStartedWorkers() + "");
+    variables.put("reused-kawa-workers", kawaPool.getReusedWorkers() + "");
+    variables.put("retired-kawa-workers", kawaPool.getRetiredWorkers() + "");
+    variables.put("timed-out-kawa-workers", kawaPool.getTimedOutWorkers() + "");
+
+    // Build cache
+    BuildCache buildCache = BuildCache.getInstance();
+    if (buildCache != null) {
+      variables.put("build-cache-hits", buildCache.getHits() + "");
+      variables.put("build-cache-misses", buildCache.getMisses() + "");
+      variables.put("build-cache-stores", buildCache.getStores() + "");
+      variables.put("build-cache-evictions", buildCache.getEvictions() + "");
+      variables.put("build-cache-entries", buildCache.getEntryCount() + "");
+      variables.put("build-cache-size-bytes", buildCache.getSizeBytes() + "");
+      variables.put("build-cache-max-bytes", buildCache.getMaxBytes() + "");
+    }
+
+    // Pre-dex cache
+    if (commandLineOptions.dexCacheDir != null) {
+      PreDexCache dexCache = PreDexCache.getInstance(new File(commandLineOptions.dexCacheDir));
+      variables.put("dex-cache-hits", dexCache.getHits() + "");
+      variables.put("dex-cache-misses", dexCache.getMisses() + "");
+      variables.put("dex-cache-shared-dexes", dexCache.getSharedDexes() + "");
+      variables.put("dex-cache-failures", dexCache.getFailures() + "");
+      variables.put("dex-cache-evictions", dexCache.getEvictions() + "");
+      variables.put("dex-cache-entries", dexCache.getEntryCount() + "");
+      variables.put("dex-cache-size-bytes", dexCache.getSizeBytes() + "");
+      variables.put("dex-cache-max-bytes", dexCache.getMaxBytes() + "");
+    }
 
     return mapToHtml(variables);
   }
@@ -352,6 +484,17 @@ public class BuildServer {
 
     variables.put("hostname", InetAddress.getLocalHost().getHostName());
 
+    // Time spent waiting in the build queue
+    if (buildExecutor != null) {
+      variables.put("queue-wait.p50", buildExecutor.getWaitPercentile(50) + " ms");
+      variables.put("queue-wait.p90", buildExecutor.getWaitPercentile(90) + " ms");
+      variables.put("queue-wait.p99", buildExecutor.getWaitPercentile(99) + " ms");
+      variables.put("queue-wait.max", buildExecutor.getWaitPercentile(100) + " ms");
+      variables.put("queue-depth", buildExecutor.getQueuedTaskCount() + "");
+      variables.put("queue-rejections", (buildExecutor.getRejectedQueueFullCount()
+          + buildExecutor.getRejectedUserLimitCount()) + "");
+    }
+
     // Build Stats
     if (statReporter instanceof SimpleStatReporter) {
       StatCalculator calculator = new StatCalculator();
@@ -549,6 +692,8 @@ public class BuildServer {
    * @param gitBuildVersion  The value of GitBuildId.getVersion() sent from
    *     YoungAndroidProjectService.build.
    * @param callbackUrlStr An url to send the build results back to.
+   * @param laneName  The queue lane the build waits in: "companion" or "app" (the default). The
+   *     lane only affects scheduling, not what is built.
    * @param inputZipFile  The zip file representing the App Inventor source code.
    * @return a status response, typically OK (200) or SERVICE_UNAVAILABLE (503).
    */
@@ -560,6 +705,7 @@ public class BuildServer {
     @QueryParam("callback") final String callbackUrlStr,
     @QueryParam("gitBuildVersion") final String gitBuildVersion,
     @QueryParam("ext") final String ext,
+    @QueryParam("lane") final String laneName,
     final File inputZipFile) throws IOException {
     // Set the inputZip field so we can delete the input zip file later in
     // cleanUp.
@@ -661,10 +807,25 @@ public class BuildServer {
           }
         };
       try {
-        buildExecutor.execute(buildTask);
+        buildExecutor.execute(userName,
+            BuildQueue.Lane.forName(laneName), buildTask,
+            new BuildQueue.Listener() {
+              @Override
+              public void queued(final int position, final long estimatedWaitMillis) {
+                // Report from another thread so that the response to this request, which the
+                // App Inventor server is waiting for, isn't delayed by the callback.
+                new Thread(new Runnable() {
+                  @Override
+                  public void run() {
+                    new ProgressReporter(callbackUrlStr).reportQueued(position,
+                        estimatedWaitMillis);
+                  }
+                }).start();
+              }
+            });
       } catch (RejectedExecutionException e) {
         // This request was rejected because all threads in the build
-        // executor are busy.
+        // executor are busy and the build queue is full.
         rejectedAsyncBuildRequests.incrementAndGet();
         cleanUp();
         // Here, we use SERVICE_UNAVAILABLE (response code 503), which
@@ -792,6 +953,47 @@ public class BuildServer {
         throw new IllegalArgumentException(new IOException("Unable to create dex cache dir "
             + commandLineOptions.dexCacheDir));
       }
+      if (commandLineOptions.dexCacheSizeMb < 1) {
+        LOG.severe("--dexCacheSizeMb must be positive");
+        cmdLineParser.printUsage(System.err);
+        System.exit(1);
+      }
+      PreDexCache.configure(new PreDexCache(cacheDir,
+          commandLineOptions.dexCacheSizeMb * 1024L * 1024L));
+    }
+
+    if (commandLineOptions.maxQueuedBuilds < 0 || commandLineOptions.maxQueuedBuildsPerUser < 1) {
+      LOG.severe("--maxQueuedBuilds must not be negative and --maxQueuedBuildsPerUser must be "
+          + "positive");
+      cmdLineParser.printUsage(System.err);
+      System.exit(1);
+    }
+
+    if (commandLineOptions.maxKawaWorkers < 1 || commandLineOptions.kawaWorkerCompiles < 1
+        || commandLineOptions.kawaCompileTimeout < 1) {
+      LOG.severe(
+          "--maxKawaWorkers, --kawaWorkerCompiles and --kawaCompileTimeout must be positive");
+      cmdLineParser.printUsage(System.err);
+      System.exit(1);
+    }
+    KawaCompilerPool.configure(commandLineOptions.maxKawaWorkers,
+        commandLineOptions.kawaWorkerCompiles, commandLineOptions.kawaCompileTimeout);
+
+    if (commandLineOptions.maxParallelTasks < 1) {
+      LOG.severe("--maxParallelTasks must be positive");
+      cmdLineParser.printUsage(System.err);
+      System.exit(1);
+    }
+    Compiler.setMaxParallelTasks(commandLineOptions.maxParallelTasks);
+
+    if (commandLineOptions.buildCacheDir != null) {
+      if (commandLineOptions.buildCacheSizeMb < 1) {
+        LOG.severe("--buildCacheSizeMb must be positive");
+        cmdLineParser.printUsage(System.err);
+        System.exit(1);
+      }
+      BuildCache.configure(new BuildCache(new File(commandLineOptions.buildCacheDir),
+          commandLineOptions.buildCacheSizeMb * 1024L * 1024L));
     }
 
     // Add a Shutdown Hook. In a container swarm, the swarm orchestrator
@@ -807,12 +1009,15 @@ public class BuildServer {
         @Override
         public void run() {
           shuttingTime = System.currentTimeMillis();
+          if (commandLineOptions.dexCacheDir != null) {
+            PreDexCache.getInstance(new File(commandLineOptions.dexCacheDir)).flush();
+          }
           if (buildExecutor == null) {
             /* We haven't really started up yet... */
             return;
           }
           while (true) {
-            int tasks = buildExecutor.getActiveTaskCount();
+            int tasks = buildExecutor.getActiveTaskCount() + buildExecutor.getQueuedTaskCount();
             if (tasks <= 0) {
               try {
                 Thread.sleep(10000); // One final wait so people can get
@@ -833,7 +1038,30 @@ public class BuildServer {
     // Now that the command line options have been processed, we can create the buildExecutor.
     AndroidBuildFactory.install();
     // TODO(ewpatton): Enable iOS build factory here when published
-    buildExecutor = new NonQueuingExecutor(commandLineOptions.maxSimultaneousBuilds);
+    buildExecutor = new BuildQueue(commandLineOptions.maxSimultaneousBuilds,
+        commandLineOptions.maxQueuedBuilds, commandLineOptions.maxQueuedBuildsPerUser);
+
+    // Pre-dex the libraries every build needs before reporting healthy, so that the first builds
+    // after a deploy do not pay for it. Builds that arrive meanwhile share the work.
+    if (commandLineOptions.dexCacheDir != null) {
+      warmingUp = true;
+      Thread warmUp = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          long start = System.currentTimeMillis();
+          try {
+            int failures = RunD8.warmUp(new File(commandLineOptions.dexCacheDir),
+                commandLineOptions.childProcessRamMb);
+            LOG.info("Pre-dex warm up finished in " + (System.currentTimeMillis() - start)
+                + " ms with " + failures + " failures");
+          } finally {
+            warmingUp = false;
+          }
+        }
+      }, "PreDexWarmUp");
+      warmUp.setDaemon(true);
+      warmUp.start();
+    }
 
     int port = commandLineOptions.port;
     final ResourceConfig rc = new ResourceConfig(BuildServer.class);
@@ -846,7 +1074,9 @@ public class BuildServer {
       LOG.info("Maximum simultaneous builds = unlimited!");
     } else {
       LOG.info("Maximum simultaneous builds = " + commandLineOptions.maxSimultaneousBuilds);
+      LOG.info("Maximum queued builds = " + commandLineOptions.maxQueuedBuilds);
     }
+    LOG.info("Maximum simultaneous Kawa compiles = " + commandLineOptions.maxKawaWorkers);
     LOG.info("Visit: http://" + hostAddress + ":" + port +
       "/buildserver/health for server health");
     LOG.info("Visit: http://" + hostAddress + ":" + port +
@@ -875,6 +1105,9 @@ public class BuildServer {
     }
 
     if (shuttingTime == 0) {
+      if (warmingUp) {
+        return ShutdownState.WARMING;
+      }
       int max = buildExecutor.getMaxActiveTasks();
       if (max < 10) {           // Only do this scheme if we are not unlimited
                                 // (unlimited == 0) and allow more then 10 max builds
@@ -9,11 +9,22 @@ package com.google.appinventor.buildserver;
 import com.google.appinventor.buildserver.context.CompilerContext;
 import com.google.appinventor.buildserver.context.Paths;
 import com.google.appinventor.buildserver.interfaces.Task;
+import com.google.common.annotations.VisibleForTesting;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -26,12 +37,18 @@ import java.util.logging.Logger;
  * style pattern, where receives build information, and then
  * {@link Task} can be added.</p>
  *
+ * <p>Tasks that declare their inputs and outputs with {@link Artifacts}
+ * run in parallel with the tasks they don't depend on, using up to
+ * {@link #getMaxParallelTasks()} threads per build.</p>
+ *
  * @see CompilerContext
  *
  * @author diego@barreiro.xyz (Diego Barreiro)
  */
 public class Compiler<P extends Paths, T extends CompilerContext<P>> implements Callable<Boolean> {
   private static final Logger LOG = Logger.getLogger(Compiler.class.getName());
+  public static final int DEFAULT_MAX_PARALLEL_TASKS = 4;
+  private static volatile int maxParallelTasks = DEFAULT_MAX_PARALLEL_TASKS;
   private final List<Class<? extends Task<? super T>>> tasks;
   private T context;
   private String ext = BuildType.APK_EXTENSION;
@@ -83,6 +100,7 @@ public class Compiler<P extends Paths, T extends CompilerContext<P>> implements
       Compiler<P, T> compiler = new Compiler<>();
       compiler.context = context;
       compiler.ext = ext;
+      context.setCompiler(compiler);
       return compiler;
     }
   }
@@ -102,6 +120,29 @@ public class Compiler<P extends Paths, T extends CompilerContext<P>> implements
     return this;
   }
 
+  /**
+   * Returns the tasks of the build, in the order they were added.
+   */
+  List<Class<? extends Task<? super T>>> getTasks() {
+    return Collections.unmodifiableList(tasks);
+  }
+
+  /**
+   * Sets the maximum number of tasks a single build may run at the same time.
+   *
+   * @param maxParallelTasks the maximum number of parallel tasks per build
+   */
+  public static void setMaxParallelTasks(int maxParallelTasks) {
+    if (maxParallelTasks < 1) {
+      throw new IllegalArgumentException("maxParallelTasks must be positive");
+    }
+    Compiler.maxParallelTasks = maxParallelTasks;
+  }
+
+  public static int getMaxParallelTasks() {
+    return maxParallelTasks;
+  }
+
   // "Main" method that returns either true or false, depending
   // on result.
   @Override
@@ -109,7 +150,7 @@ public class Compiler<P extends Paths, T extends CompilerContext<P>> implements
     // Initializes progress to 0.
     context.getReporter().setProgress(0);
     context.getStatReporter().startBuild(this);
-    int numTasks = this.tasks.size();
+    final int numTasks = this.tasks.size();
 
     // If no tasks, we technically have successfully built everything.
     if (numTasks == 0) {
@@ -118,15 +159,14 @@ public class Compiler<P extends Paths, T extends CompilerContext<P>> implements
       return true;
     }
 
-    for (int i = 0; i < numTasks; i++) {
-      // We accept Classes, but not initialized ones.
-      Class<? extends Task<?>> task = this.tasks.get(i);
+    // Check that every task supports this build before running any of them.
+    final List<Object> taskObjects = new ArrayList<>();
+    for (Class<? extends Task<?>> task : this.tasks) {
       String taskName = task.getSimpleName();
 
       // We try to initialize a Task instance.
-      Object taskObject;
       try {
-        taskObject = task.newInstance();
+        taskObjects.add(task.newInstance());
       } catch (IllegalAccessException | InstantiationException e) {
         LOG.log(Level.SEVERE, "Could not create new task " + taskName, e);
         context.getReporter().error("Could not create new task " + taskName);
@@ -156,37 +196,159 @@ public class Compiler<P extends Paths, T extends CompilerContext<P>> implements
       } else {
         context.getReporter().warn("Task " + taskName + " does not contain build type targets!");
       }
+    }
 
-      // Get the current time to know the time needed to execute it.
-      context.getReporter().taskStart(taskName);
-      context.getStatReporter().nextStage(this, task.getSimpleName());
-      long start = System.currentTimeMillis();
+    // Work out which tasks each task has to wait for, then run every task as soon as all of the
+    // tasks it depends on have succeeded.
+    List<Set<Integer>> dependencies = computeDependencies(this.tasks);
+    int[] pending = new int[numTasks];
+    List<List<Integer>> dependents = new ArrayList<>();
+    for (int i = 0; i < numTasks; i++) {
+      pending[i] = dependencies.get(i).size();
+      dependents.add(new ArrayList<Integer>());
+      for (int dependency : dependencies.get(i)) {
+        dependents.get(dependency).add(i);
+      }
+    }
 
-      // And then invoke the execute(ExecutorContext) method to run the Task.
-      TaskResult result;
-      try {
-        Method execute = task.getMethod("execute", CompilerContext.class);
-        result = (TaskResult) execute.invoke(taskObject, context);
-      } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
-        context.getReporter().taskError(-1);
-        LOG.log(Level.SEVERE, "Error running task " + task, e);
-        return false;
+    ExecutorService executor = Executors.newFixedThreadPool(
+        Math.min(maxParallelTasks, numTasks));
+    CompletionService<Integer> completionService = new ExecutorCompletionService<>(executor);
+    int running = 0;
+    int completed = 0;
+    boolean failed = false;
+    try {
+      for (int i = 0; i < numTasks; i++) {
+        if (pending[i] == 0) {
+          submitTask(completionService, i, taskObjects.get(i));
+          running++;
+        }
       }
-      double endTime = (System.currentTimeMillis() - start) / 1000.0;
-
-      // Make sure result is success, else we'll throw an error and don't run
-      // more tasks.
-      if (result == null || !result.isSuccess()) {
-        context.getReporter().error(result == null || result.getError() == null
-            ? "Unknown exception" : result.getError().getMessage(), true);
-        context.getReporter().taskError(endTime);
-        return false;
+      while (running > 0) {
+        Future<Integer> future = completionService.take();
+        running--;
+        int finished;
+        try {
+          finished = future.get();
+        } catch (ExecutionException e) {
+          // The task's stage was reported as failed on its own thread; tell the user too.
+          LOG.log(Level.SEVERE, "Error running task", e.getCause());
+          context.getReporter().error("Internal error while running a build task", true);
+          failed = true;
+          continue;
+        }
+        if (finished < 0) {
+          // Let the tasks that are already running finish, but don't start any more.
+          failed = true;
+          continue;
+        }
+
+        // Update progress depending on the number of steps.
+        completed++;
+        context.getReporter().setProgress((completed * 100) / numTasks);
+        if (!failed) {
+          for (int next : dependents.get(finished)) {
+            if (--pending[next] == 0) {
+              submitTask(completionService, next, taskObjects.get(next));
+              running++;
+            }
+          }
+        }
       }
+    } catch (InterruptedException e) {
+      LOG.log(Level.WARNING, "Build was interrupted", e);
+      executor.shutdownNow();
+      Thread.currentThread().interrupt();
+      return false;
+    } finally {
+      executor.shutdown();
+    }
+    return !failed && completed == numTasks;
+  }
 
-      // Update progress depending on the number of steps.
-      context.getReporter().setProgress(((i + 1) * 100) / numTasks);
-      context.getReporter().taskSuccess(endTime);
+  /**
+   * Computes, for each task, the indices of the earlier tasks it has to wait for according to
+   * their {@link Artifacts} annotations.
+   *
+   * @param tasks the tasks in the order they were added
+   * @return the dependencies of each task
+   */
+  @VisibleForTesting
+  static List<Set<Integer>> computeDependencies(List<? extends Class<?>> tasks) {
+    List<Set<Integer>> dependencies = new ArrayList<>();
+    for (int i = 0; i < tasks.size(); i++) {
+      Artifacts current = tasks.get(i).getAnnotation(Artifacts.class);
+      Set<Integer> taskDependencies = new TreeSet<>();
+      for (int j = 0; j < i; j++) {
+        Artifacts earlier = tasks.get(j).getAnnotation(Artifacts.class);
+        if (current == null || earlier == null
+            || intersects(earlier.outputs(), current.inputs())
+            || intersects(earlier.outputs(), current.outputs())
+            || intersects(earlier.inputs(), current.outputs())) {
+          taskDependencies.add(j);
+        }
+      }
+      dependencies.add(taskDependencies);
     }
+    return dependencies;
+  }
+
+  private static boolean intersects(String[] a, String[] b) {
+    return !Collections.disjoint(Arrays.asList(a), Arrays.asList(b));
+  }
+
+  /*
+   * Runs a task on the executor. The future yields the index of the task if it succeeded, or a
+   * negative value if it failed.
+   */
+  private void submitTask(CompletionService<Integer> completionService, final int index,
+      final Object taskObject) {
+    completionService.submit(new Callable<Integer>() {
+      @Override
+      public Integer call() {
+        try {
+          return runTask(tasks.get(index), taskObject) ? index : -1;
+        } catch (RuntimeException | Error e) {
+          // The reporter tracks the current task per thread, so report the failed stage here
+          // rather than on the thread waiting for the result.
+          context.getReporter().taskError(-1);
+          throw e;
+        }
+      }
+    });
+  }
+
+  private boolean runTask(Class<? extends Task<?>> task, Object taskObject) {
+    String taskName = task.getSimpleName();
+
+    // Get the current time to know the time needed to execute it.
+    context.getReporter().taskStart(taskName);
+    long start = System.currentTimeMillis();
+
+    // And then invoke the execute(ExecutorContext) method to run the Task.
+    TaskResult result;
+    try {
+      Method execute = task.getMethod("execute", CompilerContext.class);
+      result = (TaskResult) execute.invoke(taskObject, context);
+    } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
+      context.getReporter().taskError(-1);
+      LOG.log(Level.SEVERE, "Error running task " + task, e);
+      return false;
+    }
+    long millis = System.currentTimeMillis() - start;
+    context.getStatReporter().recordStage(this, taskName, millis);
+    double endTime = millis / 1000.0;
+
+    // Make sure result is success, else we'll throw an error and don't run
+    // more tasks.
+    if (result == null || !result.isSuccess()) {
+      context.getReporter().error(result == null || result.getError() == null
+          ? "Unknown exception" : result.getError().getMessage(), true);
+      context.getReporter().taskError(endTime);
+      return false;
+    }
+
+    context.getReporter().taskSuccess(endTime);
     return true;
   }
 
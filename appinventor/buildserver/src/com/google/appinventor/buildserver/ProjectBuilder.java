@@ -271,7 +271,8 @@ public final class ProjectBuilder {
     return result;
   }
 
-  private static Set<String> getComponentTypes(List<String> files, File assetsDir)
+  @VisibleForTesting
+  static Set<String> getComponentTypes(List<String> files, File assetsDir)
       throws IOException, JSONException {
     Map<String, String> nameTypeMap = createNameTypeMap(assetsDir);
 
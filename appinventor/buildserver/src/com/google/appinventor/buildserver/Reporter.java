@@ -7,6 +7,8 @@ package com.google.appinventor.buildserver;
 
 import java.io.ByteArrayOutputStream;
 import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Class to report progress and information to the system or user.
@@ -17,7 +19,13 @@ public class Reporter {
   private final ByteArrayOutputStream userBuffer;
   private final PrintStream system;
   private final PrintStream user;
-  private String task;
+  // Tasks may run in parallel, so each thread tracks the task it is running.
+  private final ThreadLocal<String> task = new ThreadLocal<>();
+  // Task events not yet reported. They are sent in a batch with the next progress update rather
+  // than one callback per event.
+  private final List<String> events = new ArrayList<>();
+  // The progress last reported, sent again with any events still pending when the build ends.
+  private volatile int lastProgress = 0;
 
   private static class ConsoleColors {
     static final String RESET = "\u001B[0m";
@@ -53,13 +61,47 @@ public class Reporter {
    * @param progress build progress
    */
   public void setProgress(int progress) {
+    this.lastProgress = progress;
     if (this.progress != null) {
-      this.progress.report(progress);
+      List<String> batch = drainEvents();
+      if (batch.isEmpty()) {
+        this.progress.report(progress);
+      } else {
+        this.progress.report(progress, batch);
+      }
+    }
+  }
+
+  /**
+   * Send the task events not yet reported, together with the last progress. A build that fails
+   * makes no further progress, so without this its final stage events would never be sent.
+   */
+  public void flushEvents() {
+    if (this.progress != null) {
+      List<String> batch = drainEvents();
+      if (!batch.isEmpty()) {
+        this.progress.report(lastProgress, batch);
+      }
+    }
+  }
+
+  private void addEvent(String event) {
+    synchronized (events) {
+      events.add(event);
+    }
+  }
+
+  private List<String> drainEvents() {
+    synchronized (events) {
+      List<String> batch = new ArrayList<>(events);
+      events.clear();
+      return batch;
     }
   }
 
   private String task(String colorCode) {
     boolean color = colorCode != null && !colorCode.equals("");
+    String task = this.task.get();
 
     if (task != null && !task.equals("")) {
       return (color ? colorCode : "") + "[" + (color ? ConsoleColors.PURPLE : "") + task
@@ -160,9 +202,10 @@ public class Reporter {
    * @param name the name of the task
    */
   public void taskStart(String name) {
-    this.task = name;
+    this.task.set(name);
     System.out.println(this.task(ConsoleColors.BLUE) + "Starting Task" + ConsoleColors.RESET);
     this.system.println(this.task(null) + "Starting Task");
+    addEvent("stage start " + name);
   }
 
   /**
@@ -174,7 +217,8 @@ public class Reporter {
     System.out.println(this.task(ConsoleColors.GREEN) + "Task succeeded in " + ConsoleColors.PURPLE
         + seconds + ConsoleColors.GREEN + " seconds" + ConsoleColors.RESET);
     this.system.println(this.task(null) + "Task succeeded in " + seconds + " seconds");
-    this.task = null;
+    addEvent("stage done " + this.task.get() + " " + seconds);
+    this.task.remove();
   }
 
   /**
@@ -191,13 +235,15 @@ public class Reporter {
     }
     System.out.print(ConsoleColors.RESET + "\n");
     this.system.print("\n");
-    this.task = null;
+    addEvent("stage failed " + this.task.get());
+    this.task.remove();
   }
 
 
   // AFTER FINISHING, CLOSE ALL PRINT STREAMS
 
   public void close() {
+    flushEvents();
     this.system.close();
     this.user.close();
   }
@@ -6,14 +6,15 @@
 
 package com.google.appinventor.buildserver.context;
 
+import com.google.appinventor.buildserver.Compiler;
 import com.google.appinventor.buildserver.Project;
 import com.google.appinventor.buildserver.Reporter;
 import com.google.appinventor.buildserver.stats.StatReporter;
 
 import java.io.File;
-import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.codehaus.jettison.json.JSONArray;
 
@@ -30,6 +31,7 @@ public class CompilerContext<P extends Paths> {
   Set<String> blockPermissions;
   Reporter reporter;
   StatReporter statReporter;
+  Compiler<?, ?> compiler;
   boolean isForCompanion;
   boolean isForEmulator;
   boolean includeDangerousPermissions;
@@ -192,7 +194,8 @@ public class CompilerContext<P extends Paths> {
       context.resources = new Resources();
       context.componentInfo = new ComponentInfo();
 
-      context.extTypePathCache = new HashMap<>();
+      // Tasks running in parallel share this cache
+      context.extTypePathCache = new ConcurrentHashMap<>();
 
       System.out.println(this);
 
@@ -236,6 +239,20 @@ public class CompilerContext<P extends Paths> {
     return statReporter;
   }
 
+  /**
+   * Get the compiler running in this context. Tasks use it to attribute their measurements to the
+   * correct build when reporting to the {@link StatReporter}.
+   *
+   * @return the compiler, or null if the context has not been handed to a compiler yet
+   */
+  public Compiler<?, ?> getCompiler() {
+    return compiler;
+  }
+
+  public void setCompiler(Compiler<?, ?> compiler) {
+    this.compiler = compiler;
+  }
+
   public boolean isForCompanion() {
     return isForCompanion;
   }
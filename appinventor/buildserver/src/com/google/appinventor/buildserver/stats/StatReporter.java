@@ -22,12 +22,15 @@ public interface StatReporter {
   void startBuild(Compiler compiler);
 
   /**
-   * Indicate to the StatReporter that a build is entering a new stage.
+   * Record the time spent in a stage of the build. Stages may run in parallel, so they are
+   * reported once they finish. Parts of a stage, such as waiting for a shared resource, may also
+   * be recorded, conventionally prefixed by the name of the enclosing stage.
    *
    * @param compiler the compilation process in progress
-   * @param stage the stage being entered
+   * @param stage the name of the stage
+   * @param millis the time spent in the stage, in milliseconds
    */
-  void nextStage(Compiler compiler, String stage);
+  void recordStage(Compiler compiler, String stage, long millis);
 
   /**
    * Indicate to the StatReporter that a build has finished and whether it was successful.
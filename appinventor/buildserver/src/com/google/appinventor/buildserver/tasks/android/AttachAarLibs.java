@@ -5,6 +5,7 @@
 
 package com.google.appinventor.buildserver.tasks.android;
 
+import com.google.appinventor.buildserver.Artifacts;
 import com.google.appinventor.buildserver.BuildType;
 import com.google.appinventor.buildserver.TaskResult;
 import com.google.appinventor.buildserver.context.AndroidCompilerContext;
@@ -27,6 +28,10 @@ import java.util.Set;
  */
 
 @BuildType(apk = true, aab = true)
+// This task removes the AARs it explodes from the libraries needed by the components, so it
+// writes the component info as well as reading it.
+@Artifacts(inputs = {Artifacts.BUILD_INFO, Artifacts.COMPONENT_INFO},
+    outputs = {Artifacts.AAR_LIBS, Artifacts.COMPONENT_INFO})
 public class AttachAarLibs implements AndroidTask {
   @Override
   public TaskResult execute(AndroidCompilerContext context) {
@@ -5,6 +5,7 @@
 
 package com.google.appinventor.buildserver.tasks.android;
 
+import com.google.appinventor.buildserver.Artifacts;
 import com.google.appinventor.buildserver.BuildType;
 import com.google.appinventor.buildserver.TaskResult;
 import com.google.appinventor.buildserver.YoungAndroidConstants;
@@ -23,6 +24,7 @@ import java.io.IOException;
  */
 
 @BuildType(apk = true, aab = true)
+@Artifacts(inputs = {Artifacts.BUILD_INFO, Artifacts.COMPONENT_INFO}, outputs = Artifacts.ASSETS)
 public class AttachCompAssets implements AndroidTask {
   @Override
   public TaskResult execute(AndroidCompilerContext context) {
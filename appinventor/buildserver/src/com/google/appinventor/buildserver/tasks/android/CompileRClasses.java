@@ -0,0 +1,48 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2024 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.buildserver.tasks.android;
+
+import com.google.appinventor.buildserver.Artifacts;
+import com.google.appinventor.buildserver.BuildType;
+import com.google.appinventor.buildserver.Signatures;
+import com.google.appinventor.buildserver.TaskResult;
+import com.google.appinventor.buildserver.context.AndroidCompilerContext;
+import com.google.appinventor.buildserver.interfaces.AndroidTask;
+
+import java.io.IOException;
+
+/**
+ * Compiles the R classes of the AAR libraries used by the project from the symbols generated by
+ * aapt. This is separate from {@link GenerateClasses} so that compiling the YAIL does not have to
+ * wait for the resources to be processed.
+ */
+@BuildType(apk = true, aab = true)
+@Artifacts(inputs = {Artifacts.AAR_LIBS, Artifacts.RESOURCE_PACKAGE},
+    outputs = Artifacts.R_CLASSES)
+public class CompileRClasses implements AndroidTask {
+  @Override
+  public TaskResult execute(AndroidCompilerContext context) {
+    if (context.getComponentInfo().getExplodedAarLibs().isEmpty()) {
+      return TaskResult.generateSuccess();  // nothing to see here
+    }
+    int error;
+    try {
+      error = context.getComponentInfo().getExplodedAarLibs().writeRClasses(
+          context.getPaths().getClassesDir(),
+          Signatures.getPackageName(context.getProject().getMainClass()),
+          context.getResources().getAppRTxt()
+      );
+    } catch (IOException | InterruptedException e) {
+      context.getReporter().error("Error while compiling R classes", true);
+      return TaskResult.generateError("Could not compile R classes");
+    }
+    if (error != 0) {
+      context.getReporter().error("Compile R Classes returned E=" + error, true);
+      return TaskResult.generateError("Could not compile R classes");
+    }
+    return TaskResult.generateSuccess();
+  }
+}
@@ -5,6 +5,7 @@
 
 package com.google.appinventor.buildserver.tasks.android;
 
+import com.google.appinventor.buildserver.Artifacts;
 import com.google.appinventor.buildserver.BuildType;
 import com.google.appinventor.buildserver.Project;
 import com.google.appinventor.buildserver.Signatures;
@@ -35,6 +36,7 @@ import java.util.Set;
  */
 // CreateManifest
 @BuildType(apk = true, aab = true)
+@Artifacts(inputs = {Artifacts.BUILD_INFO, Artifacts.COMPONENT_INFO}, outputs = Artifacts.MANIFEST)
 public class CreateManifest implements AndroidTask {
   private static final String NEARFIELD_COMPONENT =
       "com.google.appinventor.components.runtime.NearField";
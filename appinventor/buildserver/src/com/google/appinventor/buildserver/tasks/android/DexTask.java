@@ -6,6 +6,7 @@
 package com.google.appinventor.buildserver.tasks.android;
 
 import com.google.appinventor.buildserver.context.AndroidCompilerContext;
+import com.google.appinventor.buildserver.context.Resources;
 import com.google.common.hash.HashCode;
 import com.google.common.hash.HashFunction;
 import com.google.common.hash.Hashing;
@@ -14,21 +15,13 @@ import java.io.IOException;
 import java.io.PrintStream;
 import java.nio.file.Files;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 
 public abstract class DexTask {
-  /**
-   * Maps JAR file references to their precomputed hash code representing the target dex file
-   * created during pre-dexing.
-   */
-  static final Map<File, String> PREDEX_CACHE = new HashMap<>();
-
   /**
    * Retrieves the set of critical JARs in the build context.
    *
@@ -36,41 +29,51 @@ public abstract class DexTask {
    * @return a set of relative paths for JARs needed for the base build
    */
   static Set<String> getCriticalJars(AndroidCompilerContext context) {
+    return getCriticalJars(context.getResources());
+  }
+
+  /**
+   * Retrieves the set of critical JARs shipped with the build server.
+   *
+   * @param resources the build server resources
+   * @return a set of relative paths for JARs needed for the base build
+   */
+  static Set<String> getCriticalJars(Resources resources) {
     return new HashSet<>(Arrays.asList(
         // Minimum required for Android 4.x
-        context.getResources().getRuntimeFilesDir() + "annotation-experimental.jar",
-        context.getResources().getRuntimeFilesDir() + "appcompat.jar",
-        context.getResources().getRuntimeFilesDir() + "collection.jar",
-        context.getResources().getRuntimeFilesDir() + "core.jar",
-        context.getResources().getRuntimeFilesDir() + "core-common.jar",
-        context.getResources().getRuntimeFilesDir() + "lifecycle-common.jar",
-        context.getResources().getRuntimeFilesDir() + "vectordrawable.jar",
-        context.getResources().getRuntimeFilesDir() + "vectordrawable-animated.jar",
+        resources.getRuntimeFilesDir() + "annotation-experimental.jar",
+        resources.getRuntimeFilesDir() + "appcompat.jar",
+        resources.getRuntimeFilesDir() + "collection.jar",
+        resources.getRuntimeFilesDir() + "core.jar",
+        resources.getRuntimeFilesDir() + "core-common.jar",
+        resources.getRuntimeFilesDir() + "lifecycle-common.jar",
+        resources.getRuntimeFilesDir() + "vectordrawable.jar",
+        resources.getRuntimeFilesDir() + "vectordrawable-animated.jar",
 
         // Extras that may be pulled
-        context.getResources().getRuntimeFilesDir() + "annotation.jar",
-        context.getResources().getRuntimeFilesDir() + "asynclayoutinflater.jar",
-        context.getResources().getRuntimeFilesDir() + "coordinatorlayout.jar",
-        context.getResources().getRuntimeFilesDir() + "core-runtime.jar",
-        context.getResources().getRuntimeFilesDir() + "cursoradapter.jar",
-        context.getResources().getRuntimeFilesDir() + "customview.jar",
-        context.getResources().getRuntimeFilesDir() + "documentfile.jar",
-        context.getResources().getRuntimeFilesDir() + "drawerlayout.jar",
-        context.getResources().getRuntimeFilesDir() + "fragment.jar",
-        context.getResources().getRuntimeFilesDir() + "interpolator.jar",
-        context.getResources().getRuntimeFilesDir() + "legacy-support-core-ui.jar",
-        context.getResources().getRuntimeFilesDir() + "legacy-support-core-utils.jar",
-        context.getResources().getRuntimeFilesDir() + "lifecycle-livedata.jar",
-        context.getResources().getRuntimeFilesDir() + "lifecycle-livedata-core.jar",
-        context.getResources().getRuntimeFilesDir() + "lifecycle-runtime.jar",
-        context.getResources().getRuntimeFilesDir() + "lifecycle-viewmodel.jar",
-        context.getResources().getRuntimeFilesDir() + "loader.jar",
-        context.getResources().getRuntimeFilesDir() + "localbroadcastmanager.jar",
-        context.getResources().getRuntimeFilesDir() + "print.jar",
-        context.getResources().getRuntimeFilesDir() + "slidingpanelayout.jar",
-        context.getResources().getRuntimeFilesDir() + "swiperefreshlayout.jar",
-        context.getResources().getRuntimeFilesDir() + "versionedparcelable.jar",
-        context.getResources().getRuntimeFilesDir() + "viewpager.jar"
+        resources.getRuntimeFilesDir() + "annotation.jar",
+        resources.getRuntimeFilesDir() + "asynclayoutinflater.jar",
+        resources.getRuntimeFilesDir() + "coordinatorlayout.jar",
+        resources.getRuntimeFilesDir() + "core-runtime.jar",
+        resources.getRuntimeFilesDir() + "cursoradapter.jar",
+        resources.getRuntimeFilesDir() + "customview.jar",
+        resources.getRuntimeFilesDir() + "documentfile.jar",
+        resources.getRuntimeFilesDir() + "drawerlayout.jar",
+        resources.getRuntimeFilesDir() + "fragment.jar",
+        resources.getRuntimeFilesDir() + "interpolator.jar",
+        resources.getRuntimeFilesDir() + "legacy-support-core-ui.jar",
+        resources.getRuntimeFilesDir() + "legacy-support-core-utils.jar",
+        resources.getRuntimeFilesDir() + "lifecycle-livedata.jar",
+        resources.getRuntimeFilesDir() + "lifecycle-livedata-core.jar",
+        resources.getRuntimeFilesDir() + "lifecycle-runtime.jar",
+        resources.getRuntimeFilesDir() + "lifecycle-viewmodel.jar",
+        resources.getRuntimeFilesDir() + "loader.jar",
+        resources.getRuntimeFilesDir() + "localbroadcastmanager.jar",
+        resources.getRuntimeFilesDir() + "print.jar",
+        resources.getRuntimeFilesDir() + "slidingpanelayout.jar",
+        resources.getRuntimeFilesDir() + "swiperefreshlayout.jar",
+        resources.getRuntimeFilesDir() + "versionedparcelable.jar",
+        resources.getRuntimeFilesDir() + "viewpager.jar"
     ));
   }
 
@@ -177,20 +180,6 @@ public abstract class DexTask {
     return file;
   }
 
-  /**
-   * Determines the destination of a dex cache operation for {@code inputFile}. Note that this
-   * function only determines where the file should live. There is no guarantee that the returned
-   * value exists yet.
-   *
-   * @param inputFile the source JAR being considered for dexing
-   * @param cacheDir the cache directory
-   * @return a dex file relative to {@code cacheDir}
-   */
-  static File getDexFileName(File inputFile, File cacheDir) throws IOException {
-    String hashed = getHashFor(inputFile);
-    return new File(cacheDir, "dex-cached-" + hashed + ".dex");
-  }
-
   /**
    * Computes a hash code for the contents of the given {@code inputFile}.
    *
@@ -199,15 +188,8 @@ public abstract class DexTask {
    */
   @SuppressWarnings("UnstableApiUsage")
   static String getHashFor(File inputFile) throws IOException {
-    String retval = PREDEX_CACHE.get(inputFile);
-    if (retval != null) {
-      return retval;
-    }
-    // add a hash of the original file path
     HashFunction hashFunction = Hashing.md5();
     HashCode hashCode = hashFunction.hashBytes(Files.readAllBytes(inputFile.toPath()));
-    retval = hashCode.toString();
-    PREDEX_CACHE.put(inputFile, retval);
-    return retval;
+    return hashCode.toString();
   }
 }
@@ -5,6 +5,7 @@
 
 package com.google.appinventor.buildserver.tasks.android;
 
+import com.google.appinventor.buildserver.Artifacts;
 import com.google.appinventor.buildserver.BuildType;
 import com.google.appinventor.buildserver.Project;
 import com.google.appinventor.buildserver.Signatures;
@@ -14,37 +15,44 @@ import com.google.appinventor.buildserver.context.AndroidCompilerContext;
 import com.google.appinventor.buildserver.context.AndroidPaths;
 import com.google.appinventor.buildserver.context.CompilerContext;
 import com.google.appinventor.buildserver.interfaces.AndroidTask;
-import com.google.appinventor.buildserver.util.Execution;
+import com.google.appinventor.buildserver.util.BuildCache;
 import com.google.appinventor.buildserver.util.ExecutorUtils;
+import com.google.appinventor.buildserver.util.KawaCompilerPool;
+import com.google.appinventor.common.version.GitBuildId;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.Lists;
 
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileReader;
+import java.io.FilenameFilter;
 import java.io.IOException;
-import java.io.PrintStream;
 import java.io.Reader;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
 
 /**
  * Compiles screen source files written in YAIL to Java class files.
  */
 @BuildType(apk = true, aab = true)
+@Artifacts(
+    inputs = {Artifacts.BUILD_INFO, Artifacts.COMPONENT_INFO, Artifacts.AAR_LIBS},
+    outputs = Artifacts.CLASSES)
 public class GenerateClasses implements AndroidTask {
+  // Where Kawa writes the classes for runtime.scm, relative to the classes directory.
+  private static final String RUNTIME_CLASSES_DIR = "com/google/youngandroid";
+
   CompilerContext<AndroidPaths> context;
 
   @Override
   public TaskResult execute(AndroidCompilerContext context) {
     this.context = context;
 
-    if (!this.compileRClasses()) {
-      return TaskResult.generateError("Could not compile R classes");
-    }
-
     try {
       List<Project.SourceDescriptor> sources = context.getProject().getSources();
       List<String> sourceFileNames = Lists.newArrayListWithCapacity(sources.size());
@@ -53,12 +61,7 @@ public class GenerateClasses implements AndroidTask {
       for (Project.SourceDescriptor source : sources) {
         String sourceFileName = source.getFile().getAbsolutePath();
         context.getReporter().info("Source File: " + sourceFileName);
-        int srcIndex = sourceFileName.indexOf(File.separator + ".." + File.separator + "src"
-            + File.separator);
-        String sourceFileRelativePath = sourceFileName.substring(srcIndex + 8);
-        String classFileName = (context.getPaths().getClassesDir().getAbsolutePath()
-            + File.separator + sourceFileRelativePath)
-            .replace(YoungAndroidConstants.YAIL_EXTENSION, ".class");
+        String classFileName = getClassFileName(context, source);
 
         // Check whether user code exists by seeing if a left parenthesis exists at the beginning of
         // a line in the file
@@ -95,6 +98,10 @@ public class GenerateClasses implements AndroidTask {
         classpath.append(File.pathSeparator);
       }
 
+      // Jars that come with the project rather than the build server. Their content, rather than
+      // their (temporary) location, identifies them in the build cache.
+      List<File> projectJars = Lists.newArrayList();
+
       // attach the jars of external comps
       Set<String> addedExtJars = new HashSet<String>();
       for (String type : context.getExtCompTypes()) {
@@ -106,6 +113,7 @@ public class GenerateClasses implements AndroidTask {
           classpath.append(sourcePath);
           classpath.append(File.pathSeparator);
           addedExtJars.add(sourcePath);
+          projectJars.add(new File(sourcePath));
         }
       }
 
@@ -120,6 +128,7 @@ public class GenerateClasses implements AndroidTask {
           } else if (context.getExtCompTypes().contains(type)) {
             sourcePath = ExecutorUtils.getExtCompDirPath(
                 type, context.getProject(), context.getExtTypePathCache()) + pathSuffix;
+            projectJars.add(new File(sourcePath));
           } else {
             context.getReporter().error("Found a lost component", true);
             return TaskResult.generateError("Error while generating classes");
@@ -137,6 +146,7 @@ public class GenerateClasses implements AndroidTask {
         if (classesJar != null) {  // true for optimized AARs in App Inventor libs
           final String abspath = classesJar.getAbsolutePath();
           context.getComponentInfo().getUniqueLibsNeeded().add(abspath);
+          projectJars.add(classesJar);
           classpath.append(abspath);
           classpath.append(File.pathSeparator);
         }
@@ -151,42 +161,43 @@ public class GenerateClasses implements AndroidTask {
 
       context.getReporter().info("Libraries Classpath = " + classpath);
 
-      String yailRuntime = context.getResources().getYailRuntime();
-      List<String> kawaCommandArgs = Lists.newArrayList();
-      int mx = context.getChildProcessRam() - 200;
-      Collections.addAll(kawaCommandArgs,
-          System.getProperty("java.home") + "/bin/java",
-          "-Dfile.encoding=UTF-8",
-          "-mx" + mx + "M",
-          "-cp", classpath.toString(),
-          "kawa.repl",
-          "-f", yailRuntime,
-          "-d", context.getPaths().getClassesDir().getAbsolutePath(),
-          "-P", Signatures.getPackageName(context.getProject().getMainClass()) + ".",
-          "-C");
+      // Compile on a warm Kawa worker. The worker loads runtime.scm once when it starts instead of
+      // once per build, although runtime.scm is still compiled with every batch so that its
+      // classes end up in classesDir. Workers have their own fixed heap, so the compile doesn't
+      // need to hold getSyncKawaOrDx().
       // TODO(lizlooney) - we are currently using (and have always used) absolute paths for the
       // source file names. The resulting .class files contain references to the source file names,
       // including the name of the tmp directory that contains them. We may be able to avoid that
       // by using source file names that are relative to the project root and using the project
       // root as the working directory for the Kawa compiler process.
-      kawaCommandArgs.addAll(sourceFileNames);
-      kawaCommandArgs.add(yailRuntime);
-      String[] kawaCommandLine = kawaCommandArgs.toArray(new String[0]);
-
-      // Capture Kawa compiler stderr. The ODE server parses out the warnings and errors and adds
-      // them to the protocol buffer for logging purposes. (See
-      // buildserver/ProjectBuilder.processCompilerOutout.
-      ByteArrayOutputStream kawaOutputStream = new ByteArrayOutputStream();
-      boolean kawaSuccess;
-      synchronized (context.getResources().getSyncKawaOrDx()) {
-        kawaSuccess = Execution.execute(null, kawaCommandLine,
-            System.out, new PrintStream(kawaOutputStream));
-      }
-      if (!kawaSuccess) {
-        context.getReporter().error("Kawa compile has failed.", true);
+      BuildCache cache = BuildCache.getInstance();
+      String fingerprint = cache == null ? null : computeFingerprint(projectJars);
+      KawaCompilerPool.Result result = compileScreens(
+          KawaCompilerPool.getInstance(),
+          cache,
+          fingerprint,
+          classpath.toString(),
+          context.getChildProcessRam() - 200,
+          context.getResources().getYailRuntime(),
+          context.getPaths().getClassesDir(),
+          Signatures.getPackageName(context.getProject().getMainClass()) + ".",
+          sourceFileNames,
+          classFileNames);
+      if (result == null) {
+        context.getReporter().info("All screens were restored from the build cache");
+      } else {
+        reportSubstage("GenerateClasses.WaitForWorker", result.getWaitMillis());
+        reportSubstage("GenerateClasses.StartWorker", result.getStartMillis());
+        reportSubstage("GenerateClasses.KawaCompile", result.getCompileMillis());
+        if (!result.isSuccess()) {
+          context.getReporter().error("Kawa compile has failed.", true);
+        }
+
+        // Capture Kawa compiler output. The ODE server parses out the warnings and errors and
+        // adds them to the protocol buffer for logging purposes. (See
+        // buildserver/ProjectBuilder.processCompilerOutout.
+        context.getReporter().getSystemOut().print(result.getOutput());
       }
-      String kawaOutput = kawaOutputStream.toString();
-      context.getReporter().getSystemOut().print(kawaOutput);
 
       // Check that all of the class files were created.
       // If they weren't, return with an error.
@@ -200,31 +211,131 @@ public class GenerateClasses implements AndroidTask {
       }
     } catch (IOException e) {
       return TaskResult.generateError(e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return TaskResult.generateError(e);
     }
 
     return TaskResult.generateSuccess();
   }
 
+  /**
+   * Compiles the YAIL files that are not already in the build cache. Screens whose classes are
+   * cached are restored into {@code classesDir} instead of being compiled, and the classes of the
+   * screens that are compiled are added to the cache.
+   *
+   * @param pool the Kawa compiler pool to compile with
+   * @param cache the build cache, or null if caching is disabled
+   * @param fingerprint a key identifying everything other than the YAIL that affects the output
+   * @param classpath the class path Kawa needs to resolve component classes
+   * @param heapMb the maximum heap of the Kawa compiler, in MB
+   * @param yailRuntime the path to runtime.scm
+   * @param classesDir the destination of the generated class files
+   * @param packagePrefix the package prefix passed to Kawa's {@code -P} option
+   * @param sourceFileNames absolute paths of the YAIL files
+   * @param classFileNames the main class file expected for each of the YAIL files
+   * @return the result of the compilation, or null if everything was restored from the cache
+   */
   @VisibleForTesting
-  boolean compileRClasses() {
-    if (context.getComponentInfo().getExplodedAarLibs().isEmpty()) {
-      return true;  // nothing to see here
+  static KawaCompilerPool.Result compileScreens(KawaCompilerPool pool, BuildCache cache,
+      String fingerprint, String classpath, int heapMb, String yailRuntime, File classesDir,
+      String packagePrefix, List<String> sourceFileNames, List<String> classFileNames)
+      throws IOException, InterruptedException {
+    if (cache == null) {
+      return pool.compile(classpath, heapMb, yailRuntime, classesDir, packagePrefix,
+          sourceFileNames);
     }
-    int error;
-    try {
-      error = context.getComponentInfo().getExplodedAarLibs().writeRClasses(
-          context.getPaths().getClassesDir(),
-          Signatures.getPackageName(context.getProject().getMainClass()),
-          context.getResources().getAppRTxt()
-      );
-    } catch (IOException | InterruptedException e) {
-      context.getReporter().error("Error while compiling R classes", true);
-      return false;
+    // Macros defined in runtime.scm are expanded into the screen classes, so the screens depend
+    // on the runtime as much as the runtime classes themselves do.
+    String runtimeHash = BuildCache.hashFile(new File(yailRuntime));
+    String runtimeKey = BuildCache.computeKey("runtime", fingerprint, runtimeHash);
+    List<String> misses = Lists.newArrayList();
+    Map<String, String> missKeys = new LinkedHashMap<>();
+    for (int i = 0; i < sourceFileNames.size(); i++) {
+      String sourceFileName = sourceFileNames.get(i);
+      String classFileName = classFileNames.get(i);
+      String key = BuildCache.computeKey("screen", fingerprint, runtimeHash, packagePrefix,
+          new File(classFileName).getName(), BuildCache.hashFile(new File(sourceFileName)));
+      if (!cache.restore(key, classesDir)) {
+        misses.add(sourceFileName);
+        missKeys.put(classFileName, key);
+      }
+    }
+    if (misses.isEmpty() && cache.restore(runtimeKey, classesDir)) {
+      return null;
     }
-    if (error != 0) {
-      context.getReporter().error("Compile R Classes returned E=" + error, true);
-      return false;
+    // The runtime is always compiled with the screens, so its classes are rewritten too.
+    KawaCompilerPool.Result result = pool.compile(classpath, heapMb, yailRuntime, classesDir,
+        packagePrefix, misses);
+    if (result.isSuccess()) {
+      for (Map.Entry<String, String> entry : missKeys.entrySet()) {
+        cache.store(entry.getValue(), classesDir, getScreenClassFiles(new File(entry.getKey())));
+      }
+      File[] runtimeClasses = new File(classesDir, RUNTIME_CLASSES_DIR).listFiles();
+      if (runtimeClasses != null) {
+        cache.store(runtimeKey, classesDir, Arrays.asList(runtimeClasses));
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Computes the path of the main class file Kawa generates for the given source.
+   *
+   * @param context the build context
+   * @param source a YAIL source in the project
+   * @return the absolute path of the class file
+   */
+  static String getClassFileName(CompilerContext<AndroidPaths> context,
+      Project.SourceDescriptor source) {
+    String sourceFileName = source.getFile().getAbsolutePath();
+    int srcIndex = sourceFileName.indexOf(File.separator + ".." + File.separator + "src"
+        + File.separator);
+    String sourceFileRelativePath = sourceFileName.substring(srcIndex + 8);
+    return (context.getPaths().getClassesDir().getAbsolutePath()
+        + File.separator + sourceFileRelativePath)
+        .replace(YoungAndroidConstants.YAIL_EXTENSION, ".class");
+  }
+
+  /**
+   * Lists the class files Kawa generated for a screen, that is, the screen's main class and all
+   * of its nested classes.
+   *
+   * @param classFile the main class file of the screen
+   * @return the class files belonging to the screen
+   */
+  static List<File> getScreenClassFiles(File classFile) {
+    final String name = classFile.getName();
+    final String nestedPrefix = name.substring(0, name.length() - ".class".length()) + "$";
+    File[] files = classFile.getParentFile().listFiles(new FilenameFilter() {
+      @Override
+      public boolean accept(File dir, String fileName) {
+        return fileName.equals(name)
+            || (fileName.startsWith(nestedPrefix) && fileName.endsWith(".class"));
+      }
+    });
+    return files == null ? Collections.<File>emptyList() : Arrays.asList(files);
+  }
+
+  /*
+   * Identifies everything other than a screen's own YAIL that can change the classes Kawa
+   * generates for it: the build server itself, the components in use, and the content of any
+   * jars supplied by the project's extensions.
+   */
+  private String computeFingerprint(List<File> projectJars) throws IOException {
+    List<String> parts = Lists.newArrayList();
+    parts.add(GitBuildId.getVersion());
+    parts.add(DexTask.getHashFor(new File(context.getResources().getSimpleAndroidRuntimeJar())));
+    parts.addAll(new TreeSet<>(context.getCompTypes()));
+    for (File jar : projectJars) {
+      parts.add(jar.isFile() ? BuildCache.hashFile(jar) : jar.getName());
+    }
+    return BuildCache.computeKey(parts.toArray(new String[0]));
+  }
+
+  private void reportSubstage(String substage, long millis) {
+    if (context.getStatReporter() != null) {
+      context.getStatReporter().recordStage(context.getCompiler(), substage, millis);
     }
-    return true;
   }
 }
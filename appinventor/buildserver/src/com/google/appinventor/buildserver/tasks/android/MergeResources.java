@@ -8,6 +8,7 @@ package com.google.appinventor.buildserver.tasks.android;
 import com.android.ide.common.internal.AaptCruncher;
 import com.android.ide.common.internal.PngCruncher;
 
+import com.google.appinventor.buildserver.Artifacts;
 import com.google.appinventor.buildserver.BuildType;
 import com.google.appinventor.buildserver.TaskResult;
 import com.google.appinventor.buildserver.context.AndroidCompilerContext;
@@ -21,6 +22,9 @@ import java.io.File;
  * compiler.mergeResources()
  */
 @BuildType(apk = true, aab = true)
+@Artifacts(
+    inputs = {Artifacts.APP_ICON, Artifacts.THEME, Artifacts.AAR_LIBS},
+    outputs = Artifacts.MERGED_RESOURCES)
 public class MergeResources implements AndroidTask {
   @Override
   public TaskResult execute(AndroidCompilerContext context) {
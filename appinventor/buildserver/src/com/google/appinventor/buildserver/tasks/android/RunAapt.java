@@ -5,6 +5,7 @@
 
 package com.google.appinventor.buildserver.tasks.android;
 
+import com.google.appinventor.buildserver.Artifacts;
 import com.google.appinventor.buildserver.BuildType;
 import com.google.appinventor.buildserver.Signatures;
 import com.google.appinventor.buildserver.TaskResult;
@@ -23,6 +24,10 @@ import java.util.List;
  */
 // RunAapt
 @BuildType(apk = true)
+@Artifacts(
+    inputs = {Artifacts.MANIFEST, Artifacts.MERGED_RESOURCES, Artifacts.ASSETS,
+        Artifacts.AAR_LIBS, Artifacts.HOST_LIBS},
+    outputs = Artifacts.RESOURCE_PACKAGE)
 public class RunAapt implements AndroidTask {
   @Override
   public TaskResult execute(AndroidCompilerContext context) {
@@ -5,6 +5,7 @@
 
 package com.google.appinventor.buildserver.tasks.android;
 
+import com.google.appinventor.buildserver.Artifacts;
 import com.google.appinventor.buildserver.BuildType;
 import com.google.appinventor.buildserver.TaskResult;
 import com.google.appinventor.buildserver.YoungAndroidConstants;
@@ -19,6 +20,10 @@ import java.util.ArrayList;
 import java.util.List;
 
 @BuildType(aab = true)
+@Artifacts(
+    inputs = {Artifacts.MANIFEST, Artifacts.MERGED_RESOURCES, Artifacts.ASSETS,
+        Artifacts.AAR_LIBS, Artifacts.HOST_LIBS},
+    outputs = Artifacts.RESOURCE_PACKAGE)
 public class RunAapt2 implements AndroidTask {
   CompilerContext<AndroidPaths> context;
   File resourcesZip;
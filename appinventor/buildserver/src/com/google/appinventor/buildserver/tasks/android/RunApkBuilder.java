@@ -7,6 +7,7 @@ package com.google.appinventor.buildserver.tasks.android;
 
 import com.android.sdklib.build.ApkBuilder;
 
+import com.google.appinventor.buildserver.Artifacts;
 import com.google.appinventor.buildserver.BuildType;
 import com.google.appinventor.buildserver.TaskResult;
 import com.google.appinventor.buildserver.context.AndroidCompilerContext;
@@ -20,6 +21,9 @@ import java.util.logging.Logger;
  * compiler.runApkBuilder
  */
 @BuildType(apk = true)
+@Artifacts(
+    inputs = {Artifacts.RESOURCE_PACKAGE, Artifacts.NATIVE_LIBS, Artifacts.DEX},
+    outputs = Artifacts.APP_PACKAGE)
 public class RunApkBuilder implements AndroidTask {
   private static final Logger LOG = Logger.getLogger(RunApkBuilder.class.getName());
 
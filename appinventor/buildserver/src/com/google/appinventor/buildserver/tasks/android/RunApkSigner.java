@@ -5,6 +5,7 @@
 
 package com.google.appinventor.buildserver.tasks.android;
 
+import com.google.appinventor.buildserver.Artifacts;
 import com.google.appinventor.buildserver.BuildType;
 import com.google.appinventor.buildserver.TaskResult;
 import com.google.appinventor.buildserver.context.AndroidCompilerContext;
@@ -15,6 +16,7 @@ import com.google.appinventor.buildserver.util.Execution;
  * compiler.runApkSigner()
  */
 @BuildType(apk = true)
+@Artifacts(inputs = Artifacts.APP_PACKAGE, outputs = Artifacts.APP_PACKAGE)
 public class RunApkSigner implements AndroidTask {
   @Override
   public TaskResult execute(AndroidCompilerContext context) {
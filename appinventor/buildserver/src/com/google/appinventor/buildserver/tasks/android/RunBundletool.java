@@ -7,6 +7,7 @@ package com.google.appinventor.buildserver.tasks.android;
 
 import static java.nio.file.Files.newInputStream;
 
+import com.google.appinventor.buildserver.Artifacts;
 import com.google.appinventor.buildserver.BuildType;
 import com.google.appinventor.buildserver.TaskResult;
 import com.google.appinventor.buildserver.context.AndroidCompilerContext;
@@ -36,6 +37,9 @@ import org.json.JSONException;
 import org.json.JSONObject;
 
 @BuildType(aab = true)
+@Artifacts(
+    inputs = {Artifacts.RESOURCE_PACKAGE, Artifacts.NATIVE_LIBS, Artifacts.ASSETS, Artifacts.DEX},
+    outputs = Artifacts.APP_PACKAGE)
 public class RunBundletool implements AndroidTask {
   private AabPaths aab;
 
@@ -5,12 +5,19 @@
 
 package com.google.appinventor.buildserver.tasks.android;
 
+import com.google.appinventor.buildserver.Artifacts;
 import com.google.appinventor.buildserver.BuildType;
+import com.google.appinventor.buildserver.Project;
 import com.google.appinventor.buildserver.TaskResult;
+import com.google.appinventor.buildserver.YoungAndroidConstants;
 import com.google.appinventor.buildserver.context.AndroidCompilerContext;
+import com.google.appinventor.buildserver.context.Resources;
 import com.google.appinventor.buildserver.interfaces.AndroidTask;
+import com.google.appinventor.buildserver.util.BuildCache;
 import com.google.appinventor.buildserver.util.Execution;
 import com.google.appinventor.buildserver.util.ExecutorUtils;
+import com.google.appinventor.buildserver.util.PreDexCache;
+import com.google.appinventor.common.version.GitBuildId;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
@@ -28,10 +35,19 @@ import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 @BuildType(aab = true, apk = true)
+@Artifacts(
+    inputs = {Artifacts.BUILD_INFO, Artifacts.COMPONENT_INFO, Artifacts.CLASSES,
+        Artifacts.R_CLASSES},
+    outputs = Artifacts.DEX)
 public class RunD8 extends DexTask implements AndroidTask {
   private static final boolean USE_D8_PROGUARD_RULES = true;
+  private static final String SCREEN_DEX = "screen.dex";
+  private static final Logger LOG = Logger.getLogger(RunD8.class.getName());
 
   @Override
   public TaskResult execute(AndroidCompilerContext context) {
@@ -81,6 +97,22 @@ public class RunD8 extends DexTask implements AndroidTask {
         }
       }
 
+      // Screens are dexed on their own so that the dex of unchanged screens can be reused from the
+      // build cache. Their classes are then left out of the final d8 run.
+      final Set<File> screenClasses = new HashSet<>();
+      BuildCache cache = BuildCache.getInstance();
+      if (cache != null) {
+        for (Project.SourceDescriptor source : context.getProject().getSources()) {
+          List<File> classFiles = GenerateClasses.getScreenClassFiles(
+              new File(GenerateClasses.getClassFileName(context, source)));
+          File dex = preDexScreen(context, cache, classFiles);
+          if (dex != null) {
+            inputs.add(dex);
+            screenClasses.addAll(classFiles);
+          }
+        }
+      }
+
       Files.walkFileTree(context.getPaths().getClassesDir().toPath(), new FileVisitor<Path>() {
         @Override
         public FileVisitResult preVisitDirectory(Path dir,
@@ -91,7 +123,7 @@ public class RunD8 extends DexTask implements AndroidTask {
         @Override
         public FileVisitResult visitFile(Path file,
             BasicFileAttributes attrs) {
-          if (file.toString().endsWith(".class")) {
+          if (file.toString().endsWith(".class") && !screenClasses.contains(file.toFile())) {
             inputs.add(file.toFile());
           }
           return FileVisitResult.CONTINUE;
@@ -174,58 +206,114 @@ public class RunD8 extends DexTask implements AndroidTask {
   private static boolean runD8(AndroidCompilerContext context, Collection<File> inputs,
       Set<String> mainDexClasses, String outputDir, String intermediateFileName)
       throws IOException {
-    List<String> arguments = new ArrayList<>();
-    List<String> javaArgs = new ArrayList<>();
-    arguments.add("java");
-    javaArgs.add("-Xmx" + context.getChildProcessRam() + "M");
-    javaArgs.add("-Xss8m");
-    javaArgs.add("-cp");
-    javaArgs.add(context.getResources().getD8Jar());
-    javaArgs.add("com.android.tools.r8.D8");
+    List<String> d8Args = new ArrayList<>();
     if (intermediateFileName != null) {
-      javaArgs.add("--intermediate");
+      d8Args.add("--intermediate");
     }
-    javaArgs.add("--lib");
-    javaArgs.add(context.getResources().getAndroidRuntime());
+    d8Args.add("--lib");
+    d8Args.add(context.getResources().getAndroidRuntime());
     if (intermediateFileName == null) {
-      javaArgs.add("--classpath");
-      javaArgs.add(context.getPaths().getClassesDir().getAbsolutePath());
+      d8Args.add("--classpath");
+      d8Args.add(context.getPaths().getClassesDir().getAbsolutePath());
     }
-    javaArgs.add("--output");
-    javaArgs.add(outputDir);
-    javaArgs.add("--min-api");
-    javaArgs.add(Integer.toString(AndroidBuildUtils.computeMinSdk(context)));
+    d8Args.add("--output");
+    d8Args.add(outputDir);
+    d8Args.add("--min-api");
+    d8Args.add(Integer.toString(AndroidBuildUtils.computeMinSdk(context)));
     if (mainDexClasses != null) {
       if (USE_D8_PROGUARD_RULES) {
-        javaArgs.add("--main-dex-rules");
-        javaArgs.add(writeClassRules(context.getPaths().getClassesDir(), mainDexClasses));
+        d8Args.add("--main-dex-rules");
+        d8Args.add(writeClassRules(context.getPaths().getClassesDir(), mainDexClasses));
       } else {
-        javaArgs.add("--main-dex-list");
-        javaArgs.add(writeClassList(context.getPaths().getClassesDir(), mainDexClasses));
+        d8Args.add("--main-dex-list");
+        d8Args.add(writeClassList(context.getPaths().getClassesDir(), mainDexClasses));
       }
     }
     for (File input : inputs) {
-      javaArgs.add(input.getAbsolutePath());
+      d8Args.add(input.getAbsolutePath());
+    }
+    if (!execD8(context.getResources(), context.getChildProcessRam(),
+        context.getPaths().getTmpDir(), d8Args)) {
+      return false;
+    }
+    if (intermediateFileName != null) {
+      Files.move(FileSystems.getDefault().getPath(outputDir, "classes.dex"),
+          FileSystems.getDefault().getPath(outputDir, intermediateFileName));
     }
-    File javaArgsFile = new File(context.getPaths().getTmpDir(), "d8arguments.txt");
+    return true;
+  }
+
+  /**
+   * Dex the classes of a single screen, reusing the result of an earlier build from the build
+   * cache if the classes are unchanged.
+   *
+   * @param context the build context
+   * @param cache the build cache
+   * @param classFiles the class files of the screen
+   * @return the dex file for the screen, or null if the screen could not be dexed on its own
+   * @throws IOException if the class files cannot be read
+   */
+  private static File preDexScreen(AndroidCompilerContext context, BuildCache cache,
+      List<File> classFiles) throws IOException {
+    if (classFiles.isEmpty()) {
+      return null;
+    }
+    List<File> sortedClassFiles = new ArrayList<>(classFiles);
+    Collections.sort(sortedClassFiles);
+    List<String> parts = new ArrayList<>();
+    parts.add("screen-dex");
+    parts.add(GitBuildId.getVersion());
+    parts.add(Integer.toString(AndroidBuildUtils.computeMinSdk(context)));
+    for (File classFile : sortedClassFiles) {
+      parts.add(classFile.getName());
+      parts.add(BuildCache.hashFile(classFile));
+    }
+    String key = BuildCache.computeKey(parts.toArray(new String[0]));
+    File outputDir = new File(context.getPaths().getTmpDir(), "screen-dex" + File.separator + key);
+    File dex = new File(outputDir, SCREEN_DEX);
+    if (cache.restore(key, outputDir)) {
+      context.getReporter().info("Using cached dex for " + sortedClassFiles.get(0).getName());
+      return dex;
+    }
+    if (!outputDir.mkdirs() || !runD8(context, classFiles, null, outputDir.getAbsolutePath(),
+        SCREEN_DEX)) {
+      return null;
+    }
+    cache.store(key, outputDir, Collections.singleton(dex));
+    return dex;
+  }
+
+  /**
+   * Runs d8 in a child process with the given arguments.
+   *
+   * @param resources the build server resources
+   * @param childProcessRam the maximum heap of the child process, in MB
+   * @param workDir the directory to run d8 in
+   * @param d8Args the arguments to d8
+   * @return true if the process succeeded
+   * @throws IOException if the argument file cannot be written
+   */
+  private static boolean execD8(Resources resources, int childProcessRam, File workDir,
+      List<String> d8Args) throws IOException {
+    List<String> arguments = new ArrayList<>();
+    List<String> javaArgs = new ArrayList<>();
+    arguments.add("java");
+    javaArgs.add("-Xmx" + childProcessRam + "M");
+    javaArgs.add("-Xss8m");
+    javaArgs.add("-cp");
+    javaArgs.add(resources.getD8Jar());
+    javaArgs.add("com.android.tools.r8.D8");
+    javaArgs.addAll(d8Args);
+    File javaArgsFile = new File(workDir, "d8arguments.txt");
     try (PrintStream ps = new PrintStream(new FileOutputStream(javaArgsFile))) {
       for (String arg : javaArgs) {
         ps.println(arg);
       }
     }
     arguments.add("@" + javaArgsFile.getAbsolutePath());
-    synchronized (context.getResources().getSyncKawaOrDx()) {
-      boolean result = Execution.execute(context.getPaths().getTmpDir(),
-          arguments.toArray(new String[0]), System.out, System.err);
-      if (!result) {
-        return false;
-      }
+    synchronized (resources.getSyncKawaOrDx()) {
+      return Execution.execute(workDir, arguments.toArray(new String[0]), System.out, System.err);
     }
-    if (intermediateFileName != null) {
-      Files.move(FileSystems.getDefault().getPath(outputDir, "classes.dex"),
-          FileSystems.getDefault().getPath(outputDir, intermediateFileName));
-    }
-    return true;
   }
 
   /**
@@ -237,20 +325,81 @@ public class RunD8 extends DexTask implements AndroidTask {
    * @throws IOException if the d8 process fails due to an I/O issue
    */
   private static File preDexLibrary(AndroidCompilerContext context, File input) throws IOException {
-    synchronized (PREDEX_CACHE) {
-      File cacheDir = new File(context.getDexCacheDir());
-      File dexedLib = getDexFileName(input, cacheDir);
-      if (dexedLib.isFile()) {
-        context.getReporter().info(String.format("Using pre-dexed %1$s <- %2$s",
-            dexedLib.getName(), input));
-      } else {
-        boolean success = runD8(context, Collections.singleton(input), null,
-            context.getDexCacheDir(), dexedLib.getName());
-        if (!success) {
-          return input;
+    PreDexCache cache = PreDexCache.getInstance(new File(context.getDexCacheDir()));
+    File dexedLib = preDexLibrary(cache, context.getResources(), context.getChildProcessRam(),
+        AndroidBuildUtils.computeMinSdk(context), input);
+    if (dexedLib == null) {
+      return input;
+    }
+    context.getReporter().info(String.format("Using pre-dexed %1$s <- %2$s",
+        dexedLib.getName(), input));
+    return dexedLib;
+  }
+
+  /**
+   * Dex the given {@code input} file through the shared pre-dex cache.
+   *
+   * @param cache the pre-dex cache
+   * @param resources the build server resources
+   * @param childProcessRam the maximum heap of the d8 process, in MB
+   * @param minSdk the minimum API level to dex for
+   * @param input the input JAR file
+   * @return the pre-dexed library, or null if d8 failed
+   * @throws IOException if the d8 process fails due to an I/O issue
+   */
+  private static File preDexLibrary(PreDexCache cache, final Resources resources,
+      final int childProcessRam, final int minSdk, final File input)
+      throws IOException {
+    return cache.get(getHashFor(input), new PreDexCache.Dexer() {
+      @Override
+      public File dex(File outputDir) throws IOException {
+        List<String> d8Args = new ArrayList<>();
+        d8Args.add("--intermediate");
+        d8Args.add("--lib");
+        d8Args.add(resources.getAndroidRuntime());
+        d8Args.add("--output");
+        d8Args.add(outputDir.getAbsolutePath());
+        d8Args.add("--min-api");
+        d8Args.add(Integer.toString(minSdk));
+        d8Args.add(input.getAbsolutePath());
+        if (!execD8(resources, childProcessRam, outputDir, d8Args)) {
+          return null;
+        }
+        return new File(outputDir, "classes.dex");
+      }
+    });
+  }
+
+  /**
+   * Pre-dexes the libraries that every build needs into the shared pre-dex cache, so that the
+   * first builds after the build server starts do not have to.
+   *
+   * @param dexCacheDir the directory holding the pre-dexed libraries
+   * @param childProcessRam the maximum heap of the d8 processes, in MB
+   * @return the number of libraries that could not be pre-dexed
+   */
+  public static int warmUp(File dexCacheDir, int childProcessRam) {
+    PreDexCache cache = PreDexCache.getInstance(dexCacheDir);
+    Resources resources = new Resources();
+    int minSdk = Integer.parseInt(YoungAndroidConstants.DEFAULT_MIN_SDK);
+    List<String> libraries = new ArrayList<>();
+    libraries.add(resources.getSimpleAndroidRuntimeJar());
+    libraries.add(resources.getKawaRuntime());
+    for (String jar : new TreeSet<>(getCriticalJars(resources))) {
+      libraries.add(resources.getResource(jar));
+    }
+    int failures = 0;
+    for (String library : libraries) {
+      try {
+        if (library == null || preDexLibrary(cache, resources, childProcessRam, minSdk,
+            new File(library)) == null) {
+          failures++;
         }
+      } catch (IOException e) {
+        LOG.log(Level.WARNING, "Unable to pre-dex " + library, e);
+        failures++;
       }
-      return dexedLib;
     }
+    return failures;
   }
 }
@@ -5,6 +5,7 @@
 
 package com.google.appinventor.buildserver.tasks.android;
 
+import com.google.appinventor.buildserver.Artifacts;
 import com.google.appinventor.buildserver.BuildType;
 import com.google.appinventor.buildserver.DexExecTask;
 import com.google.appinventor.buildserver.TaskResult;
@@ -25,6 +26,10 @@ import java.util.Set;
  * compiler.runMultidex()
  */
 @BuildType(apk = true, aab = true)
+@Artifacts(
+    inputs = {Artifacts.BUILD_INFO, Artifacts.COMPONENT_INFO, Artifacts.CLASSES,
+        Artifacts.R_CLASSES},
+    outputs = Artifacts.DEX)
 public class RunMultidex extends DexTask implements AndroidTask {
   @Override
   public TaskResult execute(AndroidCompilerContext context) {
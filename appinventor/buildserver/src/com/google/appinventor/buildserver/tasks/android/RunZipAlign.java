@@ -5,6 +5,7 @@
 
 package com.google.appinventor.buildserver.tasks.android;
 
+import com.google.appinventor.buildserver.Artifacts;
 import com.google.appinventor.buildserver.BuildType;
 import com.google.appinventor.buildserver.TaskResult;
 import com.google.appinventor.buildserver.context.AndroidCompilerContext;
@@ -17,6 +18,7 @@ import java.io.File;
  * compiler.runZipAlign()
  */
 @BuildType(apk = true)
+@Artifacts(inputs = Artifacts.APP_PACKAGE, outputs = Artifacts.APP_PACKAGE)
 public class RunZipAlign implements AndroidTask {
   @Override
   public TaskResult execute(AndroidCompilerContext context) {
@@ -9,6 +9,7 @@ import static com.google.appinventor.buildserver.TaskResult.generateError;
 import static com.google.appinventor.buildserver.util.ExecutorUtils.createDir;
 
 import com.google.appinventor.buildserver.AnimationXmlConstants;
+import com.google.appinventor.buildserver.Artifacts;
 import com.google.appinventor.buildserver.BuildType;
 import com.google.appinventor.buildserver.TaskResult;
 import com.google.appinventor.buildserver.context.AndroidCompilerContext;
@@ -43,6 +44,7 @@ import java.util.Map;
 // createResXml
 // GenerateXmlRes
 @BuildType(apk = true, aab = true)
+@Artifacts(outputs = Artifacts.THEME)
 public class XmlConfig implements AndroidTask {
   AndroidCompilerContext context;
 
@@ -5,6 +5,7 @@
 
 package com.google.appinventor.buildserver.tasks.common;
 
+import com.google.appinventor.buildserver.Artifacts;
 import com.google.appinventor.buildserver.BuildType;
 import com.google.appinventor.buildserver.TaskResult;
 import com.google.appinventor.buildserver.context.CompilerContext;
@@ -40,6 +41,7 @@ import org.codehaus.jettison.json.JSONObject;
  * compiler.generateBroadcastReceiver();
  */
 @BuildType(apk = true, aab = true)
+@Artifacts(inputs = Artifacts.BUILD_INFO, outputs = Artifacts.COMPONENT_INFO)
 public class LoadComponentInfo implements CommonTask {
   CompilerContext<?> context = null;
   private ConcurrentMap<String, Map<String, Map<String, Set<String>>>> conditionals;
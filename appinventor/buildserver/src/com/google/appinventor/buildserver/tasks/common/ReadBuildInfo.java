@@ -5,6 +5,7 @@
 
 package com.google.appinventor.buildserver.tasks.common;
 
+import com.google.appinventor.buildserver.Artifacts;
 import com.google.appinventor.buildserver.BuildType;
 import com.google.appinventor.buildserver.Compiler;
 import com.google.appinventor.buildserver.TaskResult;
@@ -32,6 +33,7 @@ import org.codehaus.jettison.json.JSONTokener;
  * ReadBuildInfo sets up an initial state for Android builds.
  */
 @BuildType(apk = true, aab = true)
+@Artifacts(outputs = Artifacts.BUILD_INFO)
 public class ReadBuildInfo implements CommonTask {
   @Override
   public TaskResult execute(CompilerContext<?> context) {
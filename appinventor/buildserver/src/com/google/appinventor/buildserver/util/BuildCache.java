@@ -0,0 +1,293 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2024 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.buildserver.util;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Preconditions;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * A content-addressed cache of build intermediates shared by all builds on this server.
+ *
+ * <p>Each entry is a directory tree of files stored under a key that is a hash of everything
+ * that went into producing the files. Callers are responsible for choosing keys that change
+ * whenever the output would change, so entries never need to be invalidated. The cache is
+ * bounded in size on disk and evicts the least recently used entries first.</p>
+ *
+ * <p>The cache is disabled unless the build server is started with a cache directory.</p>
+ */
+public final class BuildCache {
+  private static final Logger LOG = Logger.getLogger(BuildCache.class.getName());
+
+  private static BuildCache instance = null;
+
+  private final File cacheDir;
+  private final long maxBytes;
+
+  // Maps keys to the size of their entry, in least recently used order.
+  private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+  private long totalBytes = 0;
+
+  // Counts the restores copying each entry. Pinned entries are not deleted until they are done.
+  private final Map<String, Integer> pinned = new HashMap<>();
+
+  private final AtomicLong hits = new AtomicLong(0);
+  private final AtomicLong misses = new AtomicLong(0);
+  private final AtomicLong stores = new AtomicLong(0);
+  private final AtomicLong evictions = new AtomicLong(0);
+
+  /**
+   * Creates a cache in {@code cacheDir}, indexing any entries left by a previous run.
+   *
+   * @param cacheDir the directory holding the cache entries
+   * @param maxBytes the size on disk above which entries are evicted
+   */
+  public BuildCache(File cacheDir, long maxBytes) {
+    Preconditions.checkArgument(maxBytes > 0, "maxBytes must be positive");
+    if (!cacheDir.isDirectory() && !cacheDir.mkdirs()) {
+      throw new IllegalArgumentException("Unable to create build cache dir " + cacheDir);
+    }
+    this.cacheDir = cacheDir;
+    this.maxBytes = maxBytes;
+    File[] existing = cacheDir.listFiles();
+    if (existing != null) {
+      Arrays.sort(existing, new Comparator<File>() {
+        @Override
+        public int compare(File a, File b) {
+          return Long.compare(a.lastModified(), b.lastModified());
+        }
+      });
+      for (File entry : existing) {
+        if (entry.getName().contains(".")) {
+          // Left over from a store that was interrupted
+          FileUtils.deleteQuietly(entry);
+        } else if (entry.isDirectory()) {
+          long size = FileUtils.sizeOfDirectory(entry);
+          entries.put(entry.getName(), size);
+          totalBytes += size;
+        }
+      }
+    }
+    synchronized (entries) {
+      evict();
+    }
+  }
+
+  /**
+   * Installs the shared cache used by the build tasks.
+   *
+   * @param cache the cache, or null to disable caching
+   */
+  public static synchronized void configure(BuildCache cache) {
+    instance = cache;
+  }
+
+  /**
+   * Returns the shared cache, or null if caching is disabled.
+   */
+  public static synchronized BuildCache getInstance() {
+    return instance;
+  }
+
+  /**
+   * Computes a cache key from the given parts. Parts are delimited so that, for example,
+   * {@code ("ab", "c")} and {@code ("a", "bc")} produce different keys.
+   *
+   * @param parts the values that determine the content of an entry
+   * @return a key suitable for {@link #restore(String, File)} and {@link #store}
+   */
+  public static String computeKey(String... parts) {
+    Hasher hasher = Hashing.sha256().newHasher();
+    for (String part : parts) {
+      hasher.putInt(part.length());
+      hasher.putString(part, Charsets.UTF_8);
+    }
+    return hasher.hash().toString();
+  }
+
+  /**
+   * Computes a hash of the content of a file, for use as part of a cache key.
+   *
+   * @param file the file to hash
+   * @return a hexadecimal representation of the file's hash
+   * @throws IOException if the file cannot be read
+   */
+  public static String hashFile(File file) throws IOException {
+    return Files.hash(file, Hashing.sha256()).toString();
+  }
+
+  /**
+   * Copies the files of the entry for {@code key} into {@code destination}, preserving their
+   * paths relative to the entry.
+   *
+   * @param key the key of the entry
+   * @param destination the directory to copy the entry into
+   * @return true if the entry was found and restored, otherwise false
+   */
+  public boolean restore(String key, File destination) {
+    synchronized (entries) {
+      // Looking the entry up also makes it the most recently used
+      if (entries.get(key) == null) {
+        misses.incrementAndGet();
+        return false;
+      }
+      Integer count = pinned.get(key);
+      pinned.put(key, count == null ? 1 : count + 1);
+    }
+    // Copy without holding the lock, so that other builds can use the cache meanwhile
+    File entry = new File(cacheDir, key);
+    boolean restored = false;
+    try {
+      FileUtils.copyDirectory(entry, destination);
+      if (!entry.setLastModified(System.currentTimeMillis())) {
+        LOG.fine("Unable to touch build cache entry " + key);
+      }
+      restored = true;
+    } catch (IOException e) {
+      LOG.log(Level.WARNING, "Unable to restore build cache entry " + key, e);
+    }
+    synchronized (entries) {
+      int count = pinned.remove(key) - 1;
+      if (count > 0) {
+        pinned.put(key, count);
+      } else if (!restored) {
+        removeEntry(key);
+      }
+      // Catch up on evictions skipped while the entry was pinned
+      evict();
+    }
+    if (restored) {
+      hits.incrementAndGet();
+    } else {
+      misses.incrementAndGet();
+    }
+    return restored;
+  }
+
+  /**
+   * Stores {@code files} as the entry for {@code key}. Files are recorded relative to
+   * {@code root}. If an entry for {@code key} already exists it is kept as is.
+   *
+   * @param key the key of the entry
+   * @param root the directory that the files' paths are relative to
+   * @param files the files making up the entry
+   */
+  public void store(String key, File root, Collection<File> files) {
+    synchronized (entries) {
+      if (entries.containsKey(key)) {
+        return;
+      }
+    }
+    String rootPath = root.getAbsolutePath() + File.separator;
+    File staging = new File(cacheDir, key + "." + Thread.currentThread().getId());
+    long size = 0;
+    try {
+      for (File file : files) {
+        String path = file.getAbsolutePath();
+        Preconditions.checkArgument(path.startsWith(rootPath), "%s is not in %s", file, root);
+        File target = new File(staging, path.substring(rootPath.length()));
+        Files.createParentDirs(target);
+        Files.copy(file, target);
+        size += target.length();
+      }
+      synchronized (entries) {
+        if (entries.containsKey(key)) {
+          return;
+        }
+        if (!staging.renameTo(new File(cacheDir, key))) {
+          throw new IOException("Unable to rename " + staging);
+        }
+        entries.put(key, size);
+        totalBytes += size;
+        stores.incrementAndGet();
+        evict();
+      }
+    } catch (IOException e) {
+      LOG.log(Level.WARNING, "Unable to store build cache entry " + key, e);
+    } finally {
+      FileUtils.deleteQuietly(staging);
+    }
+  }
+
+  public long getHits() {
+    return hits.get();
+  }
+
+  public long getMisses() {
+    return misses.get();
+  }
+
+  public long getStores() {
+    return stores.get();
+  }
+
+  public long getEvictions() {
+    return evictions.get();
+  }
+
+  public int getEntryCount() {
+    synchronized (entries) {
+      return entries.size();
+    }
+  }
+
+  public long getSizeBytes() {
+    synchronized (entries) {
+      return totalBytes;
+    }
+  }
+
+  public long getMaxBytes() {
+    return maxBytes;
+  }
+
+  // Must be called while holding the lock on entries.
+  private void evict() {
+    List<String> victims = new ArrayList<>();
+    long bytes = totalBytes;
+    for (Iterator<Map.Entry<String, Long>> it = entries.entrySet().iterator();
+        it.hasNext() && bytes > maxBytes; ) {
+      Map.Entry<String, Long> entry = it.next();
+      if (pinned.containsKey(entry.getKey())) {
+        continue;
+      }
+      victims.add(entry.getKey());
+      bytes -= entry.getValue();
+    }
+    for (String key : victims) {
+      removeEntry(key);
+      evictions.incrementAndGet();
+    }
+  }
+
+  // Must be called while holding the lock on entries.
+  private void removeEntry(String key) {
+    Long size = entries.remove(key);
+    if (size != null) {
+      totalBytes -= size;
+    }
+    FileUtils.deleteQuietly(new File(cacheDir, key));
+  }
+}
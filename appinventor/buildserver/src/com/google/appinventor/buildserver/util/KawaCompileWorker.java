@@ -0,0 +1,200 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2024 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.buildserver.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.reflect.Method;
+
+/**
+ * Entry point of a long-lived Kawa compiler process managed by {@link KawaCompilerPool}.
+ *
+ * <p>The worker loads the YAIL runtime once at startup and then compiles batches of YAIL files
+ * sent by the build server over its standard input. Results are written back on its standard
+ * output. Anything Kawa prints while compiling a batch is captured and returned with the result
+ * so that the build server can post-process the compiler messages exactly as it does for a
+ * one-shot Kawa process.</p>
+ *
+ * <p>This class runs in the child JVM and must only depend on the JDK. Kawa is on the worker's
+ * class path but not the build server's, so it is reached through reflection.</p>
+ *
+ * @see KawaCompilerPool
+ */
+public final class KawaCompileWorker {
+  static final int REQUEST_COMPILE = 1;
+  static final int REQUEST_SHUTDOWN = 2;
+
+  static final int STATUS_SUCCESS = 0;
+  static final int STATUS_FAILURE = 1;
+
+  private static Method processArgs;
+  private static Method getModuleManager;
+  private static Method clearModules;
+  private static Method outDefault;
+  private static Method errDefault;
+  private static DataOutputStream channel;
+  private static volatile ByteArrayOutputStream capture;
+
+  /*
+   * Kawa binds its default ports to System.out and System.err when its classes are first loaded,
+   * so the worker installs a single stream up front and switches where it writes per batch.
+   */
+  private static class CaptureStream extends OutputStream {
+    @Override
+    public void write(int b) {
+      ByteArrayOutputStream output = capture;
+      if (output != null) {
+        output.write(b);
+      }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+      ByteArrayOutputStream output = capture;
+      if (output != null) {
+        output.write(b, off, len);
+      }
+    }
+  }
+
+  private KawaCompileWorker() {
+  }
+
+  /**
+   * Starts the worker.
+   *
+   * @param args a single argument giving the path of the YAIL runtime to preload
+   */
+  public static void main(String[] args) throws IOException {
+    channel = new DataOutputStream(new BufferedOutputStream(
+        new FileOutputStream(FileDescriptor.out)));
+    DataInputStream requests = new DataInputStream(new BufferedInputStream(
+        new FileInputStream(FileDescriptor.in)));
+    PrintStream captureStream = new PrintStream(new CaptureStream(), true);
+    System.setOut(captureStream);
+    System.setErr(captureStream);
+
+    // Kawa reports fatal compile errors by calling System.exit(). Make sure the build server
+    // still receives the output of the batch that killed us.
+    Runtime.getRuntime().addShutdownHook(new Thread() {
+      @Override
+      public void run() {
+        ByteArrayOutputStream output = capture;
+        if (output != null) {
+          try {
+            respond(STATUS_FAILURE, output);
+          } catch (IOException e) {
+            // The build server is gone; nothing left to report to.
+          }
+        }
+      }
+    });
+
+    ByteArrayOutputStream startup = beginCapture();
+    int status = STATUS_SUCCESS;
+    try {
+      Class<?> repl = Class.forName("kawa.repl");
+      Class<?> moduleManager = Class.forName("gnu.expr.ModuleManager");
+      Class<?> outPort = Class.forName("gnu.mapping.OutPort");
+      processArgs = repl.getMethod("processArgs", String[].class, int.class, int.class);
+      getModuleManager = moduleManager.getMethod("getInstance");
+      clearModules = moduleManager.getMethod("clear");
+      outDefault = outPort.getMethod("outDefault");
+      errDefault = outPort.getMethod("errDefault");
+      processArgs.invoke(null, new String[] { "-f", args[0] }, 0, 2);
+    } catch (Throwable t) {
+      t.printStackTrace();
+      status = STATUS_FAILURE;
+    }
+    respond(status, endCapture(startup));
+    if (status != STATUS_SUCCESS) {
+      return;
+    }
+
+    while (true) {
+      int request;
+      try {
+        request = requests.readInt();
+      } catch (EOFException e) {
+        return;  // The build server closed the channel.
+      }
+      if (request != REQUEST_COMPILE) {
+        return;
+      }
+      String classesDir = requests.readUTF();
+      String packagePrefix = requests.readUTF();
+      String yailRuntime = requests.readUTF();
+      int count = requests.readInt();
+      String[] kawaArgs = new String[count + 6];
+      kawaArgs[0] = "-d";
+      kawaArgs[1] = classesDir;
+      kawaArgs[2] = "-P";
+      kawaArgs[3] = packagePrefix;
+      kawaArgs[4] = "-C";
+      for (int i = 0; i < count; i++) {
+        kawaArgs[5 + i] = requests.readUTF();
+      }
+      kawaArgs[kawaArgs.length - 1] = yailRuntime;
+
+      ByteArrayOutputStream output = beginCapture();
+      status = STATUS_SUCCESS;
+      try {
+        clearModules.invoke(getModuleManager.invoke(null));
+        processArgs.invoke(null, kawaArgs, 0, kawaArgs.length);
+      } catch (Throwable t) {
+        t.printStackTrace();
+        status = STATUS_FAILURE;
+      }
+      respond(status, endCapture(output));
+    }
+  }
+
+  private static ByteArrayOutputStream beginCapture() {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    capture = output;
+    return output;
+  }
+
+  private static ByteArrayOutputStream endCapture(ByteArrayOutputStream output) {
+    flushPort(outDefault);
+    flushPort(errDefault);
+    System.out.flush();
+    System.err.flush();
+    capture = null;
+    return output;
+  }
+
+  private static void flushPort(Method port) {
+    if (port == null) {
+      return;  // Kawa failed to load.
+    }
+    try {
+      ((Flushable) port.invoke(null)).flush();
+    } catch (ReflectiveOperationException | IOException e) {
+      e.printStackTrace();
+    }
+  }
+
+  private static synchronized void respond(int status, ByteArrayOutputStream output)
+      throws IOException {
+    byte[] content = output.toByteArray();
+    channel.writeInt(status);
+    channel.writeInt(content.length);
+    channel.write(content);
+    channel.flush();
+  }
+}
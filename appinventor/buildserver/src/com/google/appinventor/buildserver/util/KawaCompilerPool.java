@@ -0,0 +1,461 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2024 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.buildserver.util;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A pool of warm Kawa compiler processes.
+ *
+ * <p>Starting a JVM and loading runtime.scm dominates the time spent compiling the YAIL for a
+ * typical project. The pool keeps up to {@code maxWorkers} {@link KawaCompileWorker} processes
+ * alive between builds so that those costs are only paid when a worker is started. Workers are
+ * keyed on their class path and heap size because Kawa resolves component classes through the
+ * system class loader; a build whose class path differs from every idle worker (for example, one
+ * using extensions) gets a fresh worker, replacing the least recently used idle one if needed.</p>
+ *
+ * <p>A worker is retired after {@code maxCompilesPerWorker} batches, and immediately after any
+ * batch that fails, so that state leaked by Kawa between compilations cannot accumulate. A worker
+ * that takes longer than {@code compileTimeoutSeconds} to start or to compile a batch is killed,
+ * the batch fails, and the next compile starts a fresh worker in its place.</p>
+ *
+ * @see KawaCompileWorker
+ */
+public final class KawaCompilerPool {
+  private static final Logger LOG = Logger.getLogger(KawaCompilerPool.class.getName());
+
+  public static final int DEFAULT_MAX_WORKERS = 1;
+  public static final int DEFAULT_MAX_COMPILES_PER_WORKER = 50;
+  public static final int DEFAULT_COMPILE_TIMEOUT_SECONDS = 600;
+
+  private static KawaCompilerPool instance = new KawaCompilerPool(DEFAULT_MAX_WORKERS,
+      DEFAULT_MAX_COMPILES_PER_WORKER, DEFAULT_COMPILE_TIMEOUT_SECONDS);
+
+  private static final ScheduledExecutorService WATCHDOG =
+      Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+          Thread thread = new Thread(runnable, "kawa-worker-watchdog");
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+
+  /**
+   * The outcome of compiling a batch of YAIL files.
+   */
+  public static class Result {
+    private final boolean success;
+    private final String output;
+    private final long waitMillis;
+    private final long startMillis;
+    private final long compileMillis;
+
+    Result(boolean success, String output, long waitMillis, long startMillis,
+        long compileMillis) {
+      this.success = success;
+      this.output = output;
+      this.waitMillis = waitMillis;
+      this.startMillis = startMillis;
+      this.compileMillis = compileMillis;
+    }
+
+    public boolean isSuccess() {
+      return success;
+    }
+
+    /**
+     * Returns everything Kawa printed while compiling the batch.
+     */
+    public String getOutput() {
+      return output;
+    }
+
+    /**
+     * Returns the time spent waiting for a worker to become available.
+     */
+    public long getWaitMillis() {
+      return waitMillis;
+    }
+
+    /**
+     * Returns the time spent starting a new worker, or 0 if a warm worker was reused.
+     */
+    public long getStartMillis() {
+      return startMillis;
+    }
+
+    public long getCompileMillis() {
+      return compileMillis;
+    }
+  }
+
+  /*
+   * A single child JVM running KawaCompileWorker.
+   */
+  private static class Worker {
+    private final String key;
+    private final Process process;
+    private final DataOutputStream requests;
+    private final DataInputStream responses;
+    private int compiles = 0;
+    private volatile boolean timedOut = false;
+
+    Worker(String key, Process process) {
+      this.key = key;
+      this.process = process;
+      this.requests = new DataOutputStream(new BufferedOutputStream(process.getOutputStream()));
+      this.responses = new DataInputStream(new BufferedInputStream(process.getInputStream()));
+    }
+
+    /*
+     * Reads a status/output pair written by KawaCompileWorker.respond.
+     */
+    boolean readResponse(StringBuilder output) throws IOException {
+      int status = responses.readInt();
+      byte[] content = new byte[responses.readInt()];
+      responses.readFully(content);
+      output.append(new String(content, StandardCharsets.UTF_8));
+      return status == KawaCompileWorker.STATUS_SUCCESS;
+    }
+
+    /*
+     * Kills the process outright, which unblocks a thread waiting in readResponse.
+     */
+    void kill() {
+      timedOut = true;
+      process.destroyForcibly();
+    }
+
+    void destroy() {
+      try {
+        requests.writeInt(KawaCompileWorker.REQUEST_SHUTDOWN);
+        requests.close();
+      } catch (IOException e) {
+        // The process has already gone away.
+      }
+      process.destroy();
+    }
+  }
+
+  private final int maxWorkers;
+  private final int maxCompilesPerWorker;
+  private final int compileTimeoutSeconds;
+  private final Semaphore permits;
+  private final LinkedList<Worker> idleWorkers = new LinkedList<>();
+
+  private final AtomicInteger activeCompiles = new AtomicInteger(0);
+  private final AtomicLong completedCompiles = new AtomicLong(0);
+  private final AtomicLong failedCompiles = new AtomicLong(0);
+  private final AtomicLong startedWorkers = new AtomicLong(0);
+  private final AtomicLong reusedWorkers = new AtomicLong(0);
+  private final AtomicLong retiredWorkers = new AtomicLong(0);
+  private final AtomicLong timedOutWorkers = new AtomicLong(0);
+
+  @VisibleForTesting
+  KawaCompilerPool(int maxWorkers, int maxCompilesPerWorker, int compileTimeoutSeconds) {
+    Preconditions.checkArgument(maxWorkers > 0, "maxWorkers must be positive");
+    Preconditions.checkArgument(maxCompilesPerWorker > 0,
+        "maxCompilesPerWorker must be positive");
+    Preconditions.checkArgument(compileTimeoutSeconds > 0,
+        "compileTimeoutSeconds must be positive");
+    this.maxWorkers = maxWorkers;
+    this.maxCompilesPerWorker = maxCompilesPerWorker;
+    this.compileTimeoutSeconds = compileTimeoutSeconds;
+    this.permits = new Semaphore(maxWorkers, true);
+  }
+
+  /**
+   * Replaces the shared pool with one using the given limits. Any idle workers of the previous
+   * pool are shut down. This is expected to be called once while the build server starts.
+   *
+   * @param maxWorkers the maximum number of Kawa compiles that may run at the same time
+   * @param maxCompilesPerWorker the number of batches a worker compiles before it is replaced
+   * @param compileTimeoutSeconds the time after which a worker that has not finished starting or
+   *     compiling a batch is killed
+   */
+  public static synchronized void configure(int maxWorkers, int maxCompilesPerWorker,
+      int compileTimeoutSeconds) {
+    KawaCompilerPool old = instance;
+    instance = new KawaCompilerPool(maxWorkers, maxCompilesPerWorker, compileTimeoutSeconds);
+    old.shutdown();
+  }
+
+  public static synchronized KawaCompilerPool getInstance() {
+    return instance;
+  }
+
+  /**
+   * Compiles the given YAIL files, along with the YAIL runtime, into class files.
+   *
+   * @param classpath the class path Kawa needs to resolve component classes
+   * @param heapMb the maximum heap of the worker, in MB
+   * @param yailRuntime the path to runtime.scm
+   * @param classesDir the destination of the generated class files
+   * @param packagePrefix the package prefix passed to Kawa's {@code -P} option
+   * @param sourceFileNames absolute paths of the YAIL files to compile
+   * @return the result of the compilation
+   * @throws InterruptedException if the caller is interrupted while waiting for a worker
+   */
+  public Result compile(String classpath, int heapMb, String yailRuntime, File classesDir,
+      String packagePrefix, List<String> sourceFileNames) throws InterruptedException {
+    long start = System.currentTimeMillis();
+    permits.acquire();
+    long acquired = System.currentTimeMillis();
+    activeCompiles.incrementAndGet();
+    StringBuilder output = new StringBuilder();
+    Worker worker = null;
+    boolean success = false;
+    long started = acquired;
+    try {
+      String key = heapMb + File.pathSeparator + yailRuntime + File.pathSeparator + classpath;
+      worker = takeIdleWorker(key);
+      if (worker == null) {
+        worker = startWorker(key, classpath, heapMb, yailRuntime, output);
+        started = System.currentTimeMillis();
+        if (worker == null) {
+          return new Result(false, output.toString(), acquired - start, started - acquired, 0);
+        }
+      } else {
+        reusedWorkers.incrementAndGet();
+      }
+      worker.requests.writeInt(KawaCompileWorker.REQUEST_COMPILE);
+      worker.requests.writeUTF(classesDir.getAbsolutePath());
+      worker.requests.writeUTF(packagePrefix);
+      worker.requests.writeUTF(yailRuntime);
+      worker.requests.writeInt(sourceFileNames.size());
+      for (String sourceFileName : sourceFileNames) {
+        worker.requests.writeUTF(sourceFileName);
+      }
+      ScheduledFuture<?> watchdog = watch(worker);
+      try {
+        worker.requests.flush();
+        success = worker.readResponse(output);
+      } finally {
+        watchdog.cancel(false);
+      }
+      worker.compiles++;
+    } catch (IOException e) {
+      reportFailure(worker, e, output);
+    } finally {
+      if (worker != null) {
+        if (success && !worker.timedOut && worker.compiles < maxCompilesPerWorker) {
+          returnIdleWorker(worker);
+        } else {
+          retiredWorkers.incrementAndGet();
+          worker.destroy();
+        }
+      }
+      (success ? completedCompiles : failedCompiles).incrementAndGet();
+      activeCompiles.decrementAndGet();
+      permits.release();
+    }
+    return new Result(success, output.toString(), acquired - start, started - acquired,
+        System.currentTimeMillis() - started);
+  }
+
+  /**
+   * Shuts down all idle workers. Workers that are compiling are shut down when they finish.
+   */
+  public void shutdown() {
+    List<Worker> workers;
+    synchronized (idleWorkers) {
+      workers = new ArrayList<>(idleWorkers);
+      idleWorkers.clear();
+    }
+    for (Worker worker : workers) {
+      worker.destroy();
+    }
+  }
+
+  public int getMaxWorkers() {
+    return maxWorkers;
+  }
+
+  public int getMaxCompilesPerWorker() {
+    return maxCompilesPerWorker;
+  }
+
+  public int getActiveCompiles() {
+    return activeCompiles.get();
+  }
+
+  public int getIdleWorkers() {
+    synchronized (idleWorkers) {
+      return idleWorkers.size();
+    }
+  }
+
+  public long getCompletedCompiles() {
+    return completedCompiles.get();
+  }
+
+  public long getFailedCompiles() {
+    return failedCompiles.get();
+  }
+
+  public long getStartedWorkers() {
+    return startedWorkers.get();
+  }
+
+  public long getReusedWorkers() {
+    return reusedWorkers.get();
+  }
+
+  public long getRetiredWorkers() {
+    return retiredWorkers.get();
+  }
+
+  public long getTimedOutWorkers() {
+    return timedOutWorkers.get();
+  }
+
+  public int getCompileTimeoutSeconds() {
+    return compileTimeoutSeconds;
+  }
+
+  /*
+   * Kills the worker if it doesn't respond within the compile timeout. The returned future must be
+   * cancelled once the response has been read.
+   */
+  private ScheduledFuture<?> watch(final Worker worker) {
+    return WATCHDOG.schedule(new Runnable() {
+      @Override
+      public void run() {
+        LOG.warning("Kawa compiler worker did not respond within " + compileTimeoutSeconds
+            + " seconds; killing it");
+        timedOutWorkers.incrementAndGet();
+        worker.kill();
+      }
+    }, compileTimeoutSeconds, TimeUnit.SECONDS);
+  }
+
+  private void reportFailure(Worker worker, IOException e, StringBuilder output) {
+    if (worker != null && worker.timedOut) {
+      output.append("Kawa compile timed out after ").append(compileTimeoutSeconds)
+          .append(" seconds\n");
+    } else {
+      LOG.log(Level.WARNING, "Kawa compiler worker failed", e);
+      output.append(e.getMessage()).append('\n');
+    }
+  }
+
+  private Worker takeIdleWorker(String key) {
+    Worker evicted = null;
+    try {
+      synchronized (idleWorkers) {
+        for (Iterator<Worker> it = idleWorkers.iterator(); it.hasNext(); ) {
+          Worker worker = it.next();
+          if (worker.key.equals(key)) {
+            it.remove();
+            return worker;
+          }
+        }
+        // Holding a permit means at most maxWorkers - 1 other workers are busy, so an idle
+        // worker for another class path has to make room for the one we are about to start.
+        if (idleWorkers.size() + activeCompiles.get() > maxWorkers) {
+          evicted = idleWorkers.removeLast();
+        }
+      }
+      return null;
+    } finally {
+      if (evicted != null) {
+        retiredWorkers.incrementAndGet();
+        evicted.destroy();
+      }
+    }
+  }
+
+  private void returnIdleWorker(Worker worker) {
+    synchronized (idleWorkers) {
+      idleWorkers.addFirst(worker);
+    }
+  }
+
+  private Worker startWorker(String key, String classpath, int heapMb, String yailRuntime,
+      StringBuilder output) throws IOException {
+    String[] command = new String[] {
+        System.getProperty("java.home") + File.separator + "bin" + File.separator + "java",
+        "-Dfile.encoding=UTF-8",
+        "-mx" + heapMb + "M",
+        "-cp", classpath + File.pathSeparator + getWorkerClasspath(),
+        KawaCompileWorker.class.getName(),
+        yailRuntime
+    };
+    LOG.info("Starting Kawa compiler worker");
+    final Process process = new ProcessBuilder(command).start();
+    startedWorkers.incrementAndGet();
+    // Anything the worker prints outside of a batch ends up on stderr; drain it to our log so the
+    // child never blocks on a full pipe.
+    Thread drain = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        try (BufferedReader reader = new BufferedReader(
+            new InputStreamReader(process.getErrorStream(), StandardCharsets.UTF_8))) {
+          String line;
+          while ((line = reader.readLine()) != null) {
+            LOG.info("[kawa worker] " + line);
+          }
+        } catch (IOException e) {
+          // The worker has exited.
+        }
+      }
+    }, "kawa-worker-stderr");
+    drain.setDaemon(true);
+    drain.start();
+    Worker worker = new Worker(key, process);
+    ScheduledFuture<?> watchdog = watch(worker);
+    boolean started = false;
+    try {
+      started = worker.readResponse(output);
+    } catch (IOException e) {
+      reportFailure(worker, e, output);
+    } finally {
+      watchdog.cancel(false);
+    }
+    if (!started) {
+      retiredWorkers.incrementAndGet();
+      worker.destroy();
+      return null;
+    }
+    return worker;
+  }
+
+  private static String getWorkerClasspath() throws IOException {
+    try {
+      return new File(KawaCompileWorker.class.getProtectionDomain().getCodeSource().getLocation()
+          .toURI()).getAbsolutePath();
+    } catch (URISyntaxException e) {
+      throw new IOException("Unable to locate Kawa compiler worker", e);
+    }
+  }
+}
@@ -0,0 +1,432 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2024 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.buildserver.util;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Charsets;
+import com.google.common.base.Preconditions;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * A cache of pre-dexed libraries shared by all builds on this server.
+ *
+ * <p>Entries are keyed by a hash of the library JAR and stored as
+ * {@code dex-cached-<hash>.dex} in the cache directory. An index of the entries, with their size
+ * and the time they were last used, is kept in the same directory so that the cache survives a
+ * restart. Entries whose file is missing, truncated or not a dex file are dropped when the index
+ * is loaded.</p>
+ *
+ * <p>When several builds need the same library at the same time, only one of them runs d8 and
+ * the others wait for its result. The cache is bounded in size and evicts the least recently
+ * used entries first, but never an entry used within the last few minutes, since a build that is
+ * still running may be about to pass it to d8.</p>
+ */
+public final class PreDexCache {
+  /**
+   * Produces the dex file for a library.
+   */
+  public interface Dexer {
+    /**
+     * Dexes the library into {@code outputDir}.
+     *
+     * @param outputDir an empty directory reserved for this call
+     * @return the dex file written in {@code outputDir}, or null if dexing failed
+     * @throws IOException if the library cannot be dexed due to an I/O issue
+     */
+    File dex(File outputDir) throws IOException;
+  }
+
+  public static final long DEFAULT_MAX_BYTES = 2048L * 1024L * 1024L;
+
+  static final String INDEX_FILE = "dex-cache.index";
+
+  // Entries used more recently than this are not evicted.
+  private static final long DEFAULT_MIN_RETENTION_MILLIS = 15 * 60 * 1000;
+
+  private static final String PREFIX = "dex-cached-";
+  private static final String SUFFIX = ".dex";
+  private static final String STAGING_SUFFIX = ".tmp";
+  private static final byte[] DEX_MAGIC = { 'd', 'e', 'x', '\n' };
+
+  private static final Logger LOG = Logger.getLogger(PreDexCache.class.getName());
+
+  private static final Map<File, PreDexCache> INSTANCES = new HashMap<>();
+
+  private static class Entry {
+    private final long size;
+    private long lastAccess;
+
+    Entry(long size, long lastAccess) {
+      this.size = size;
+      this.lastAccess = lastAccess;
+    }
+  }
+
+  private final File cacheDir;
+  private final long maxBytes;
+  private final long minRetentionMillis;
+
+  // Maps hashes to their entry, in least recently used order.
+  private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+  private long totalBytes = 0;
+
+  // Libraries currently being dexed, so that concurrent requests share the work.
+  private final ConcurrentMap<String, FutureTask<File>> inFlight = new ConcurrentHashMap<>();
+
+  private final AtomicLong hits = new AtomicLong(0);
+  private final AtomicLong misses = new AtomicLong(0);
+  private final AtomicLong sharedDexes = new AtomicLong(0);
+  private final AtomicLong failures = new AtomicLong(0);
+  private final AtomicLong evictions = new AtomicLong(0);
+
+  /**
+   * Creates a cache in {@code cacheDir}, loading the index left by a previous run.
+   *
+   * @param cacheDir the directory holding the pre-dexed libraries
+   * @param maxBytes the size on disk above which entries are evicted
+   */
+  public PreDexCache(File cacheDir, long maxBytes) {
+    this(cacheDir, maxBytes, DEFAULT_MIN_RETENTION_MILLIS);
+  }
+
+  @VisibleForTesting
+  PreDexCache(File cacheDir, long maxBytes, long minRetentionMillis) {
+    Preconditions.checkArgument(maxBytes > 0, "maxBytes must be positive");
+    if (!cacheDir.isDirectory() && !cacheDir.mkdirs()) {
+      throw new IllegalArgumentException("Unable to create dex cache dir " + cacheDir);
+    }
+    this.cacheDir = cacheDir;
+    this.maxBytes = maxBytes;
+    this.minRetentionMillis = minRetentionMillis;
+    synchronized (entries) {
+      load();
+      evict();
+      save();
+    }
+  }
+
+  /**
+   * Installs {@code cache} as the shared cache for its directory.
+   *
+   * @param cache the cache
+   */
+  public static void configure(PreDexCache cache) {
+    synchronized (INSTANCES) {
+      INSTANCES.put(cache.cacheDir.getAbsoluteFile(), cache);
+    }
+  }
+
+  /**
+   * Returns the shared cache for {@code cacheDir}, creating one with the default size if the
+   * build server did not configure it.
+   *
+   * @param cacheDir the directory holding the pre-dexed libraries
+   * @return the cache for the directory
+   */
+  public static PreDexCache getInstance(File cacheDir) {
+    synchronized (INSTANCES) {
+      PreDexCache cache = INSTANCES.get(cacheDir.getAbsoluteFile());
+      if (cache == null) {
+        cache = new PreDexCache(cacheDir, DEFAULT_MAX_BYTES);
+        INSTANCES.put(cacheDir.getAbsoluteFile(), cache);
+      }
+      return cache;
+    }
+  }
+
+  /**
+   * Returns the pre-dexed library with the given hash, calling {@code dexer} to create it if it
+   * is not in the cache. If another thread is already dexing the same library, waits for its
+   * result instead.
+   *
+   * @param hash the hash of the library JAR
+   * @param dexer creates the dex file on a cache miss
+   * @return the dex file, or null if the library could not be dexed
+   * @throws IOException if the library cannot be dexed due to an I/O issue
+   */
+  public File get(final String hash, final Dexer dexer) throws IOException {
+    File dex = lookup(hash);
+    if (dex != null) {
+      hits.incrementAndGet();
+      return dex;
+    }
+    FutureTask<File> task = new FutureTask<>(new Callable<File>() {
+      @Override
+      public File call() throws IOException {
+        return create(hash, dexer);
+      }
+    });
+    FutureTask<File> existing = inFlight.putIfAbsent(hash, task);
+    if (existing == null) {
+      try {
+        task.run();
+      } finally {
+        inFlight.remove(hash, task);
+      }
+    } else {
+      sharedDexes.incrementAndGet();
+      task = existing;
+    }
+    try {
+      return task.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while waiting for pre-dexed library " + hash, e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IOException("Unable to pre-dex library " + hash, e.getCause());
+    }
+  }
+
+  /**
+   * Writes the index to disk, so that the order in which entries were last used survives a
+   * restart.
+   */
+  public void flush() {
+    synchronized (entries) {
+      save();
+    }
+  }
+
+  public long getHits() {
+    return hits.get();
+  }
+
+  public long getMisses() {
+    return misses.get();
+  }
+
+  public long getSharedDexes() {
+    return sharedDexes.get();
+  }
+
+  public long getFailures() {
+    return failures.get();
+  }
+
+  public long getEvictions() {
+    return evictions.get();
+  }
+
+  public int getEntryCount() {
+    synchronized (entries) {
+      return entries.size();
+    }
+  }
+
+  public long getSizeBytes() {
+    synchronized (entries) {
+      return totalBytes;
+    }
+  }
+
+  public long getMaxBytes() {
+    return maxBytes;
+  }
+
+  private File lookup(String hash) {
+    synchronized (entries) {
+      Entry entry = entries.get(hash);
+      if (entry == null) {
+        return null;
+      }
+      File dex = getDexFile(hash);
+      if (!dex.isFile()) {
+        LOG.warning("Pre-dexed library " + dex + " has disappeared");
+        removeEntry(hash);
+        return null;
+      }
+      entry.lastAccess = System.currentTimeMillis();
+      return dex;
+    }
+  }
+
+  private File create(String hash, Dexer dexer) throws IOException {
+    // Another thread may have finished dexing the library just before we registered.
+    File dex = lookup(hash);
+    if (dex != null) {
+      hits.incrementAndGet();
+      return dex;
+    }
+    misses.incrementAndGet();
+    File staging = new File(cacheDir, hash + "." + Thread.currentThread().getId()
+        + STAGING_SUFFIX);
+    try {
+      FileUtils.deleteQuietly(staging);
+      if (!staging.mkdirs()) {
+        throw new IOException("Unable to create " + staging);
+      }
+      File output = dexer.dex(staging);
+      if (output == null || !isDexFile(output)) {
+        failures.incrementAndGet();
+        return null;
+      }
+      dex = getDexFile(hash);
+      long size = output.length();
+      synchronized (entries) {
+        Files.move(output.toPath(), dex.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        Entry previous = entries.put(hash, new Entry(size, System.currentTimeMillis()));
+        if (previous != null) {
+          totalBytes -= previous.size;
+        }
+        totalBytes += size;
+        evict();
+        save();
+      }
+      return dex;
+    } finally {
+      FileUtils.deleteQuietly(staging);
+    }
+  }
+
+  private File getDexFile(String hash) {
+    return new File(cacheDir, PREFIX + hash + SUFFIX);
+  }
+
+  // Must be called while holding the lock on entries.
+  private void load() {
+    File index = new File(cacheDir, INDEX_FILE);
+    List<String[]> records = new ArrayList<>();
+    if (index.isFile()) {
+      try (BufferedReader reader = Files.newBufferedReader(index.toPath(), Charsets.UTF_8)) {
+        String line;
+        while ((line = reader.readLine()) != null) {
+          String[] parts = line.trim().split(" ");
+          if (parts.length == 3) {
+            records.add(parts);
+          }
+        }
+      } catch (IOException e) {
+        LOG.log(Level.WARNING, "Unable to read dex cache index, rebuilding it", e);
+        records.clear();
+      }
+    }
+    // The index is written in least recently used order.
+    for (String[] record : records) {
+      try {
+        String hash = record[0];
+        long size = Long.parseLong(record[1]);
+        long lastAccess = Long.parseLong(record[2]);
+        File dex = getDexFile(hash);
+        if (dex.length() == size && isDexFile(dex)) {
+          entries.put(hash, new Entry(size, lastAccess));
+          totalBytes += size;
+        } else {
+          LOG.warning("Dropping corrupt pre-dexed library " + dex);
+          FileUtils.deleteQuietly(dex);
+        }
+      } catch (NumberFormatException e) {
+        LOG.warning("Ignoring malformed dex cache index line " + Arrays.toString(record));
+      }
+    }
+    File[] files = cacheDir.listFiles();
+    if (files == null) {
+      return;
+    }
+    for (File file : files) {
+      String name = file.getName();
+      if (name.endsWith(STAGING_SUFFIX)) {
+        // Left over from a dex that was interrupted
+        FileUtils.deleteQuietly(file);
+      } else if (name.startsWith(PREFIX) && name.endsWith(SUFFIX)) {
+        String hash = name.substring(PREFIX.length(), name.length() - SUFFIX.length());
+        if (entries.containsKey(hash)) {
+          continue;
+        }
+        // Written by a build server that did not keep an index
+        if (isDexFile(file)) {
+          entries.put(hash, new Entry(file.length(), file.lastModified()));
+          totalBytes += file.length();
+        } else {
+          FileUtils.deleteQuietly(file);
+        }
+      }
+    }
+  }
+
+  // Must be called while holding the lock on entries.
+  private void save() {
+    File index = new File(cacheDir, INDEX_FILE);
+    File staging = new File(cacheDir, INDEX_FILE + STAGING_SUFFIX);
+    try {
+      try (PrintStream out = new PrintStream(staging, Charsets.UTF_8.name())) {
+        for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+          out.println(entry.getKey() + " " + entry.getValue().size + " "
+              + entry.getValue().lastAccess);
+        }
+      }
+      Files.move(staging.toPath(), index.toPath(), StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      LOG.log(Level.WARNING, "Unable to write dex cache index", e);
+    }
+  }
+
+  // Must be called while holding the lock on entries.
+  private void evict() {
+    long cutoff = System.currentTimeMillis() - minRetentionMillis;
+    List<String> victims = new ArrayList<>();
+    long bytes = totalBytes;
+    for (Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+        it.hasNext() && bytes > maxBytes; ) {
+      Map.Entry<String, Entry> entry = it.next();
+      if (entry.getValue().lastAccess > cutoff) {
+        continue;
+      }
+      victims.add(entry.getKey());
+      bytes -= entry.getValue().size;
+    }
+    for (String hash : victims) {
+      removeEntry(hash);
+      evictions.incrementAndGet();
+    }
+  }
+
+  // Must be called while holding the lock on entries.
+  private void removeEntry(String hash) {
+    Entry entry = entries.remove(hash);
+    if (entry != null) {
+      totalBytes -= entry.size;
+    }
+    FileUtils.deleteQuietly(getDexFile(hash));
+  }
+
+  private static boolean isDexFile(File file) {
+    byte[] magic = new byte[DEX_MAGIC.length];
+    try (InputStream in = new FileInputStream(file)) {
+      return in.read(magic) == magic.length && Arrays.equals(magic, DEX_MAGIC);
+    } catch (IOException e) {
+      return false;
+    }
+  }
+}
@@ -0,0 +1,170 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2024 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.buildserver;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests BuildQueue class.
+ */
+public class BuildQueueTest extends TestCase {
+  public void testAdditionalTaskIsRejectedWithoutQueue() throws Exception {
+    // Create the BuildQueue with capacity 10 and no queue.
+    int maxCapacity = 10;
+    BuildQueue queue = new BuildQueue(maxCapacity, 0, 1);
+
+    CountDownLatch signal = new CountDownLatch(1);
+    for (int i = 0; i < maxCapacity; i++) {
+      queue.execute("user" + i, BuildQueue.Lane.APP, new TaskThatWaitsForSignal(signal), null);
+    }
+
+    // Now the queue should be at maximum capacity.
+    assertEquals(maxCapacity, queue.getActiveTaskCount());
+
+    // Try to execute another task. We expect it to be rejected.
+    try {
+      queue.execute("another", BuildQueue.Lane.APP, new TaskThatRecords("another", null), null);
+      fail();
+    } catch (RejectedExecutionException e) {
+      // expected
+    }
+    assertEquals(1, queue.getRejectedQueueFullCount());
+
+    signal.countDown();
+  }
+
+  public void testTaskIsQueuedAtCapacity() throws Exception {
+    BuildQueue queue = new BuildQueue(1, 10, 2);
+    CountDownLatch signal = new CountDownLatch(1);
+    queue.execute("alice", BuildQueue.Lane.APP, new TaskThatWaitsForSignal(signal), null);
+
+    final List<Integer> positions = new ArrayList<>();
+    final List<Long> waits = new ArrayList<>();
+    CountDownLatch done = new CountDownLatch(1);
+    queue.execute("bob", BuildQueue.Lane.APP, new TaskThatRecords("bob", done),
+        new BuildQueue.Listener() {
+          @Override
+          public void queued(int position, long estimatedWaitMillis) {
+            positions.add(position);
+            waits.add(estimatedWaitMillis);
+          }
+        });
+    assertEquals(1, queue.getQueuedTaskCount());
+    assertEquals(Arrays.asList(1), positions);
+    assertEquals(Arrays.asList(BuildQueue.DEFAULT_BUILD_MILLIS), waits);
+
+    signal.countDown();
+    assertTrue(done.await(10, TimeUnit.SECONDS));
+    assertEquals(0, queue.getQueuedTaskCount());
+  }
+
+  public void testCompanionLaneAndUsersTakeTurns() throws Exception {
+    BuildQueue queue = new BuildQueue(1, 10, 2);
+    CountDownLatch signal = new CountDownLatch(1);
+    queue.execute("blocker", BuildQueue.Lane.APP, new TaskThatWaitsForSignal(signal), null);
+
+    List<String> order = Collections.synchronizedList(new ArrayList<String>());
+    CountDownLatch done = new CountDownLatch(4);
+    queue.execute("alice", BuildQueue.Lane.APP, new TaskThatRecords("alice1", done, order), null);
+    queue.execute("alice", BuildQueue.Lane.APP, new TaskThatRecords("alice2", done, order), null);
+    queue.execute("bob", BuildQueue.Lane.APP, new TaskThatRecords("bob", done, order), null);
+    queue.execute("carol", BuildQueue.Lane.COMPANION, new TaskThatRecords("carol", done, order),
+        null);
+    assertEquals(1, queue.getQueuedTaskCount(BuildQueue.Lane.COMPANION));
+    assertEquals(3, queue.getQueuedTaskCount(BuildQueue.Lane.APP));
+
+    signal.countDown();
+    assertTrue(done.await(10, TimeUnit.SECONDS));
+    assertEquals(Arrays.asList("carol", "alice1", "bob", "alice2"), order);
+  }
+
+  public void testBuildsWithoutUserAreQueued() throws Exception {
+    BuildQueue queue = new BuildQueue(1, 10, 2);
+    CountDownLatch signal = new CountDownLatch(1);
+    queue.execute("alice", BuildQueue.Lane.APP, new TaskThatWaitsForSignal(signal), null);
+    CountDownLatch done = new CountDownLatch(3);
+    queue.execute("bob", BuildQueue.Lane.APP, new TaskThatRecords("bob", done), null);
+    queue.execute(null, BuildQueue.Lane.APP, new TaskThatRecords("anonymous1", done), null);
+    queue.execute(null, BuildQueue.Lane.APP, new TaskThatRecords("anonymous2", done), null);
+    assertEquals(3, queue.getQueuedTaskCount());
+
+    signal.countDown();
+    assertTrue(done.await(10, TimeUnit.SECONDS));
+  }
+
+  public void testUserLimitIsEnforced() throws Exception {
+    BuildQueue queue = new BuildQueue(1, 10, 1);
+    CountDownLatch signal = new CountDownLatch(1);
+    queue.execute("alice", BuildQueue.Lane.APP, new TaskThatWaitsForSignal(signal), null);
+    queue.execute("bob", BuildQueue.Lane.APP, new TaskThatRecords("bob", null), null);
+    try {
+      queue.execute("bob", BuildQueue.Lane.APP, new TaskThatRecords("bob", null), null);
+      fail();
+    } catch (RejectedExecutionException e) {
+      // expected
+    }
+    assertEquals(1, queue.getRejectedUserLimitCount());
+    signal.countDown();
+  }
+
+  public void testLaneForName() {
+    assertEquals(BuildQueue.Lane.COMPANION, BuildQueue.Lane.forName("companion"));
+    assertEquals(BuildQueue.Lane.APP, BuildQueue.Lane.forName("app"));
+    assertEquals(BuildQueue.Lane.APP, BuildQueue.Lane.forName("unknown"));
+    assertEquals(BuildQueue.Lane.APP, BuildQueue.Lane.forName(null));
+  }
+
+  private static class TaskThatWaitsForSignal implements Runnable {
+    private final CountDownLatch signal;
+
+    private TaskThatWaitsForSignal(CountDownLatch signal) {
+      this.signal = signal;
+    }
+
+    @Override
+    public void run() {
+      try {
+        signal.await();
+      } catch (InterruptedException e) {
+        // ignored
+      }
+    }
+  }
+
+  private static class TaskThatRecords implements Runnable {
+    private final String name;
+    private final CountDownLatch done;
+    private final List<String> order;
+
+    private TaskThatRecords(String name, CountDownLatch done) {
+      this(name, done, null);
+    }
+
+    private TaskThatRecords(String name, CountDownLatch done, List<String> order) {
+      this.name = name;
+      this.done = done;
+      this.order = order;
+    }
+
+    @Override
+    public void run() {
+      if (order != null) {
+        order.add(name);
+      }
+      if (done != null) {
+        done.countDown();
+      }
+    }
+  }
+}
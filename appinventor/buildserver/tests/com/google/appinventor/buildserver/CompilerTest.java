@@ -0,0 +1,111 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2024 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.buildserver;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.appinventor.buildserver.tasks.android.AttachAarLibs;
+import com.google.appinventor.buildserver.tasks.android.AttachCompAssets;
+import com.google.appinventor.buildserver.tasks.android.AttachNativeLibs;
+import com.google.appinventor.buildserver.tasks.android.CompileRClasses;
+import com.google.appinventor.buildserver.tasks.android.CreateManifest;
+import com.google.appinventor.buildserver.tasks.android.GenerateClasses;
+import com.google.appinventor.buildserver.tasks.android.MergeResources;
+import com.google.appinventor.buildserver.tasks.android.PrepareAppIcon;
+import com.google.appinventor.buildserver.tasks.android.RunAapt;
+import com.google.appinventor.buildserver.tasks.android.RunApkBuilder;
+import com.google.appinventor.buildserver.tasks.android.RunApkSigner;
+import com.google.appinventor.buildserver.tasks.android.RunD8;
+import com.google.appinventor.buildserver.tasks.android.RunZipAlign;
+import com.google.appinventor.buildserver.tasks.android.SetupLibs;
+import com.google.appinventor.buildserver.tasks.android.XmlConfig;
+import com.google.appinventor.buildserver.tasks.common.LoadComponentInfo;
+import com.google.appinventor.buildserver.tasks.common.ReadBuildInfo;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import org.junit.Test;
+
+/**
+ * Tests the scheduling of tasks by the {@link Compiler}.
+ */
+public class CompilerTest {
+  // The tasks of an APK build, in the order AndroidBuildFactory adds them.
+  private static final List<Class<?>> APK_TASKS = Arrays.<Class<?>>asList(
+      ReadBuildInfo.class,
+      LoadComponentInfo.class,
+      PrepareAppIcon.class,
+      XmlConfig.class,
+      CreateManifest.class,
+      AttachNativeLibs.class,
+      AttachAarLibs.class,
+      AttachCompAssets.class,
+      MergeResources.class,
+      SetupLibs.class,
+      RunAapt.class,
+      GenerateClasses.class,
+      CompileRClasses.class,
+      RunD8.class,
+      RunApkBuilder.class,
+      RunZipAlign.class,
+      RunApkSigner.class);
+
+  private static class Unannotated {
+  }
+
+  @Test
+  public void testIndependentTasksDoNotWaitForEachOther() {
+    List<Set<Integer>> dependencies = Compiler.computeDependencies(APK_TASKS);
+    assertTrue(dependencies.get(indexOf(PrepareAppIcon.class)).isEmpty());
+    assertFalse(dependsOn(dependencies, GenerateClasses.class, MergeResources.class));
+    assertFalse(dependsOn(dependencies, GenerateClasses.class, RunAapt.class));
+    assertFalse(dependsOn(dependencies, RunAapt.class, GenerateClasses.class));
+    assertFalse(dependsOn(dependencies, GenerateClasses.class, PrepareAppIcon.class));
+  }
+
+  @Test
+  public void testTasksWaitForTheirInputs() {
+    List<Set<Integer>> dependencies = Compiler.computeDependencies(APK_TASKS);
+    assertTrue(dependsOn(dependencies, LoadComponentInfo.class, ReadBuildInfo.class));
+    assertTrue(dependsOn(dependencies, GenerateClasses.class, AttachAarLibs.class));
+    assertTrue(dependsOn(dependencies, CompileRClasses.class, RunAapt.class));
+    assertTrue(dependsOn(dependencies, RunD8.class, GenerateClasses.class));
+    assertTrue(dependsOn(dependencies, RunD8.class, CompileRClasses.class));
+    assertTrue(dependsOn(dependencies, RunApkBuilder.class, RunD8.class));
+    assertTrue(dependsOn(dependencies, RunApkBuilder.class, RunAapt.class));
+    // Tasks that modify the same artifact keep the order in which they were added
+    assertTrue(dependsOn(dependencies, RunZipAlign.class, RunApkBuilder.class));
+    assertTrue(dependsOn(dependencies, RunApkSigner.class, RunZipAlign.class));
+  }
+
+  @Test
+  public void testTasksSharingComponentInfoAreSerialized() {
+    // AttachAarLibs removes entries from the component libraries while it runs.
+    List<Set<Integer>> dependencies = Compiler.computeDependencies(APK_TASKS);
+    assertTrue(dependsOn(dependencies, AttachAarLibs.class, AttachNativeLibs.class));
+    assertTrue(dependsOn(dependencies, AttachAarLibs.class, CreateManifest.class));
+    assertTrue(dependsOn(dependencies, AttachCompAssets.class, AttachAarLibs.class));
+  }
+
+  @Test
+  public void testUnannotatedTasksAreBarriers() {
+    List<Class<?>> tasks = Arrays.asList(PrepareAppIcon.class, Unannotated.class,
+        XmlConfig.class);
+    List<Set<Integer>> dependencies = Compiler.computeDependencies(tasks);
+    assertTrue(dependencies.get(1).contains(0));
+    assertTrue(dependencies.get(2).contains(1));
+  }
+
+  private static int indexOf(Class<?> task) {
+    return APK_TASKS.indexOf(task);
+  }
+
+  private static boolean dependsOn(List<Set<Integer>> dependencies, Class<?> task,
+      Class<?> dependency) {
+    return dependencies.get(indexOf(task)).contains(indexOf(dependency));
+  }
+}
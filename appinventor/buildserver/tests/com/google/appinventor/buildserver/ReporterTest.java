@@ -0,0 +1,83 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2024 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.buildserver;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests Reporter class.
+ */
+public class ReporterTest extends TestCase {
+  public void testProgressWithoutTasksSendsOnlyProgress() {
+    RecordingProgressReporter progress = new RecordingProgressReporter();
+    Reporter reporter = new Reporter(progress);
+    reporter.setProgress(0);
+    assertEquals(Arrays.asList("0"), progress.reports);
+  }
+
+  public void testTaskEventsAreBatchedWithProgress() {
+    RecordingProgressReporter progress = new RecordingProgressReporter();
+    Reporter reporter = new Reporter(progress);
+    reporter.taskStart("ReadBuildInfo");
+    reporter.taskSuccess(0.5);
+    reporter.taskStart("CompileJava");
+    assertTrue(progress.reports.isEmpty());
+
+    reporter.setProgress(10);
+    reporter.taskError(1.0);
+    reporter.setProgress(20);
+    reporter.setProgress(30);
+    assertEquals(Arrays.asList(
+        "10\nstage start ReadBuildInfo\nstage done ReadBuildInfo 0.5\nstage start CompileJava",
+        "20\nstage failed CompileJava",
+        "30"), progress.reports);
+  }
+
+  public void testPendingEventsAreSentOnClose() {
+    RecordingProgressReporter progress = new RecordingProgressReporter();
+    Reporter reporter = new Reporter(progress);
+    reporter.setProgress(40);
+    reporter.taskStart("CompileJava");
+    reporter.taskError(2.0);
+    reporter.close();
+    assertEquals(Arrays.asList("40", "40\nstage start CompileJava\nstage failed CompileJava"),
+        progress.reports);
+
+    // Nothing is left to send.
+    reporter.flushEvents();
+    assertEquals(2, progress.reports.size());
+  }
+
+  /**
+   * Records the reports instead of sending them to a callback URL.
+   */
+  private static class RecordingProgressReporter extends BuildServer.ProgressReporter {
+    private final List<String> reports = new ArrayList<>();
+
+    RecordingProgressReporter() {
+      super(null);
+    }
+
+    @Override
+    public void report(int progress) {
+      reports.add(Integer.toString(progress));
+    }
+
+    @Override
+    public void report(int progress, List<String> events) {
+      StringBuilder sb = new StringBuilder();
+      sb.append(progress);
+      for (String event : events) {
+        sb.append('\n').append(event);
+      }
+      reports.add(sb.toString());
+    }
+  }
+}
@@ -0,0 +1,123 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2024 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.buildserver.tasks.android;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.google.appinventor.buildserver.util.BuildCache;
+import com.google.appinventor.buildserver.util.KawaCompilerPool;
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the build cache support in {@link GenerateClasses}.
+ */
+public class GenerateClassesTest {
+  private static final String PACKAGE_PREFIX = "com.example.test.";
+  private static final String FINGERPRINT = "fingerprint";
+
+  private File root;
+  private File runtime;
+  private String classpath;
+  private BuildCache cache;
+  private KawaCompilerPool pool;
+
+  @Before
+  public void setUp() throws Exception {
+    root = Files.createTempDir();
+    runtime = writeSource("runtime.scm",
+        "(module-name com.google.youngandroid.runtime)\n(define (twice x) (* 2 x))\n");
+    classpath = new File(Class.forName("kawa.repl").getProtectionDomain().getCodeSource()
+        .getLocation().toURI()).getAbsolutePath();
+    cache = new BuildCache(new File(root, "cache"), 16 * 1024 * 1024);
+    pool = KawaCompilerPool.getInstance();
+  }
+
+  @After
+  public void tearDown() {
+    pool.shutdown();
+    FileUtils.deleteQuietly(root);
+  }
+
+  @Test
+  public void testUnchangedScreensAreRestored() throws Exception {
+    File screen1 = writeSource("Screen1.scm", "(define (answer) 42)\n");
+    File screen2 = writeSource("Screen2.scm", "(define (question) \"six times seven\")\n");
+
+    File firstClasses = new File(root, "classes1");
+    KawaCompilerPool.Result first = compile(firstClasses, screen1, screen2);
+    assertTrue(first.getOutput(), first.isSuccess());
+    assertEquals(0, cache.getHits());
+    assertEquals(3, cache.getStores());
+
+    writeSource("Screen2.scm", "(define (question) \"what do you get\")\n");
+    File secondClasses = new File(root, "classes2");
+    KawaCompilerPool.Result second = compile(secondClasses, screen1, screen2);
+    assertTrue(second.getOutput(), second.isSuccess());
+    assertEquals(1, cache.getHits());
+    assertTrue(new File(secondClasses, "com/example/test/Screen1.class").exists());
+    assertTrue(new File(secondClasses, "com/example/test/Screen2.class").exists());
+    assertTrue(Files.equal(new File(firstClasses, "com/example/test/Screen1.class"),
+        new File(secondClasses, "com/example/test/Screen1.class")));
+  }
+
+  @Test
+  public void testUnchangedProjectSkipsKawa() throws Exception {
+    File screen1 = writeSource("Screen1.scm", "(define (answer) 42)\n");
+    assertTrue(compile(new File(root, "classes1"), screen1).isSuccess());
+    long compiles = pool.getCompletedCompiles();
+
+    File classes = new File(root, "classes2");
+    assertNull(compile(classes, screen1));
+    assertEquals(compiles, pool.getCompletedCompiles());
+    assertTrue(new File(classes, "com/example/test/Screen1.class").exists());
+    assertTrue(new File(classes, "com/google/youngandroid/runtime.class").exists());
+  }
+
+  @Test
+  public void testChangedRuntimeRecompilesScreens() throws Exception {
+    File screen1 = writeSource("Screen1.scm", "(define (answer) 42)\n");
+    assertTrue(compile(new File(root, "classes1"), screen1).isSuccess());
+
+    runtime = writeSource("runtime.scm",
+        "(module-name com.google.youngandroid.runtime)\n(define (twice x) (+ x x))\n");
+    KawaCompilerPool.Result result = compile(new File(root, "classes2"), screen1);
+    assertNotNull(result);
+    assertTrue(result.getOutput(), result.isSuccess());
+    assertEquals(0, cache.getHits());
+  }
+
+  private KawaCompilerPool.Result compile(File classesDir, File... sources)
+      throws IOException, InterruptedException {
+    assertTrue(classesDir.mkdirs());
+    List<String> sourceFileNames = new ArrayList<>();
+    List<String> classFileNames = new ArrayList<>();
+    for (File source : sources) {
+      String name = source.getName().replace(".scm", ".class");
+      sourceFileNames.add(source.getAbsolutePath());
+      classFileNames.add(new File(classesDir, "com/example/test/" + name).getAbsolutePath());
+    }
+    return GenerateClasses.compileScreens(pool, cache, FINGERPRINT, classpath, 256,
+        runtime.getAbsolutePath(), classesDir, PACKAGE_PREFIX, sourceFileNames, classFileNames);
+  }
+
+  private File writeSource(String name, String content) throws IOException {
+    File source = new File(root, name);
+    Files.write(content, source, Charsets.UTF_8);
+    return source;
+  }
+}
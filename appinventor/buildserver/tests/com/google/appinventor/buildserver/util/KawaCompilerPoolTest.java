@@ -0,0 +1,121 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2024 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.buildserver.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the {@link KawaCompilerPool} class.
+ */
+public class KawaCompilerPoolTest {
+  private static final String PACKAGE_PREFIX = "com.example.test.";
+
+  private File root;
+  private File runtime;
+  private File classesDir;
+  private String classpath;
+  private KawaCompilerPool pool;
+
+  @Before
+  public void setUp() throws Exception {
+    root = Files.createTempDir();
+    classesDir = new File(root, "classes");
+    assertTrue(classesDir.mkdirs());
+    runtime = writeSource("runtime.scm", "(define (twice x) (* 2 x))\n");
+    classpath = new File(Class.forName("kawa.repl").getProtectionDomain().getCodeSource()
+        .getLocation().toURI()).getAbsolutePath();
+    pool = new KawaCompilerPool(1, 2, 60);
+  }
+
+  @After
+  public void tearDown() {
+    pool.shutdown();
+    FileUtils.deleteQuietly(root);
+  }
+
+  @Test
+  public void testWarmWorkerIsReused() throws Exception {
+    File screen1 = writeSource("Screen1.scm", "(define (answer) 42)\n");
+    File screen2 = writeSource("Screen2.scm", "(define (question) \"six times seven\")\n");
+
+    KawaCompilerPool.Result first = compile(screen1);
+    assertTrue(first.getOutput(), first.isSuccess());
+    assertTrue(new File(classesDir, "com/example/test/Screen1.class").exists());
+
+    KawaCompilerPool.Result second = compile(screen2);
+    assertTrue(second.getOutput(), second.isSuccess());
+    assertTrue(new File(classesDir, "com/example/test/Screen2.class").exists());
+    assertEquals(0, second.getStartMillis());
+    assertEquals(1, pool.getStartedWorkers());
+    assertEquals(1, pool.getReusedWorkers());
+  }
+
+  @Test
+  public void testWorkerIsRetiredAfterMaxCompiles() throws Exception {
+    File screen1 = writeSource("Screen1.scm", "(define (answer) 42)\n");
+    assertTrue(compile(screen1).isSuccess());
+    assertTrue(compile(screen1).isSuccess());
+    assertEquals(1, pool.getRetiredWorkers());
+    assertEquals(0, pool.getIdleWorkers());
+    assertTrue(compile(screen1).isSuccess());
+    assertEquals(2, pool.getStartedWorkers());
+  }
+
+  @Test
+  public void testWorkerIsRetiredAfterFailure() throws Exception {
+    File broken = writeSource("Screen1.scm", "(define (answer) 42\n");
+    KawaCompilerPool.Result result = compile(broken);
+    assertFalse(result.isSuccess());
+    assertTrue(result.getOutput(), result.getOutput().contains("Screen1.scm"));
+    assertEquals(1, pool.getFailedCompiles());
+    assertEquals(1, pool.getRetiredWorkers());
+
+    File fixed = writeSource("Screen1.scm", "(define (answer) 42)\n");
+    assertTrue(compile(fixed).isSuccess());
+    assertEquals(2, pool.getStartedWorkers());
+  }
+
+  @Test
+  public void testHungWorkerIsKilled() throws Exception {
+    pool.shutdown();
+    pool = new KawaCompilerPool(1, 2, 3);
+    runtime = writeSource("runtime.scm",
+        "(define-syntax hang (lambda (form) (let loop () (loop))))\n");
+    File hung = writeSource("Screen1.scm", "(define (answer) (hang))\n");
+    KawaCompilerPool.Result result = compile(hung);
+    assertFalse(result.isSuccess());
+    assertTrue(result.getOutput(), result.getOutput().contains("timed out"));
+    assertEquals(1, pool.getTimedOutWorkers());
+    assertEquals(1, pool.getRetiredWorkers());
+
+    File fixed = writeSource("Screen1.scm", "(define (answer) 42)\n");
+    assertTrue(compile(fixed).isSuccess());
+    assertEquals(2, pool.getStartedWorkers());
+  }
+
+  private KawaCompilerPool.Result compile(File source) throws InterruptedException {
+    return pool.compile(classpath, 256, runtime.getAbsolutePath(), classesDir, PACKAGE_PREFIX,
+        Collections.singletonList(source.getAbsolutePath()));
+  }
+
+  private File writeSource(String name, String content) throws IOException {
+    File source = new File(root, name);
+    Files.write(content, source, Charsets.UTF_8);
+    return source;
+  }
+}
@@ -0,0 +1,177 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2024 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.buildserver.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the {@link PreDexCache} class.
+ */
+public class PreDexCacheTest {
+  private File cacheDir;
+
+  @Before
+  public void setUp() {
+    cacheDir = Files.createTempDir();
+  }
+
+  @After
+  public void tearDown() {
+    FileUtils.deleteQuietly(cacheDir);
+  }
+
+  @Test
+  public void testSecondRequestIsHit() throws Exception {
+    PreDexCache cache = new PreDexCache(cacheDir, 1024);
+    CountingDexer dexer = new CountingDexer(10, null);
+    File first = cache.get("aaaa", dexer);
+    assertNotNull(first);
+    assertEquals("dex-cached-aaaa.dex", first.getName());
+    assertEquals(first, cache.get("aaaa", dexer));
+    assertEquals(1, dexer.calls.get());
+    assertEquals(1, cache.getHits());
+    assertEquals(1, cache.getMisses());
+  }
+
+  @Test
+  public void testConcurrentRequestsDexOnce() throws Exception {
+    final PreDexCache cache = new PreDexCache(cacheDir, 1024);
+    final CountDownLatch release = new CountDownLatch(1);
+    final CountingDexer dexer = new CountingDexer(10, release);
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      Callable<File> request = new Callable<File>() {
+        @Override
+        public File call() throws IOException {
+          return cache.get("bbbb", dexer);
+        }
+      };
+      Future<File> first = executor.submit(request);
+      assertTrue(dexer.started.await(10, TimeUnit.SECONDS));
+      Future<File> second = executor.submit(request);
+      while (cache.getSharedDexes() == 0) {
+        Thread.sleep(10);
+      }
+      release.countDown();
+      assertEquals(first.get(), second.get());
+      assertEquals(1, dexer.calls.get());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testLeastRecentlyUsedIsEvicted() throws Exception {
+    PreDexCache cache = new PreDexCache(cacheDir, 25, 0);
+    CountingDexer dexer = new CountingDexer(10, null);
+    File a = cache.get("aaaa", dexer);
+    File b = cache.get("bbbb", dexer);
+    cache.get("aaaa", dexer);
+    cache.get("cccc", dexer);
+    assertEquals(1, cache.getEvictions());
+    assertEquals(2, cache.getEntryCount());
+    assertTrue(a.exists());
+    assertFalse(b.exists());
+  }
+
+  @Test
+  public void testRecentlyUsedIsNotEvicted() throws Exception {
+    PreDexCache cache = new PreDexCache(cacheDir, 15);
+    CountingDexer dexer = new CountingDexer(10, null);
+    cache.get("aaaa", dexer);
+    cache.get("bbbb", dexer);
+    assertEquals(0, cache.getEvictions());
+    assertEquals(2, cache.getEntryCount());
+  }
+
+  @Test
+  public void testIndexSurvivesRestartAndDropsCorruptEntries() throws Exception {
+    PreDexCache cache = new PreDexCache(cacheDir, 1024);
+    CountingDexer dexer = new CountingDexer(10, null);
+    cache.get("aaaa", dexer);
+    File b = cache.get("bbbb", dexer);
+    assertTrue(new File(cacheDir, PreDexCache.INDEX_FILE).isFile());
+    Files.write("truncated", b, Charsets.UTF_8);
+
+    PreDexCache reloaded = new PreDexCache(cacheDir, 1024);
+    assertEquals(1, reloaded.getEntryCount());
+    assertEquals(10, reloaded.getSizeBytes());
+    assertFalse(b.exists());
+    reloaded.get("aaaa", dexer);
+    assertEquals(1, reloaded.getHits());
+    assertEquals(2, dexer.calls.get());
+  }
+
+  @Test
+  public void testFailedDexIsNotCached() throws Exception {
+    PreDexCache cache = new PreDexCache(cacheDir, 1024);
+    PreDexCache.Dexer failing = new PreDexCache.Dexer() {
+      @Override
+      public File dex(File outputDir) {
+        return null;
+      }
+    };
+    assertNull(cache.get("aaaa", failing));
+    assertEquals(1, cache.getFailures());
+    assertEquals(0, cache.getEntryCount());
+  }
+
+  /**
+   * Writes a fake dex file of the given size, optionally waiting for a signal first.
+   */
+  private static class CountingDexer implements PreDexCache.Dexer {
+    private final int size;
+    private final CountDownLatch release;
+    private final CountDownLatch started = new CountDownLatch(1);
+    private final AtomicInteger calls = new AtomicInteger(0);
+
+    CountingDexer(int size, CountDownLatch release) {
+      this.size = size;
+      this.release = release;
+    }
+
+    @Override
+    public File dex(File outputDir) throws IOException {
+      calls.incrementAndGet();
+      started.countDown();
+      if (release != null) {
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          throw new IOException(e);
+        }
+      }
+      File output = new File(outputDir, "classes.dex");
+      byte[] content = new byte[size];
+      content[0] = 'd';
+      content[1] = 'e';
+      content[2] = 'x';
+      content[3] = '\n';
+      Files.write(content, output);
+      return output;
+    }
+  }
+}
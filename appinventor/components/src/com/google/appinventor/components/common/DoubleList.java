@@ -0,0 +1,188 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2024 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.common;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * A list of doubles stored in a primitive array. Indexed access takes constant time, and the
+ * values are only boxed when they are read through the {@link List} interface, so numeric code
+ * should use {@link #getDouble(int)} and the bulk methods instead.
+ */
+public final class DoubleList extends AbstractList<Double> implements RandomAccess {
+  private double[] values;
+  private int size = 0;
+
+  /**
+   * Creates an empty list.
+   */
+  public DoubleList() {
+    this(10);
+  }
+
+  /**
+   * Creates an empty list with room for the given number of values.
+   *
+   * @param capacity the number of values the list can hold before it grows
+   */
+  public DoubleList(int capacity) {
+    values = new double[capacity];
+  }
+
+  /**
+   * Creates a list holding a copy of the given values.
+   *
+   * @param values the values of the list
+   */
+  public DoubleList(double[] values) {
+    this.values = Arrays.copyOf(values, values.length);
+    size = values.length;
+  }
+
+  /**
+   * Returns the values of a list of doubles as an array. This is a single copy for a
+   * DoubleList.
+   *
+   * @param list the list of values
+   * @return a new array of the values
+   */
+  public static double[] toDoubleArray(List<Double> list) {
+    if (list instanceof DoubleList) {
+      return ((DoubleList) list).toDoubleArray();
+    }
+    double[] result = new double[list.size()];
+    int i = 0;
+    for (Double value : list) {
+      result[i++] = value;
+    }
+    return result;
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Returns the value at the index without boxing it.
+   *
+   * @param index the index of the value
+   * @return the value
+   */
+  public double getDouble(int index) {
+    checkIndex(index, size);
+    return values[index];
+  }
+
+  @Override
+  public Double get(int index) {
+    return getDouble(index);
+  }
+
+  @Override
+  public Double set(int index, Double value) {
+    checkIndex(index, size);
+    double previous = values[index];
+    values[index] = value;
+    return previous;
+  }
+
+  /**
+   * Appends a value to the list without boxing it.
+   *
+   * @param value the value to append
+   */
+  public void addDouble(double value) {
+    ensureCapacity(size + 1);
+    values[size++] = value;
+  }
+
+  @Override
+  public boolean add(Double value) {
+    addDouble(value);
+    return true;
+  }
+
+  @Override
+  public void add(int index, Double value) {
+    checkIndex(index, size + 1);
+    ensureCapacity(size + 1);
+    System.arraycopy(values, index, values, index + 1, size - index);
+    values[index] = value;
+    size++;
+    modCount++;
+  }
+
+  @Override
+  public Double remove(int index) {
+    checkIndex(index, size);
+    double previous = values[index];
+    System.arraycopy(values, index + 1, values, index, size - index - 1);
+    size--;
+    modCount++;
+    return previous;
+  }
+
+  @Override
+  public void clear() {
+    size = 0;
+    modCount++;
+  }
+
+  /**
+   * Returns a copy of the values as an array.
+   */
+  public double[] toDoubleArray() {
+    return Arrays.copyOf(values, size);
+  }
+
+  /**
+   * Returns the sum of the values.
+   */
+  public double sum() {
+    double sum = 0;
+    for (int i = 0; i < size; i++) {
+      sum += values[i];
+    }
+    return sum;
+  }
+
+  /**
+   * Returns the mean of the values, or NaN if the list is empty.
+   */
+  public double mean() {
+    return sum() / size;
+  }
+
+  /**
+   * Returns the population variance of the values, or NaN if the list is empty.
+   */
+  public double variance() {
+    double mean = mean();
+    double variance = 0;
+    for (int i = 0; i < size; i++) {
+      double delta = values[i] - mean;
+      variance += delta * delta;
+    }
+    return variance / size;
+  }
+
+  private void ensureCapacity(int capacity) {
+    if (capacity > values.length) {
+      values = Arrays.copyOf(values, Math.max(capacity, 2 * values.length));
+    }
+    modCount++;
+  }
+
+  private void checkIndex(int index, int limit) {
+    if (index < 0 || index >= limit) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+    }
+  }
+}
@@ -5,7 +5,6 @@
 
 package com.google.appinventor.components.common;
 
-import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -27,6 +26,8 @@ public class LinearRegression implements TrendlineCalculator {
       throw new IllegalStateException("Must have equal X and Y data points");
     }
     int n = x.size();
+    double[] xs = DoubleList.toDoubleArray(x);
+    double[] ys = DoubleList.toDoubleArray(y);
 
     double sumx = 0.0;
     double sumy = 0.0;
@@ -34,28 +35,27 @@ public class LinearRegression implements TrendlineCalculator {
     double squareSumX = 0.0;
     double squareSumY = 0.0;
     for (int i = 0; i < n; i++) {
-      sumx += x.get(i);
-      sumXY = sumXY + x.get(i) * y.get(i);
-      sumy += y.get(i);
-      squareSumX = squareSumX + x.get(i) * x.get(i);
-      squareSumY = squareSumY + y.get(i) * y.get(i);
+      sumx += xs[i];
+      sumXY = sumXY + xs[i] * ys[i];
+      sumy += ys[i];
+      squareSumX = squareSumX + xs[i] * xs[i];
+      squareSumY = squareSumY + ys[i] * ys[i];
     }
     double xmean = sumx / n;
     double ymean = sumy / n;
 
     double xxmean = 0.0;
     double xymean = 0.0;
-    List<Double> predictions = new ArrayList<>();
     for (int i = 0; i < n; i++) {
-      xxmean += (x.get(i) - xmean) * (x.get(i) - xmean);
-      xymean += (x.get(i) - xmean) * (y.get(i) - ymean);
+      xxmean += (xs[i] - xmean) * (xs[i] - xmean);
+      xymean += (xs[i] - xmean) * (ys[i] - ymean);
     }
     double slope = xymean / xxmean;
     double intercept = ymean - slope * xmean;
 
-    for (Double value : x) {
-      double prediction = slope * value + intercept;
-      predictions.add(prediction);
+    DoubleList predictions = new DoubleList(n);
+    for (double value : xs) {
+      predictions.addDouble(slope * value + intercept);
     }
 
     // use formula for calculating correlation coefficient.
@@ -603,7 +603,14 @@ public class YaVersion {
   // - LISTVIEW_COMPONENT_VERSION was incremented to 8.
   // For YOUNG_ANDROID_VERSION 231:
   // - LISTVIEW_COMPONENT_VERSION was incremented to 9.
-  public static final int YOUNG_ANDROID_VERSION = 231;
+  // For YOUNG_ANDROID_VERSION 232:
+  // - CANVAS_COMPONENT_VERSION was incremented to 16.
+  // For YOUNG_ANDROID_VERSION 233:
+  // - BLUETOOTHCLIENT_COMPONENT_VERSION was incremented to 9.
+  // - BLUETOOTHSERVER_COMPONENT_VERSION was incremented to 6.
+  // For YOUNG_ANDROID_VERSION 234:
+  // - WEB_COMPONENT_VERSION was incremented to 10.
+  public static final int YOUNG_ANDROID_VERSION = 234;
 
   // ............................... Blocks Language Version Number ...............................
 
@@ -808,7 +815,10 @@ public class YaVersion {
   // - The BluetoothClient.PollingRate property was added.
   // For BLUETOOTHCLIENT_COMPONENT_VERSION 8:
   // - The BluetoothClient.NoLocationNeeded property was added.
-  public static final int BLUETOOTHCLIENT_COMPONENT_VERSION = 8;
+  // For BLUETOOTHCLIENT_COMPONENT_VERSION 9:
+  // - The BluetoothClient.ReceiveInBackground and MessageSize properties were added.
+  // - The BluetoothClient.DataReceived event was added.
+  public static final int BLUETOOTHCLIENT_COMPONENT_VERSION = 9;
 
   // For BLUETOOTHSERVER_COMPONENT_VERSION 2:
   // - The BluetoothServer.Enabled property was added.
@@ -818,7 +828,10 @@ public class YaVersion {
   // - The BluetoothServer.DelimiterByte property was added.
   // For BLUETOOTHSERVER_COMPONENT_VERSION 5:
   // - The BluetoothServer.Secure property was added.
-  public static final int BLUETOOTHSERVER_COMPONENT_VERSION = 5;
+  // For BLUETOOTHSERVER_COMPONENT_VERSION 6:
+  // - The BluetoothServer.ReceiveInBackground and MessageSize properties were added.
+  // - The BluetoothServer.DataReceived event was added.
+  public static final int BLUETOOTHSERVER_COMPONENT_VERSION = 6;
 
   // For BUTTON_COMPONENT_VERSION 2:
   // - The Alignment property was renamed to TextAlignment.
@@ -879,7 +892,9 @@ public class YaVersion {
   // -TapThreshold was added
   // For CANVAS_COMPONENT_VERSION 15
   // - Assets helper block was added.
-  public static final int CANVAS_COMPONENT_VERSION = 15;
+  // For CANVAS_COMPONENT_VERSION 16
+  // - FrameSynchronizedAnimation was added
+  public static final int CANVAS_COMPONENT_VERSION = 16;
 
   // For CHART_COMPONENT_VERSION 2:
   // - The XFromZero and YFromZero properties were added
@@ -1590,7 +1605,9 @@ public class YaVersion {
   // - PATCH methods added (PatchText, PatchTextWithEncoding, and PatchFile).
   // For WEB_COMPONENT_VERSION 9:
   // - Added property ResponseTextEncoding
-  public static final int WEB_COMPONENT_VERSION = 9;
+  // For WEB_COMPONENT_VERSION 10:
+  // - Added property UseCaches
+  public static final int WEB_COMPONENT_VERSION = 10;
 
   // For WEBVIEWER_COMPONENT_VERSION 2:
   // - The CanGoForward and CanGoBack methods were added
@@ -1690,12 +1707,12 @@ public class YaVersion {
 
   public static final String ACCEPTABLE_COMPANION_PACKAGE = "edu.mit.appinventor.aicompanion3";
 
-  public static final String PREFERRED_COMPANION = "2.73a";
+  public static final String PREFERRED_COMPANION = "2.74";
   public static final String EMULATOR_UPDATE_URL = ""; // Should be an APK
   public static final String COMPANION_UPDATE_URL = "";
   public static final String COMPANION_UPDATE_URL1 = "";
   public static final String COMPANION_UPDATE_EMULATOR_URL = "";
-  public static final String [] ACCEPTABLE_COMPANIONS = { "2.73a", "2.73au" };
+  public static final String [] ACCEPTABLE_COMPANIONS = { "2.74", "2.74u" };
 
   // Splash Screen Values
   public static final int SPLASH_SURVEY = 1;
@@ -10,6 +10,7 @@ import com.google.appinventor.components.annotations.DesignerComponent;
 import com.google.appinventor.components.annotations.SimpleFunction;
 import com.google.appinventor.components.annotations.SimpleObject;
 import com.google.appinventor.components.common.ComponentCategory;
+import com.google.appinventor.components.common.DoubleList;
 import com.google.appinventor.components.common.YaVersion;
 import com.google.appinventor.components.runtime.util.YailList;
 import gnu.lists.LList;
@@ -55,29 +56,19 @@ public final class AnomalyDetection extends DataCollection<ComponentContainer, D
     List<List<?>> anomalies = new ArrayList<>();
 
     LList dataListValues = (LList) dataList.getCdr();
-    List<Double> data = castToDouble(dataListValues);
+    DoubleList data = castToDouble(dataListValues);
 
     // Calculate mean and standard deviation
-    double sum = 0;
-    for (int i = 0; i < data.size(); i++) {
-      sum += data.get(i);
-    }
-    double mean = sum / data.size();
-    // The variance
-    double variance = 0;
-    for (int i = 0; i < data.size(); i++) {
-      variance += Math.pow(data.get(i) - mean, 2);
-    }
-    variance /= data.size();
-
-    double sd = Math.sqrt(variance);
+    double mean = data.mean();
+    double sd = Math.sqrt(data.variance());
 
     // Detect anomalies using Z-score
     for (int i = 0; i < data.size(); i++) {
       // The z-score is a measure of how many standard deviations a data point is away from the mean
-      double zScore = Math.abs((data.get(i) - mean) / sd);
+      double value = data.getDouble(i);
+      double zScore = Math.abs((value - mean) / sd);
       if (zScore > threshold) {
-        anomalies.add(Arrays.asList(i + 1, data.get(i)));
+        anomalies.add(Arrays.asList(i + 1, value));
       }
     }
     return anomalies;
@@ -132,10 +123,10 @@ public final class AnomalyDetection extends DataCollection<ComponentContainer, D
       + " This block will return the x and y value pairs of your data without the anomaly")
   public List<List<?>> CleanData(final YailList anomaly, YailList xList, YailList yList) {
     LList xValues = (LList) xList.getCdr();
-    List<Double> xData = castToDouble(xValues);
+    DoubleList xData = castToDouble(xValues);
 
     LList yValues = (LList) yList.getCdr();
-    List<Double> yData = castToDouble(yValues);
+    DoubleList yData = castToDouble(yValues);
 
     if (xData.size() != yData.size()) {
       throw new IllegalStateException("Must have equal X and Y data points");
@@ -168,8 +159,8 @@ public final class AnomalyDetection extends DataCollection<ComponentContainer, D
   public static double getAnomalyIndex(YailList anomaly) {
     if (!anomaly.isEmpty()) {
       LList anomalyValue = (LList) anomaly.getCdr();
-      List<Double> anomalyNr = castToDouble(anomalyValue);
-      return anomalyNr.get(0);
+      DoubleList anomalyNr = castToDouble(anomalyValue);
+      return anomalyNr.getDouble(0);
     } else {
       throw new IllegalStateException("Must have equal X and Y data points");
     }
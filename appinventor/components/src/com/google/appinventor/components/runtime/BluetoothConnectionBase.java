@@ -9,6 +9,7 @@ package com.google.appinventor.components.runtime;
 import android.bluetooth.BluetoothAdapter;
 import android.bluetooth.BluetoothSocket;
 import android.os.Build;
+import android.os.Handler;
 import android.util.Log;
 
 import com.google.appinventor.components.annotations.DesignerProperty;
@@ -20,8 +21,11 @@ import com.google.appinventor.components.annotations.SimpleProperty;
 
 import com.google.appinventor.components.common.PropertyTypeConstants;
 
+import com.google.appinventor.components.runtime.util.ByteRingBuffer;
 import com.google.appinventor.components.runtime.util.ErrorMessages;
+import com.google.appinventor.components.runtime.util.JellybeanUtil;
 import com.google.appinventor.components.runtime.util.SUtil;
+import com.google.appinventor.components.runtime.util.SdkLevel;
 import com.google.appinventor.components.runtime.util.YailList;
 
 import java.io.BufferedInputStream;
@@ -34,6 +38,7 @@ import java.io.UnsupportedEncodingException;
 import java.nio.ByteOrder;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * An abstract base class for the BluetoothClient and BluetoothServer
@@ -45,6 +50,15 @@ import java.util.List;
 public abstract class BluetoothConnectionBase extends AndroidNonvisibleComponent
     implements Component, OnDestroyListener, Deleteable {
 
+  // The number of bytes the background reader can hold until the app receives them.
+  private static final int RECEIVE_BUFFER_SIZE = 64 * 1024;
+
+  // The number of bytes the background reader asks the input stream for at a time.
+  private static final int READ_CHUNK_SIZE = 1024;
+
+  // How long the background reader waits for the app to receive data when its buffer is full.
+  private static final int FULL_BUFFER_WAIT_MILLIS = 10;
+
   protected final String logTag;
   private final List<BluetoothConnectionListener> bluetoothConnectionListeners =
       new ArrayList<>();
@@ -60,6 +74,18 @@ public abstract class BluetoothConnectionBase extends AndroidNonvisibleComponent
   private InputStream inputStream;
   private OutputStream outputStream;
 
+  private final Handler handler;
+  private boolean receiveInBackground;
+  private volatile int messageSize;
+
+  // The reader of the current connection and the bytes it has read, or null if the current
+  // connection is read from the input stream directly.
+  private BackgroundReader backgroundReader;
+  private volatile ByteRingBuffer receiveBuffer;
+
+  // Whether the received messages will be delivered on an upcoming frame.
+  private final AtomicBoolean messagesScheduled = new AtomicBoolean();
+
   /**
    * Creates a new BluetoothConnectionBase.
    */
@@ -73,6 +99,7 @@ public abstract class BluetoothConnectionBase extends AndroidNonvisibleComponent
     this.logTag = logTag;
     this.disconnectOnError = false;
     this.adapter = SUtil.getAdapter(form);
+    this.handler = new Handler();
 
     HighByteFirst(false); // Lego Mindstorms NXT is low-endian, so false is a good default.
     CharacterEncoding("UTF-8");
@@ -166,6 +193,9 @@ public abstract class BluetoothConnectionBase extends AndroidNonvisibleComponent
     socket = bluetoothSocket;
     inputStream = new BufferedInputStream(socket.getInputStream());
     outputStream = new BufferedOutputStream(socket.getOutputStream());
+    if (receiveInBackground) {
+      startBackgroundReader();
+    }
     fireAfterConnectEvent();
   }
 
@@ -174,6 +204,7 @@ public abstract class BluetoothConnectionBase extends AndroidNonvisibleComponent
    */
   @SimpleFunction(description = "Disconnect from the connected Bluetooth device.")
   public final void Disconnect() {
+    stopBackgroundReader();
     if (socket != null) {
       fireBeforeDisconnectEvent();
       try {
@@ -320,6 +351,64 @@ public abstract class BluetoothConnectionBase extends AndroidNonvisibleComponent
     return delimiter;
   }
 
+  /**
+   * Specifies whether data is read from the connected device on a background thread. When
+   * `true`{:.logic.block}, the receive methods return only data that has already arrived and never
+   * wait for more, and the DataReceived event reports the messages described by MessageSize.
+   * Changes take effect on the next connection.
+   *
+   * @param receiveInBackground {@code true} to read data on a background thread
+   */
+  @DesignerProperty(editorType = PropertyTypeConstants.PROPERTY_TYPE_BOOLEAN,
+      defaultValue = "False")
+  @SimpleProperty
+  public void ReceiveInBackground(boolean receiveInBackground) {
+    this.receiveInBackground = receiveInBackground;
+  }
+
+  /**
+   * Returns whether data is read from the connected device on a background thread.
+   */
+  @SimpleProperty(category = PropertyCategory.BEHAVIOR)
+  public boolean ReceiveInBackground() {
+    return receiveInBackground;
+  }
+
+  /**
+   * Specifies the messages reported by the DataReceived event when ReceiveInBackground is
+   * `true`{:.logic.block}. If positive, each message is a list of that many unsigned bytes. If
+   * negative, each message is the text up to the DelimiterByte. If 0, the default, the event is
+   * not used and data is left for the receive methods.
+   */
+  @DesignerProperty(editorType = PropertyTypeConstants.PROPERTY_TYPE_INTEGER,
+      defaultValue = "0")
+  @SimpleProperty
+  public void MessageSize(int size) {
+    messageSize = size;
+    scheduleMessages();
+  }
+
+  /**
+   * Returns the size of the messages reported by the DataReceived event.
+   */
+  @SimpleProperty(category = PropertyCategory.BEHAVIOR)
+  public int MessageSize() {
+    return messageSize;
+  }
+
+  /**
+   * Indicates that messages were received from the connected device while ReceiveInBackground is
+   * `true`{:.logic.block} and MessageSize is not 0. The event is raised at most once per display
+   * frame, with all of the messages that arrived since the last one.
+   *
+   * @param messages the list of messages received, in order
+   */
+  @SimpleEvent(description = "Indicates that messages were received from the connected " +
+      "Bluetooth device. Used when ReceiveInBackground is true and MessageSize is not 0.")
+  public void DataReceived(YailList messages) {
+    EventDispatcher.dispatchEvent(this, "DataReceived", messages);
+  }
+
   /**
    * Converts the given text to bytes and writes them to the output stream.
    *
@@ -564,6 +653,11 @@ public abstract class BluetoothConnectionBase extends AndroidNonvisibleComponent
       return 0;
     }
 
+    ByteRingBuffer buffer = receiveBuffer;
+    if (buffer != null) {
+      return buffer.size();
+    }
+
     try {
       return inputStream.available();
     } catch (IOException e) {
@@ -589,16 +683,20 @@ public abstract class BluetoothConnectionBase extends AndroidNonvisibleComponent
       "If numberOfBytes is less than 0, read until a delimiter byte value is received.")
   public String ReceiveText(int numberOfBytes) {
     byte[] bytes = read("ReceiveText", numberOfBytes);
+    if (numberOfBytes < 0 && bytes.length > 0) {
+      // bytes contains a trailing delimiter byte that we ignore when converting to String.
+      return decode(bytes, bytes.length - 1);
+    } else {
+      return decode(bytes, bytes.length);
+    }
+  }
+
+  private String decode(byte[] bytes, int length) {
     try {
-      if (numberOfBytes < 0) {
-        // bytes contains a trailing delimiter byte that we ignore when converting to String.
-        return new String(bytes, 0, bytes.length - 1, encoding);
-      } else {
-        return new String(bytes, encoding);
-      }
+      return new String(bytes, 0, length, encoding);
     } catch (UnsupportedEncodingException e) {
       Log.w(logTag, "UnsupportedEncodingException: " + e.getMessage());
-      return new String(bytes);
+      return new String(bytes, 0, length);
     }
   }
 
@@ -751,7 +849,10 @@ public abstract class BluetoothConnectionBase extends AndroidNonvisibleComponent
       "Bluetooth device. If numberOfBytes is less than 0, read until a delimiter byte value " +
       "is received.")
   public List<Integer> ReceiveUnsignedBytes(int numberOfBytes) {
-    byte[] bytes = read("ReceiveUnsignedBytes", numberOfBytes);
+    return toUnsignedList(read("ReceiveUnsignedBytes", numberOfBytes));
+  }
+
+  private static List<Integer> toUnsignedList(byte[] bytes) {
     List<Integer> list = new ArrayList<Integer>();
     for (int i = 0; i < bytes.length; i++) {
       int n = bytes[i] & 0xFF;
@@ -766,6 +867,10 @@ public abstract class BluetoothConnectionBase extends AndroidNonvisibleComponent
    * If numberOfBytes is negative, this method reads until a delimiter byte
    * value is read. The delimiter byte is included in the returned array.
    *
+   * When the connection is read in the background, this method returns the
+   * requested bytes only if all of them have already been received, and an
+   * empty array otherwise.
+   *
    * @param functionName the name of the SimpleFunction calling this method
    * @param numberOfBytes the number of bytes to read; a negative number
    *        indicates to read until a delimiter byte value is read
@@ -777,6 +882,14 @@ public abstract class BluetoothConnectionBase extends AndroidNonvisibleComponent
       return new byte[0];
     }
 
+    ByteRingBuffer received = receiveBuffer;
+    if (received != null) {
+      synchronized (received) {
+        int length = numberOfBytes >= 0 ? numberOfBytes : received.indexOf(delimiter) + 1;
+        return length <= received.size() ? received.read(length) : new byte[0];
+      }
+    }
+
     ByteArrayOutputStream buffer = new ByteArrayOutputStream();
 
     if (numberOfBytes >= 0) {
@@ -832,6 +945,159 @@ public abstract class BluetoothConnectionBase extends AndroidNonvisibleComponent
     return buffer.toByteArray();
   }
 
+  /**
+   * Starts reading the input stream of the current connection on a background thread.
+   */
+  void startBackgroundReader() {
+    stopBackgroundReader();
+    receiveBuffer = new ByteRingBuffer(RECEIVE_BUFFER_SIZE);
+    backgroundReader = new BackgroundReader(inputStream, receiveBuffer);
+    backgroundReader.start();
+  }
+
+  private void stopBackgroundReader() {
+    if (backgroundReader != null) {
+      backgroundReader.finish();
+      backgroundReader = null;
+    }
+    receiveBuffer = null;
+  }
+
+  /*
+   * Requests that the messages received be delivered on the next frame, unless a request is
+   * already pending. May be called on any thread.
+   */
+  private void scheduleMessages() {
+    if (messageSize == 0 || receiveBuffer == null) {
+      return;
+    }
+    if (!messagesScheduled.compareAndSet(false, true)) {
+      return;
+    }
+    handler.post(new Runnable() {
+      @Override
+      public void run() {
+        if (SdkLevel.getLevel() >= SdkLevel.LEVEL_JELLYBEAN) {
+          JellybeanUtil.postFrameCallback(deliverMessages);
+        } else {
+          deliverMessages.run();
+        }
+      }
+    });
+  }
+
+  private final Runnable deliverMessages = new Runnable() {
+    @Override
+    public void run() {
+      messagesScheduled.set(false);
+      ByteRingBuffer buffer = receiveBuffer;
+      int size = messageSize;
+      if (buffer == null || size == 0) {
+        return;
+      }
+      List<Object> messages = new ArrayList<Object>();
+      synchronized (buffer) {
+        if (size > 0) {
+          while (buffer.size() >= size) {
+            messages.add(YailList.makeList(toUnsignedList(buffer.read(size))));
+          }
+        } else {
+          int index;
+          while ((index = buffer.indexOf(delimiter)) >= 0) {
+            byte[] bytes = buffer.read(index + 1);
+            messages.add(decode(bytes, index));
+          }
+          if (buffer.size() == buffer.capacity()) {
+            // The buffer is full without a delimiter. Deliver it rather than stall the reader.
+            byte[] bytes = buffer.read(buffer.size());
+            messages.add(decode(bytes, bytes.length));
+          }
+        }
+      }
+      if (!messages.isEmpty()) {
+        DataReceived(YailList.makeList(messages));
+      }
+    }
+  };
+
+  /*
+   * Reports an error of a background reader, unless the connection it was reading has been
+   * closed since.
+   */
+  private void backgroundReaderError(final BackgroundReader reader, final int errorNumber,
+      final Object... messageArgs) {
+    handler.post(new Runnable() {
+      @Override
+      public void run() {
+        if (reader != backgroundReader) {
+          return;
+        }
+        if (disconnectOnError) {
+          Disconnect();
+        }
+        bluetoothError("DataReceived", errorNumber, messageArgs);
+      }
+    });
+  }
+
+  /**
+   * Copies the bytes of a connection's input stream into a {@link ByteRingBuffer} as they
+   * arrive, so that receiving never has to wait for the device.
+   */
+  private class BackgroundReader extends Thread {
+    private final InputStream in;
+    private final ByteRingBuffer buffer;
+    private volatile boolean finished = false;
+
+    BackgroundReader(InputStream in, ByteRingBuffer buffer) {
+      super("BluetoothReader");
+      this.in = in;
+      this.buffer = buffer;
+    }
+
+    /**
+     * Stops the reader. Closing the connection ends a read in progress.
+     */
+    void finish() {
+      finished = true;
+      interrupt();
+    }
+
+    @Override
+    public void run() {
+      byte[] chunk = new byte[READ_CHUNK_SIZE];
+      try {
+        while (!finished) {
+          int count = in.read(chunk);
+          if (count == -1) {
+            if (!finished) {
+              backgroundReaderError(this, ErrorMessages.ERROR_BLUETOOTH_END_OF_STREAM);
+            }
+            return;
+          }
+          int written = 0;
+          while (!finished) {
+            written += buffer.write(chunk, written, count - written);
+            scheduleMessages();
+            if (written == count) {
+              break;
+            }
+            // The buffer is full; wait for the app to receive some of it.
+            Thread.sleep(FULL_BUFFER_WAIT_MILLIS);
+          }
+        }
+      } catch (IOException e) {
+        if (!finished) {
+          Log.e(logTag, "IO Exception during Reading " + e.getMessage());
+          backgroundReaderError(this, ErrorMessages.ERROR_BLUETOOTH_UNABLE_TO_READ,
+              e.getMessage());
+        }
+      } catch (InterruptedException e) {
+        // Finished while waiting for room in the buffer.
+      }
+    }
+  }
+
   // OnDestroyListener implementation
 
   @Override
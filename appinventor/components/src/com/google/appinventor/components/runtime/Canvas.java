@@ -25,6 +25,8 @@ import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.ColorDrawable;
 import android.graphics.drawable.Drawable;
 
+import android.os.Handler;
+
 import android.text.TextUtils;
 
 import android.util.Base64;
@@ -35,6 +37,7 @@ import android.view.MotionEvent;
 import android.view.View;
 
 import androidx.annotation.RequiresApi;
+import androidx.annotation.VisibleForTesting;
 
 import com.google.appinventor.components.annotations.Asset;
 import com.google.appinventor.components.annotations.DesignerComponent;
@@ -153,6 +156,14 @@ public final class Canvas extends AndroidViewComponent implements ComponentConta
   private String backgroundImagePath = "";
   private int textAlignment;
   private boolean extendMovesOutsideCanvas = false;
+
+  // Whether sprites are moved together once per frame, by animator,
+  // rather than by their own timers.
+  private boolean frameSynchronizedAnimation = false;
+  private SpriteAnimator animator;
+
+  // Whether animateFrame() is moving the sprites.
+  private boolean animatingFrame;
   
   /**
    * The number of pixels right, left, up, or down, a sequence of drags must
@@ -179,6 +190,9 @@ public final class Canvas extends AndroidViewComponent implements ComponentConta
   // sorted by increasing sprite.Z().
   private final List<Sprite> sprites;
 
+  // Broad phase of collision detection: finds the sprites near a sprite.
+  private final SpriteGrid spriteGrid;
+
   // Handle touches and drags
   private final MotionEventParser motionEventParser;
 
@@ -768,6 +782,7 @@ public final class Canvas extends AndroidViewComponent implements ComponentConta
     TapThreshold(DEFAULT_TAP_THRESHOLD);
 
     sprites = new LinkedList<Sprite>();
+    spriteGrid = new SpriteGrid();
     motionEventParser = new MotionEventParser();
     mGestureDetector = new GestureDetector(context, new FlingGestureListener());
     if (FileUtil.needsWritePermission(form.DefaultFileScope())) {
@@ -822,12 +837,11 @@ public final class Canvas extends AndroidViewComponent implements ComponentConta
   // Implementation of container methods
 
   /**
-   * Adds a sprite to this Canvas by placing it in {@link #sprites},
-   * which it ensures remains sorted.
+   * Places a sprite in {@link #sprites}, which it ensures remains sorted.
    *
    * @param sprite the sprite to add
    */
-  void addSprite(Sprite sprite) {
+  private void insertSprite(Sprite sprite) {
     // Add before first element with greater Z value.
     // This ensures not only that items are in increasing Z value
     // but that sprites whose Z values are always equal are
@@ -845,6 +859,16 @@ public final class Canvas extends AndroidViewComponent implements ComponentConta
     sprites.add(sprite);
   }
 
+  /**
+   * Adds a sprite to {@link #sprites} and {@link #spriteGrid}.
+   *
+   * @param sprite the sprite to add
+   */
+  void addSprite(Sprite sprite) {
+    insertSprite(sprite);
+    spriteGrid.add(sprite);
+  }
+
   /**
    * Removes a sprite from this Canvas.
    *
@@ -852,6 +876,7 @@ public final class Canvas extends AndroidViewComponent implements ComponentConta
    */
   void removeSprite(Sprite sprite) {
     sprites.remove(sprite);
+    spriteGrid.remove(sprite);
   }
 
   /**
@@ -905,10 +930,63 @@ public final class Canvas extends AndroidViewComponent implements ComponentConta
    * @param sprite the sprite whose location, size, or appearance has changed
    */
   void registerChange(Sprite sprite) {
+    if (animatingFrame) {
+      // animateFrame() redraws and checks for collisions once every
+      // sprite has moved.
+      spriteGrid.update(sprite);
+      return;
+    }
     view.invalidate();
+    spriteGrid.update(sprite);
     findSpriteCollisions(sprite);
   }
 
+  /**
+   * Moves all of the sprites that are due to move by the given time, then
+   * checks the moved sprites for collisions and redraws the view once.
+   * Called for each frame while {@link #FrameSynchronizedAnimation()} is
+   * {@code true}.
+   *
+   * @param now the time of the frame, in milliseconds of uptime
+   */
+  void animateFrame(long now) {
+    List<Sprite> moved = null;
+    animatingFrame = true;
+    try {
+      for (Sprite sprite : sprites) {
+        if (sprite.moveForFrame(now)) {
+          if (moved == null) {
+            moved = new ArrayList<Sprite>();
+          }
+          moved.add(sprite);
+        }
+      }
+    } finally {
+      animatingFrame = false;
+    }
+    if (moved != null) {
+      for (Sprite sprite : moved) {
+        findSpriteCollisions(sprite);
+      }
+      view.invalidate();
+    }
+  }
+
+  /**
+   * Indicates that a sprite has changed its location or size without
+   * checking for collisions, as happens before the sprite is initialized.
+   *
+   * @param sprite the sprite whose location or size has changed
+   */
+  void registerMove(Sprite sprite) {
+    spriteGrid.update(sprite);
+  }
+
+  @VisibleForTesting
+  SpriteGrid getSpriteGrid() {
+    return spriteGrid;
+  }
+
 
   // Methods for detecting collisions
 
@@ -925,10 +1003,14 @@ public final class Canvas extends AndroidViewComponent implements ComponentConta
    * and
    * {@link com.google.appinventor.components.runtime.Sprite#Enabled()}.
    *
+   * <p>Only the sprites that {@link #spriteGrid} finds near the moved sprite,
+   * and those already registered as colliding with it, are tested, in the
+   * order of {@link #sprites}.
+   *
    * @param movedSprite the sprite that has just changed position
    */
   protected void findSpriteCollisions(Sprite movedSprite) {
-    for (Sprite sprite : sprites) {
+    for (Sprite sprite : spriteGrid.getCandidates(movedSprite, movedSprite.getCollisions())) {
       if (sprite != movedSprite) {
         // Check whether we already raised an event for their collision.
         if (movedSprite.CollidingWith(sprite)) {
@@ -1272,6 +1354,48 @@ public final class Canvas extends AndroidViewComponent implements ComponentConta
     extendMovesOutsideCanvas = extend;   
   }
 
+  /**
+   * Determines whether the sprites on the `Canvas` are moved together once
+   * per screen refresh rather than each by its own timer. Sprites still move
+   * their `Speed` in pixels every `Interval` milliseconds, but collisions
+   * are checked and the `Canvas` is redrawn only once per frame, which makes
+   * animations with many sprites smoother and uses less of the phone's
+   * processor.
+   */
+  @SimpleProperty(description =
+      "Determines whether the sprites are moved together once per screen " +
+      "refresh, rather than each by its own timer. This makes animations with " +
+      "many sprites smoother and less demanding on slower phones.",
+      category = PropertyCategory.BEHAVIOR)
+  public boolean FrameSynchronizedAnimation() {
+    return frameSynchronizedAnimation;
+  }
+
+  /**
+   * @suppressdoc
+   * @param synchronize
+   */
+  @DesignerProperty(editorType = PropertyTypeConstants.PROPERTY_TYPE_BOOLEAN,
+      defaultValue = "False")
+  @SimpleProperty
+  public void FrameSynchronizedAnimation(boolean synchronize) {
+    if (frameSynchronizedAnimation == synchronize) {
+      return;
+    }
+    frameSynchronizedAnimation = synchronize;
+    for (Sprite sprite : sprites) {
+      sprite.setFrameDriven(synchronize);
+    }
+    if (synchronize) {
+      if (animator == null) {
+        animator = new SpriteAnimator(this, new Handler());
+      }
+      animator.start();
+    } else if (animator != null) {
+      animator.stop();
+    }
+  }
+
   // Methods supporting event handling
 
   /**
@@ -11,6 +11,7 @@ import com.github.mikephil.charting.data.DataSet;
 import com.github.mikephil.charting.data.Entry;
 import com.github.mikephil.charting.data.PieEntry;
 import com.github.mikephil.charting.interfaces.datasets.IDataSet;
+import com.google.appinventor.components.runtime.util.RingBufferList;
 import com.google.appinventor.components.runtime.util.YailList;
 
 import java.util.ArrayList;
@@ -50,7 +51,10 @@ public abstract class ChartDataModel<
     this.data = data;
     this.view = view;
 
-    entries = new ArrayList<>();
+    // The chart view copies the entries on the UI thread while the data
+    // component's thread runner may be changing them, so every access
+    // to the list is synchronized.
+    entries = Collections.synchronizedList(new RingBufferList<E>());
   }
 
   /**
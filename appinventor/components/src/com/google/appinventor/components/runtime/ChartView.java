@@ -5,8 +5,6 @@
 
 package com.google.appinventor.components.runtime;
 
-import android.annotation.SuppressLint;
-import android.os.AsyncTask;
 import android.os.Handler;
 import android.os.Looper;
 
@@ -19,8 +17,12 @@ import com.github.mikephil.charting.data.DataSet;
 import com.github.mikephil.charting.data.Entry;
 
 import com.github.mikephil.charting.interfaces.datasets.IDataSet;
+import com.google.appinventor.components.runtime.util.JellybeanUtil;
+import com.google.appinventor.components.runtime.util.SdkLevel;
 import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 
 /**
  * Base class to represent Chart Views. The class (and subclasses)
@@ -52,6 +54,15 @@ public abstract class ChartView<
 
   protected Handler uiHandler = new Handler(Looper.myLooper());
 
+  // Models whose entries changed since the last frame, in the order in
+  // which they were first refreshed.
+  private final Set<ChartDataModel<E, T, D, C, V>> pendingRefreshes =
+      new LinkedHashSet<>();
+
+  // Whether the pending refreshes will be applied on an upcoming frame.
+  // Guarded by pendingRefreshes.
+  private boolean refreshScheduled = false;
+
   /**
    * Creates a new Chart View with the specified Chart component
    * instance as the parent of the View.
@@ -132,52 +143,65 @@ public abstract class ChartView<
    * Updates the specified Chart Data Model and refreshes the
    * Chart.
    *
+   * <p>The model is only marked as changed. Its entries are copied and
+   * the Chart updated on the next display frame, so a series that
+   * receives many values per frame is copied and redrawn only once, with
+   * its latest entries.
+   *
    * @param model Chart Data Model to update & refresh
    */
   public void refresh(final ChartDataModel<E, T, D, C, V> model) {
-    // Create a new RefreshTask with the model's current List of Entries
-    RefreshTask refreshTask = new RefreshTask(model.getEntries());
-
-    // Execute the RefreshTask with the ChartDataModel argument
-    refreshTask.execute(model);
+    synchronized (pendingRefreshes) {
+      pendingRefreshes.add(model);
+      if (refreshScheduled) {
+        return;
+      }
+      refreshScheduled = true;
+    }
+    if (Looper.myLooper() == uiHandler.getLooper()) {
+      scheduleRefreshes.run();
+    } else {
+      uiHandler.post(scheduleRefreshes);
+    }
   }
 
   /**
-   * AsyncTask used to refresh the Chart View with new data on the UI thread.
-   * Used as a measure to prevent crashes and exceptions by taking in a constant
-   * copy of the data, and re-setting it to the currently refreshed Chart Data
-   * Model, while also updating the Chart itself and invalidating the View.
+   * Requests that the pending refreshes be applied on the next frame.
+   * Must run on the UI thread.
    */
-  @SuppressLint("StaticFieldLeak")
-  private class RefreshTask
-      extends AsyncTask<ChartDataModel<E, T, D, C, V>, Void, ChartDataModel<E, T, D, C, V>> {
-
-    // Local copy of latest Chart Entries
-    private final List<E> entries;
-
-    public RefreshTask(List<E> entries) {
-      // Create a copy of the passed in Entries List.
-      this.entries = new ArrayList<>(entries);
-    }
-
-    @SafeVarargs
+  private final Runnable scheduleRefreshes = new Runnable() {
     @Override
-    protected final ChartDataModel<E, T, D, C, V> doInBackground(
-        ChartDataModel<E, T, D, C, V>... chartDataModels) {
-      // All the work should be done on the UI thread; Simply pass the first
-      // passed in Chart Data Model (expect non-null, non-empty var args)
-      return chartDataModels[0];
+    public void run() {
+      if (SdkLevel.getLevel() >= SdkLevel.LEVEL_JELLYBEAN) {
+        JellybeanUtil.postFrameCallback(applyRefreshes);
+      } else {
+        applyRefreshes.run();
+      }
     }
+  };
 
+  /**
+   * Refreshes the Chart with a copy of the current entries of every
+   * model that requested a refresh. Runs on the UI thread.
+   */
+  private final Runnable applyRefreshes = new Runnable() {
     @Override
-    protected void onPostExecute(ChartDataModel<E, T, D, C, V> result) {
-      // Refresh the Chart and the Data Model with the
-      // local Entries List copy. This is done on the UI
-      // thread to avoid exceptions (onPostExecute runs
-      // on the UI)
-      refresh(result, entries);
+    public void run() {
+      List<ChartDataModel<E, T, D, C, V>> models;
+      synchronized (pendingRefreshes) {
+        models = new ArrayList<>(pendingRefreshes);
+        pendingRefreshes.clear();
+        refreshScheduled = false;
+      }
+      for (ChartDataModel<E, T, D, C, V> model : models) {
+        // Take a constant copy of the data, so that the model may keep
+        // changing after the refresh. A model that changes after this
+        // point requests another refresh, so the Chart catches up on the
+        // next frame.
+        refresh(model, new ArrayList<>(model.getEntries()));
+      }
     }
-  }
+  };
 
   /**
    * Sets the specified List of Entries to the specified Chart Data
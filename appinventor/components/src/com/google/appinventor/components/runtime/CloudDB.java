@@ -11,9 +11,6 @@ import static android.Manifest.permission.INTERNET;
 import android.Manifest;
 import android.app.Activity;
 
-import android.database.Cursor;
-import android.database.sqlite.SQLiteDatabase;
-
 import android.net.ConnectivityManager;
 import android.net.NetworkInfo;
 
@@ -38,6 +35,7 @@ import com.google.appinventor.components.common.YaVersion;
 import com.google.appinventor.components.runtime.errors.YailRuntimeError;
 
 import com.google.appinventor.components.runtime.util.BulkPermissionRequest;
+import com.google.appinventor.components.runtime.util.CloudDBBatch;
 import com.google.appinventor.components.runtime.util.CloudDBJedisListener;
 import com.google.appinventor.components.runtime.util.FileUtil;
 import com.google.appinventor.components.runtime.util.JsonUtil;
@@ -54,7 +52,6 @@ import java.security.cert.CertificateFactory;
 import java.security.cert.X509Certificate;
 
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -69,7 +66,6 @@ import javax.net.ssl.SSLSocketFactory;
 import javax.net.ssl.TrustManagerFactory;
 import javax.net.ssl.X509TrustManager;
 
-import org.json.JSONArray;
 import org.json.JSONException;
 
 import redis.clients.jedis.Jedis;
@@ -77,7 +73,6 @@ import redis.clients.jedis.JedisShardInfo;
 import redis.clients.jedis.exceptions.JedisConnectionException;
 import redis.clients.jedis.exceptions.JedisDataException;
 import redis.clients.jedis.exceptions.JedisException;
-import redis.clients.jedis.exceptions.JedisNoScriptException;
 
 /**
  * The `CloudDB` component is a Non-visible component that allows you to store data on a Internet
@@ -244,33 +239,16 @@ public class CloudDB extends AndroidNonvisibleComponent implements Component,
   // Store can be called frequenly and quickly in some situations. For example
   // using store inside of a Canvas Drag event (for realtime updating of a remote
   // canvas). Or in a handler for the Accelerometer (gasp!). To make storing as
-  // effecient as possible, we have a queue of pending store requests and we
-  // have a background task that drains this queue as fast as possible and
-  // iterates over the queue until it is drained.
-  private final List<storedValue> storeQueue = Collections.synchronizedList(new ArrayList());
+  // effecient as possible, StoreValue and GetValue calls are collected in a batch
+  // and sent together once the event handler making them has returned. The batch
+  // writes each tag only once and takes at most two round trips to Redis.
+  private final CloudDBBatch batch = new CloudDBBatch();
 
   private ConnectivityManager cm;
 
   // Set of observers
   private HashSet<DataSourceChangeListener> dataSourceObservers = new HashSet<>();
 
-  private static class storedValue {
-    private String tag;
-    private JSONArray  valueList;
-    storedValue(String tag, JSONArray valueList) {
-      this.tag = tag;
-      this.valueList = valueList;
-    }
-
-    public String getTag() {
-      return tag;
-    }
-
-    public JSONArray getValueList() {
-      return valueList;
-    }
-  }
-
   /**
    * Creates a new CloudDB component.
    * @param container the Form that this component is contained in.
@@ -561,19 +539,6 @@ public class CloudDB extends AndroidNonvisibleComponent implements Component,
     return useSSL;
   }
 
-  private static final String SET_SUB_SCRIPT =
-    "local key = KEYS[1];" +
-    "local value = ARGV[1];" +
-    "local topublish = cjson.decode(ARGV[2]);" +
-    "local project = ARGV[3];" +
-    "local newtable = {};" +
-    "table.insert(newtable, key);" +
-    "table.insert(newtable, topublish);" +
-    "redis.call(\"publish\", project, cjson.encode(newtable));" +
-    "return redis.call('set', project .. \":\" .. key, value);";
-
-  private static final String SET_SUB_SCRIPT_SHA1 = "765978e4c340012f50733280368a0ccc4a14dfb7";
-
   /**
    * Asks `CloudDB` to store the given `value`{:.variable.block} under the given
    * `tag`{:.text.block}.
@@ -608,120 +573,8 @@ public class CloudDB extends AndroidNonvisibleComponent implements Component,
       if (DEBUG) {
         Log.d(LOG_TAG,"Device is online...");
       }
-      synchronized(storeQueue) {
-        boolean kickit = false;
-        if (storeQueue.size() == 0) { // Need to kick off the background task
-          if (DEBUG) {
-            Log.d(LOG_TAG, "storeQueue is zero length, kicking background");
-          }
-          kickit = true;
-        } else {
-          if (DEBUG) {
-            Log.d(LOG_TAG, "storeQueue has " + storeQueue.size() + " entries");
-          }
-        }
-        JSONArray valueList = new JSONArray();
-        try {
-          valueList.put(0, value);
-        } catch (JSONException e) {
-          throw new YailRuntimeError("JSON Error putting value.", "value is not convertable");
-        }
-        storedValue work  = new storedValue(tag, valueList);
-        storeQueue.add(work);
-        if (kickit) {
-          background.submit(new Runnable() {
-              public void run() {
-                JSONArray pendingValueList = null;
-                String pendingTag = null;
-                String pendingValue = null;
-                try {
-                  storedValue work;
-                  if (DEBUG) {
-                    Log.d(LOG_TAG, "store background task running.");
-                  }
-                  while (true) {
-                    synchronized(storeQueue) {
-                      if (DEBUG) {
-                        Log.d(LOG_TAG, "store: In background synchronized block");
-                      }
-                      int size = storeQueue.size();
-                      if (size == 0) {
-                        if (DEBUG) {
-                          Log.d(LOG_TAG, "store background task exiting.");
-                        }
-                        work = null;
-                      } else {
-                        if (DEBUG) {
-                          Log.d(LOG_TAG, "store: storeQueue.size() == " + size);
-                        }
-                        work = storeQueue.remove(0);
-                        if (DEBUG) {
-                          Log.d(LOG_TAG, "store: got work.");
-                        }
-                      }
-                    }
-                    if (DEBUG) {
-                      Log.d(LOG_TAG, "store: left synchronized block");
-                    }
-                    if (work == null) {
-                      try {
-                        if (pendingTag != null) {
-                          String jsonValueList = pendingValueList.toString();
-                          if (DEBUG) {
-                            Log.d(LOG_TAG, "Workqueue empty, sending pendingTag, valueListLength = " + pendingValueList.length());
-                          }
-                          jEval(SET_SUB_SCRIPT, SET_SUB_SCRIPT_SHA1, 1, pendingTag, pendingValue, jsonValueList, projectID);
-                          UpdateDone(pendingTag, "StoreValue");
-                        }
-                      } catch (JedisException e) {
-                        CloudDBError(e.getMessage());
-                        flushJedis(true);
-                      }
-                      return;
-                    }
-
-                    String tag = work.getTag();
-                    JSONArray valueList = work.getValueList();
-                    if (tag == null || valueList == null) {
-                      if (DEBUG) {
-                        Log.d(LOG_TAG, "Either tag or value is null!");
-                      }
-                    } else {
-                      if (DEBUG) {
-                        Log.d(LOG_TAG, "Got Work: tag = " + tag + " value = " + valueList.get(0));
-                      }
-                    }
-                    if (pendingTag == null) { // First time through this invocation
-                      pendingTag = tag;
-                      pendingValueList = valueList;
-                      pendingValue = valueList.getString(0);
-                    } else if (pendingTag.equals(tag)) { // work is for the same tag
-                      pendingValue = valueList.getString(0);
-                      pendingValueList.put(pendingValue);
-                    } else {    // Work is for a different tag, send what we have
-                      try {     // and add the new tag,incoming valuelist for the next round
-                        String jsonValueList = pendingValueList.toString();
-                        if (DEBUG) {
-                          Log.d(LOG_TAG, "pendingTag changed sending pendingTag, valueListLength = " + pendingValueList.length());
-                        }
-                        jEval(SET_SUB_SCRIPT, SET_SUB_SCRIPT_SHA1, 1, pendingTag, pendingValue, jsonValueList, projectID);
-                      } catch (JedisException e) {
-                        CloudDBError(e.getMessage());
-                        flushJedis(true);
-                        storeQueue.clear(); // Flush pending changes, we are in
-                        return;             // an error state
-                      }
-                      pendingTag = tag;
-                      pendingValueList = valueList;
-                      pendingValue = valueList.getString(0);
-                    }
-                  }
-                } catch (Exception e) {
-                Log.e(LOG_TAG, "Exception in store worker!", e);
-                }
-              }
-            });
-        }
+      if (batch.store(tag, value)) {
+        scheduleFlush();
       }
     } else {
       CloudDBError("Cannot store values off-line.");
@@ -746,34 +599,15 @@ public class CloudDB extends AndroidNonvisibleComponent implements Component,
       Log.d(LOG_TAG, "getting value ... for tag: " + tag);
     }
     checkProjectIDNotBlank();
-    final AtomicReference<Object> value = new AtomicReference<Object>();
-    Cursor cursor = null;
-    SQLiteDatabase db = null;
     NetworkInfo networkInfo = cm.getActiveNetworkInfo();
     boolean isConnected = networkInfo != null && networkInfo.isConnected();
 
     if (isConnected) {
       // Set value to either the JSON from the CloudDB
       // or the JSON representation of valueIfTagNotThere
-      background.submit(new Runnable() {
-          public void run() {
-            final AtomicReference<Object> value = getValueByTag(tag, valueIfTagNotThere);
-
-            // Value stored is null; Return
-            if (value.get() == null) {
-              return;
-            }
-
-            androidUIHandler.post(new Runnable() {
-                public void run() {
-                  // Signal an event to indicate that the value was
-                  // received.  We post this to run in the Application's main
-                  // UI thread.
-                  GotValue(tag, value.get());
-                }
-              });
-          }
-        });
+      if (batch.get(tag, valueIfTagNotThere)) {
+        scheduleFlush();
+      }
     } else {
       if (DEBUG) {
         Log.d(LOG_TAG, "GetValue(): We're offline");
@@ -805,19 +639,7 @@ public class CloudDB extends AndroidNonvisibleComponent implements Component,
       if (DEBUG) {
         Log.d(LOG_TAG, "finished call jedis.get()");
       }
-      if (returnValue != null) {
-        String val = JsonUtil.getJsonRepresentationIfValueFileName(form, returnValue);
-        if (val != null) {
-          value.set(val);
-        } else {
-          value.set(returnValue);
-        }
-      } else {
-        if (DEBUG) {
-          Log.d(CloudDB.LOG_TAG,"Value retrieved is null");
-        }
-        value.set(JsonUtil.getJsonRepresentation(valueIfTagNotThere));
-      }
+      value.set(getJsonValue(returnValue, valueIfTagNotThere));
     } catch (JSONException e) {
       CloudDBError("JSON conversion error for " + tag);
       value.set(null);
@@ -834,7 +656,84 @@ public class CloudDB extends AndroidNonvisibleComponent implements Component,
 
     return value;
   }
- 
+
+  /*
+   * Returns the JSON to report for a value read from Redis, which is null if the tag
+   * is not there.
+   */
+  private String getJsonValue(String returnValue, Object valueIfTagNotThere)
+      throws JSONException {
+    if (returnValue == null) {
+      if (DEBUG) {
+        Log.d(CloudDB.LOG_TAG,"Value retrieved is null");
+      }
+      return JsonUtil.getJsonRepresentation(valueIfTagNotThere);
+    }
+    String val = JsonUtil.getJsonRepresentationIfValueFileName(form, returnValue);
+    return val != null ? val : returnValue;
+  }
+
+  /*
+   * Flushes the batch on the background thread once the event handler that is
+   * running has returned, so that the values it stores and gets go together.
+   */
+  private void scheduleFlush() {
+    androidUIHandler.post(new Runnable() {
+        public void run() {
+          background.submit(new Runnable() {
+              public void run() {
+                flushBatch();
+              }
+            });
+        }
+      });
+  }
+
+  /*
+   * Sends the pending StoreValue and GetValue requests. This must run on the
+   * background thread. Other operations call it first so that they see the
+   * values stored before them.
+   */
+  private void flushBatch() {
+    try {
+      batch.flush(getJedis(), projectID, new CloudDBBatch.Callback() {
+          @Override
+          public void updateDone(String tag) {
+            UpdateDone(tag, "StoreValue");
+          }
+
+          @Override
+          public void gotValue(final String tag, String value, Object valueIfTagNotThere) {
+            final String result;
+            try {
+              result = getJsonValue(value, valueIfTagNotThere);
+            } catch (JSONException e) {
+              CloudDBError("JSON conversion error for " + tag);
+              return;
+            }
+            androidUIHandler.post(new Runnable() {
+                public void run() {
+                  // Signal an event to indicate that the value was
+                  // received.  We post this to run in the Application's main
+                  // UI thread.
+                  GotValue(tag, result);
+                }
+              });
+          }
+        });
+    } catch (NullPointerException e) {
+      CloudDBError("System Error talking to the server");
+      flushJedis(true);
+      batch.clear();
+    } catch (JedisException e) {
+      Log.e(LOG_TAG, "Exception in flushBatch", e);
+      CloudDBError(e.getMessage());
+      flushJedis(true);
+      batch.clear();              // Flush pending changes, we are in
+                                  // an error state
+    }
+  }
+
   /**
    * Returns `true`{:.logic.block} if we are on the network and will likely be able to connect to
    * the `CloudDB` server.
@@ -925,6 +824,7 @@ public class CloudDB extends AndroidNonvisibleComponent implements Component,
 
     background.submit(new Runnable() {
         public void run() {
+          flushBatch();
           Jedis jedis = getJedis();
           try {
             FirstRemoved(jEval(POP_FIRST_SCRIPT, POP_FIRST_SCRIPT_SHA1, 1, key, projectID));
@@ -983,6 +883,7 @@ public class CloudDB extends AndroidNonvisibleComponent implements Component,
 
     background.submit(new Runnable() {
         public void run() {
+          flushBatch();
           Jedis jedis = getJedis();
           try {
             jEval(APPEND_SCRIPT, APPEND_SCRIPT_SHA1, 1, key, item, projectID);
@@ -1044,6 +945,7 @@ public class CloudDB extends AndroidNonvisibleComponent implements Component,
     checkProjectIDNotBlank();
     background.submit(new Runnable() {
         public void run() {
+          flushBatch();
           try {
             Jedis jedis = getJedis();
             jedis.del(projectID + ":" + tag);
@@ -1092,7 +994,7 @@ public class CloudDB extends AndroidNonvisibleComponent implements Component,
     if (isConnected) {
       background.submit(new Runnable() {
           public void run() {
-
+            flushBatch();
             Jedis jedis = getJedis();
             Set<String> value = null;
             try {
@@ -1351,17 +1253,7 @@ public class CloudDB extends AndroidNonvisibleComponent implements Component,
   }
 
   public Object jEval(String script, String scriptsha1, int argcount, String... args) throws JedisException {
-    Jedis jedis = getJedis();
-    try {
-      return jedis.evalsha(scriptsha1, argcount, args);
-    } catch (JedisNoScriptException e) {
-      if (DEBUG) {
-        Log.d(LOG_TAG, "Got a JedisNoScriptException for " + scriptsha1);
-      }
-      // This happens if the server doesn't have the script loaded
-      // So we use regular eval, which should then cache the script
-      return jedis.eval(script, argcount, args);
-    }
+    return CloudDBBatch.eval(getJedis(), script, scriptsha1, argcount, args);
   }
 
   // We are synchronized because we are called simultaneously from two
@@ -1455,6 +1347,7 @@ public class CloudDB extends AndroidNonvisibleComponent implements Component,
     return background.submit(new Callable<YailList>() {
       @Override
       public YailList call() {
+        flushBatch();
         // Get the value identified by the tag (key) or an empty
         // YailList if not present
         AtomicReference<Object> valueReference = getValueByTag(key, new YailList());
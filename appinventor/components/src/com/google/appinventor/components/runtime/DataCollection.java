@@ -13,6 +13,7 @@ import com.google.appinventor.components.annotations.SimpleFunction;
 import com.google.appinventor.components.annotations.SimpleObject;
 import com.google.appinventor.components.annotations.SimpleProperty;
 
+import com.google.appinventor.components.common.DoubleList;
 import com.google.appinventor.components.common.PropertyTypeConstants;
 
 import com.google.appinventor.components.runtime.util.CsvUtil;
@@ -1056,16 +1057,16 @@ public abstract class DataCollection<C extends ComponentContainer, M extends Dat
 
 
   /**
-   * Casts list items to doubles.
+   * Casts list items to doubles. Items that are not numbers are skipped.
    */
-  public static List<Double> castToDouble(List<?> list) {
-    List<Double> listDoubles = new ArrayList<>();
+  public static DoubleList castToDouble(List<?> list) {
+    DoubleList listDoubles = new DoubleList(list.size());
     for (Object o : list) {
       if (o instanceof Number) {
-        listDoubles.add(((Number) o).doubleValue());
+        listDoubles.addDouble(((Number) o).doubleValue());
       } else {
         try {
-          listDoubles.add(Double.parseDouble(o.toString()));
+          listDoubles.addDouble(Double.parseDouble(o.toString()));
         } catch (NumberFormatException e) {
           // Do nothing (value already false)
         }
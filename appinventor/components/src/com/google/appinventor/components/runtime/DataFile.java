@@ -18,11 +18,17 @@ import com.google.appinventor.components.common.ComponentCategory;
 import com.google.appinventor.components.common.PropertyTypeConstants;
 import com.google.appinventor.components.common.YaVersion;
 
-import com.google.appinventor.components.runtime.util.ChartDataSourceUtil;
+import com.google.appinventor.components.runtime.util.ColumnarTable;
 import com.google.appinventor.components.runtime.util.CsvUtil;
+import com.google.appinventor.components.runtime.util.IOUtils;
 import com.google.appinventor.components.runtime.util.JsonUtil;
 import com.google.appinventor.components.runtime.util.YailList;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+
 import java.util.ArrayList;
 
 import java.util.concurrent.Callable;
@@ -54,9 +60,9 @@ import org.json.JSONException;
 @SimpleObject
 public class DataFile extends FileBase implements DataSource<YailList, Future<YailList>> {
 
-  private YailList rows;
-  private YailList columns;
-  private YailList columnNames; // Elements of the first column
+  // The parsed contents of the Data file. Rows and columns are only
+  // turned into YailLists when they are asked for.
+  private volatile ColumnarTable table;
 
   private final ExecutorService threadRunner; // Used to queue & execute asynchronous tasks
 
@@ -68,9 +74,7 @@ public class DataFile extends FileBase implements DataSource<YailList, Future<Ya
   public DataFile(ComponentContainer container) {
     super(container);
 
-    rows = new YailList();
-    columns = new YailList();
-    columnNames = new YailList();
+    table = new ColumnarTable();
 
     threadRunner = Executors.newSingleThreadExecutor();
   }
@@ -86,7 +90,7 @@ public class DataFile extends FileBase implements DataSource<YailList, Future<Ya
     return getYailListPropertyHelper(new Callable<YailList>() {
       @Override
       public YailList call() {
-        return rows;
+        return table.getRows();
       }
     });
   }
@@ -103,7 +107,7 @@ public class DataFile extends FileBase implements DataSource<YailList, Future<Ya
     return getYailListPropertyHelper(new Callable<YailList>() {
       @Override
       public YailList call() {
-        return columns;
+        return table.getColumns();
       }
     });
   }
@@ -121,7 +125,7 @@ public class DataFile extends FileBase implements DataSource<YailList, Future<Ya
     return getYailListPropertyHelper(new Callable<YailList>() {
       @Override
       public YailList call() {
-        return columnNames;
+        return table.getRow(0);
       }
     });
   }
@@ -207,17 +211,47 @@ public class DataFile extends FileBase implements DataSource<YailList, Future<Ya
    * @return YailList of elements in the column
    */
   public YailList getColumn(String column) {
-    // Get the index of the column (first row - column names)
-    // 1 is subtracted from the index since YailList indexOf
-    // returns an index that is 1-based.
-    int index = columnNames.indexOf(column) - 1;
+    ColumnarTable table = this.table;
+
+    // Find the first column with the name in the first row
+    // (column names)
+    if (table.getRowCount() > 0) {
+      for (int i = 0; i < table.getRowLength(0); i++) {
+        if (table.getCell(0, i).equals(column)) {
+          return table.getColumn(i);
+        }
+      }
+    }
 
     // Column not found
-    if (index < 0) {
-      return new YailList();
+    return new YailList();
+  }
+
+  @Override
+  protected void afterRead(Reader reader) throws IOException {
+    BufferedReader in = new BufferedReader(IOUtils.normalizeNewLines(reader));
+
+    // First character is a curly bracket; Assume JSON, which is
+    // parsed as a whole.
+    in.mark(1);
+    int first = in.read();
+    in.reset();
+    if (first < 0) {
+      Log.e(this.getClass().getName(), "Unable to parse empty DataFile");
+      return;
+    } else if (first == '{') {
+      afterRead(IOUtils.readReader(in));
+      return;
     }
 
-    return (YailList) columns.getObject(index);
+    // Assume CSV otherwise, and parse the rows as they are read.
+    try {
+      ColumnarTable result = new ColumnarTable();
+      CsvUtil.readCsvTable(in, result);
+      table = result;
+    } catch (Exception e) {
+      Log.e(this.getClass().getName(), "Unable to parse DataFile",  e);
+    }
   }
 
   @Override
@@ -233,27 +267,22 @@ public class DataFile extends FileBase implements DataSource<YailList, Future<Ya
       // TODO: so due to YailLists not supporting the add() operation)
       if (result.charAt(0) == '{') {
         try {
-          // Parse columns from the result
-          columns = JsonUtil.getColumnsFromJson(result);
-
-          // Construct row lists from columns
-          rows = ChartDataSourceUtil.getTranspose(columns);
+          // Parse columns from the result; rows are constructed
+          // from the columns when needed
+          table = ColumnarTable.fromColumns(JsonUtil.getColumnsFromJson(result));
         } catch (JSONException e) {
           // JSON parsing failed; Fallback to CSV
-          rows = CsvUtil.fromCsvTable(result);
-          columns = ChartDataSourceUtil.getTranspose(rows);
+          ColumnarTable csvTable = new ColumnarTable();
+          CsvUtil.readCsvTable(new StringReader(result), csvTable);
+          table = csvTable;
         }
       } else { // Assume CSV otherwise
-        // Parse rows from the result
-        rows = CsvUtil.fromCsvTable(result);
-
-        // Construct column lists from rows
-        columns = ChartDataSourceUtil.getTranspose(rows);
+        // Parse rows from the result; columns are constructed
+        // from the rows when needed
+        ColumnarTable csvTable = new ColumnarTable();
+        CsvUtil.readCsvTable(new StringReader(result), csvTable);
+        table = csvTable;
       }
-
-      // If rows size is non-zero, set column names to first row. Otherwise,
-      // set it to an empty List.
-      columnNames = (rows.size() > 0) ? ((YailList) rows.getObject(0)) : new YailList();
     } catch (Exception e) {
       Log.e(this.getClass().getName(), "Unable to parse DataFile",  e);
     }
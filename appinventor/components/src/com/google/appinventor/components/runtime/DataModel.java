@@ -7,6 +7,7 @@ package com.google.appinventor.components.runtime;
 
 import com.github.mikephil.charting.data.Entry;
 import com.google.appinventor.components.runtime.util.ChartDataSourceUtil;
+import com.google.appinventor.components.runtime.util.RingBufferList;
 import com.google.appinventor.components.runtime.util.YailList;
 import gnu.mapping.Symbol;
 
@@ -43,7 +44,7 @@ public abstract class DataModel<E> {
    * Initializes a new DataModel object instance.
    */
   protected DataModel() {
-    entries = new ArrayList<>();
+    entries = new RingBufferList<>();
   }
 
   /**
@@ -189,29 +190,34 @@ public abstract class DataModel<E> {
 
     List<YailList> tuples = new ArrayList<>();
 
+    // Copy the columns into arrays once, since indexing into a YailList walks the list.
+    // Invalid columns are left null.
+    Object[] columnValues = columns.toArray();
+    Object[][] cells = new Object[columnValues.length][];
+    for (int j = 0; j < columnValues.length; ++j) {
+      if (columnValues[j] instanceof YailList) {
+        cells[j] = ((YailList) columnValues[j]).toArray();
+      }
+    }
+
     // Generate tuples from the columns
     for (int i = hasHeaders ? 1 : 0; i < rows; ++i) {
       ArrayList<String> tupleElements = new ArrayList<>();
 
       // Add entries to the tuple from all i-th values (i-th row)
       // of the data columns.
-      for (int j = 0; j < columns.size(); ++j) {
-        Object value = columns.getObject(j);
-
+      for (Object[] column : cells) {
         // Invalid column specified; Add default value (minus one to
         // compensate for the skipped value)
-        if (!(value instanceof YailList)) {
+        if (column == null) {
           tupleElements.add(getDefaultValue(i - 1));
           continue;
         }
 
-        // Safe-cast value to YailList
-        YailList column = (YailList) value;
-
-        if (column.size() > i) { // Entry exists in column
+        if (column.length > i) { // Entry exists in column
           // Add entry from column
-          tupleElements.add(column.getString(i));
-        } else if (column.size() == 0) { // Column empty (default value should be used)
+          tupleElements.add(column[i].toString());
+        } else if (column.length == 0) { // Column empty (default value should be used)
           // Use default value instead (we use an index minus one to componsate
           // for the skipped initial value)
           tupleElements.add(getDefaultValue(i - 1));
@@ -24,6 +24,8 @@ import com.google.appinventor.components.runtime.util.IOUtils;
 
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
 
 /**
  * Base class for File-based components.
@@ -101,6 +103,12 @@ public abstract class FileBase extends AndroidNonvisibleComponent implements Com
   protected void readFromFile(final String fileName) {
     try {
       new FileStreamReadOperation(form, this, "ReadFrom", fileName, scope, true) {
+        @Override
+        protected boolean process(InputStreamReader reader) throws IOException {
+          afterRead(reader);
+          return true;
+        }
+
         @Override
         public boolean process(String contents) {
           final String text = IOUtils.normalizeNewLines(contents);
@@ -133,4 +141,16 @@ public abstract class FileBase extends AndroidNonvisibleComponent implements Com
    * @param result  the contents of the file that was read
    */
   protected abstract void afterRead(String result);
+
+  /**
+   * Processes the contents of the file as they are read from the reader. The default
+   * implementation reads the whole file and passes it to {@link #afterRead(String)}. Subclasses
+   * that can process the contents incrementally override this method instead.
+   *
+   * @param reader  the reader of the contents of the file
+   * @throws IOException if the file could not be read
+   */
+  protected void afterRead(Reader reader) throws IOException {
+    afterRead(IOUtils.normalizeNewLines(IOUtils.readReader(reader)));
+  }
 }
@@ -14,6 +14,7 @@ import android.app.Activity;
 import android.app.Dialog;
 import android.app.ProgressDialog;
 import android.content.ActivityNotFoundException;
+import android.content.ComponentCallbacks2;
 import android.content.Context;
 import android.content.Intent;
 import android.content.pm.ActivityInfo;
@@ -72,6 +73,7 @@ import com.google.appinventor.components.runtime.errors.PermissionException;
 import com.google.appinventor.components.runtime.multidex.MultiDex;
 import com.google.appinventor.components.runtime.util.AlignmentUtil;
 import com.google.appinventor.components.runtime.util.AnimationUtil;
+import com.google.appinventor.components.runtime.util.AsynchUtil;
 import com.google.appinventor.components.runtime.util.BulkPermissionRequest;
 import com.google.appinventor.components.runtime.util.ErrorMessages;
 import com.google.appinventor.components.runtime.util.FileUtil;
@@ -806,10 +808,25 @@ public class Form extends AppInventorCompatActivity
       onDestroyListener.onDestroy();
     }
 
+    // Background calls of the components would dispatch events to a destroyed form.
+    AsynchUtil.cancelTasks(this);
+
     // call super method at the end to delegate the destruction of the app to the parent
     super.onDestroy();
   }
 
+  @Override
+  public void onTrimMemory(int level) {
+    super.onTrimMemory(level);
+    MediaUtil.trimBitmapCache(level);
+  }
+
+  @Override
+  public void onLowMemory() {
+    super.onLowMemory();
+    MediaUtil.trimBitmapCache(ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
+  }
+
   public void registerForOnDestroy(OnDestroyListener component) {
     onDestroyListeners.add(component);
   }
@@ -35,6 +35,7 @@ import com.google.appinventor.components.runtime.util.AppInvHTTPD;
 import com.google.appinventor.components.runtime.util.ErrorMessages;
 import com.google.appinventor.components.runtime.util.OnInitializeListener;
 import com.google.appinventor.components.runtime.util.QUtil;
+import com.google.appinventor.components.runtime.util.ReplQueue;
 import com.google.appinventor.components.runtime.util.RetValManager;
 import com.google.appinventor.components.runtime.util.WebRTCNativeMgr;
 
@@ -81,6 +82,8 @@ public class ReplForm extends Form {
   private String currentTheme = ComponentConstants.DEFAULT_THEME;
   private WebRTCNativeMgr webRTCNativeMgr;
 
+  // Forms from the Blocks Editor waiting to be evaluated
+  private final ReplQueue replQueue = new ReplQueue();
   SchemeInterface schemeInterface = new SchemeInterface();
 
   private static final String SPLASH_ACTIVITY_CLASS = SplashActivity.class
@@ -106,22 +109,53 @@ public class ReplForm extends Form {
       }
     }
 
+    /**
+     * Evaluates a form on the UI thread. Forms that arrive while earlier ones are waiting are
+     * evaluated together in one pass, after dropping the definitions they replace, and the
+     * values they return are sent back together.
+     *
+     * <p>Forms sent for blocks only post their evaluation to the UI thread (see in-ui in
+     * runtime.scm), so the batch of values ends once the runnables posted by the pass have
+     * run.</p>
+     */
     public void eval(final String sexp) {
+      if (!replQueue.add(sexp)) {
+        return;                 // Already scheduled, will be evaluated with the others
+      }
       runOnUiThread(new Runnable() {
           @Override public void run() {
+            adoptMainThreadClassLoader();
+            RetValManager.beginBatch();
             try {
-              adoptMainThreadClassLoader();
-              if (sexp.equals("#DONE#")) {
-                ReplForm.this.finish();
-                return;
+              for (String form : replQueue.take()) {
+                if (form.equals("#DONE#")) {
+                  ReplForm.this.finish();
+                  return;
+                }
+                if (!replQueue.shouldEvaluate(form)) {
+                  continue;
+                }
+                try {
+                  evalForm(form);
+                } catch (Throwable e) {
+                  Log.e(LOG_TAG, "Exception in scheme processing", e);
+                  replQueue.reset();
+                }
               }
-              scheme.eval(sexp);
-            } catch (Throwable e) {
-              Log.e(LOG_TAG, "Exception in scheme processing", e);
+            } finally {
+              androidUIHandler.post(new Runnable() {
+                  @Override public void run() {
+                    RetValManager.endBatch();
+                  }
+                });
             }
           }
         });
     }
+
+    void evalForm(String sexp) throws Throwable {
+      scheme.eval(sexp);
+    }
   }
 
   @Override
@@ -524,6 +558,14 @@ public class ReplForm extends Form {
     schemeInterface.eval(sexp);
   }
 
+  /**
+   * Returns the queue of forms from the Blocks Editor, which also knows which block definitions
+   * have already been evaluated.
+   */
+  public ReplQueue getReplQueue() {
+    return replQueue;
+  }
+
   @Override
   public String getAssetPath(String asset) {
     return "file://" + replAssetDir + asset;
@@ -460,7 +460,7 @@ public class Spreadsheet extends AndroidNonvisibleComponent implements Component
       return;
     }
 
-    AsynchUtil.runAsynchronously(RetrieveSheet(sheetName, colID, value, true, true));
+    AsynchUtil.runAsynchronously(this, RetrieveSheet(sheetName, colID, value, true, true));
   }
 
   /**
@@ -477,7 +477,7 @@ public class Spreadsheet extends AndroidNonvisibleComponent implements Component
       return;
     }
 
-    AsynchUtil.runAsynchronously(RetrieveSheet(sheetName, colID, value, false, true));
+    AsynchUtil.runAsynchronously(this, RetrieveSheet(sheetName, colID, value, false, true));
   }
 
   /* Row-wise Operations */
@@ -506,7 +506,7 @@ public class Spreadsheet extends AndroidNonvisibleComponent implements Component
     final String rangeReference = sheetName +  "!" + rowNumber + ":" + rowNumber;
 
     // Asynchronously fetch the data in the cell
-    AsynchUtil.runAsynchronously(new Runnable() {
+    AsynchUtil.runAsynchronously(this, new Runnable() {
       @Override
       public void run () {
         try {
@@ -637,7 +637,7 @@ public class Spreadsheet extends AndroidNonvisibleComponent implements Component
       .setValues(values);
 
     // Wrap the API Call in an Async Utility
-    AsynchUtil.runAsynchronously(new Runnable() {
+    AsynchUtil.runAsynchronously(this, new Runnable() {
       @Override
       public void run () {
         // Surround the operation with a try catch statement
@@ -690,7 +690,7 @@ public class Spreadsheet extends AndroidNonvisibleComponent implements Component
       return;
     }
     // Run the API call asynchronously
-    AsynchUtil.runAsynchronously(new Runnable() {
+    AsynchUtil.runAsynchronously(this, new Runnable() {
       @Override
       public void run() {
         try {
@@ -752,7 +752,7 @@ public class Spreadsheet extends AndroidNonvisibleComponent implements Component
       return;
     }
     // Run the API call asynchronously
-    AsynchUtil.runAsynchronously(new Runnable() {
+    AsynchUtil.runAsynchronously(this, new Runnable() {
       @Override
       public void run() {
         try {
@@ -823,7 +823,7 @@ public class Spreadsheet extends AndroidNonvisibleComponent implements Component
       .setValues(values).setRange(sheetName);
 
     // Run the API call asynchronously
-    AsynchUtil.runAsynchronously(new Runnable() {
+    AsynchUtil.runAsynchronously(this, new Runnable() {
       @Override
       public void run() {
         try {
@@ -891,7 +891,7 @@ public class Spreadsheet extends AndroidNonvisibleComponent implements Component
     description="Deletes the row with the given row number from the table." +
       "This does not clear the row, but removes it entirely.")
   public void RemoveRow (final String sheetName, final int rowNumber) {
-    AsynchUtil.runAsynchronously(new Runnable() {
+    AsynchUtil.runAsynchronously(this, new Runnable() {
       @Override
       public void run () {
         try{
@@ -972,7 +972,7 @@ public class Spreadsheet extends AndroidNonvisibleComponent implements Component
     final String rangeRef = sheetName + "!" + colReference + ":" + colReference;
 
     // Asynchronously fetch the data in the cell and trigger the callback
-    AsynchUtil.runAsynchronously(new Runnable() {
+    AsynchUtil.runAsynchronously(this, new Runnable() {
       @Override
       public void run() {
         try {
@@ -1107,7 +1107,7 @@ public class Spreadsheet extends AndroidNonvisibleComponent implements Component
         .setValues(values);
 
     // Wrap the API Call in an Async Utility
-    AsynchUtil.runAsynchronously(new Runnable() {
+    AsynchUtil.runAsynchronously(this, new Runnable() {
       @Override
       public void run() {
         // Surround the operation with a try catch statement
@@ -1174,7 +1174,7 @@ public class Spreadsheet extends AndroidNonvisibleComponent implements Component
         .setValues(values);
 
     // Wrap the API Call in an Async Utility
-    AsynchUtil.runAsynchronously(new Runnable() {
+    AsynchUtil.runAsynchronously(this, new Runnable() {
       @Override
       public void run() {
         // Surround the operation with a try catch statement
@@ -1256,7 +1256,7 @@ public class Spreadsheet extends AndroidNonvisibleComponent implements Component
       columnNumber = getColNum(column);
     }
 
-    AsynchUtil.runAsynchronously(new Runnable() {
+    AsynchUtil.runAsynchronously(this, new Runnable() {
       @Override
       public void run() {
         try {
@@ -1334,7 +1334,7 @@ public class Spreadsheet extends AndroidNonvisibleComponent implements Component
     }
 
     // 2. Asynchronously fetch the data in the cell
-    AsynchUtil.runAsynchronously(new Runnable() {
+    AsynchUtil.runAsynchronously(this, new Runnable() {
       @Override
       public void run() {
         Log.d(LOG_TAG, "Reading Cell: " + cellReference);
@@ -1467,7 +1467,7 @@ public class Spreadsheet extends AndroidNonvisibleComponent implements Component
     Log.d(LOG_TAG, "Writing Cell: " + rangeRef);
 
     // Wrap the API Call in an Async Utility
-    AsynchUtil.runAsynchronously(new Runnable() {
+    AsynchUtil.runAsynchronously(this, new Runnable() {
       @Override
       public void run () {
         // Running the getSheetsService and executing the command may cause
@@ -1532,7 +1532,7 @@ public class Spreadsheet extends AndroidNonvisibleComponent implements Component
     //   Use the Google Sheets API
 
     // Asynchronously fetch the data in the cell
-    AsynchUtil.runAsynchronously(new Runnable() {
+    AsynchUtil.runAsynchronously(this, new Runnable() {
       @Override
       public void run () {
         Log.d(LOG_TAG, "Reading Range: " + rangeReference);
@@ -1682,7 +1682,7 @@ public class Spreadsheet extends AndroidNonvisibleComponent implements Component
       .setValues(values);
     Log.d(LOG_TAG, "Body's Range in A1: " + body.getRange());
     // Wrap the API Call in an Async Utility
-    AsynchUtil.runAsynchronously(new Runnable() {
+    AsynchUtil.runAsynchronously(this, new Runnable() {
       @Override
       public void run () {
         try {
@@ -1737,7 +1737,7 @@ public class Spreadsheet extends AndroidNonvisibleComponent implements Component
     Log.d(LOG_TAG, "Clearing Range: " + rangeRef);
 
     // Runs the Clear call asynchronously
-    AsynchUtil.runAsynchronously(new Runnable() {
+    AsynchUtil.runAsynchronously(this, new Runnable() {
       @Override
       public void run () {
         try {
@@ -1785,7 +1785,7 @@ public class Spreadsheet extends AndroidNonvisibleComponent implements Component
       ErrorOccurred("ReadSheet: " + "SpreadsheetID is empty.");
       return;
     }
-    AsynchUtil.runAsynchronously(RetrieveSheet(sheetName, -1, null, false, true));
+    AsynchUtil.runAsynchronously(this, RetrieveSheet(sheetName, -1, null, false, true));
   }
 
   Runnable RetrieveSheet(final String sheetName, final int colID, final String value,
@@ -1989,7 +1989,7 @@ public class Spreadsheet extends AndroidNonvisibleComponent implements Component
           }
         });
 
-    AsynchUtil.runAsynchronously(getDataValueTask);
+    AsynchUtil.runAsynchronously(this, getDataValueTask);
     return getDataValueTask;
   }
 
@@ -52,10 +52,22 @@ public abstract class Sprite extends VisibleComponent
   protected static final double DEFAULT_V = 0.0;
   protected static final String DEFAULT_ORIGIN = "(0.0, 0.0)";
 
+  // The most times a sprite moves in one frame when the canvas moves its
+  // sprites once per frame and the interval is shorter than a frame.
+  private static final int MAX_MOVES_PER_FRAME = 8;
+
   protected final Canvas canvas;              // enclosing Canvas
   private final TimerInternal timerInternal;  // timer to control movement
   private final Handler androidUIHandler;     // for posting actions
 
+  // Whether the canvas moves this sprite once per frame instead of the timer.
+  private boolean frameDriven;
+
+  // When the canvas moves its sprites once per frame, the uptime in ms at
+  // which this sprite next moves, or -1 to start over one interval after
+  // the next frame.
+  private long nextFrameMove = -1;
+
   // Keeps track of which other sprites are currently colliding with this one.
   // That way, we don't raise CollidedWith() more than once for each collision.
   // Events are only raised when sprites are added to this collision set.  They
@@ -135,6 +147,9 @@ public abstract class Sprite extends VisibleComponent
 
     // Set in motion.
     timerInternal = new TimerInternal(this, DEFAULT_ENABLED, DEFAULT_INTERVAL, handler);
+    if (canvas.FrameSynchronizedAnimation()) {
+      setFrameDriven(true);
+    }
 
     this.form = container.$form();
 
@@ -200,6 +215,7 @@ public abstract class Sprite extends VisibleComponent
   @SimpleProperty(category = PropertyCategory.BEHAVIOR)
   public void Enabled(boolean enabled) {
     timerInternal.Enabled(enabled);
+    nextFrameMove = -1;
   }
 
   /**
@@ -266,6 +282,7 @@ public abstract class Sprite extends VisibleComponent
   @SimpleProperty(category = PropertyCategory.BEHAVIOR)
   public void Interval(int interval) {
     timerInternal.Interval(interval);
+    nextFrameMove = -1;
   }
 
   /**
@@ -416,6 +433,7 @@ public abstract class Sprite extends VisibleComponent
     }
     xLeft = xOriginToLeft(xOrigin);
     yTop = yOriginToTop(yOrigin);
+    canvas.registerMove(this);
   }
 
   // The following methods get overridden in ImageSprite with the @SimpleProperty and
@@ -726,6 +744,15 @@ public abstract class Sprite extends VisibleComponent
     return registeredCollisions.contains(other);
   }
 
+  /**
+   * Returns the sprites that this sprite is registered as colliding with.
+   *
+   * @return the colliding sprites, which must not be modified
+   */
+  Set<Sprite> getCollisions() {
+    return registeredCollisions;
+  }
+
   /**
    * Moves the sprite back in bounds if part of it extends out of bounds,
    * having no effect otherwise. If the sprite is too wide to fit on the
@@ -824,6 +851,7 @@ public abstract class Sprite extends VisibleComponent
     if (!initialized) {
       // During REPL, components are not initalized, but we still want to repaint the canvas.
       canvas.getView().invalidate();
+      canvas.registerMove(this);
       return;
     }
     Direction edge = hitEdgeAbstract();
@@ -1164,6 +1192,53 @@ public abstract class Sprite extends VisibleComponent
     }
   }
 
+  /**
+   * Switches between moving on the timer and being moved by the canvas once
+   * per frame with {@link #moveForFrame(long)}.
+   *
+   * @param frameDriven whether the canvas moves this sprite
+   */
+  void setFrameDriven(boolean frameDriven) {
+    this.frameDriven = frameDriven;
+    timerInternal.setSuspended(frameDriven);
+    nextFrameMove = -1;
+  }
+
+  /**
+   * Moves the sprite once for each of its intervals that has ended by the
+   * given frame time, and registers the change. Like the timer, a sprite
+   * that falls behind does not catch up in a burst.
+   *
+   * @param now the time of the frame, in milliseconds of uptime
+   * @return {@code true} if the sprite moved, {@code false} otherwise
+   */
+  boolean moveForFrame(long now) {
+    if (!frameDriven || !Enabled()) {
+      return false;
+    }
+    int interval = Math.max(Interval(), 1);
+    if (nextFrameMove < 0) {
+      nextFrameMove = now + interval;
+      return false;
+    }
+    int moves = 0;
+    while (nextFrameMove <= now && moves < MAX_MOVES_PER_FRAME) {
+      nextFrameMove += interval;
+      moves++;
+    }
+    if (nextFrameMove <= now) {
+      nextFrameMove = now + interval;
+    }
+    if (moves == 0 || !initialized || speed == 0) {
+      return false;
+    }
+    for (int i = 0; i < moves; i++) {
+      updateCoordinates();
+    }
+    registerChange();
+    return true;
+  }
+
   // Component implementation
 
   @Override
@@ -0,0 +1,94 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2024 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime;
+
+import android.os.Handler;
+import android.os.SystemClock;
+
+import com.google.appinventor.components.runtime.util.JellybeanUtil;
+import com.google.appinventor.components.runtime.util.SdkLevel;
+
+/**
+ * Calls {@link Canvas#animateFrame(long)} once per display frame while a
+ * Canvas synchronizes the movement of its sprites.
+ *
+ * <p>Frames come from the {@code Choreographer} on Jellybean and later, and
+ * from a {@link Handler} posting about 60 times a second on older devices.
+ */
+final class SpriteAnimator implements Runnable, OnDestroyListener {
+  // Frame time used when there is no Choreographer.
+  private static final int FALLBACK_FRAME_MILLIS = 16;
+
+  private final Canvas canvas;
+  private final Handler handler;
+
+  // Whether frames are being requested.
+  private boolean running;
+
+  // Whether a frame has been requested and not run yet.
+  private boolean scheduled;
+
+  /**
+   * Creates a SpriteAnimator, which is initially stopped.
+   *
+   * @param canvas the canvas to animate
+   * @param handler the handler used when there is no Choreographer
+   */
+  SpriteAnimator(Canvas canvas, Handler handler) {
+    this.canvas = canvas;
+    this.handler = handler;
+    canvas.$form().registerForOnDestroy(this);
+  }
+
+  /**
+   * Starts requesting a call to the canvas for every frame.
+   */
+  void start() {
+    running = true;
+    scheduleFrame();
+  }
+
+  /**
+   * Stops calling the canvas.
+   */
+  void stop() {
+    running = false;
+  }
+
+  boolean isRunning() {
+    return running;
+  }
+
+  // Runnable implementation
+
+  @Override
+  public void run() {
+    scheduled = false;
+    if (running) {
+      canvas.animateFrame(SystemClock.uptimeMillis());
+      scheduleFrame();
+    }
+  }
+
+  // OnDestroyListener implementation
+
+  @Override
+  public void onDestroy() {
+    stop();
+  }
+
+  private void scheduleFrame() {
+    if (!running || scheduled) {
+      return;
+    }
+    scheduled = true;
+    if (SdkLevel.getLevel() >= SdkLevel.LEVEL_JELLYBEAN) {
+      JellybeanUtil.postFrameCallback(this);
+    } else {
+      handler.postDelayed(this, FALLBACK_FRAME_MILLIS);
+    }
+  }
+}
@@ -0,0 +1,255 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2024 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime;
+
+import com.google.appinventor.components.runtime.util.Vector2D;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A uniform grid over the sprites of a {@link Canvas}, used as the broad phase of collision
+ * detection.
+ *
+ * <p>Each sprite is stored in every cell its bounding box overlaps. The bounding box covers the
+ * whole sprite, including the corners of rotated image sprites, so two sprites that
+ * {@link Sprite#colliding(Sprite, Sprite)} reports as colliding (or touching) always share a cell.
+ * Sprites that would cover too many cells, or whose coordinates are not finite, are kept apart
+ * and are candidates for every query.</p>
+ *
+ * <p>Candidates are returned in the order of {@link Canvas}'s sprite list: increasing Z, then
+ * the order in which the sprites were added to the layer.</p>
+ */
+final class SpriteGrid {
+  // The width and height of a cell, in canvas pixels.
+  private static final int CELL_SIZE = 64;
+
+  // Sprites covering more cells than this are not stored in cells.
+  private static final int MAX_CELLS_PER_SPRITE = 256;
+
+  // Extra room around each sprite so rounding in the exact tests can't miss a touching pair.
+  private static final double MARGIN = 1;
+
+  // The cells a sprite occupies, and its position in the canvas' sprite list.
+  private static class Entry {
+    final long order;
+    boolean large;
+    int left;
+    int top;
+    int right;
+    int bottom;
+
+    Entry(long order) {
+      this.order = order;
+    }
+  }
+
+  private final Map<Sprite, Entry> entries = new HashMap<Sprite, Entry>();
+  private final Map<Long, List<Sprite>> cells = new HashMap<Long, List<Sprite>>();
+  private final Set<Sprite> largeSprites = new HashSet<Sprite>();
+  private long nextOrder = 0;
+
+  private final Comparator<Sprite> layerOrder = new Comparator<Sprite>() {
+    @Override
+    public int compare(Sprite sprite1, Sprite sprite2) {
+      // Compare like Canvas.addSprite() does, rather than with Double.compare().
+      if (sprite1.Z() < sprite2.Z()) {
+        return -1;
+      } else if (sprite1.Z() > sprite2.Z()) {
+        return 1;
+      }
+      long order1 = entries.get(sprite1).order;
+      long order2 = entries.get(sprite2).order;
+      return order1 < order2 ? -1 : (order1 == order2 ? 0 : 1);
+    }
+  };
+
+  /**
+   * Adds a sprite at its current position. The sprite comes after all of the sprites already
+   * added with the same Z value.
+   *
+   * @param sprite the sprite to add
+   */
+  void add(Sprite sprite) {
+    Entry entry = new Entry(nextOrder++);
+    entries.put(sprite, entry);
+    place(sprite, entry);
+  }
+
+  /**
+   * Removes a sprite.
+   *
+   * @param sprite the sprite to remove
+   */
+  void remove(Sprite sprite) {
+    Entry entry = entries.remove(sprite);
+    if (entry != null) {
+      unplace(sprite, entry);
+    }
+  }
+
+  /**
+   * Moves a sprite to the cells of its current bounding box.
+   *
+   * @param sprite the sprite whose location or size may have changed
+   */
+  void update(Sprite sprite) {
+    Entry entry = entries.get(sprite);
+    if (entry == null) {
+      return;
+    }
+    Entry bounds = new Entry(entry.order);
+    computeCells(sprite, bounds);
+    if (bounds.large == entry.large && bounds.left == entry.left && bounds.top == entry.top
+        && bounds.right == entry.right && bounds.bottom == entry.bottom) {
+      return;
+    }
+    unplace(sprite, entry);
+    place(sprite, entry);
+  }
+
+  /**
+   * Returns whether the sprite is in the grid.
+   */
+  boolean contains(Sprite sprite) {
+    return entries.containsKey(sprite);
+  }
+
+  /**
+   * Returns the sprites in the grid that may collide with the given sprite, along with those of
+   * {@code extra} that are in the grid, in canvas layer order. The sprite itself is not included.
+   *
+   * @param sprite the sprite, which need not be in the grid
+   * @param extra sprites to include whatever their location
+   * @return the candidate sprites
+   */
+  List<Sprite> getCandidates(Sprite sprite, Collection<Sprite> extra) {
+    Entry bounds = new Entry(0);
+    computeCells(sprite, bounds);
+    Set<Sprite> found;
+    if (bounds.large) {
+      found = new HashSet<Sprite>(entries.keySet());
+    } else {
+      found = new HashSet<Sprite>(largeSprites);
+      for (int x = bounds.left; x <= bounds.right; x++) {
+        for (int y = bounds.top; y <= bounds.bottom; y++) {
+          List<Sprite> cell = cells.get(key(x, y));
+          if (cell != null) {
+            found.addAll(cell);
+          }
+        }
+      }
+      for (Sprite other : extra) {
+        if (entries.containsKey(other)) {
+          found.add(other);
+        }
+      }
+    }
+    found.remove(sprite);
+    if (found.isEmpty()) {
+      return Collections.emptyList();
+    }
+    List<Sprite> candidates = new ArrayList<Sprite>(found);
+    Collections.sort(candidates, layerOrder);
+    return candidates;
+  }
+
+  private void place(Sprite sprite, Entry entry) {
+    computeCells(sprite, entry);
+    if (entry.large) {
+      largeSprites.add(sprite);
+      return;
+    }
+    for (int x = entry.left; x <= entry.right; x++) {
+      for (int y = entry.top; y <= entry.bottom; y++) {
+        Long key = key(x, y);
+        List<Sprite> cell = cells.get(key);
+        if (cell == null) {
+          cell = new ArrayList<Sprite>(2);
+          cells.put(key, cell);
+        }
+        cell.add(sprite);
+      }
+    }
+  }
+
+  private void unplace(Sprite sprite, Entry entry) {
+    if (entry.large) {
+      largeSprites.remove(sprite);
+      return;
+    }
+    for (int x = entry.left; x <= entry.right; x++) {
+      for (int y = entry.top; y <= entry.bottom; y++) {
+        Long key = key(x, y);
+        List<Sprite> cell = cells.get(key);
+        if (cell != null) {
+          cell.remove(sprite);
+          if (cell.isEmpty()) {
+            cells.remove(key);
+          }
+        }
+      }
+    }
+  }
+
+  // Stores the range of cells covered by the sprite's bounding box in the entry.
+  private static void computeCells(Sprite sprite, Entry entry) {
+    double left;
+    double top;
+    double right;
+    double bottom;
+    if (sprite instanceof ImageSprite) {
+      // Rotated image sprites extend beyond xLeft/yTop and their width and height.
+      left = top = Double.POSITIVE_INFINITY;
+      right = bottom = Double.NEGATIVE_INFINITY;
+      for (Vector2D corner : ((ImageSprite) sprite).getExtremityVectors()) {
+        left = Math.min(left, corner.getX());
+        top = Math.min(top, corner.getY());
+        right = Math.max(right, corner.getX());
+        bottom = Math.max(bottom, corner.getY());
+      }
+    } else {
+      left = sprite.xLeft;
+      top = sprite.yTop;
+      right = sprite.xLeft + sprite.Width();
+      bottom = sprite.yTop + sprite.Height();
+    }
+    double sum = left + top + right + bottom;
+    if (Double.isNaN(sum) || Double.isInfinite(sum)) {
+      entry.large = true;
+      return;
+    }
+    long cellLeft = (long) Math.floor((left - MARGIN) / CELL_SIZE);
+    long cellTop = (long) Math.floor((top - MARGIN) / CELL_SIZE);
+    long cellRight = (long) Math.floor((right + MARGIN) / CELL_SIZE);
+    long cellBottom = (long) Math.floor((bottom + MARGIN) / CELL_SIZE);
+    long width = cellRight - cellLeft + 1;
+    long height = cellBottom - cellTop + 1;
+    if (cellLeft < Integer.MIN_VALUE || cellTop < Integer.MIN_VALUE
+        || cellRight > Integer.MAX_VALUE || cellBottom > Integer.MAX_VALUE
+        || width > MAX_CELLS_PER_SPRITE || height > MAX_CELLS_PER_SPRITE
+        || width * height > MAX_CELLS_PER_SPRITE) {
+      entry.large = true;
+      return;
+    }
+    entry.large = false;
+    entry.left = (int) cellLeft;
+    entry.top = (int) cellTop;
+    entry.right = (int) cellRight;
+    entry.bottom = (int) cellBottom;
+  }
+
+  private static Long key(int x, int y) {
+    return ((long) x << 32) | (y & 0xffffffffL);
+  }
+}
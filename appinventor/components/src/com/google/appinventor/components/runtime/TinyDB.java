@@ -7,7 +7,6 @@
 package com.google.appinventor.components.runtime;
 
 import android.content.Context;
-import android.content.SharedPreferences;
 
 import android.util.Log;
 
@@ -28,10 +27,9 @@ import com.google.appinventor.components.runtime.util.JsonUtil;
 import com.google.appinventor.components.runtime.util.YailDictionary;
 import com.google.appinventor.components.runtime.util.YailList;
 
-import java.util.ArrayList;
+import java.io.IOException;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
 
 import org.json.JSONException;
 
@@ -86,11 +84,11 @@ import org.json.JSONException;
 
 @SimpleObject
 public class TinyDB extends AndroidNonvisibleComponent implements Component, Deleteable,
-    ObservableDataSource<String, YailList> {
+    OnPauseListener, ObservableDataSource<String, YailList> {
 
   public static final String DEFAULT_NAMESPACE = "TinyDB1";
 
-  private SharedPreferences sharedPreferences;
+  private TinyDBStore store;
   private String namespace;
 
   private Context context;  // this was a local in constructor and final not private
@@ -98,8 +96,8 @@ public class TinyDB extends AndroidNonvisibleComponent implements Component, Del
   // Set of observers
   private HashSet<DataSourceChangeListener> dataSourceObservers = new HashSet<>();
 
-  // SharedPreferences listener used to notify observers
-  private final SharedPreferences.OnSharedPreferenceChangeListener sharedPreferenceChangeListener;
+  // Store listener used to notify observers. The store only keeps a weak reference to it.
+  private final TinyDBStore.ChangeListener storeChangeListener;
 
 
   /**
@@ -111,15 +109,16 @@ public class TinyDB extends AndroidNonvisibleComponent implements Component, Del
     super(container.$form());
     context = (Context) container.$context();
 
-    sharedPreferenceChangeListener = new SharedPreferences.OnSharedPreferenceChangeListener() {
+    storeChangeListener = new TinyDBStore.ChangeListener() {
       @Override
-      public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
+      public void onTagChanged(String key) {
         // Upon value change, notify the observers with the key and the value
         notifyDataObservers(key, GetValue(key, null));
       }
     };
 
     Namespace(DEFAULT_NAMESPACE);
+    form.registerForOnPause(this);
   }
 
   /**
@@ -138,15 +137,20 @@ public class TinyDB extends AndroidNonvisibleComponent implements Component, Del
   public void Namespace(String namespace) {
     this.namespace = namespace;
 
-    // SharedPreferences previously defined; Unregister the change listener.
-    if (sharedPreferences != null) {
-      sharedPreferences.unregisterOnSharedPreferenceChangeListener(sharedPreferenceChangeListener);
+    // Store previously defined; Unregister the change listener.
+    if (store != null) {
+      store.removeChangeListener(storeChangeListener);
     }
 
-    sharedPreferences = context.getSharedPreferences(namespace, Context.MODE_PRIVATE);
+    try {
+      store = TinyDBStore.open(context, namespace);
+    } catch (IOException e) {
+      throw new YailRuntimeError("Unable to open TinyDB namespace " + namespace + ": "
+          + e.getMessage(), "TinyDB Error.");
+    }
 
-    // Register the SharedPreferences change listener
-    sharedPreferences.registerOnSharedPreferenceChangeListener(sharedPreferenceChangeListener);
+    // Register the store change listener
+    store.addChangeListener(storeChangeListener);
   }
 
   @SimpleProperty(description = "Namespace for storing data.")
@@ -165,12 +169,12 @@ public class TinyDB extends AndroidNonvisibleComponent implements Component, Del
   @SimpleFunction(description = "Store the given value under the given tag.  The storage persists "
       + "on the phone when the app is restarted.")
   public void StoreValue(final String tag, final Object valueToStore) {
-    final SharedPreferences.Editor sharedPrefsEditor = sharedPreferences.edit();
     try {
-      sharedPrefsEditor.putString(tag, JsonUtil.getJsonRepresentation(valueToStore));
-      sharedPrefsEditor.commit();
+      store.put(tag, JsonUtil.getJsonRepresentation(valueToStore));
     } catch (JSONException e) {
       throw new YailRuntimeError("Value failed to convert to JSON.", "JSON Creation Error.");
+    } catch (IOException e) {
+      throw new YailRuntimeError("Value failed to store: " + e.getMessage(), "TinyDB Error.");
     }
   }
 
@@ -186,14 +190,7 @@ public class TinyDB extends AndroidNonvisibleComponent implements Component, Del
   @SimpleFunction(description = "Retrieve the value stored under the given tag. If there's no "
       + "such tag, then return valueIfTagNotThere.")
   public Object GetValue(final String tag, final Object valueIfTagNotThere) {
-    try {
-      String value = sharedPreferences.getString(tag, "");
-      // If there's no entry with tag as a key then return the empty string.
-      //    was  return (value.length() == 0) ? "" : JsonUtil.getObjectFromJson(value);
-      return (value.length() == 0) ? valueIfTagNotThere : JsonUtil.getObjectFromJson(value, true);
-    } catch (JSONException e) {
-      throw new YailRuntimeError("Value failed to convert from JSON.", "JSON Creation Error.");
-    }
+    return store.get(tag, valueIfTagNotThere);
   }
 
    /**
@@ -203,12 +200,7 @@ public class TinyDB extends AndroidNonvisibleComponent implements Component, Del
    */
   @SimpleFunction(description = "Return a list of all the tags in the data store.")
   public Object GetTags() {
-    List<String> keyList = new ArrayList<String>();
-    Map<String, ?> keyValues = sharedPreferences.getAll();
-    // here is the simple way to get keys
-    keyList.addAll(keyValues.keySet());
-    java.util.Collections.sort(keyList);
-    return keyList;
+    return store.getTags();
   }
 
   /**
@@ -217,9 +209,7 @@ public class TinyDB extends AndroidNonvisibleComponent implements Component, Del
    */
   @SimpleFunction(description = "Clear the entire data store.")
   public void ClearAll() {
-    final SharedPreferences.Editor sharedPrefsEditor = sharedPreferences.edit();
-    sharedPrefsEditor.clear();
-    sharedPrefsEditor.commit();
+    clearStore();
     notifyDataObservers(null, null); // Notify observers with null value to be interpreted as clear
   }
 
@@ -230,19 +220,33 @@ public class TinyDB extends AndroidNonvisibleComponent implements Component, Del
    */
   @SimpleFunction(description = "Clear the entry with the given tag.")
   public void ClearTag(final String tag) {
-    final SharedPreferences.Editor sharedPrefsEditor = sharedPreferences.edit();
-    sharedPrefsEditor.remove(tag);
-    sharedPrefsEditor.commit();
+    try {
+      store.remove(tag);
+    } catch (IOException e) {
+      throw new YailRuntimeError("Tag failed to clear: " + e.getMessage(), "TinyDB Error.");
+    }
   }
 
   @Override
   public void onDelete() {
-    final SharedPreferences.Editor sharedPrefsEditor = sharedPreferences.edit();
-    sharedPrefsEditor.clear();
-    sharedPrefsEditor.commit();
+    clearStore();
     notifyDataObservers(null, null); // Notify observers with null value to be interpreted as clear
   }
 
+  @Override
+  public void onPause() {
+    // Make sure the values stored so far are on disk in case the app is killed in the background.
+    store.force();
+  }
+
+  private void clearStore() {
+    try {
+      store.clear();
+    } catch (IOException e) {
+      throw new YailRuntimeError("Data store failed to clear: " + e.getMessage(), "TinyDB Error.");
+    }
+  }
+
   /**
    * Returns the specified List object identified by the key. If the
    * value is not a List object, or it does not exist, an empty List
@@ -291,10 +295,7 @@ public class TinyDB extends AndroidNonvisibleComponent implements Component, Del
    */
   @SimpleFunction(description = "Retrieves all data entries of TinyDB in form of Dictionaries")
   public YailDictionary GetEntries() {
-    Map<String, ?> keyValues = sharedPreferences.getAll();
-    List<String> keyList = new ArrayList<>(keyValues.keySet());
-
-    java.util.Collections.sort(keyList);
+    List<String> keyList = store.getTags();
 
     YailDictionary dictionary = new YailDictionary();
 
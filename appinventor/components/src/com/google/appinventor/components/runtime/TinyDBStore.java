@@ -0,0 +1,675 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2024 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import com.google.appinventor.components.runtime.util.AsynchUtil;
+import com.google.appinventor.components.runtime.util.YailDictionary;
+import com.google.appinventor.components.runtime.util.YailList;
+
+import com.google.common.annotations.VisibleForTesting;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.WeakHashMap;
+import java.util.zip.CRC32;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+/**
+ * The data of a {@link TinyDB} namespace, kept in a memory mapped, append-only log.
+ *
+ * <p>Every change appends a record to the log, so storing a value writes only that value rather
+ * than the whole namespace. Values are kept in a binary form of their JSON representation and
+ * decode to exactly what {@code JsonUtil.getObjectFromJson(json, true)} returns, without parsing
+ * text. Decoded values are cached. Lists and dictionaries, which the app may change, are handed
+ * out as copies of the cached value.</p>
+ *
+ * <p>When most of the log holds values that have since been replaced, the live records are
+ * copied to a new log on a background thread.</p>
+ *
+ * <p>The first time a namespace is opened, the values that earlier versions of TinyDB kept in the
+ * {@link SharedPreferences} of the same name are moved into the log.</p>
+ *
+ * <p>There is one store per namespace in the process, shared by all of the TinyDB components
+ * using it.</p>
+ */
+final class TinyDBStore {
+
+  /**
+   * Listens for changes to the values of a store.
+   */
+  interface ChangeListener {
+    /**
+     * Called after the value of the given tag was stored or cleared.
+     */
+    void onTagChanged(String tag);
+  }
+
+  private static final String LOG_TAG = "TinyDBStore";
+  private static final String DIRECTORY = "TinyDB";
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  // The log starts with this number ("TDB1"), followed by records. Each record is the length of
+  // its body, the CRC-32 of its body, and the body: the operation, the tag and, for a put, the
+  // value. A record length of 0 marks the end of the log.
+  private static final int MAGIC = 0x54444231;
+  private static final int HEADER_SIZE = 4;
+  private static final int RECORD_HEADER_SIZE = 8;
+
+  private static final byte OP_PUT = 1;
+  private static final byte OP_REMOVE = 2;
+  private static final byte OP_CLEAR = 3;
+
+  private static final byte TYPE_NULL = 0;
+  private static final byte TYPE_FALSE = 1;
+  private static final byte TYPE_TRUE = 2;
+  private static final byte TYPE_INT = 3;
+  private static final byte TYPE_LONG = 4;
+  private static final byte TYPE_DOUBLE = 5;
+  private static final byte TYPE_TEXT = 6;
+  private static final byte TYPE_LIST = 7;
+  private static final byte TYPE_DICTIONARY = 8;
+
+  // The smallest region of the log file that is mapped.
+  private static final int MIN_CAPACITY = 16 * 1024;
+
+  // Logs smaller than this are never compacted.
+  private static final int MIN_COMPACTION_SIZE = 256 * 1024;
+
+  // Open stores, by the path of their log.
+  private static final Map<String, TinyDBStore> STORES = new HashMap<String, TinyDBStore>();
+
+  // Where a tag's current value is in the log.
+  private static class Slot {
+    final int record;
+    final int recordSize;
+    final int valueOffset;
+    Object value;
+    boolean cached;
+
+    Slot(int record, int recordSize, int valueOffset) {
+      this.record = record;
+      this.recordSize = recordSize;
+      this.valueOffset = valueOffset;
+    }
+  }
+
+  private final File file;
+  private RandomAccessFile randomAccessFile;
+  private FileChannel channel;
+  private MappedByteBuffer buffer;
+
+  // The offset just past the last record.
+  private int end;
+
+  // The total size of the records holding current values.
+  private int liveBytes;
+
+  private final Map<String, Slot> index = new HashMap<String, Slot>();
+  private final Map<ChangeListener, Boolean> listeners =
+      new WeakHashMap<ChangeListener, Boolean>();
+  private boolean compacting = false;
+
+  /**
+   * Returns the store of the given namespace, opening it if needed.
+   *
+   * @param context the context of the app
+   * @param namespace the TinyDB namespace
+   * @return the store
+   * @throws IOException if the log can't be read or created
+   */
+  static TinyDBStore open(Context context, String namespace) throws IOException {
+    File file = new File(context.getDir(DIRECTORY, Context.MODE_PRIVATE), fileName(namespace));
+    synchronized (STORES) {
+      TinyDBStore store = STORES.get(file.getPath());
+      if (store == null || !file.exists()) {
+        if (!file.exists()) {
+          migrate(context, namespace, file);
+        }
+        store = new TinyDBStore(file);
+        STORES.put(file.getPath(), store);
+      }
+      return store;
+    }
+  }
+
+  private TinyDBStore(File file) throws IOException {
+    this.file = file;
+    openLog();
+  }
+
+  /**
+   * Adds a listener, which is kept only while something else refers to it.
+   */
+  synchronized void addChangeListener(ChangeListener listener) {
+    listeners.put(listener, Boolean.TRUE);
+  }
+
+  synchronized void removeChangeListener(ChangeListener listener) {
+    listeners.remove(listener);
+  }
+
+  /**
+   * Returns the value stored under the tag, or valueIfTagNotThere if there is none.
+   */
+  synchronized Object get(String tag, Object valueIfTagNotThere) {
+    Slot slot = index.get(tag);
+    if (slot == null) {
+      return valueIfTagNotThere;
+    }
+    if (!slot.cached) {
+      ByteBuffer in = buffer.duplicate();
+      in.position(slot.valueOffset);
+      slot.value = readValue(in);
+      slot.cached = true;
+    }
+    return copyValue(slot.value);
+  }
+
+  /**
+   * Stores a value under the tag.
+   *
+   * @param tag the tag
+   * @param json the JSON representation of the value
+   * @throws JSONException if json is not valid JSON
+   * @throws IOException if the log can't be written
+   */
+  void put(String tag, String json) throws JSONException, IOException {
+    byte[] value = encode(new JSONTokener(json).nextValue());
+    List<ChangeListener> toNotify;
+    synchronized (this) {
+      append(OP_PUT, tag, value);
+      toNotify = new ArrayList<ChangeListener>(listeners.keySet());
+    }
+    notifyListeners(toNotify, tag);
+  }
+
+  /**
+   * Removes the value stored under the tag, if any.
+   *
+   * @throws IOException if the log can't be written
+   */
+  void remove(String tag) throws IOException {
+    List<ChangeListener> toNotify;
+    synchronized (this) {
+      if (!index.containsKey(tag)) {
+        return;
+      }
+      append(OP_REMOVE, tag, new byte[0]);
+      toNotify = new ArrayList<ChangeListener>(listeners.keySet());
+    }
+    notifyListeners(toNotify, tag);
+  }
+
+  /**
+   * Removes all of the values. Listeners are not notified.
+   *
+   * @throws IOException if the log can't be written
+   */
+  synchronized void clear() throws IOException {
+    if (!index.isEmpty()) {
+      append(OP_CLEAR, "", new byte[0]);
+    }
+  }
+
+  /**
+   * Returns the tags with values, in alphabetical order.
+   */
+  synchronized List<String> getTags() {
+    List<String> tags = new ArrayList<String>(index.keySet());
+    Collections.sort(tags);
+    return tags;
+  }
+
+  /**
+   * Writes the changes to the log to the file, so that they survive the device losing power.
+   * The store calls this itself before replacing the log; callers should call it when the app
+   * is paused.
+   */
+  synchronized void force() {
+    buffer.force();
+  }
+
+  /**
+   * Closes the store. The next call to {@link #open} reads the log from the file again.
+   */
+  @VisibleForTesting
+  void close() throws IOException {
+    synchronized (STORES) {
+      STORES.remove(file.getPath());
+    }
+    synchronized (this) {
+      buffer.force();
+      closeLog();
+    }
+  }
+
+  private static void notifyListeners(List<ChangeListener> toNotify, String tag) {
+    for (ChangeListener listener : toNotify) {
+      listener.onTagChanged(tag);
+    }
+  }
+
+  // Log
+
+  /*
+   * Maps the log file, creating it if needed, and reads its records.
+   */
+  private void openLog() throws IOException {
+    randomAccessFile = new RandomAccessFile(file, "rw");
+    channel = randomAccessFile.getChannel();
+    int size = (int) channel.size();
+    buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(size, MIN_CAPACITY));
+    if (size == 0) {
+      buffer.putInt(0, MAGIC);
+    } else if (size < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+      closeLog();
+      throw new IOException("Not a TinyDB log: " + file);
+    }
+    index.clear();
+    liveBytes = 0;
+    int position = HEADER_SIZE;
+    while (position + RECORD_HEADER_SIZE <= buffer.capacity()) {
+      int length = buffer.getInt(position);
+      if (length <= 0 || length > buffer.capacity() - position - RECORD_HEADER_SIZE) {
+        break;
+      }
+      byte[] body = new byte[length];
+      ByteBuffer in = buffer.duplicate();
+      in.position(position + RECORD_HEADER_SIZE);
+      in.get(body);
+      if (checksum(body) != buffer.getInt(position + 4)) {
+        Log.w(LOG_TAG, "Ignoring damaged record at " + position + " in " + file);
+        break;
+      }
+      apply(position, body);
+      position += RECORD_HEADER_SIZE + length;
+    }
+    end = position;
+    if (end + RECORD_HEADER_SIZE <= buffer.capacity() && buffer.getInt(end) != 0) {
+      // Erase what is left of a record that was not completely written.
+      for (int i = end; i < buffer.capacity(); i++) {
+        buffer.put(i, (byte) 0);
+      }
+    }
+  }
+
+  private void closeLog() throws IOException {
+    channel.close();
+    randomAccessFile.close();
+  }
+
+  /*
+   * Updates the index for the record at the given position.
+   */
+  private void apply(int record, byte[] body) {
+    byte op = body[0];
+    if (op == OP_CLEAR) {
+      index.clear();
+      liveBytes = 0;
+      return;
+    }
+    ByteBuffer in = ByteBuffer.wrap(body);
+    in.position(1);
+    String tag = readText(in);
+    Slot old = index.remove(tag);
+    if (old != null) {
+      liveBytes -= old.recordSize;
+    }
+    if (op == OP_PUT) {
+      int recordSize = RECORD_HEADER_SIZE + body.length;
+      index.put(tag, new Slot(record, recordSize, record + RECORD_HEADER_SIZE + in.position()));
+      liveBytes += recordSize;
+    }
+  }
+
+  private void append(byte op, String tag, byte[] value) throws IOException {
+    byte[] tagBytes = tag.getBytes(UTF_8);
+    byte[] body = new byte[1 + 4 + tagBytes.length + value.length];
+    ByteBuffer out = ByteBuffer.wrap(body);
+    out.put(op);
+    out.putInt(tagBytes.length);
+    out.put(tagBytes);
+    out.put(value);
+    int recordSize = RECORD_HEADER_SIZE + body.length;
+    if (end + recordSize + RECORD_HEADER_SIZE > buffer.capacity()) {
+      int capacity = Math.max(buffer.capacity() * 2, end + recordSize + RECORD_HEADER_SIZE);
+      buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+    }
+    // Write the body before the length, so that a partly written record is never read.
+    ByteBuffer log = buffer.duplicate();
+    log.position(end + RECORD_HEADER_SIZE);
+    log.put(body);
+    buffer.putInt(end + 4, checksum(body));
+    buffer.putInt(end, body.length);
+    apply(end, body);
+    end += recordSize;
+    maybeCompact();
+  }
+
+  private static int checksum(byte[] body) {
+    CRC32 crc = new CRC32();
+    crc.update(body, 0, body.length);
+    return (int) crc.getValue();
+  }
+
+  // Compaction
+
+  private void maybeCompact() {
+    if (compacting || end < MIN_COMPACTION_SIZE || end - HEADER_SIZE < 2 * liveBytes) {
+      return;
+    }
+    compacting = true;
+    AsynchUtil.runAsynchronously(new Runnable() {
+      @Override
+      public void run() {
+        compact();
+      }
+    });
+  }
+
+  /*
+   * Replaces the log with one holding only the records of the current values. Records are copied
+   * without holding the lock, except those appended while copying.
+   */
+  void compact() {
+    File temp = new File(file.getPath() + ".tmp");
+    try {
+      ByteBuffer source;
+      int snapshotEnd;
+      List<Slot> slots;
+      synchronized (this) {
+        source = buffer.duplicate();
+        snapshotEnd = end;
+        slots = new ArrayList<Slot>(index.values());
+      }
+      RandomAccessFile out = new RandomAccessFile(temp, "rw");
+      try {
+        out.setLength(0);
+        out.writeInt(MAGIC);
+        for (Slot slot : slots) {
+          copy(source, slot.record, slot.recordSize, out);
+        }
+        synchronized (this) {
+          copy(buffer.duplicate(), snapshotEnd, end - snapshotEnd, out);
+          // Keep the old log intact on disk in case the new one can't replace it.
+          buffer.force();
+          out.getFD().sync();
+          out.close();
+          if (!temp.renameTo(file)) {
+            throw new IOException("Unable to replace " + file);
+          }
+          closeLog();
+          openLog();
+        }
+      } finally {
+        out.close();
+      }
+    } catch (IOException e) {
+      Log.e(LOG_TAG, "Unable to compact " + file, e);
+      temp.delete();
+    } finally {
+      synchronized (this) {
+        compacting = false;
+      }
+    }
+  }
+
+  private static void copy(ByteBuffer source, int offset, int length, RandomAccessFile out)
+      throws IOException {
+    byte[] bytes = new byte[length];
+    source.position(offset);
+    source.get(bytes);
+    out.write(bytes);
+  }
+
+  // Migration
+
+  /*
+   * Creates the log of a namespace from the SharedPreferences used by earlier versions, then
+   * clears those preferences.
+   */
+  private static void migrate(Context context, String namespace, File file) throws IOException {
+    SharedPreferences preferences = context.getSharedPreferences(namespace, Context.MODE_PRIVATE);
+    Map<String, ?> entries = preferences.getAll();
+    File temp = new File(file.getPath() + ".tmp");
+    temp.delete();
+    TinyDBStore store = new TinyDBStore(temp);
+    try {
+      for (Map.Entry<String, ?> entry : entries.entrySet()) {
+        Object value = entry.getValue();
+        // TinyDB treated empty values as missing.
+        if (!(value instanceof String) || ((String) value).length() == 0) {
+          continue;
+        }
+        try {
+          store.put(entry.getKey(), (String) value);
+        } catch (JSONException e) {
+          Log.w(LOG_TAG, "Dropping tag " + entry.getKey() + " with invalid JSON", e);
+        }
+      }
+    } finally {
+      store.closeLog();
+    }
+    if (!temp.renameTo(file)) {
+      throw new IOException("Unable to create " + file);
+    }
+    if (!entries.isEmpty()) {
+      preferences.edit().clear().commit();
+    }
+  }
+
+  private static String fileName(String namespace) {
+    try {
+      return URLEncoder.encode(namespace, "UTF-8") + ".log";
+    } catch (UnsupportedEncodingException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  // Values
+
+  /*
+   * Encodes a value parsed by JSONTokener.
+   */
+  private static byte[] encode(Object json) throws JSONException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    try {
+      writeValue(out, json);
+      out.flush();
+    } catch (IOException e) {
+      throw new IllegalStateException(e);  // Not thrown by ByteArrayOutputStream.
+    }
+    return bytes.toByteArray();
+  }
+
+  private static void writeValue(DataOutputStream out, Object value)
+      throws IOException, JSONException {
+    if (value == null || JSONObject.NULL.equals(value)) {
+      out.writeByte(TYPE_NULL);
+    } else if (value instanceof Boolean) {
+      out.writeByte((Boolean) value ? TYPE_TRUE : TYPE_FALSE);
+    } else if (value instanceof Integer) {
+      out.writeByte(TYPE_INT);
+      out.writeInt((Integer) value);
+    } else if (value instanceof Long) {
+      out.writeByte(TYPE_LONG);
+      out.writeLong((Long) value);
+    } else if (value instanceof Number) {
+      out.writeByte(TYPE_DOUBLE);
+      out.writeDouble(((Number) value).doubleValue());
+    } else if (value instanceof JSONArray) {
+      JSONArray array = (JSONArray) value;
+      out.writeByte(TYPE_LIST);
+      out.writeInt(array.length());
+      for (int i = 0; i < array.length(); i++) {
+        writeValue(out, array.opt(i));
+      }
+    } else if (value instanceof JSONObject) {
+      JSONObject object = (JSONObject) value;
+      // Store the keys in the order getDictionaryFromJsonObject() inserts them.
+      TreeSet<String> keys = new TreeSet<String>();
+      Iterator<String> it = object.keys();
+      while (it.hasNext()) {
+        keys.add(it.next());
+      }
+      out.writeByte(TYPE_DICTIONARY);
+      out.writeInt(keys.size());
+      for (String key : keys) {
+        writeText(out, key);
+        writeValue(out, object.get(key));
+      }
+    } else {
+      out.writeByte(TYPE_TEXT);
+      writeText(out, value.toString());
+    }
+  }
+
+  private static void writeText(DataOutputStream out, String text) throws IOException {
+    byte[] bytes = text.getBytes(UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  /*
+   * Decodes a value as JsonUtil.getObjectFromJson(json, true) does.
+   */
+  private static Object readValue(ByteBuffer in) {
+    byte type = in.get();
+    switch (type) {
+      case TYPE_NULL:
+        return null;
+      case TYPE_LIST:
+        return readList(in);
+      case TYPE_DICTIONARY:
+        return readDictionary(in);
+      default:
+        return readScalar(type, in);
+    }
+  }
+
+  /*
+   * Decodes a value inside a list or dictionary as JsonUtil.convertJsonItem(o, true) does.
+   */
+  private static Object readItem(ByteBuffer in) {
+    byte type = in.get();
+    switch (type) {
+      case TYPE_NULL:
+        return "null";
+      case TYPE_LIST:
+        return YailList.makeList(readList(in));
+      case TYPE_DICTIONARY:
+        return readDictionary(in);
+      case TYPE_TEXT:
+        String text = readText(in);
+        if (text.equalsIgnoreCase("false")) {
+          return false;
+        } else if (text.equalsIgnoreCase("true")) {
+          return true;
+        }
+        return text;
+      default:
+        return readScalar(type, in);
+    }
+  }
+
+  private static List<Object> readList(ByteBuffer in) {
+    int size = in.getInt();
+    List<Object> list = new ArrayList<Object>(size);
+    for (int i = 0; i < size; i++) {
+      list.add(readItem(in));
+    }
+    return list;
+  }
+
+  private static YailDictionary readDictionary(ByteBuffer in) {
+    int size = in.getInt();
+    YailDictionary dictionary = new YailDictionary();
+    for (int i = 0; i < size; i++) {
+      String key = readText(in);
+      dictionary.put(key, readItem(in));
+    }
+    return dictionary;
+  }
+
+  private static Object readScalar(byte type, ByteBuffer in) {
+    switch (type) {
+      case TYPE_FALSE:
+        return false;
+      case TYPE_TRUE:
+        return true;
+      case TYPE_INT:
+        return in.getInt();
+      case TYPE_LONG:
+        return in.getLong();
+      case TYPE_DOUBLE:
+        return in.getDouble();
+      case TYPE_TEXT:
+        return readText(in);
+      default:
+        throw new IllegalStateException("Unknown value type " + type);
+    }
+  }
+
+  /*
+   * Returns a copy of the containers in a decoded value, so that changes the app makes to a
+   * value it read don't change the cached value. Text, numbers and booleans can't be changed
+   * and are shared.
+   */
+  private static Object copyValue(Object value) {
+    if (value instanceof YailList) {
+      List<Object> items = new ArrayList<Object>();
+      for (Object item : ((YailList) value).toArray()) {
+        items.add(copyValue(item));
+      }
+      return YailList.makeList(items);
+    } else if (value instanceof YailDictionary) {
+      YailDictionary dictionary = new YailDictionary();
+      for (Map.Entry<Object, Object> entry : ((YailDictionary) value).entrySet()) {
+        dictionary.put(entry.getKey(), copyValue(entry.getValue()));
+      }
+      return dictionary;
+    } else if (value instanceof List) {
+      List<?> list = (List<?>) value;
+      List<Object> copy = new ArrayList<Object>(list.size());
+      for (Object item : list) {
+        copy.add(copyValue(item));
+      }
+      return copy;
+    }
+    return value;
+  }
+
+  private static String readText(ByteBuffer in) {
+    byte[] bytes = new byte[in.getInt()];
+    in.get(bytes);
+    return new String(bytes, UTF_8);
+  }
+}
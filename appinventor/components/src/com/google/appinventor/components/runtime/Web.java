@@ -45,11 +45,12 @@ import com.google.appinventor.components.runtime.repackaged.org.json.XML;
 
 import com.google.appinventor.components.runtime.util.AsynchUtil;
 import com.google.appinventor.components.runtime.util.BulkPermissionRequest;
-import com.google.appinventor.components.runtime.util.ChartDataSourceUtil;
+import com.google.appinventor.components.runtime.util.ColumnarTable;
 import com.google.appinventor.components.runtime.util.CsvUtil;
 import com.google.appinventor.components.runtime.util.ErrorMessages;
 import com.google.appinventor.components.runtime.util.FileUtil;
 import com.google.appinventor.components.runtime.util.GingerbreadUtil;
+import com.google.appinventor.components.runtime.util.HttpEngine;
 import com.google.appinventor.components.runtime.util.JsonUtil;
 import com.google.appinventor.components.runtime.util.MediaUtil;
 import com.google.appinventor.components.runtime.util.SdkLevel;
@@ -166,6 +167,7 @@ public class Web extends AndroidNonvisibleComponent implements Component,
     final boolean saveResponse;
     final String responseFileName;
     final int timeout;
+    final boolean useCaches;
     final Map<String, List<String>> requestHeaders;
     final Map<String, List<String>> cookies;
 
@@ -176,6 +178,7 @@ public class Web extends AndroidNonvisibleComponent implements Component,
       saveResponse = web.saveResponse;
       responseFileName = web.responseFileName;
       timeout = web.timeout;
+      useCaches = web.useCaches;
       requestHeaders = processRequestHeaders(web.requestHeaders);
 
       Map<String, List<String>> cookiesTemp = null;
@@ -221,6 +224,7 @@ public class Web extends AndroidNonvisibleComponent implements Component,
   private boolean saveResponse;
   private String responseFileName = "";
   private int timeout = 0;
+  private boolean useCaches;
 
   // whether we have permission to manipulate external storage (read and write, separately)
   // requests may need different combinations of permissions, so consider these independently.
@@ -235,9 +239,17 @@ public class Web extends AndroidNonvisibleComponent implements Component,
   // lastTask variable is instead constructed and ran.
   private FutureTask<Void> lastTask = null;
 
-  // Store a List of columns parsed from the latest response (JSON/CSV).
-  // The columns are used for Chart Data importing.
-  private YailList columns = new YailList();
+  // Store the columns parsed from the latest response (JSON/CSV).
+  // The columns are used for Chart Data importing. The response is only
+  // parsed once its columns are needed. Invalid JSON leaves the previous
+  // columns, so the response before the latest one is kept unparsed too,
+  // to fall back on. If both are invalid JSON, the columns last parsed
+  // are kept.
+  private ColumnarTable columns = new ColumnarTable();
+  private String unparsedContent = null;
+  private String unparsedType = null;
+  private String fallbackContent = null;
+  private String fallbackType = null;
 
   // Set of observers
   private HashSet<DataSourceChangeListener> dataSourceObservers = new HashSet<>();
@@ -435,6 +447,32 @@ public class Web extends AndroidNonvisibleComponent implements Component,
     this.timeout = timeout;
   }
 
+  /**
+   * Returns whether responses may be stored on the device and reused for later requests, as
+   * allowed by the caching headers of the responses.
+   */
+  @SimpleProperty(category = PropertyCategory.BEHAVIOR,
+      description = "Whether responses may be stored on the device and reused for later requests "
+          + "to the same URL, as allowed by the caching headers sent by the server. A request may "
+          + "then be answered without contacting the server, so leave this off when polling for "
+          + "new data.")
+  public boolean UseCaches() {
+    return useCaches;
+  }
+
+  /**
+   * Specifies whether responses may be stored on the device and reused for later requests.
+   */
+  @DesignerProperty(editorType = PropertyTypeConstants.PROPERTY_TYPE_BOOLEAN,
+      defaultValue = "false")
+  @SimpleProperty
+  public void UseCaches(boolean useCaches) {
+    this.useCaches = useCaches;
+    if (useCaches && activity != null) {
+      HttpEngine.installResponseCache(activity);
+    }
+  }
+
   @SimpleFunction(description = "Clears all cookies for this Web component.")
   public void ClearCookies() {
     if (cookieHandler != null) {
@@ -473,7 +511,7 @@ public class Web extends AndroidNonvisibleComponent implements Component,
       }
     }, null);
 
-    AsynchUtil.runAsynchronously(lastTask);
+    AsynchUtil.runAsynchronously(this, lastTask);
   }
 
   /**
@@ -559,7 +597,7 @@ public class Web extends AndroidNonvisibleComponent implements Component,
       }
     }, null);
 
-    AsynchUtil.runAsynchronously(lastTask);
+    AsynchUtil.runAsynchronously(this, lastTask);
   }
   
   /**
@@ -638,7 +676,7 @@ public class Web extends AndroidNonvisibleComponent implements Component,
       return;
     }
 
-    AsynchUtil.runAsynchronously(new Runnable() {
+    AsynchUtil.runAsynchronously(this, new Runnable() {
       @Override
       public void run() {
         performRequest(webProps, null, path, "PATCH", METHOD);
@@ -729,7 +767,7 @@ public class Web extends AndroidNonvisibleComponent implements Component,
       }
     }, null);
 
-    AsynchUtil.runAsynchronously(lastTask);
+    AsynchUtil.runAsynchronously(this, lastTask);
   }
 
   /**
@@ -760,7 +798,7 @@ public class Web extends AndroidNonvisibleComponent implements Component,
       }
     }, null);
 
-    AsynchUtil.runAsynchronously(lastTask);
+    AsynchUtil.runAsynchronously(this, lastTask);
   }
 
   /*
@@ -809,7 +847,7 @@ public class Web extends AndroidNonvisibleComponent implements Component,
       }
     }, null);
 
-    AsynchUtil.runAsynchronously(lastTask);
+    AsynchUtil.runAsynchronously(this, lastTask);
   }
 
   /**
@@ -1223,7 +1261,7 @@ public class Web extends AndroidNonvisibleComponent implements Component,
             }
             // onGranted is running on the UI thread, and we are about to do network i/o, so
             // we have to run this asynchronously to get off the UI thread!
-            AsynchUtil.runAsynchronously(new Runnable() {
+            AsynchUtil.runAsynchronously(me, new Runnable() {
                 @Override
                 public void run() {
                   me.performRequest(webProps, postData, postFile, httpVerb, method);
@@ -1234,10 +1272,19 @@ public class Web extends AndroidNonvisibleComponent implements Component,
       return;
     }
 
+    try {
+      // Wait for our turn if there are already many requests to this host.
+      HttpEngine.acquire(webProps.url);
+    } catch (InterruptedException e) {
+      // The request was cancelled while waiting.
+      return;
+    }
+
     try {
       // Open the connection.
       HttpURLConnection connection = openConnection(webProps, httpVerb);
       if (connection != null) {
+        boolean responseRead = false;
         try {
           if (postData != null) {
             writeRequestData(connection, postData);
@@ -1253,6 +1300,7 @@ public class Web extends AndroidNonvisibleComponent implements Component,
           if (saveResponse) {
             final String path = saveResponseContent(connection, webProps.responseFileName,
               responseType);
+            responseRead = true;
 
             // Dispatch the event.
             activity.runOnUiThread(new Runnable() {
@@ -1263,6 +1311,7 @@ public class Web extends AndroidNonvisibleComponent implements Component,
               });
           } else {
             final String responseContent = getResponseContent(connection, responseTextEncoding);
+            responseRead = true;
 
             // Dispatch the event.
             activity.runOnUiThread(new Runnable() {
@@ -1273,10 +1322,9 @@ public class Web extends AndroidNonvisibleComponent implements Component,
               });
 
             // Update the locally stored columns list with the contents of the
-            // retrieved response & response type.
-            // TODO: Optimizations are possible here. Currently for projects which
-            // TODO: do not make use of Chart components, this will create extra overhead
-            // TODO: due to JSON/CSV parsing.
+            // retrieved response & response type. Parsing is deferred until
+            // the columns are used, so projects which do not make use of Chart
+            // components do not pay for JSON/CSV parsing.
             updateColumns(responseContent, responseType);
 
             // Notify all data observers with null key and null value.
@@ -1297,7 +1345,8 @@ public class Web extends AndroidNonvisibleComponent implements Component,
             });
           throw new RequestTimeoutException();
         } finally {
-          connection.disconnect();
+          // Keep the connection open for the next request if the response was read completely.
+          HttpEngine.finish(connection, responseRead);
         }
       }
     } catch (PermissionException e) {
@@ -1338,6 +1387,8 @@ public class Web extends AndroidNonvisibleComponent implements Component,
       }
       form.dispatchErrorOccurredEvent(Web.this, method,
           message, (Object[]) args);
+    } finally {
+      HttpEngine.release(webProps.url);
     }
   }
 
@@ -1354,7 +1405,7 @@ public class Web extends AndroidNonvisibleComponent implements Component,
   private static HttpURLConnection openConnection(CapturedProperties webProps, String httpVerb)
       throws IOException, ClassCastException, ProtocolException {
 
-    HttpURLConnection connection = (HttpURLConnection) webProps.url.openConnection();
+    HttpURLConnection connection = HttpEngine.openConnection(webProps.url, webProps.useCaches);
     connection.setConnectTimeout(webProps.timeout);
     connection.setReadTimeout(webProps.timeout);
 
@@ -1418,13 +1469,7 @@ public class Web extends AndroidNonvisibleComponent implements Component,
       connection.setChunkedStreamingMode(0);
       BufferedOutputStream out = new BufferedOutputStream(connection.getOutputStream());
       try {
-        while (true) {
-          int b = in.read();
-          if (b == -1) {
-            break;
-          }
-          out.write(b);
-        }
+        HttpEngine.copy(in, out);
         out.flush();
       } finally {
         out.close();
@@ -1494,14 +1539,8 @@ public class Web extends AndroidNonvisibleComponent implements Component,
     try {
       BufferedOutputStream out = new BufferedOutputStream(new FileOutputStream(file), 0x1000);
       try {
-        // Copy the contents from the input stream to the output stream.
-        while (true) {
-          int b = in.read();
-          if (b == -1) {
-            break;
-          }
-          out.write(b);
-        }
+        // Stream the response directly to the file.
+        HttpEngine.copy(in, out);
         out.flush();
       } finally {
         out.close();
@@ -1651,13 +1690,14 @@ public class Web extends AndroidNonvisibleComponent implements Component,
         });
 
     // Run and return the getDataValue FutureTask
-    AsynchUtil.runAsynchronously(getDataValueTask);
+    AsynchUtil.runAsynchronously(this, getDataValueTask);
     return getDataValueTask;
   }
 
   /**
    * Updates the local Columns List based on the specified response content
-   * and type. Columns are parsed either from JSON or CSV, depending on
+   * and type. The response is kept until its columns are needed, when
+   * {@link #parseColumns()} parses them either from JSON or CSV, depending on
    * the response type. On invalid response types, parsing is simply skipped.
    *
    * <p>Currently supported MIME types are all types which have 'json' in the name,
@@ -1666,7 +1706,55 @@ public class Web extends AndroidNonvisibleComponent implements Component,
    * @param responseContent  Content of the response
    * @param responseType  Type of the response
    */
-  private void updateColumns(final String responseContent, final String responseType) {
+  private synchronized void updateColumns(final String responseContent,
+      final String responseType) {
+    boolean json = responseType.contains("json");
+    if (!json && !responseType.contains("csv") && !responseType.startsWith("text/")) {
+      // Responses of other types leave the columns unchanged
+      return;
+    }
+    if (json) {
+      // An invalid JSON response leaves the columns of the previous
+      // response, so keep that response to fall back on. If it has
+      // already been parsed, the columns are its columns.
+      fallbackContent = unparsedContent;
+      fallbackType = unparsedType;
+    } else {
+      // CSV responses always replace the columns
+      fallbackContent = null;
+      fallbackType = null;
+    }
+    unparsedContent = responseContent;
+    unparsedType = responseType;
+  }
+
+  /**
+   * Returns the columns of the latest response, parsing the response if that
+   * has not been done yet.
+   */
+  private synchronized ColumnarTable parseColumns() {
+    if (unparsedContent == null) {
+      return columns;
+    }
+    ColumnarTable table = parseResponse(unparsedContent, unparsedType);
+    if (table == null && fallbackContent != null) {
+      table = parseResponse(fallbackContent, fallbackType);
+    }
+    if (table != null) {
+      columns = table;
+    }
+    unparsedContent = null;
+    unparsedType = null;
+    fallbackContent = null;
+    fallbackType = null;
+    return columns;
+  }
+
+  /**
+   * Parses the columns of a response, or returns null if the response is
+   * invalid JSON.
+   */
+  private static ColumnarTable parseResponse(String responseContent, String responseType) {
     // Check whether the response type is a JSON type (by checking
     // whether the response type contains the String 'json')
     // If this is not the case, CSV parsing is attempted if the
@@ -1675,19 +1763,22 @@ public class Web extends AndroidNonvisibleComponent implements Component,
     if (responseType.contains("json")) {
       // Proceed with JSON parsing
       try {
-        columns = JsonUtil.getColumnsFromJson(responseContent);
+        return ColumnarTable.fromColumns(JsonUtil.getColumnsFromJson(responseContent));
       } catch (JSONException e) {
         // Json importing unsuccessful
-      }
-    } else if (responseType.contains("csv") || responseType.startsWith("text/")) {
-      try {
-        columns = CsvUtil.fromCsvTable(responseContent);
-        columns = ChartDataSourceUtil.getTranspose(columns);
-      } catch (Exception e) {
-        // Set columns to empty List (failed parsing)
-        columns = new YailList();
+        return null;
       }
     }
+    try {
+      // Parse the rows straight into columns, without an intermediate
+      // List of rows
+      ColumnarTable table = new ColumnarTable();
+      CsvUtil.readCsvTable(new StringReader(responseContent), table);
+      return table;
+    } catch (Exception e) {
+      // Set columns to empty List (failed parsing)
+      return new ColumnarTable();
+    }
   }
 
   /**
@@ -1697,14 +1788,14 @@ public class Web extends AndroidNonvisibleComponent implements Component,
    * @return  YailList representation of the column (empty List if not found)
    */
   public YailList getColumn(String column) {
-    // Iterate through all the columns
-    for (int i = 0; i < columns.size(); ++i) {
-      YailList list = (YailList)columns.getObject(i);
+    ColumnarTable table = parseColumns();
 
+    // Iterate through all the columns
+    for (int i = 0; i < table.getColumnCount(); ++i) {
       // If column has first entry, and the entry is equal to the
       // queried column, then this is our resulting column.
-      if (!list.isEmpty() && list.getString(0).equals(column)) {
-        return list;
+      if (table.getColumnLength(i) > 0 && table.getCell(0, i).equals(column)) {
+        return table.getColumn(i);
       }
     }
 
@@ -1752,7 +1843,7 @@ public class Web extends AndroidNonvisibleComponent implements Component,
     for (DataSourceChangeListener dataComponent : dataSourceObservers) {
       // Notify Data Component observer with the new columns value (and null key,
       // since key does not matter in the case of the Web component)
-      dataComponent.onDataSourceValueChange(this, null, columns);
+      dataComponent.onDataSourceValueChange(this, null, parseColumns().getColumns());
     }
   }
 }
@@ -193,6 +193,8 @@ public class AppInvHTTPD extends NanoHTTPD {
         // Don't evaluate a simple "#f" which is used by the poller
         if (input_code.equals("#f")) {
           Log.e(LOG_TAG, "Skipping evaluation of #f");
+        } else if (!form.getReplQueue().shouldEvaluate(code)) {
+          Log.d(LOG_TAG, "Skipping evaluation of unchanged definition");
         } else {
           scheme.eval(code);
         }
@@ -255,6 +257,13 @@ public class AppInvHTTPD extends NanoHTTPD {
           });
       }
       return (res);
+    } else if (uri.equals("/_tasks")) {
+      Response res = new Response(HTTP_OK, MIME_JSON, AsynchUtil.getTaskStats());
+      res.addHeader("Access-Control-Allow-Origin", "*");
+      res.addHeader("Access-Control-Allow-Headers", "origin, content-type");
+      res.addHeader("Access-Control-Allow-Methods", "POST,OPTIONS,GET,HEAD,PUT");
+      res.addHeader("Allow", "POST,OPTIONS,GET,HEAD,PUT");
+      return(res);
     } else if (uri.equals("/_extensions")) {
       return processLoadExtensionsRequest(parms);
     } else if (uri.equals("/_proxy")) {
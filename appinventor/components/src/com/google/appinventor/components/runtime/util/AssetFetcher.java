@@ -19,9 +19,12 @@ import com.google.appinventor.components.runtime.errors.YailRuntimeError;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 
 import java.net.HttpURLConnection;
 import java.net.URL;
@@ -29,12 +32,18 @@ import java.net.URL;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.Formatter;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
 import org.json.JSONArray;
 import org.json.JSONException;
+import org.json.JSONObject;
 
 /**
  * AssetFetcher: This module is used by the MIT AI2 Companion to fetch
@@ -53,6 +62,12 @@ import org.json.JSONException;
  *               This code is part of the implementation of webRTC
  *               communication between the Companion and the App
  *               Inventor client.
+ *
+ *               When the whole list of assets is known up front,
+ *               syncAssets sends the hashes of the copies we already
+ *               have to the server in one request. The server answers
+ *               with the assets that changed, and only those are
+ *               downloaded, several at a time.
  */
 
 public class AssetFetcher {
@@ -62,8 +77,15 @@ public class AssetFetcher {
 
   private static final String LOG_TAG = AssetFetcher.class.getSimpleName();
 
-  // We use a single threaded executor so we only load one asset at a time!
+  // Requests are handled one at a time on a single thread. The assets that syncAssets finds
+  // changed are downloaded in parallel, but never more at once than the limit for one host.
   private static ExecutorService background = Executors.newSingleThreadExecutor();
+  private static final int MAX_PARALLEL_DOWNLOADS = HttpEngine.MAX_REQUESTS_PER_HOST;
+  private static ExecutorService downloads =
+      Executors.newFixedThreadPool(MAX_PARALLEL_DOWNLOADS);
+
+  // Transferred assets are reported together, at most this often (in milliseconds)
+  private static final long PROGRESS_INTERVAL = 250;
 
   private static volatile boolean inError = false; // true means we are displaying the "End Application" Error dialog already
   private static final Object semaphore = new Object();
@@ -85,6 +107,64 @@ public class AssetFetcher {
       });
   }
 
+  /**
+   * Brings the assets of a project up to date. The server is asked which of the assets differ
+   * from the copies we already have, and only those are downloaded. If the server can't answer,
+   * every asset is checked with its own request, as fetchAssets does.
+   *
+   * @param cookieValue the authentication cookie of the user
+   * @param projectId the id of the project
+   * @param uri the base URI of the App Inventor server
+   * @param assetsJson a JSON array of the names of the assets
+   */
+  public static void syncAssets(final String cookieValue, final String projectId,
+      final String uri, final String assetsJson) {
+    background.submit(new Runnable() {
+        @Override
+        public void run() {
+          List<String> assets = new ArrayList<String>();
+          try {
+            JSONArray array = new JSONArray(assetsJson);
+            for (int i = 0; i < array.length(); i++) {
+              assets.add(array.getString(i));
+            }
+          } catch (JSONException e) {
+            Log.e(LOG_TAG, "JSON Exception parsing asset list", e);
+            return;
+          }
+          Set<String> changed = getChangedAssets(cookieValue, projectId, uri, assets);
+          List<String> current = new ArrayList<String>();
+          final List<String> toFetch = new ArrayList<String>();
+          for (String asset : assets) {
+            if (changed == null || changed.contains(asset)) {
+              toFetch.add(asset);
+            } else {
+              if (isReadOnlyAsset(asset)) {
+                getDestinationFile(Form.getActiveForm(), asset).setReadOnly();
+              }
+              current.add(asset);
+            }
+          }
+          Log.d(LOG_TAG, "syncAssets: " + current.size() + " current, " + toFetch.size()
+              + " to fetch");
+          if (!current.isEmpty()) {
+            RetValManager.assetsTransferred(current);
+          }
+          final TransferBatch batch = new TransferBatch(toFetch.size());
+          for (final String asset : toFetch) {
+            downloads.submit(new Runnable() {
+                @Override
+                public void run() {
+                  String fileName = uri + "/ode/download/file/" + projectId + "/" + asset;
+                  boolean ok = getFile(fileName, cookieValue, asset, 0) != null;
+                  batch.done(ok ? asset : null);
+                }
+              });
+          }
+        }
+      });
+  }
+
   public static void upgradeCompanion(final String cookieValue, final String inputUri) {
     // The code below is commented out because of issues with the Google Play Store
 
@@ -145,6 +225,110 @@ public class AssetFetcher {
     }
   }
 
+  /*
+   * Asks the server which of the assets differ from our copies. Assets we don't have a copy of
+   * are always included, as are assets the server no longer has, so that fetching them reports
+   * the error instead of treating them as transferred. Returns null if the server couldn't tell
+   * us, in which case every asset has to be checked.
+   */
+  private static Set<String> getChangedAssets(String cookieValue, String projectId, String uri,
+      List<String> assets) {
+    Form form = Form.getActiveForm();
+    Map<String, String> names = new HashMap<String, String>();
+    for (String asset : assets) {
+      names.put(getDestinationName(form, asset), asset);
+    }
+    Map<String, String> hashes = db.getHashes(names.keySet());
+    HttpURLConnection connection = null;
+    boolean responseRead = false;
+    Set<String> changed = new HashSet<String>();
+    try {
+      JSONObject manifest = new JSONObject();
+      for (Map.Entry<String, String> entry : names.entrySet()) {
+        String hash = hashes.get(entry.getKey());
+        if (hash == null || !getDestinationFile(form, entry.getValue()).exists()) {
+          hash = "";
+          changed.add(entry.getValue());
+        }
+        manifest.put(entry.getValue(), hash);
+      }
+      byte[] body = manifest.toString().getBytes("UTF-8");
+      URL url = new URL(uri + "/ode/download/manifest/" + projectId);
+      connection = HttpEngine.openConnection(url, false);
+      connection.addRequestProperty("Cookie",  "AppInventor = " + cookieValue);
+      connection.setRequestProperty("Content-Type", "application/json; charset=utf-8");
+      connection.setRequestMethod("POST");
+      connection.setDoOutput(true);
+      connection.setFixedLengthStreamingMode(body.length);
+      OutputStream out = connection.getOutputStream();
+      try {
+        out.write(body);
+      } finally {
+        out.close();
+      }
+      if (connection.getResponseCode() != HttpURLConnection.HTTP_OK) {
+        Log.w(LOG_TAG, "Manifest request failed: " + connection.getResponseCode());
+        return null;
+      }
+      InputStream in = connection.getInputStream();
+      ByteArrayOutputStream response = new ByteArrayOutputStream();
+      try {
+        HttpEngine.copy(in, response);
+      } finally {
+        in.close();
+      }
+      responseRead = true;
+      // The reply maps the assets the server doesn't have to empty strings
+      JSONObject reply = new JSONObject(response.toString("UTF-8"));
+      Iterator<?> keys = reply.keys();
+      while (keys.hasNext()) {
+        changed.add((String) keys.next());
+      }
+      return changed;
+    } catch (IOException e) {
+      Log.w(LOG_TAG, "Unable to fetch the asset manifest", e);
+      return null;
+    } catch (JSONException e) {
+      Log.w(LOG_TAG, "Bad asset manifest", e);
+      return null;
+    } finally {
+      if (connection != null) {
+        HttpEngine.finish(connection, responseRead);
+      }
+    }
+  }
+
+  /*
+   * Reports the assets downloaded by syncAssets in batches rather than one at a time.
+   */
+  private static class TransferBatch {
+    private final List<String> pending = new ArrayList<String>();
+    private int remaining;
+    private long lastReport = System.currentTimeMillis();
+
+    TransferBatch(int count) {
+      remaining = count;
+    }
+
+    /*
+     * Records the end of one download. The asset is null if it couldn't be fetched.
+     */
+    synchronized void done(String asset) {
+      if (asset != null) {
+        pending.add(asset);
+      }
+      remaining--;
+      long now = System.currentTimeMillis();
+      if (remaining == 0 || now - lastReport >= PROGRESS_INTERVAL) {
+        if (!pending.isEmpty()) {
+          RetValManager.assetsTransferred(new ArrayList<String>(pending));
+          pending.clear();
+        }
+        lastReport = now;
+      }
+    }
+  }
+
   private static File getFile(final String fileName, String cookieValue, final String asset,
       int depth) {
     Form form = Form.getActiveForm();
@@ -165,26 +349,21 @@ public class AssetFetcher {
       }
     }
 
-    String destinationFilename = asset;
+    String destinationFilename = getDestinationName(form, asset);
     File outFile = getDestinationFile(form, asset);
-    if (asset.endsWith("/classes.jar")) {
-      destinationFilename = asset.substring(0, asset.lastIndexOf("/") + 1) + outFile.getName();
-    }
     Log.d(LOG_TAG, "target file = " + outFile);
 
-    // Starting with Android Upside Down Cake (SDK 34), we need to make the files that may be
-    // dynamically loaded be read only.
-    final boolean makeReadonly = Build.VERSION.SDK_INT >= Build.VERSION_CODES.UPSIDE_DOWN_CAKE
-        && asset.contains("/external_comps/") && asset.endsWith("/classes.jar");
+    final boolean makeReadonly = isReadOnlyAsset(asset);
 
     HttpURLConnection connection = null;
     int responseCode = 0;
     String fileHash = null;
     boolean error = false;
+    boolean responseRead = false;
 
     try {
       URL url = new URL(fileName);
-      connection = (HttpURLConnection) url.openConnection();
+      connection = HttpEngine.openConnection(url, false);
       if (connection != null) {
         connection.addRequestProperty("Cookie",  "AppInventor = " + cookieValue);
         HashFile hashFile = db.getHashFile(destinationFilename);
@@ -198,6 +377,7 @@ public class AssetFetcher {
         fileHash = connection.getHeaderField("ETag"); // only save when status code is 200
 
         if (responseCode == 304) { // We already have the file stored
+          responseRead = true;
           return outFile;
         }
 
@@ -214,14 +394,10 @@ public class AssetFetcher {
         BufferedOutputStream out = new BufferedOutputStream(new FileOutputStream(outFile), 0x1000);
         //noinspection TryFinallyCanBeTryWithResources
         try {
-          while (true) {
-            int b = in.read();
-            if (b == -1) {
-              break;
-            }
-            out.write(b);
-          }
+          HttpEngine.copy(in, out);
           out.flush();
+          in.close();
+          responseRead = true;
         } catch (IOException e) {
           Log.e(LOG_TAG, "copying assets", e);
           error = true;
@@ -253,7 +429,7 @@ public class AssetFetcher {
         outFile.setReadOnly();
       }
       if (connection != null) {
-        connection.disconnect();
+        HttpEngine.finish(connection, responseRead);
       }
     }
 
@@ -271,6 +447,26 @@ public class AssetFetcher {
     }
   }
 
+  /*
+   * Starting with Android Upside Down Cake (SDK 34), we need to make the files that may be
+   * dynamically loaded be read only.
+   */
+  private static boolean isReadOnlyAsset(String asset) {
+    return Build.VERSION.SDK_INT >= Build.VERSION_CODES.UPSIDE_DOWN_CAKE
+        && asset.contains("/external_comps/") && asset.endsWith("/classes.jar");
+  }
+
+  /*
+   * Returns the name under which the hash of the asset is stored in the hash database.
+   */
+  private static String getDestinationName(Form form, String asset) {
+    if (asset.endsWith("/classes.jar")) {
+      File outFile = getDestinationFile(form, asset);
+      return asset.substring(0, asset.lastIndexOf("/") + 1) + outFile.getName();
+    }
+    return asset;
+  }
+
   /**
    * Get the destination file for the asset.
    *
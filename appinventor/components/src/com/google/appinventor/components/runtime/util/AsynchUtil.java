@@ -11,8 +11,13 @@ import android.os.Looper;
 
 import android.util.Log;
 
+import com.google.appinventor.components.runtime.Component;
+
 import com.google.appinventor.components.runtime.errors.YailRuntimeError;
 
+import org.json.JSONException;
+import org.json.JSONObject;
+
 /**
  * Utilities for handling asynchronous calls.
  *
@@ -23,16 +28,84 @@ public class AsynchUtil {
 
   private static final String LOG_TAG = AsynchUtil.class.getSimpleName();
 
+  // Most background work waits on the network or on storage, so the pool is larger than the
+  // number of processors.
+  private static final int POOL_SIZE = 8;
+  private static final int QUEUE_CAPACITY = 128;
+  private static final long STALL_MILLIS = 1000;
+
+  private static final RuntimeExecutor executor =
+      new RuntimeExecutor("AsynchUtil", POOL_SIZE, QUEUE_CAPACITY, STALL_MILLIS);
+
+  static {
+    if (SdkLevel.getLevel() >= SdkLevel.LEVEL_GINGERBREAD) {
+      executor.allowIdleThreadsToExit();
+    }
+  }
+
   /**
-   * Make an asynchronous call in a separate thread.
+   * Make an asynchronous call in a background thread.
    * @param call a {@link Runnable} to run in the thread.
    */
   public static void runAsynchronously(final Runnable call) {
-    Thread thread = new Thread(call);
-    thread.start();
+    executor.execute(call);
+  }
+
+  /**
+   * Make an asynchronous call in a background thread on behalf of a component. The call is
+   * cancelled by {@link #cancelTasks(Component)} if it has not finished by then.
+   * @param component the component making the call
+   * @param call a {@link Runnable} to run in the thread.
+   */
+  public static void runAsynchronously(Component component, final Runnable call) {
+    executor.execute(component, component.getDispatchDelegate(), call);
+  }
+
+  /**
+   * Cancels the calls made on behalf of a component by
+   * {@link #runAsynchronously(Component, Runnable)}. Calls that have not started will not run,
+   * and the threads of running calls are interrupted. If the component is a Form, the calls of
+   * all of the components in the Form are cancelled.
+   * @param component the component whose calls are cancelled
+   */
+  public static void cancelTasks(Component component) {
+    int count = executor.cancel(component);
+    if (count > 0) {
+      Log.d(LOG_TAG, "Cancelled " + count + " background tasks");
+    }
+  }
+
+  /**
+   * Returns the number of asynchronous calls that are running.
+   */
+  public static int getActiveTaskCount() {
+    return executor.getActiveCount();
+  }
+
+  /**
+   * Returns the number of asynchronous calls that are waiting to run.
+   */
+  public static int getQueuedTaskCount() {
+    return executor.getQueuedCount();
+  }
+
+  /**
+   * Returns the counters of the asynchronous calls as a JSON object, for the companion.
+   */
+  public static String getTaskStats() {
+    JSONObject stats = new JSONObject();
+    try {
+      stats.put("active", executor.getActiveCount());
+      stats.put("queued", executor.getQueuedCount());
+      stats.put("started", executor.getStartedCount());
+      stats.put("overflow", executor.getOverflowCount());
+    } catch (JSONException e) {
+      Log.e(LOG_TAG, "Unable to report background task counters", e);
+    }
+    return stats.toString();
   }
   /**
-   * Make an asynchronous call in a separate thread, with a callback that's run on the current
+   * Make an asynchronous call in a background thread, with a callback that's run on the current
    * Android UI thread.
    * @param androidUIHandler  the Handler from the current Android context
    * @param call a {@link Runnable} to run in the thread.
@@ -53,8 +126,7 @@ public class AsynchUtil {
         }
       }
     };
-    Thread thread = new Thread(runnable);
-    thread.start();
+    executor.execute(runnable);
   }
 
   public static boolean isUiThread() {
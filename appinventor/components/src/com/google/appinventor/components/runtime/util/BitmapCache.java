@@ -0,0 +1,101 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2024 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime.util;
+
+import android.graphics.Bitmap;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A cache of decoded bitmaps that holds at most a given number of bytes of pixels, evicting the
+ * least recently used bitmaps first.
+ *
+ * <p>android.util.LruCache is not available on all of the API levels App Inventor supports, so
+ * this class keeps its entries in an access ordered {@link LinkedHashMap}. All methods are
+ * thread safe.</p>
+ */
+final class BitmapCache {
+  private final LinkedHashMap<String, Bitmap> bitmaps =
+      new LinkedHashMap<String, Bitmap>(16, 0.75f, true);
+  private final int maxSize;
+  private int size = 0;
+  private int hitCount = 0;
+  private int missCount = 0;
+
+  /**
+   * Creates an empty cache.
+   *
+   * @param maxSize the maximum number of bytes of the cached bitmaps
+   */
+  BitmapCache(int maxSize) {
+    this.maxSize = maxSize;
+  }
+
+  /**
+   * Returns the bitmap cached under the key, or null if there is none.
+   */
+  synchronized Bitmap get(String key) {
+    Bitmap bitmap = bitmaps.get(key);
+    if (bitmap != null) {
+      hitCount++;
+    } else {
+      missCount++;
+    }
+    return bitmap;
+  }
+
+  /**
+   * Caches a bitmap under the key, evicting other bitmaps as needed. A bitmap larger than the
+   * whole cache is not cached.
+   */
+  synchronized void put(String key, Bitmap bitmap) {
+    int bitmapSize = sizeOf(bitmap);
+    if (bitmapSize > maxSize) {
+      return;
+    }
+    Bitmap previous = bitmaps.put(key, bitmap);
+    if (previous != null) {
+      size -= sizeOf(previous);
+    }
+    size += bitmapSize;
+    trimToSize(maxSize);
+  }
+
+  /**
+   * Evicts the least recently used bitmaps until the cached bitmaps hold at most the given
+   * number of bytes.
+   */
+  synchronized void trimToSize(int targetSize) {
+    Iterator<Map.Entry<String, Bitmap>> it = bitmaps.entrySet().iterator();
+    while (size > targetSize && it.hasNext()) {
+      size -= sizeOf(it.next().getValue());
+      it.remove();
+    }
+  }
+
+  synchronized int maxSize() {
+    return maxSize;
+  }
+
+  synchronized int size() {
+    return size;
+  }
+
+  synchronized int hitCount() {
+    return hitCount;
+  }
+
+  synchronized int missCount() {
+    return missCount;
+  }
+
+  private static int sizeOf(Bitmap bitmap) {
+    // Bitmap.getByteCount() needs API level 12.
+    return bitmap.getRowBytes() * bitmap.getHeight();
+  }
+}
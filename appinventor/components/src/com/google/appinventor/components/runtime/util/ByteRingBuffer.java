@@ -0,0 +1,119 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2024 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime.util;
+
+/**
+ * A fixed-capacity circular buffer of bytes that one thread writes and
+ * another thread reads without locking.
+ *
+ * <p>Only one thread may call {@link #write}, and only one thread at a time
+ * may call the other methods. The writer and the reader see each other's
+ * progress through two volatile counters, the total number of bytes written
+ * and the total number of bytes read.
+ */
+public final class ByteRingBuffer {
+  private final byte[] buffer;
+  private final int mask;
+
+  // Total number of bytes read; only changed by the reader.
+  private volatile long readCount = 0;
+
+  // Total number of bytes written; only changed by the writer.
+  private volatile long writeCount = 0;
+
+  /**
+   * Creates a buffer holding at least the given number of bytes. The
+   * capacity is rounded up to a power of two.
+   *
+   * @param capacity the minimum capacity, in bytes
+   */
+  public ByteRingBuffer(int capacity) {
+    if (capacity <= 0 || capacity > (1 << 30)) {
+      throw new IllegalArgumentException("Invalid capacity: " + capacity);
+    }
+    int size = Integer.highestOneBit(capacity);
+    if (size < capacity) {
+      size <<= 1;
+    }
+    buffer = new byte[size];
+    mask = size - 1;
+  }
+
+  /**
+   * Returns the number of bytes the buffer can hold.
+   */
+  public int capacity() {
+    return buffer.length;
+  }
+
+  /**
+   * Returns the number of bytes that can be read.
+   */
+  public int size() {
+    return (int) (writeCount - readCount);
+  }
+
+  /**
+   * Copies as many of the given bytes as fit into the buffer. Called by the
+   * writer thread.
+   *
+   * @param src the bytes to write
+   * @param offset the index of the first byte to write
+   * @param length the number of bytes to write
+   * @return the number of bytes written, which is less than length if the
+   *     buffer became full
+   */
+  public int write(byte[] src, int offset, int length) {
+    long written = writeCount;
+    int count = Math.min(length, buffer.length - (int) (written - readCount));
+    int start = (int) written & mask;
+    int first = Math.min(count, buffer.length - start);
+    System.arraycopy(src, offset, buffer, start, first);
+    System.arraycopy(src, offset + first, buffer, 0, count - first);
+    // Publish the bytes only after they have been copied.
+    writeCount = written + count;
+    return count;
+  }
+
+  /**
+   * Returns the position, relative to the next byte to be read, of the first
+   * occurrence of the given byte, or -1 if it has not been written.
+   *
+   * @param value the byte to look for
+   */
+  public int indexOf(byte value) {
+    long read = readCount;
+    int size = (int) (writeCount - read);
+    for (int i = 0; i < size; i++) {
+      if (buffer[(int) (read + i) & mask] == value) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Removes and returns the next bytes of the buffer.
+   *
+   * @param length the number of bytes to read, which must not be more than
+   *     {@link #size()}
+   * @return the bytes read
+   */
+  public byte[] read(int length) {
+    long read = readCount;
+    if (length < 0 || length > (int) (writeCount - read)) {
+      throw new IllegalArgumentException("Cannot read " + length + " bytes");
+    }
+    byte[] result = new byte[length];
+    int start = (int) read & mask;
+    int first = Math.min(length, buffer.length - start);
+    System.arraycopy(buffer, start, result, 0, first);
+    System.arraycopy(buffer, 0, result, first, length - first);
+    // Free the space only after the bytes have been copied.
+    readCount = read + length;
+    return result;
+  }
+}
@@ -37,10 +37,8 @@ public class ChartDataSourceUtil {
     }
 
     // Iterate through all the matrix's entries
-    for (int i = 0; i < matrix.size(); ++i) {
+    for (Object row : matrix.toArray()) {
       // Matrix entry is not of type YailList; Skip
-      Object row = matrix.getObject(i);
-
       if (!(row instanceof List)) {
         continue;
       }
@@ -73,12 +71,22 @@ public class ChartDataSourceUtil {
     int entries = determineMaximumListSize(matrix);
 
     List<YailList> result = new ArrayList<>();
+    if (entries == 0) {
+      return YailList.makeList(result);
+    }
+
+    // Copy the matrix entries into arrays once, since indexing into a YailList walks the list.
+    Object[] matrixEntries = matrix.toArray();
+    Object[][] cells = new Object[matrixEntries.length][];
+    for (int i = 0; i < matrixEntries.length; ++i) {
+      cells[i] = ((List<?>) matrixEntries[i]).toArray(); // Safe cast
+    }
 
     for (int i = 0; i < entries; ++i) {
       // Get the i-th transpose entry and add it to the
       // result List. This essentially constructs the
       // i-th column or row entry (depending on the List passed in)
-      YailList listEntries = getTransposeEntry(matrix, i);
+      YailList listEntries = getTransposeEntry(cells, i);
       result.add(listEntries);
     }
 
@@ -95,27 +103,20 @@ public class ChartDataSourceUtil {
    * If the matrix is a List of columns, the index represents the
    * number of the row to return.</p>
    *
-   * @param matrix  Matrix to return the transpose entry of
+   * @param cells  Entries of the matrix to return the transpose entry of
    * @param index  The index of the entry to return
    * @return  The index-th transpose entry of the matrix
    */
-  private static YailList getTransposeEntry(YailList matrix, int index) {
+  private static YailList getTransposeEntry(Object[][] cells, int index) {
     List<String> entries = new ArrayList<>();
 
-    for (int i = 0; i < matrix.size(); ++i) {
-      // Get the i-th matrix entry
-      List<?> matrixEntry = (List<?>) matrix.getObject(i); // Safe cast
-
+    for (Object[] matrixEntry : cells) {
       // Ensure that the entry has the required index value
       // (this handles un-even list case)
-      if (matrixEntry.size() > index) {
+      if (matrixEntry.length > index) {
         // Each index-th element is added from all the matrix entries
         // to create the transpose entry
-        if (matrixEntry instanceof YailList) {
-          entries.add((((YailList) matrixEntry).getString(index)));
-        } else {
-          entries.add(matrixEntry.get(index).toString());
-        }
+        entries.add(matrixEntry[index].toString());
       } else { // Entry does not exist
         // Add blank entry
         entries.add("");
@@ -0,0 +1,209 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2024 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.json.JSONArray;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.exceptions.JedisException;
+import redis.clients.jedis.exceptions.JedisNoScriptException;
+
+/**
+ * Collects the values stored and asked for by a CloudDB component so that they are sent to Redis
+ * together.
+ *
+ * <p>The values stored since the last flush are written by one Lua script, and the values asked
+ * for are read by one MGET. A tag stored more than once is only written with its last value, but
+ * every value is still published, so that each change reaches the other devices. Values are
+ * written before they are read, so a get sees the values stored before it. A value stored after
+ * a get of the same tag starts a new round of requests, so that the get still sees the value
+ * stored before it.</p>
+ */
+public final class CloudDBBatch {
+
+  /**
+   * Receives the results of a flush, in the order the requests were made.
+   */
+  public interface Callback {
+    /**
+     * Called once the values stored under a tag have been written.
+     *
+     * @param tag the tag
+     */
+    void updateDone(String tag);
+
+    /**
+     * Called with the value read for a tag.
+     *
+     * @param tag the tag
+     * @param value the value stored under the tag, or null if there is none
+     * @param valueIfTagNotThere the value the get asked for if the tag is not there
+     */
+    void gotValue(String tag, String value, Object valueIfTagNotThere);
+  }
+
+  static final String STORE_SCRIPT =
+      "local project = ARGV[1];" +
+      "for i = 1, #KEYS do " +
+      "  local key = KEYS[i];" +
+      "  local topublish = cjson.decode(ARGV[2 * i + 1]);" +
+      "  redis.call(\"publish\", project, cjson.encode({key, topublish}));" +
+      "  redis.call('set', project .. \":\" .. key, ARGV[2 * i]);" +
+      "end " +
+      "return #KEYS;";
+
+  static final String STORE_SCRIPT_SHA1 = "8d9cc5b6b3a53ac5b27c51e8342edfc544e096fe";
+
+  private List<Round> rounds = new ArrayList<Round>();
+
+  /**
+   * Adds a value to store under a tag.
+   *
+   * @param tag the tag
+   * @param value the JSON representation of the value
+   * @return true if the batch was empty, in which case the caller has to arrange for it to be
+   *     flushed
+   */
+  public synchronized boolean store(String tag, String value) {
+    boolean wasEmpty = rounds.isEmpty();
+    Round round = wasEmpty ? null : rounds.get(rounds.size() - 1);
+    if (round == null || round.gotTags.contains(tag)) {
+      // A get before this store has to see the old value, so the store waits for the next round
+      round = new Round();
+      rounds.add(round);
+    }
+    List<String> values = round.stores.get(tag);
+    if (values == null) {
+      values = new ArrayList<String>();
+      round.stores.put(tag, values);
+    }
+    values.add(value);
+    return wasEmpty;
+  }
+
+  /**
+   * Adds a request for the value stored under a tag.
+   *
+   * @param tag the tag
+   * @param valueIfTagNotThere the value to report if the tag is not there
+   * @return true if the batch was empty, in which case the caller has to arrange for it to be
+   *     flushed
+   */
+  public synchronized boolean get(String tag, Object valueIfTagNotThere) {
+    boolean wasEmpty = rounds.isEmpty();
+    if (wasEmpty) {
+      rounds.add(new Round());
+    }
+    Round round = rounds.get(rounds.size() - 1);
+    round.getTags.add(tag);
+    round.getDefaults.add(valueIfTagNotThere);
+    round.gotTags.add(tag);
+    return wasEmpty;
+  }
+
+  /**
+   * Drops the requests that have not been flushed.
+   */
+  public synchronized void clear() {
+    rounds = new ArrayList<Round>();
+  }
+
+  /**
+   * Sends the requests in the batch to Redis and empties it. This takes at most two round trips
+   * for each round of the batch, however many requests there are.
+   *
+   * @param jedis the connection to Redis
+   * @param projectID the project the tags belong to
+   * @param callback receives the results
+   * @throws JedisException if Redis fails, in which case the remaining requests are dropped
+   */
+  public void flush(Jedis jedis, String projectID, Callback callback) throws JedisException {
+    List<Round> rounds;
+    synchronized (this) {
+      rounds = this.rounds;
+      clear();
+    }
+    for (Round round : rounds) {
+      round.flush(jedis, projectID, callback);
+    }
+  }
+
+  /**
+   * Runs a Lua script by its SHA1 digest, sending the whole script only if the server doesn't
+   * have it cached yet.
+   *
+   * @param jedis the connection to Redis
+   * @param script the script
+   * @param sha1 the SHA1 digest of the script
+   * @param keyCount the number of arguments that are keys
+   * @param args the keys followed by the other arguments
+   * @return the result of the script
+   * @throws JedisException if Redis fails
+   */
+  public static Object eval(Jedis jedis, String script, String sha1, int keyCount,
+      String... args) throws JedisException {
+    try {
+      return jedis.evalsha(sha1, keyCount, args);
+    } catch (JedisNoScriptException e) {
+      return jedis.eval(script, keyCount, args);
+    }
+  }
+
+  /*
+   * The stores and gets that can be sent together. Stores are written before gets are read, so a
+   * round never has a store that comes after a get of the same tag.
+   */
+  private static class Round {
+    private final Map<String, List<String>> stores = new LinkedHashMap<String, List<String>>();
+    private final List<String> getTags = new ArrayList<String>();
+    private final List<Object> getDefaults = new ArrayList<Object>();
+    private final Set<String> gotTags = new HashSet<String>();
+
+    void flush(Jedis jedis, String projectID, Callback callback) throws JedisException {
+      if (!stores.isEmpty()) {
+        String[] args = new String[3 * stores.size() + 1];
+        int i = 0;
+        for (String tag : stores.keySet()) {
+          args[i++] = tag;
+        }
+        args[i++] = projectID;
+        for (List<String> values : stores.values()) {
+          args[i++] = values.get(values.size() - 1);
+          args[i++] = new JSONArray(values).toString();
+        }
+        eval(jedis, STORE_SCRIPT, STORE_SCRIPT_SHA1, stores.size(), args);
+        for (String tag : stores.keySet()) {
+          callback.updateDone(tag);
+        }
+      }
+      if (!getTags.isEmpty()) {
+        Set<String> keys = new LinkedHashSet<String>();
+        for (String tag : getTags) {
+          keys.add(projectID + ":" + tag);
+        }
+        List<String> values = jedis.mget(keys.toArray(new String[keys.size()]));
+        Map<String, String> valuesByKey = new HashMap<String, String>();
+        int i = 0;
+        for (String key : keys) {
+          valuesByKey.put(key, values.get(i++));
+        }
+        for (i = 0; i < getTags.size(); i++) {
+          String tag = getTags.get(i);
+          callback.gotValue(tag, valuesByKey.get(projectID + ":" + tag), getDefaults.get(i));
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,304 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2024 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A table of text cells stored by column, used for the data that DataFile and Web read from CSV
+ * and JSON.
+ *
+ * <p>The first cell of each column is its name. The other cells of a column are stored as an
+ * array of longs or doubles as long as every one of them is the canonical text of such a number,
+ * and as an array of Strings otherwise, so that a numeric column takes a fraction of the memory
+ * its Strings would. Cells always read back as the exact text that was added.</p>
+ *
+ * <p>Rows and columns are only turned into YailLists when they are asked for, matching what
+ * {@link ChartDataSourceUtil#getTranspose(YailList)} makes of the table read: a table built from
+ * rows keeps the length of each row and pads its columns with empty cells, and a table built
+ * from columns keeps the length of each column and pads its rows.</p>
+ *
+ * <p>A table is filled by one thread, after which it may be read by any thread.</p>
+ */
+public final class ColumnarTable {
+  private final boolean byRows;
+  private final List<Column> columns = new ArrayList<Column>();
+  private int[] rowLengths = new int[16];
+  private int rowCount = 0;
+
+  // The YailLists of all rows and all columns, made when first asked for.
+  private YailList rows = null;
+  private YailList columnList = null;
+
+  /**
+   * Creates an empty table, to be filled with {@link #addRow(List)}.
+   */
+  public ColumnarTable() {
+    this(true);
+  }
+
+  private ColumnarTable(boolean byRows) {
+    this.byRows = byRows;
+  }
+
+  /**
+   * Creates a table from a list of columns, each of which is a list starting with the name of
+   * the column.
+   *
+   * @param columns the columns
+   * @return the table
+   */
+  public static ColumnarTable fromColumns(List<?> columns) {
+    ColumnarTable table = new ColumnarTable(false);
+    for (Object entry : columns) {
+      Column column = new Column();
+      List<?> cells = (List<?>) entry;
+      for (int i = 0; i < cells.size(); i++) {
+        column.add(cells instanceof YailList
+            ? ((YailList) cells).getString(i) : cells.get(i).toString());
+      }
+      table.columns.add(column);
+      table.rowCount = Math.max(table.rowCount, column.size);
+    }
+    return table;
+  }
+
+  /**
+   * Adds a row to the end of the table.
+   *
+   * @param row the cells of the row
+   */
+  public void addRow(List<String> row) {
+    int index = rowCount;
+    for (int i = 0; i < row.size(); i++) {
+      if (i == columns.size()) {
+        columns.add(new Column());
+      }
+      columns.get(i).set(index, row.get(i));
+    }
+    if (index == rowLengths.length) {
+      rowLengths = Arrays.copyOf(rowLengths, index * 2);
+    }
+    rowLengths[index] = row.size();
+    rowCount++;
+  }
+
+  /**
+   * Returns the number of rows, including the row of column names.
+   */
+  public int getRowCount() {
+    return rowCount;
+  }
+
+  /**
+   * Returns the number of columns.
+   */
+  public int getColumnCount() {
+    return columns.size();
+  }
+
+  /**
+   * Returns the number of cells in the given row.
+   */
+  public int getRowLength(int row) {
+    return byRows ? rowLengths[row] : columns.size();
+  }
+
+  /**
+   * Returns the number of cells in the given column, including its name.
+   */
+  public int getColumnLength(int column) {
+    return byRows ? rowCount : columns.get(column).size;
+  }
+
+  /**
+   * Returns the text of a cell, or the empty string if the cell is padding.
+   *
+   * @param row the index of the row, where the column names are row 0
+   * @param column the index of the column
+   */
+  public String getCell(int row, int column) {
+    return columns.get(column).get(row);
+  }
+
+  /**
+   * Returns the cells of a row as a YailList of Strings.
+   */
+  public YailList getRow(int row) {
+    List<String> cells = new ArrayList<String>();
+    if (row < rowCount) {
+      int length = getRowLength(row);
+      for (int i = 0; i < length; i++) {
+        cells.add(getCell(row, i));
+      }
+    }
+    return YailList.makeList(cells);
+  }
+
+  /**
+   * Returns the cells of a column, starting with its name, as a YailList of Strings.
+   */
+  public YailList getColumn(int column) {
+    int length = getColumnLength(column);
+    List<String> cells = new ArrayList<String>(length);
+    for (int i = 0; i < length; i++) {
+      cells.add(getCell(i, column));
+    }
+    return YailList.makeList(cells);
+  }
+
+  /**
+   * Returns a YailList of all the rows, each of which is a YailList.
+   */
+  public synchronized YailList getRows() {
+    if (rows == null) {
+      List<YailList> result = new ArrayList<YailList>(rowCount);
+      for (int i = 0; i < rowCount; i++) {
+        result.add(getRow(i));
+      }
+      rows = YailList.makeList(result);
+    }
+    return rows;
+  }
+
+  /**
+   * Returns a YailList of all the columns, each of which is a YailList.
+   */
+  public synchronized YailList getColumns() {
+    if (columnList == null) {
+      List<YailList> result = new ArrayList<YailList>(columns.size());
+      for (int i = 0; i < columns.size(); i++) {
+        result.add(getColumn(i));
+      }
+      columnList = YailList.makeList(result);
+    }
+    return columnList;
+  }
+
+  /**
+   * The cells of a column. Cells past the end of the column read as empty strings.
+   */
+  private static final class Column {
+    private static final int EMPTY = 0;
+    private static final int LONGS = 1;
+    private static final int DOUBLES = 2;
+    private static final int STRINGS = 3;
+
+    private String name = "";
+    private int type = EMPTY;
+    private long[] longs;
+    private double[] doubles;
+    private String[] strings;
+
+    // The number of cells, including the name.
+    private int size = 0;
+
+    String get(int index) {
+      if (index >= size) {
+        return "";
+      } else if (index == 0) {
+        return name;
+      }
+      switch (type) {
+        case LONGS:
+          return Long.toString(longs[index - 1]);
+        case DOUBLES:
+          return Double.toString(doubles[index - 1]);
+        default:
+          return strings[index - 1];
+      }
+    }
+
+    void set(int index, String cell) {
+      // Cells of rows that were too short to reach this column are padding.
+      while (size < index) {
+        add("");
+      }
+      add(cell);
+    }
+
+    void add(String cell) {
+      if (size == 0) {
+        name = cell;
+        size++;
+        return;
+      }
+      int index = size - 1;
+      if ((type == EMPTY || type == LONGS) && isCanonicalLong(cell)) {
+        if (longs == null || index == longs.length) {
+          longs = longs == null ? new long[16] : Arrays.copyOf(longs, index * 2);
+        }
+        longs[index] = Long.parseLong(cell);
+        type = LONGS;
+      } else if ((type == EMPTY || type == DOUBLES) && isCanonicalDouble(cell)) {
+        if (doubles == null || index == doubles.length) {
+          doubles = doubles == null ? new double[16] : Arrays.copyOf(doubles, index * 2);
+        }
+        doubles[index] = Double.parseDouble(cell);
+        type = DOUBLES;
+      } else {
+        if (type != STRINGS) {
+          toStrings();
+        }
+        if (index == strings.length) {
+          strings = Arrays.copyOf(strings, index * 2);
+        }
+        strings[index] = cell;
+      }
+      size++;
+    }
+
+    private void toStrings() {
+      int count = size - 1;
+      strings = new String[Math.max(16, count * 2)];
+      for (int i = 0; i < count; i++) {
+        strings[i] = get(i + 1);
+      }
+      longs = null;
+      doubles = null;
+      type = STRINGS;
+    }
+  }
+
+  /**
+   * Returns whether the text is what {@link Long#toString(long)} returns for some long with at
+   * most 18 digits.
+   */
+  private static boolean isCanonicalLong(String text) {
+    int start = text.startsWith("-") ? 1 : 0;
+    int digits = text.length() - start;
+    if (digits == 0 || digits > 18) {
+      return false;
+    }
+    if (text.charAt(start) == '0' && (digits > 1 || start == 1)) {
+      // Leading zeros and "-0" would not read back the same.
+      return false;
+    }
+    for (int i = start; i < text.length(); i++) {
+      char c = text.charAt(i);
+      if (c < '0' || c > '9') {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns whether the text is what {@link Double#toString(double)} returns for some double.
+   */
+  private static boolean isCanonicalDouble(String text) {
+    if (text.isEmpty() || text.indexOf('.') < 0) {
+      return false;
+    }
+    try {
+      return Double.toString(Double.parseDouble(text)).equals(text);
+    } catch (NumberFormatException e) {
+      return false;
+    }
+  }
+}
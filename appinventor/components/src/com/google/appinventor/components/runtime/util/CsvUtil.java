@@ -36,6 +36,22 @@ public final class CsvUtil {
     return YailList.makeList(csvList);
   }
 
+  /**
+   * Parses CSV text one row at a time as it is read, adding each row to the given table. Unlike
+   * {@link #fromCsvTable(String)}, neither the text nor a list of rows is held in memory.
+   *
+   * @param reader the reader of the CSV text
+   * @param table the table to add the rows to
+   * @throws Exception if the text could not be read or parsed
+   */
+  public static void readCsvTable(Reader reader, ColumnarTable table) throws Exception {
+    CsvParser csvParser = new CsvParser(reader);
+    while (csvParser.hasNext()) {
+      table.addRow(csvParser.next());
+    }
+    csvParser.throwAnyProblem();
+  }
+
   public static YailList fromCsvRow(String csvString) throws Exception {
     CsvParser csvParser = new CsvParser(new StringReader(csvString));
     if (csvParser.hasNext()) {
@@ -187,6 +187,72 @@ public final class GeometryUtil {
     return jtsPointToGeoPoint(createGeometry(points, holes).getCentroid());
   }
 
+  /**
+   * Simplifies a line or ring using the Douglas-Peucker algorithm. Points are removed as long as
+   * the result stays within <code>tolerance</code> of the original, measured in degrees.
+   *
+   * @param points    The points of the line or ring.
+   * @param tolerance The largest distance in degrees a removed point may be from the result.
+   * @return a new list of the points that were kept, which always includes the first and last
+   *         points, or <code>points</code> itself if no point can be removed.
+   */
+  public static List<GeoPoint> simplify(List<GeoPoint> points, double tolerance) {
+    int size = points.size();
+    if (size < 3) {
+      return points;
+    }
+    boolean[] keep = new boolean[size];
+    keep[0] = keep[size - 1] = true;
+    int[] stack = new int[2 * size];
+    int top = 0;
+    stack[top++] = 0;
+    stack[top++] = size - 1;
+    int kept = 2;
+    while (top > 0) {
+      int last = stack[--top];
+      int first = stack[--top];
+      GeoPoint a = points.get(first);
+      GeoPoint b = points.get(last);
+      int farthest = -1;
+      double max = tolerance;
+      for (int i = first + 1; i < last; i++) {
+        double distance = distanceToSegment(points.get(i), a, b);
+        if (distance > max) {
+          max = distance;
+          farthest = i;
+        }
+      }
+      if (farthest >= 0) {
+        keep[farthest] = true;
+        kept++;
+        stack[top++] = first;
+        stack[top++] = farthest;
+        stack[top++] = farthest;
+        stack[top++] = last;
+      }
+    }
+    if (kept == size) {
+      return points;
+    }
+    List<GeoPoint> result = new ArrayList<GeoPoint>(kept);
+    for (int i = 0; i < size; i++) {
+      if (keep[i]) {
+        result.add(points.get(i));
+      }
+    }
+    return result;
+  }
+
+  private static double distanceToSegment(GeoPoint p, GeoPoint a, GeoPoint b) {
+    double x = p.getLongitude() - a.getLongitude();
+    double y = p.getLatitude() - a.getLatitude();
+    double dx = b.getLongitude() - a.getLongitude();
+    double dy = b.getLatitude() - a.getLatitude();
+    double length = dx * dx + dy * dy;
+    double t = length == 0 ? 0 : Math.max(0, Math.min(1, (x * dx + y * dy) / length));
+    return Math.hypot(x - t * dx, y - t * dy);
+  }
+
   public static Polygon ringToPolygon(List<GeoPoint> ring) {
     return FACTORY.createPolygon(geoPointsToLinearRing(ring));
   }
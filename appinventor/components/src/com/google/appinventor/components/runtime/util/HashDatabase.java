@@ -18,6 +18,9 @@ import android.util.Log;
 import com.google.appinventor.components.runtime.util.HashDbInitialize.HashTable;
 
 import java.io.File;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
 
 public final class HashDatabase extends SQLiteOpenHelper {
 
@@ -76,13 +79,13 @@ public final class HashDatabase extends SQLiteOpenHelper {
     onCreate(db);
   }
 
-  public void deleteOne(HashFile hashFile) {
+  public synchronized void deleteOne(HashFile hashFile) {
     SQLiteDatabase db = this.getWritableDatabase();
     db.delete(TABLE_NAME, "fileName = ?", new String[] { hashFile.getFileName() });
     db.close();
   }
 
-  public HashFile getHashFile(String fileName) {
+  public synchronized HashFile getHashFile(String fileName) {
     SQLiteDatabase db = this.getReadableDatabase();
     Cursor cursor = db.query(TABLE_NAME, // a. table
       COLUMNS, // b. column names
@@ -110,7 +113,28 @@ public final class HashDatabase extends SQLiteOpenHelper {
     return hashFile;
   }
 
-  public void insertHashFile(HashFile hashFile) {
+  /**
+   * Returns the stored hashes of the named files in a single query. Files without a stored hash
+   * are left out of the result.
+   *
+   * @param fileNames the names of the files
+   * @return a map from file name to hash
+   */
+  public synchronized Map<String, String> getHashes(Collection<String> fileNames) {
+    Map<String, String> result = new HashMap<String, String>();
+    SQLiteDatabase db = this.getReadableDatabase();
+    Cursor cursor = db.query(TABLE_NAME, COLUMNS, null, null, null, null, null, null);
+    while (cursor.moveToNext()) {
+      if (fileNames.contains(cursor.getString(0))) {
+        result.put(cursor.getString(0), cursor.getString(1));
+      }
+    }
+    cursor.close();
+    db.close();
+    return result;
+  }
+
+  public synchronized void insertHashFile(HashFile hashFile) {
     SQLiteDatabase db = this.getWritableDatabase();
     ContentValues values = new ContentValues();
     values.put(KEY_NAME, hashFile.getFileName());
@@ -120,7 +144,7 @@ public final class HashDatabase extends SQLiteOpenHelper {
     db.close();
   }
 
-  public int updateHashFile(HashFile hashFile) {
+  public synchronized int updateHashFile(HashFile hashFile) {
     SQLiteDatabase db = this.getWritableDatabase();
     ContentValues values = new ContentValues();
     values.put(KEY_NAME, hashFile.getFileName());
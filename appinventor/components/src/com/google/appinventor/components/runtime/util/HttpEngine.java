@@ -0,0 +1,144 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2024 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime.util;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Shared support for the HTTP requests of the Web component.
+ *
+ * <p>HttpURLConnection keeps connections alive and reuses them for later requests to the same
+ * host, but only if the response is read to the end and the stream closed, rather than the
+ * connection disconnected. The response cache installed by {@link #installResponseCache(Context)}
+ * lets repeated requests be answered from storage or revalidated with a conditional request. It is
+ * only installed once a Web component asks for it, and the connections opened with
+ * {@link #openConnection(URL, boolean)} use it only if they ask for it too.
+ * Requests to the same host wait in line once {@link #MAX_REQUESTS_PER_HOST} are running, so a
+ * polling app cannot open an unbounded number of connections to one server.</p>
+ */
+public final class HttpEngine {
+  private static final String LOG_TAG = HttpEngine.class.getSimpleName();
+
+  /**
+   * The maximum number of requests that may run at once for each host.
+   */
+  public static final int MAX_REQUESTS_PER_HOST = 4;
+
+  private static final long RESPONSE_CACHE_SIZE = 10 * 1024 * 1024;
+  private static final int BUFFER_SIZE = 0x2000;
+
+  private static final Map<String, Semaphore> hosts = new HashMap<String, Semaphore>();
+  private static boolean cacheInstalled = false;
+
+  private HttpEngine() {
+  }
+
+  /**
+   * Installs the shared response cache in the cache directory of the app, if the platform
+   * supports it.
+   *
+   * @param context the context of the app
+   */
+  public static synchronized void installResponseCache(Context context) {
+    if (cacheInstalled || SdkLevel.getLevel() < SdkLevel.LEVEL_ICE_CREAM_SANDWICH) {
+      return;
+    }
+    cacheInstalled = true;
+    try {
+      IceCreamSandwichUtil.installHttpResponseCache(new File(context.getCacheDir(), "http"),
+          RESPONSE_CACHE_SIZE);
+    } catch (IOException e) {
+      Log.w(LOG_TAG, "Unable to install the HTTP response cache", e);
+    }
+  }
+
+  /**
+   * Opens a connection to the URL.
+   *
+   * @param url the URL of the request
+   * @param useCaches true if the response may come from the response cache and be stored in it
+   * @return the connection, not yet connected
+   * @throws IOException if the connection can't be opened
+   */
+  public static HttpURLConnection openConnection(URL url, boolean useCaches) throws IOException {
+    HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+    connection.setUseCaches(useCaches);
+    return connection;
+  }
+
+  /**
+   * Waits until a request to the host of the URL may run. Every call must be followed by a call
+   * to {@link #release(URL)}.
+   *
+   * @param url the URL of the request
+   * @throws InterruptedException if the thread was interrupted while waiting
+   */
+  public static void acquire(URL url) throws InterruptedException {
+    getPermits(url).acquire();
+  }
+
+  /**
+   * Lets the next request waiting for the host of the URL run.
+   *
+   * @param url the URL of the request
+   */
+  public static void release(URL url) {
+    getPermits(url).release();
+  }
+
+  /**
+   * Ends a request. If the response was read completely, the connection is left open so that it
+   * can be reused for the next request to the host. Otherwise, the connection is closed.
+   *
+   * @param connection the connection of the request
+   * @param responseRead true if the response was read to the end
+   */
+  public static void finish(HttpURLConnection connection, boolean responseRead) {
+    if (!responseRead) {
+      connection.disconnect();
+    }
+  }
+
+  /**
+   * Copies the contents of a stream to another stream. Neither stream is closed.
+   *
+   * @param in the stream to read
+   * @param out the stream to write
+   * @throws IOException if either stream fails
+   */
+  public static void copy(InputStream in, OutputStream out) throws IOException {
+    byte[] buffer = new byte[BUFFER_SIZE];
+    int read;
+    while ((read = in.read(buffer)) != -1) {
+      out.write(buffer, 0, read);
+    }
+  }
+
+  private static Semaphore getPermits(URL url) {
+    int port = url.getPort() == -1 ? url.getDefaultPort() : url.getPort();
+    String host = url.getHost().toLowerCase(Locale.ENGLISH) + ":" + port;
+    synchronized (hosts) {
+      Semaphore permits = hosts.get(host);
+      if (permits == null) {
+        permits = new Semaphore(MAX_REQUESTS_PER_HOST, true);
+        hosts.put(host, permits);
+      }
+      return permits;
+    }
+  }
+}
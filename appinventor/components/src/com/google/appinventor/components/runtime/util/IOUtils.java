@@ -10,9 +10,10 @@ import android.util.Log;
 import java.io.ByteArrayOutputStream;
 import java.io.Closeable;
 import java.io.File;
+import java.io.FilterReader;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.io.Reader;
 
 public final class IOUtils {
   private static final int BUFFER_LENGTH = 4096;
@@ -74,13 +75,13 @@ public final class IOUtils {
   }
 
   /**
-   * Read an InputStreamReader object until the end of the stream.
+   * Read a Reader object until the end of the stream.
    *
-   * @param reader the input stream reader to use
+   * @param reader the reader to use
    * @return a String containing the contents of the stream
    * @throws IOException if there is an underlying problem reading the stream
    */
-  public static String readReader(InputStreamReader reader) throws IOException {
+  public static String readReader(Reader reader) throws IOException {
     StringBuilder sb = new StringBuilder();
     char[] buffer = new char[BUFFER_LENGTH];
     int read;
@@ -103,6 +104,89 @@ public final class IOUtils {
     return s.replaceAll("\r\n", "\n");
   }
 
+  /**
+   * Wraps a Reader so that Windows-style CRLF read from it becomes Unix LF, like
+   * {@link #normalizeNewLines(String)} but without reading the whole stream first.
+   *
+   * @param reader the reader to wrap
+   * @return a reader of the normalized contents
+   */
+  public static Reader normalizeNewLines(Reader reader) {
+    return new FilterReader(reader) {
+      private final char[] buffer = new char[BUFFER_LENGTH];
+      private int pos = 0;
+      private int limit = 0;
+      private boolean eof = false;
+
+      @Override
+      public int read() throws IOException {
+        char[] c = new char[1];
+        return read(c, 0, 1) < 0 ? -1 : c[0];
+      }
+
+      @Override
+      public int read(char[] cbuf, int off, int len) throws IOException {
+        if (len == 0) {
+          return 0;
+        }
+        int count = 0;
+        while (count < len) {
+          // Keep a character of lookahead to see whether a CR is followed by LF.
+          while (limit - pos < 2 && !eof) {
+            fill();
+          }
+          if (pos == limit) {
+            break;
+          }
+          char c = buffer[pos++];
+          if (c != '\r' || pos == limit || buffer[pos] != '\n') {
+            cbuf[off + count++] = c;
+          }
+        }
+        return count == 0 ? -1 : count;
+      }
+
+      @Override
+      public long skip(long n) throws IOException {
+        char[] skipped = new char[(int) Math.min(n, BUFFER_LENGTH)];
+        int read = read(skipped, 0, skipped.length);
+        return read < 0 ? 0 : read;
+      }
+
+      @Override
+      public boolean ready() throws IOException {
+        return limit - pos > 1 || (eof && pos < limit) || super.ready();
+      }
+
+      @Override
+      public boolean markSupported() {
+        return false;
+      }
+
+      @Override
+      public void mark(int readAheadLimit) throws IOException {
+        throw new IOException("mark() not supported");
+      }
+
+      @Override
+      public void reset() throws IOException {
+        throw new IOException("reset() not supported");
+      }
+
+      private void fill() throws IOException {
+        System.arraycopy(buffer, pos, buffer, 0, limit - pos);
+        limit -= pos;
+        pos = 0;
+        int n = in.read(buffer, limit, buffer.length - limit);
+        if (n < 0) {
+          eof = true;
+        } else {
+          limit += n;
+        }
+      }
+    };
+  }
+
   /**
    * Create the parent directory(-ies) of the given {@code file} if they don't exist. This does
    * not check for write permission, so callers are responsible for ensuring that the app has been
@@ -5,10 +5,14 @@
 
 package com.google.appinventor.components.runtime.util;
 
+import android.net.http.HttpResponseCache;
 import android.os.Build.VERSION;
 import android.os.Build.VERSION_CODES;
 import android.widget.TextView;
 
+import java.io.File;
+import java.io.IOException;
+
 /**
  * IceCreamSandwichUtil provides implementation of functionality that was added in Android Ice Cream
  * Sandwich 4.0 (API 14).
@@ -29,4 +33,18 @@ public final class IceCreamSandwichUtil {
       view.setAllCaps(allCaps);
     }
   }
+
+  /**
+   * Installs an on-disk cache for the responses of HttpURLConnection, unless one is installed
+   * already. The cache honors the Cache-Control headers of the responses and revalidates stale
+   * responses with conditional requests.
+   * @param directory the directory of the cache
+   * @param maxSize the maximum size of the cache in bytes
+   * @throws IOException if the cache could not be created
+   */
+  public static void installHttpResponseCache(File directory, long maxSize) throws IOException {
+    if (HttpResponseCache.getInstalled() == null) {
+      HttpResponseCache.install(directory, maxSize);
+    }
+  }
 }
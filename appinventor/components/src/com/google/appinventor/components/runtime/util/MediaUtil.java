@@ -11,6 +11,7 @@ import static android.Manifest.permission.READ_MEDIA_AUDIO;
 import static android.Manifest.permission.READ_MEDIA_VIDEO;
 
 import android.annotation.SuppressLint;
+import android.content.ComponentCallbacks2;
 import android.content.Context;
 import android.content.res.AssetFileDescriptor;
 import android.graphics.Bitmap;
@@ -46,7 +47,9 @@ import java.lang.reflect.Array;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -73,6 +76,16 @@ public class MediaUtil {
   // tempFileMap maps cached media (assets, etc) to their respective temp files.
   private static final Map<String, File> tempFileMap = new HashMap<String, File>();
 
+  // bitmapCache holds decoded images shared by all the components of the app, keyed by
+  // getBitmapCacheKey. It uses an eighth of the memory available to the app.
+  private static final BitmapCache bitmapCache =
+      new BitmapCache((int) Math.min(Runtime.getRuntime().maxMemory() / 8, Integer.MAX_VALUE));
+
+  // pendingBitmaps maps the cache keys of images being loaded to the continuations waiting for
+  // them, so that an image requested again while it loads is only decoded once.
+  private static final Map<String, List<AsyncCallbackPair<BitmapDrawable>>> pendingBitmaps =
+      new HashMap<String, List<AsyncCallbackPair<BitmapDrawable>>>();
+
   private MediaUtil() {
   }
 
@@ -476,6 +489,10 @@ public class MediaUtil {
    *
    * <p/>If mediaPath is null or empty, null is returned.
    *
+   * <p/>Images loaded from assets and files are kept in a cache of decoded images, so loading the
+   * same image at the same size again returns a new drawable of the cached bitmap. If the desired
+   * width and height are both given, the image is decoded with no more pixels than needed.
+   *
    * @param form the Form
    * @param mediaPath the path to the media
    * @param desiredWidth the desired width of the image
@@ -485,13 +502,66 @@ public class MediaUtil {
    */
   public static void getBitmapDrawableAsync(final Form form, final String mediaPath,
       final int desiredWidth, final int desiredHeight,
-      final AsyncCallbackPair<BitmapDrawable> continuation) {
+      AsyncCallbackPair<BitmapDrawable> continuation) {
     if (mediaPath == null || mediaPath.length() == 0) {
       continuation.onSuccess(null);
       return;
     }
 
     final MediaSource mediaSource = determineMediaSource(form, mediaPath);
+    final int[] maxSize = getMaxImageSize(form);
+    final String cacheKey = getBitmapCacheKey(form, mediaPath, mediaSource, maxSize,
+        desiredWidth, desiredHeight);
+    if (cacheKey != null) {
+      Bitmap bitmap;
+      synchronized (pendingBitmaps) {
+        bitmap = bitmapCache.get(cacheKey);
+        if (bitmap == null) {
+          List<AsyncCallbackPair<BitmapDrawable>> waiting = pendingBitmaps.get(cacheKey);
+          if (waiting != null) {
+            // The image is already being loaded.
+            waiting.add(continuation);
+            return;
+          }
+          waiting = new ArrayList<AsyncCallbackPair<BitmapDrawable>>();
+          waiting.add(continuation);
+          pendingBitmaps.put(cacheKey, waiting);
+        }
+      }
+      if (bitmap != null) {
+        continuation.onSuccess(newBitmapDrawable(form, bitmap));
+        return;
+      }
+      continuation = new AsyncCallbackPair<BitmapDrawable>() {
+        @Override
+        public void onSuccess(BitmapDrawable result) {
+          List<AsyncCallbackPair<BitmapDrawable>> waiting;
+          synchronized (pendingBitmaps) {
+            if (result.getBitmap() != null) {
+              bitmapCache.put(cacheKey, result.getBitmap());
+            }
+            waiting = pendingBitmaps.remove(cacheKey);
+          }
+          // Each continuation gets a drawable of its own, as components change their drawables.
+          waiting.get(0).onSuccess(result);
+          for (int i = 1; i < waiting.size(); i++) {
+            waiting.get(i).onSuccess(newBitmapDrawable(form, result.getBitmap()));
+          }
+        }
+
+        @Override
+        public void onFailure(String message) {
+          List<AsyncCallbackPair<BitmapDrawable>> waiting;
+          synchronized (pendingBitmaps) {
+            waiting = pendingBitmaps.remove(cacheKey);
+          }
+          for (AsyncCallbackPair<BitmapDrawable> callback : waiting) {
+            callback.onFailure(message);
+          }
+        }
+      };
+    }
+    final AsyncCallbackPair<BitmapDrawable> callback = continuation;
 
     Runnable loadImage = new Runnable() {
       @Override
@@ -514,7 +584,7 @@ public class MediaUtil {
           }
           buf = bos.toByteArray();
         } catch (PermissionException e) {
-          continuation.onFailure("PERMISSION_DENIED:" + e.getPermissionNeeded());
+          callback.onFailure("PERMISSION_DENIED:" + e.getPermissionNeeded());
           return;
         } catch (IOException e) {
           if (mediaSource == MediaSource.CONTACT_URI) {
@@ -522,11 +592,11 @@ public class MediaUtil {
             BitmapDrawable drawable = new BitmapDrawable(form.getResources(),
                 BitmapFactory.decodeResource(form.getResources(),
                 android.R.drawable.picture_frame, null));
-            continuation.onSuccess(drawable);
+            callback.onSuccess(drawable);
             return;
           }
           Log.d(LOG_TAG, "IOException reading file.", e);
-          continuation.onFailure(e.getMessage());
+          callback.onFailure(e.getMessage());
           return;
         } finally {
           if (is != null) {
@@ -550,7 +620,8 @@ public class MediaUtil {
         buf = null;
         try {
           bis.mark(read);
-          BitmapFactory.Options options = getBitmapOptions(form, bis, mediaPath);
+          BitmapFactory.Options options = getBitmapOptions(form, bis, mediaPath, maxSize,
+              desiredWidth, desiredHeight);
           bis.reset();
           BitmapDrawable originalBitmapDrawable = new BitmapDrawable(form.getResources(),
               decodeStream(bis, null, options));
@@ -570,7 +641,7 @@ public class MediaUtil {
           originalBitmapDrawable.setTargetDensity(form.getResources().getDisplayMetrics());
           boolean needsResize = desiredWidth > 0 && desiredHeight >= 0;
           if (!needsResize && (options.inSampleSize != 1 || form.deviceDensity() == 1.0f)) {
-            continuation.onSuccess(originalBitmapDrawable);
+            callback.onSuccess(originalBitmapDrawable);
             return;
           }
           int scaledWidth = (int) (form.deviceDensity()
@@ -589,10 +660,10 @@ public class MediaUtil {
           scaledBitmapDrawable.setTargetDensity(form.getResources().getDisplayMetrics());
           originalBitmapDrawable = null; // So it will get GC'd on the next line
           System.gc();                   // We likely used a lot of memory, so gc now.
-          continuation.onSuccess(scaledBitmapDrawable);
+          callback.onSuccess(scaledBitmapDrawable);
         } catch (Exception e) {
           Log.w(LOG_TAG, "Exception while loading media.", e);
-          continuation.onFailure(e.getMessage());
+          callback.onFailure(e.getMessage());
         } finally {
           if (bis != null) {
             try {
@@ -608,6 +679,92 @@ public class MediaUtil {
     AsynchUtil.runAsynchronously(loadImage);
   }
 
+  private static BitmapDrawable newBitmapDrawable(Form form, Bitmap bitmap) {
+    BitmapDrawable drawable = new BitmapDrawable(form.getResources(), bitmap);
+    drawable.setTargetDensity(form.getResources().getDisplayMetrics());
+    return drawable;
+  }
+
+  /**
+   * Returns the key under which the image loaded from mediaPath is cached, or null if it must
+   * not be cached. Images from the internet and from content providers may change at any time,
+   * so they are never cached. Images from files are keyed by the time the file was modified and
+   * its length as well, so that a file that was replaced, such as an asset the Companion received
+   * again, is loaded again.
+   */
+  private static String getBitmapCacheKey(Form form, String mediaPath, MediaSource mediaSource,
+      int[] maxSize, int desiredWidth, int desiredHeight) {
+    File file;
+    try {
+      switch (mediaSource) {
+        case ASSET:
+          file = null;
+          break;
+        case REPL_ASSET:
+          file = new File(URI.create(form.getAssetPath(mediaPath)));
+          break;
+        case SDCARD:
+        case PRIVATE_DATA:
+          file = new File(mediaPath);
+          break;
+        case FILE_URL:
+          file = new File(fileUrlToFilePath(mediaPath));
+          break;
+        default:
+          return null;
+      }
+    } catch (Exception e) {
+      return null;
+    }
+    StringBuilder key = new StringBuilder();
+    key.append(mediaSource).append(':').append(mediaPath)
+        .append(':').append(desiredWidth).append('x').append(desiredHeight)
+        .append(':').append(maxSize[0]).append('x').append(maxSize[1])
+        .append(':').append(form.deviceDensity());
+    if (file != null) {
+      key.append(':').append(file.lastModified()).append(':').append(file.length());
+    }
+    return key.toString();
+  }
+
+  /**
+   * Releases cached images when the system asks the app to use less memory.
+   *
+   * @param level the level passed to {@link ComponentCallbacks2#onTrimMemory(int)}
+   */
+  public static void trimBitmapCache(int level) {
+    if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE
+        || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+      bitmapCache.trimToSize(0);
+    } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+      bitmapCache.trimToSize(bitmapCache.maxSize() / 2);
+    }
+    Log.d(LOG_TAG, "Trimmed bitmap cache for level " + level + ": " + getBitmapCacheStats());
+  }
+
+  /**
+   * Returns a summary of the use of the cache of decoded images, for debugging.
+   */
+  public static String getBitmapCacheStats() {
+    return "size = " + bitmapCache.size() + " maxSize = " + bitmapCache.maxSize()
+        + " hits = " + bitmapCache.hitCount() + " misses = " + bitmapCache.missCount();
+  }
+
+  /**
+   * Returns the number of images that were found in the cache of decoded images.
+   */
+  public static int getBitmapCacheHitCount() {
+    return bitmapCache.hitCount();
+  }
+
+  /**
+   * Returns the number of images that had to be loaded because they were not in the cache of
+   * decoded images.
+   */
+  public static int getBitmapCacheMissCount() {
+    return bitmapCache.missCount();
+  }
+
   private static Bitmap decodeStream(InputStream is, Rect outPadding, BitmapFactory.Options opts) {
     // We wrap a FlushedInputStream around the given InputStream. This works around a problem in
     // BitmapFactory.decodeStream where it fails to load the image if the InputStream's skip method
@@ -641,14 +798,10 @@ public class MediaUtil {
     }
   }
 
-  private static BitmapFactory.Options getBitmapOptions(Form form, InputStream is, String mediaPath) {
-    // Get the size of the image.
-    BitmapFactory.Options options = new BitmapFactory.Options();
-    options.inJustDecodeBounds = true;
-    decodeStream(is, null, options);
-    int imageWidth = options.outWidth;
-    int imageHeight = options.outHeight;
-
+  /**
+   * Returns the width and height beyond which images are scaled down when they are loaded.
+   */
+  private static int[] getMaxImageSize(Form form) {
     // Get the screen size.
     Display display = ((WindowManager) form.getSystemService(Context.WINDOW_SERVICE)).
         getDefaultDisplay();
@@ -668,15 +821,36 @@ public class MediaUtil {
       maxWidth = (int) (display.getWidth() / form.deviceDensity());
       maxHeight = (int) (display.getHeight() / form.deviceDensity());
     }
+    return new int[] { maxWidth, maxHeight };
+  }
+
+  private static BitmapFactory.Options getBitmapOptions(Form form, InputStream is, String mediaPath,
+      int[] maxSize, int desiredWidth, int desiredHeight) {
+    // Get the size of the image.
+    BitmapFactory.Options options = new BitmapFactory.Options();
+    options.inJustDecodeBounds = true;
+    decodeStream(is, null, options);
+    int imageWidth = options.outWidth;
+    int imageHeight = options.outHeight;
+    int maxWidth = maxSize[0];
+    int maxHeight = maxSize[1];
 
     int sampleSize = 1;
     while ((imageWidth / sampleSize > maxWidth) && (imageHeight / sampleSize > maxHeight)) {
       sampleSize *= 2;
     }
+    // If the image will be scaled to the desired size anyway, decode no more pixels than that.
+    if (desiredWidth > 0 && desiredHeight > 0) {
+      int targetWidth = (int) (form.deviceDensity() * desiredWidth);
+      int targetHeight = (int) (form.deviceDensity() * desiredHeight);
+      while ((imageWidth / (sampleSize * 2) >= targetWidth)
+          && (imageHeight / (sampleSize * 2) >= targetHeight)) {
+        sampleSize *= 2;
+      }
+    }
     options = new BitmapFactory.Options();
     Log.d(LOG_TAG, "getBitmapOptions: sampleSize = " + sampleSize + " mediaPath = " + mediaPath
-      + " maxWidth = " + maxWidth + " maxHeight = " + maxHeight +
-      " display width = " + display.getWidth() + " display height = " + display.getHeight());
+        + " maxWidth = " + maxWidth + " maxHeight = " + maxHeight);
     options.inSampleSize = sampleSize;
     return options;
   }
@@ -6,7 +6,9 @@
 package com.google.appinventor.components.runtime.util;
 
 import android.content.Context;
+import android.graphics.Bitmap;
 import android.graphics.Canvas;
+import android.graphics.Color;
 import android.graphics.Paint;
 import android.graphics.Picture;
 import android.graphics.drawable.BitmapDrawable;
@@ -39,6 +41,7 @@ import com.google.appinventor.components.runtime.util.MapFactory.MapController;
 import com.google.appinventor.components.runtime.util.MapFactory.MapEventListener;
 import com.google.appinventor.components.runtime.util.MapFactory.MapFeature;
 import com.google.appinventor.components.runtime.util.MapFactory.MapFeatureCollection;
+import com.google.appinventor.components.runtime.util.MapFactory.MapFeatureVisitor;
 import com.google.appinventor.components.runtime.util.MapFactory.MapLineString;
 import com.google.appinventor.components.runtime.util.MapFactory.MapMarker;
 import com.google.appinventor.components.runtime.util.MapFactory.MapPolygon;
@@ -49,6 +52,7 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -56,6 +60,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import org.locationtech.jts.geom.Envelope;
 import org.osmdroid.api.IGeoPoint;
 import org.osmdroid.config.Configuration;
 import org.osmdroid.events.MapListener;
@@ -136,6 +141,55 @@ class NativeOpenStreetMapController implements MapController, MapListener {
    */
   private Set<MapFeature> hiddenFeatures = new HashSet<>();
 
+  /**
+   * Maps with more features than this only give overlays to the features near the visible area.
+   * They also cluster markers when zoomed out and simplify lines and polygons for the zoom level,
+   * since drawing thousands of overlays makes panning unusable.
+   */
+  private static final int FEATURE_LAYER_THRESHOLD = 256;
+
+  /**
+   * Milliseconds to wait before updating the features in view, so that a burst of changes or
+   * scroll events only causes one update.
+   */
+  private static final long FEATURE_LAYER_DELAY = 100;
+
+  /**
+   * When the map has more than {@link #FEATURE_LAYER_THRESHOLD} features, the overlays of
+   * features further than this many screens from the visible area are dropped, so that the
+   * overlays kept don't grow with the area that has been looked at.
+   */
+  private static final double FEATURE_RELEASE_MARGIN = 2;
+
+  /**
+   * Markers are clustered below this zoom level, in cells of {@link #CLUSTER_CELL_SIZE} dp.
+   */
+  private static final int CLUSTER_MAX_ZOOM = 15;
+  private static final int CLUSTER_CELL_SIZE = 64;
+  private static final int CLUSTER_ICON_SIZE = 36;
+  private static final int CLUSTER_COLOR = 0xE03F51B5;
+
+  /**
+   * This index holds the bounds of all of the features on the map, so that the features in view
+   * can be found without looking at each of them.
+   */
+  private final RTree<MapFeature> featureIndex = new RTree<MapFeature>();
+
+  /**
+   * This set stores the features that have no overlay because they have not been in view, or
+   * have been far out of view since.
+   */
+  private final Set<MapFeature> deferredFeatures = new HashSet<MapFeature>();
+
+  /**
+   * This map stores the zoom level the points of each simplified feature were simplified for.
+   */
+  private final Map<MapFeature, Integer> simplifiedFeatures = new HashMap<MapFeature, Integer>();
+
+  private final Set<Overlay> clusterOverlays = new HashSet<Overlay>();
+  private final Map<String, Drawable> clusterIcons = new HashMap<String, Drawable>();
+  private boolean featureLayerUpdatePending = false;
+
   private static final float[] ANCHOR_HORIZONTAL = { Float.NaN, 0.0f, 1.0f, 0.5f };
   private static final float[] ANCHOR_VERTICAL = { Float.NaN, 0.0f, 0.5f, 1.0f };
 
@@ -281,6 +335,9 @@ class NativeOpenStreetMapController implements MapController, MapListener {
     protected void onSizeChanged(int w, int h, int oldw, int oldh) {
       scrollTo(getScrollX() + (oldw - w) / 2, getScrollY() + (oldh - h) / 2);
       super.onSizeChanged(w, h, oldw, oldh);
+      if (featureLayerActive()) {
+        scheduleFeatureLayerUpdate();
+      }
     }
 
     @Override
@@ -554,6 +611,10 @@ class NativeOpenStreetMapController implements MapController, MapListener {
 
   @Override
   public void addFeature(final MapMarker aiMarker) {
+    addToFeatureLayer(aiMarker);
+  }
+
+  private void createOverlay(final MapMarker aiMarker) {
     createNativeMarker(aiMarker, new AsyncCallbackPair<Marker>() {
       @Override
       public void onFailure(String message) {
@@ -617,6 +678,10 @@ class NativeOpenStreetMapController implements MapController, MapListener {
 
   @Override
   public void addFeature(final MapLineString aiPolyline) {
+    addToFeatureLayer(aiPolyline);
+  }
+
+  private void createOverlay(final MapLineString aiPolyline) {
     Polyline polyline = createNativePolyline(aiPolyline);
     featureOverlays.put(aiPolyline, polyline);
     polyline.setOnClickListener(new Polyline.OnClickListener() {
@@ -750,27 +815,66 @@ class NativeOpenStreetMapController implements MapController, MapListener {
 
   @Override
   public void addFeature(final MapPolygon aiPolygon) {
-    configurePolygon(aiPolygon, createNativePolygon(aiPolygon));
+    addToFeatureLayer(aiPolygon);
   }
 
   @Override
   public void addFeature(MapCircle aiCircle) {
-    configurePolygon(aiCircle, createNativeCircle(aiCircle));
+    addToFeatureLayer(aiCircle);
   }
 
   @Override
   public void addFeature(MapRectangle aiRectangle) {
-    configurePolygon(aiRectangle, createNativeRectangle(aiRectangle));
+    addToFeatureLayer(aiRectangle);
   }
 
+  private final MapFeatureVisitor<Void> overlayCreator = new MapFeatureVisitor<Void>() {
+    @Override
+    public Void visit(MapMarker marker, Object... arguments) {
+      createOverlay(marker);
+      return null;
+    }
+
+    @Override
+    public Void visit(MapLineString lineString, Object... arguments) {
+      createOverlay(lineString);
+      return null;
+    }
+
+    @Override
+    public Void visit(MapPolygon polygon, Object... arguments) {
+      configurePolygon(polygon, createNativePolygon(polygon));
+      return null;
+    }
+
+    @Override
+    public Void visit(MapCircle circle, Object... arguments) {
+      configurePolygon(circle, createNativeCircle(circle));
+      return null;
+    }
+
+    @Override
+    public Void visit(MapRectangle rectangle, Object... arguments) {
+      configurePolygon(rectangle, createNativeRectangle(rectangle));
+      return null;
+    }
+  };
+
   @Override
   public void removeFeature(MapFeature aiFeature) {
     view.getOverlayManager().remove(featureOverlays.get(aiFeature));
     featureOverlays.remove(aiFeature);
+    featureIndex.remove(aiFeature);
+    deferredFeatures.remove(aiFeature);
+    simplifiedFeatures.remove(aiFeature);
+    if (featureLayerActive()) {
+      scheduleFeatureLayerUpdate();
+    }
   }
 
   @Override
   public void updateFeaturePosition(MapMarker aiMarker) {
+    featureChanged(aiMarker);
     Marker marker = (Marker)featureOverlays.get(aiMarker);
     if (marker != null) {
       marker.setAnchor(ANCHOR_HORIZONTAL[aiMarker.AnchorHorizontal()],
@@ -782,6 +886,7 @@ class NativeOpenStreetMapController implements MapController, MapListener {
 
   @Override
   public void updateFeaturePosition(MapLineString aiPolyline) {
+    featureChanged(aiPolyline);
     Polyline overlay = (Polyline) featureOverlays.get(aiPolyline);
     if (overlay != null) {
       overlay.setPoints(aiPolyline.getPoints());
@@ -791,6 +896,7 @@ class NativeOpenStreetMapController implements MapController, MapListener {
 
   @Override
   public void updateFeaturePosition(MapPolygon aiPolygon) {
+    featureChanged(aiPolygon);
     MultiPolygon polygon = (MultiPolygon) featureOverlays.get(aiPolygon);
     if (polygon != null) {
       polygon.setMultiPoints(aiPolygon.getPoints());
@@ -800,6 +906,7 @@ class NativeOpenStreetMapController implements MapController, MapListener {
 
   @Override
   public void updateFeatureHoles(MapPolygon aiPolygon) {
+    featureChanged(aiPolygon);
     MultiPolygon polygon = (MultiPolygon) featureOverlays.get(aiPolygon);
     if (polygon != null) {
       polygon.setMultiHoles(aiPolygon.getHolePoints());
@@ -809,6 +916,7 @@ class NativeOpenStreetMapController implements MapController, MapListener {
 
   @Override
   public void updateFeaturePosition(MapCircle aiCircle) {
+    featureChanged(aiCircle);
     GeoPoint center = new GeoPoint(aiCircle.Latitude(), aiCircle.Longitude());
     Polygon polygon = (Polygon) featureOverlays.get(aiCircle);
     if (polygon != null) {
@@ -821,6 +929,7 @@ class NativeOpenStreetMapController implements MapController, MapListener {
   @Override
   @SuppressWarnings("unchecked")
   public void updateFeaturePosition(MapRectangle aiRectangle) {
+    featureChanged(aiRectangle);
     Polygon polygon = (Polygon) featureOverlays.get(aiRectangle);
     if (polygon != null) {
       List<GeoPoint> geopoints = (List) Polygon.pointsAsRect(new BoundingBox(aiRectangle.NorthLatitude(),
@@ -921,6 +1030,7 @@ class NativeOpenStreetMapController implements MapController, MapListener {
 
   @Override
   public void updateFeatureDraggable(MapFeature aiFeature) {
+    featureChanged(aiFeature);
     OverlayWithIW overlay = featureOverlays.get(aiFeature);
     if (overlay != null) {
       overlay.setDraggable(aiFeature.Draggable());
@@ -1200,18 +1310,27 @@ class NativeOpenStreetMapController implements MapController, MapListener {
   @Override
   public void showFeature(MapFeature feature) {
     if (!hiddenFeatures.contains(feature)) {
-      showOverlay(featureOverlays.get(feature));
+      if (featureLayerActive()) {
+        scheduleFeatureLayerUpdate();  // Shows the feature if it is in view
+      } else {
+        showOverlay(featureOverlays.get(feature));
+      }
     }
   }
 
   protected void showOverlay(OverlayWithIW overlay) {
-    view.getOverlayManager().add(overlay);
+    if (overlay != null && !view.getOverlayManager().contains(overlay)) {
+      view.getOverlayManager().add(overlay);
+    }
     view.invalidate();
   }
 
   @Override
   public void hideFeature(MapFeature feature) {
     hideOverlay(featureOverlays.get(feature));
+    if (featureLayerActive()) {
+      scheduleFeatureLayerUpdate();  // The feature may be part of a cluster
+    }
   }
 
   protected void hideOverlay(OverlayWithIW overlay) {
@@ -1221,6 +1340,10 @@ class NativeOpenStreetMapController implements MapController, MapListener {
 
   @Override
   public boolean isFeatureVisible(MapFeature feature) {
+    if (isFeatureLayerCulled()) {
+      // The overlay is only on the map while the feature is in view
+      return feature.Visible() && !hiddenFeatures.contains(feature);
+    }
     OverlayWithIW overlay = featureOverlays.get(feature);
     return overlay != null && view.getOverlayManager().contains(overlay);
   }
@@ -1256,7 +1379,7 @@ class NativeOpenStreetMapController implements MapController, MapListener {
 
   @Override
   public void showInfobox(MapFeature feature) {
-    OverlayWithIW overlay = featureOverlays.get(feature);
+    OverlayWithIW overlay = createDeferredOverlay(feature);
     if (overlay instanceof org.osmdroid.views.overlay.Marker) {
       overlay.showInfoWindow();
     } else if (overlay instanceof org.osmdroid.views.overlay.Polyline) {
@@ -1271,7 +1394,9 @@ class NativeOpenStreetMapController implements MapController, MapListener {
   @Override
   public void hideInfobox(MapFeature feature) {
     OverlayWithIW overlay = featureOverlays.get(feature);
-    overlay.closeInfoWindow();
+    if (overlay != null) {
+      overlay.closeInfoWindow();
+    }
   }
 
   @Override
@@ -1293,6 +1418,9 @@ class NativeOpenStreetMapController implements MapController, MapListener {
 
   @Override
   public boolean onScroll(ScrollEvent event) {
+    if (featureLayerActive()) {
+      scheduleFeatureLayerUpdate();
+    }
     for (MapEventListener listener : eventListeners) {
       listener.onBoundsChanged();
     }
@@ -1302,12 +1430,326 @@ class NativeOpenStreetMapController implements MapController, MapListener {
   @Override
   public boolean onZoom(ZoomEvent event) {
     zoomControls.updateButtons();
+    if (featureLayerActive()) {
+      scheduleFeatureLayerUpdate();
+    }
     for (MapEventListener listener : eventListeners) {
       listener.onZoom();
     }
     return true;
   }
 
+  /*
+   * Returns true if the map has too many features to give each of them an overlay.
+   */
+  private boolean isFeatureLayerCulled() {
+    return featureIndex.size() > FEATURE_LAYER_THRESHOLD;
+  }
+
+  /*
+   * Returns true if the overlays on the map depend on what is in view.
+   */
+  private boolean featureLayerActive() {
+    return isFeatureLayerCulled() || !deferredFeatures.isEmpty() || !clusterOverlays.isEmpty()
+        || !simplifiedFeatures.isEmpty();
+  }
+
+  private void addToFeatureLayer(MapFeature feature) {
+    indexFeature(feature);
+    if (isFeatureLayerCulled()) {
+      deferredFeatures.add(feature);
+      scheduleFeatureLayerUpdate();
+    } else {
+      feature.accept(overlayCreator);
+    }
+  }
+
+  private void featureChanged(MapFeature feature) {
+    if (featureIndex.contains(feature)) {
+      indexFeature(feature);
+    }
+    simplifiedFeatures.remove(feature);
+    if (featureLayerActive()) {
+      scheduleFeatureLayerUpdate();
+    }
+  }
+
+  private void indexFeature(MapFeature feature) {
+    Envelope bounds;
+    try {
+      bounds = feature.getGeometry().getEnvelopeInternal();
+    } catch (IllegalArgumentException e) {
+      bounds = new Envelope();  // Not a valid shape yet, for example a ring of two points
+    }
+    if (bounds.isNull()) {
+      featureIndex.put(feature, -180, -90, 180, 90);  // Always in view
+      return;
+    }
+    double latMargin = 0;
+    double lonMargin = 0;
+    if (feature instanceof MapCircle) {
+      // The geometry of a circle is its center
+      latMargin = ((MapCircle) feature).Radius() / GeometryUtil.ONE_DEG_IN_METERS;
+      lonMargin = latMargin / Math.max(Math.cos(Math.toRadians(bounds.getMinY())), 0.01);
+    }
+    featureIndex.put(feature, bounds.getMinX() - lonMargin, bounds.getMinY() - latMargin,
+        bounds.getMaxX() + lonMargin, bounds.getMaxY() + latMargin);
+  }
+
+  /*
+   * Creates the overlay of a feature that has not been in view yet. The overlay is put on the
+   * map if the feature is visible.
+   */
+  private OverlayWithIW createDeferredOverlay(MapFeature feature) {
+    if (deferredFeatures.remove(feature)) {
+      feature.accept(overlayCreator);
+    }
+    return featureOverlays.get(feature);
+  }
+
+  private void scheduleFeatureLayerUpdate() {
+    if (featureLayerUpdatePending) {
+      return;
+    }
+    featureLayerUpdatePending = true;
+    view.postDelayed(new Runnable() {
+      @Override
+      public void run() {
+        featureLayerUpdatePending = false;
+        updateFeatureLayer();
+      }
+    }, FEATURE_LAYER_DELAY);
+  }
+
+  /*
+   * Puts the overlays of the visible features near the visible area on the map, and takes the
+   * others off. Features get their overlays when they come into view, and lose them again when
+   * they are far out of view. Markers close to each other on the screen are shown as one cluster
+   * when zoomed out, and lines and polygons are simplified to the detail that can be seen at the
+   * zoom level.
+   */
+  private void updateFeatureLayer() {
+    boolean culled = isFeatureLayerCulled();
+    List<MapFeature> features = new ArrayList<MapFeature>();
+    if (!culled) {
+      for (MapFeature feature : new ArrayList<MapFeature>(deferredFeatures)) {
+        createDeferredOverlay(feature);
+      }
+      featureIndex.search(Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY,
+          Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, features);
+    } else if (view.getWidth() == 0 || view.getHeight() == 0) {
+      return;  // Not laid out yet, onSizeChanged will ask again
+    } else {
+      // Include half a screen around the visible area so that small scrolls don't need overlays
+      searchNearView(0.5, features);
+    }
+
+    int zoom = view.getZoomLevel();
+    float density = form.getResources().getDisplayMetrics().density;
+    double worldSize = 256 * density * Math.pow(2, zoom);
+    double cellSize = CLUSTER_CELL_SIZE * density;
+    boolean clustering = culled && zoom < CLUSTER_MAX_ZOOM;
+    Map<Long, List<MapMarker>> cells = new HashMap<Long, List<MapMarker>>();
+    Set<Overlay> shown = new HashSet<Overlay>();
+    List<Overlay> clusters = new ArrayList<Overlay>();
+    for (MapFeature feature : features) {
+      if (!feature.Visible() || hiddenFeatures.contains(feature)) {
+        continue;
+      }
+      if (clustering && feature instanceof MapMarker) {
+        MapMarker marker = (MapMarker) feature;
+        double lat = Math.toRadians(Math.max(-85.05, Math.min(85.05, marker.Latitude())));
+        double x = (marker.Longitude() + 180) / 360 * worldSize;
+        double y = (1 - Math.log(Math.tan(lat) + 1 / Math.cos(lat)) / Math.PI) / 2 * worldSize;
+        Long cell = ((long) Math.floor(x / cellSize) << 32) | (long) Math.floor(y / cellSize);
+        List<MapMarker> markers = cells.get(cell);
+        if (markers == null) {
+          markers = new ArrayList<MapMarker>();
+          cells.put(cell, markers);
+        }
+        markers.add(marker);
+        continue;
+      }
+      OverlayWithIW overlay = createDeferredOverlay(feature);
+      if (overlay != null) {
+        shown.add(overlay);
+        simplifyFeature(feature, overlay, culled ? zoom : -1);
+      }
+    }
+    for (List<MapMarker> markers : cells.values()) {
+      if (markers.size() == 1) {
+        OverlayWithIW overlay = createDeferredOverlay(markers.get(0));
+        if (overlay != null) {
+          shown.add(overlay);
+        }
+      } else {
+        clusters.add(createClusterMarker(markers));
+      }
+    }
+
+    // Only the features near the view have overlays once the layer is culled, so this doesn't
+    // look at every feature
+    Set<MapFeature> kept = null;
+    if (culled) {
+      kept = new HashSet<MapFeature>();
+      searchNearView(FEATURE_RELEASE_MARGIN, kept);
+    }
+    Set<Overlay> dropped = new HashSet<Overlay>(clusterOverlays);
+    Iterator<Map.Entry<MapFeature, OverlayWithIW>> it = featureOverlays.entrySet().iterator();
+    while (it.hasNext()) {
+      Map.Entry<MapFeature, OverlayWithIW> entry = it.next();
+      OverlayWithIW overlay = entry.getValue();
+      if (shown.contains(overlay)) {
+        continue;
+      }
+      dropped.add(overlay);
+      MapFeature feature = entry.getKey();
+      if (kept != null && !kept.contains(feature) && !overlay.isInfoWindowOpen()) {
+        // Far out of view, the overlay is created again when the feature comes back
+        it.remove();
+        simplifiedFeatures.remove(feature);
+        deferredFeatures.add(feature);
+      }
+    }
+    List<Overlay> hidden = new ArrayList<Overlay>();
+    for (Overlay overlay : view.getOverlayManager()) {
+      if (dropped.contains(overlay)) {
+        hidden.add(overlay);
+      }
+    }
+    for (Overlay overlay : hidden) {
+      view.getOverlayManager().remove(overlay);
+    }
+    for (Overlay overlay : shown) {
+      if (!view.getOverlayManager().contains(overlay)) {
+        view.getOverlayManager().add(overlay);
+      }
+    }
+    clusterOverlays.clear();
+    clusterOverlays.addAll(clusters);
+    view.getOverlayManager().addAll(clusters);
+    view.invalidate();
+  }
+
+  /*
+   * Adds the features within the given number of screens around the visible area to a
+   * collection.
+   */
+  private void searchNearView(double screens, Collection<? super MapFeature> result) {
+    BoundingBox box = view.getBoundingBox();
+    double latMargin = box.getLatitudeSpan() * screens;
+    double lonMargin = box.getLongitudeSpan() * screens;
+    double west = box.getLonWest() - lonMargin;
+    double east = box.getLonEast() + lonMargin;
+    double south = box.getLatSouth() - latMargin;
+    double north = box.getLatNorth() + latMargin;
+    if (box.getLonWest() > box.getLonEast()) {  // Crosses the antimeridian
+      featureIndex.search(west, south, 180, north, result);
+      featureIndex.search(-180, south, east, north, result);
+    } else {
+      featureIndex.search(west, south, east, north, result);
+    }
+  }
+
+  /*
+   * Sets the points of the overlay of a line or polygon to the points of the feature, simplified
+   * for the zoom level. A negative zoom level or a draggable feature gets all of its points back.
+   */
+  private void simplifyFeature(MapFeature feature, OverlayWithIW overlay, int zoom) {
+    if (feature.Draggable()) {
+      zoom = -1;  // Dragging would store the simplified points in the feature
+    }
+    Integer simplifiedZoom = simplifiedFeatures.get(feature);
+    if (simplifiedZoom == null ? zoom < 0 : simplifiedZoom == zoom) {
+      return;
+    }
+    // About one pixel of a tile at the zoom level, in degrees
+    double tolerance = zoom < 0 ? 0 : 360 / (256 * Math.pow(2, zoom));
+    if (feature instanceof MapLineString) {
+      ((Polyline) overlay).setPoints(simplify(((MapLineString) feature).getPoints(), tolerance));
+    } else if (feature instanceof MapPolygon) {
+      MapPolygon polygon = (MapPolygon) feature;
+      List<List<GeoPoint>> points = new ArrayList<List<GeoPoint>>();
+      for (List<GeoPoint> ring : polygon.getPoints()) {
+        points.add(simplify(ring, tolerance));
+      }
+      List<List<List<GeoPoint>>> holes = new ArrayList<List<List<GeoPoint>>>();
+      for (List<List<GeoPoint>> polygonHoles : polygon.getHolePoints()) {
+        List<List<GeoPoint>> simplifiedHoles = new ArrayList<List<GeoPoint>>();
+        for (List<GeoPoint> hole : polygonHoles) {
+          simplifiedHoles.add(simplify(hole, tolerance));
+        }
+        holes.add(simplifiedHoles);
+      }
+      ((MultiPolygon) overlay).setMultiPoints(points);
+      ((MultiPolygon) overlay).setMultiHoles(holes);
+    } else {
+      return;  // Markers, circles and rectangles have few points
+    }
+    if (zoom < 0) {
+      simplifiedFeatures.remove(feature);
+    } else {
+      simplifiedFeatures.put(feature, zoom);
+    }
+  }
+
+  private static List<GeoPoint> simplify(List<GeoPoint> points, double tolerance) {
+    return tolerance == 0 ? points : GeometryUtil.simplify(points, tolerance);
+  }
+
+  private Marker createClusterMarker(List<MapMarker> markers) {
+    double latitude = 0, longitude = 0;
+    double north = -90, east = -180, west = 180, south = 90;
+    for (MapMarker marker : markers) {
+      double lat = marker.Latitude();
+      double lng = marker.Longitude();
+      latitude += lat;
+      longitude += lng;
+      north = Math.max(north, lat);
+      south = Math.min(south, lat);
+      east = Math.max(east, lng);
+      west = Math.min(west, lng);
+    }
+    final BoundingBox bounds = new BoundingBox(north, east, south, west);
+    Marker cluster = new Marker(view);
+    cluster.setPosition(new GeoPoint(latitude / markers.size(), longitude / markers.size()));
+    cluster.setAnchor(Marker.ANCHOR_CENTER, Marker.ANCHOR_CENTER);
+    cluster.setIcon(getClusterIcon(markers.size()));
+    cluster.setOnMarkerClickListener(new OnMarkerClickListener() {
+      @Override
+      public boolean onMarkerClick(Marker marker, MapView mapView) {
+        setBoundingBox(bounds);
+        return true;
+      }
+
+      @Override
+      public boolean onMarkerLongPress(Marker marker, MapView mapView) {
+        return false;
+      }
+    });
+    return cluster;
+  }
+
+  private Drawable getClusterIcon(int count) {
+    String label = count < 100 ? Integer.toString(count) : "99+";
+    Drawable icon = clusterIcons.get(label);
+    if (icon == null) {
+      int size = (int) (CLUSTER_ICON_SIZE * form.getResources().getDisplayMetrics().density);
+      Bitmap bitmap = Bitmap.createBitmap(size, size, Bitmap.Config.ARGB_8888);
+      Canvas canvas = new Canvas(bitmap);
+      Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+      paint.setColor(CLUSTER_COLOR);
+      canvas.drawCircle(size / 2f, size / 2f, size / 2f, paint);
+      paint.setColor(Color.WHITE);
+      paint.setTextAlign(Paint.Align.CENTER);
+      paint.setTextSize(size * 0.4f);
+      canvas.drawText(label, size / 2f, (size - paint.ascent() - paint.descent()) / 2f, paint);
+      icon = new BitmapDrawable(form.getResources(), bitmap);
+      clusterIcons.put(label, icon);
+    }
+    return icon;
+  }
+
   @Override
   public LocationSensor.LocationSensorListener getLocationListener() {
     return locationProvider;
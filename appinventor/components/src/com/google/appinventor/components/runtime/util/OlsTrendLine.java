@@ -5,6 +5,7 @@
 
 package com.google.appinventor.components.runtime.util;
 
+import com.google.appinventor.components.common.DoubleList;
 import com.google.appinventor.components.common.TrendlineCalculator;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -64,21 +65,16 @@ public abstract class OlsTrendLine implements TrendlineCalculator {
     if (x.size() != y.size()) {
       throw new IllegalStateException("Must have equal X and Y data points");
     }
-    double[][] xData = new double[x.size()][];
-    for (int i = 0; i < x.size(); i++) {
+    double[] xs = DoubleList.toDoubleArray(x);
+    double[][] xData = new double[xs.length][];
+    for (int i = 0; i < xs.length; i++) {
       // the implementation determines how to produce a vector of predictors from a single x
-      xData[i] = xVector(x.get(i));
+      xData[i] = xVector(xs[i]);
     }
-    double[] yData = new double[y.size()];
+    double[] yData = DoubleList.toDoubleArray(y);
     if (logY()) { // in some models we are predicting ln y, so we replace each y with ln y
-      int i = 0;
-      for (Double value : y) {
-        yData[i++] = Math.log(value);
-      }
-    } else {
-      int i = 0;
-      for (Double value : y) {
-        yData[i++] = value;
+      for (int i = 0; i < yData.length; i++) {
+        yData[i] = Math.log(yData[i]);
       }
     }
     if (DEBUG) {
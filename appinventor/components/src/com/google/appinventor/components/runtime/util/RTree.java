@@ -0,0 +1,310 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2024 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An R-tree of items with rectangular bounds, for finding the items that intersect a rectangle
+ * without looking at all of them. Each item is in the tree at most once. Items are compared with
+ * {@link Object#equals(Object)}.
+ *
+ * @param <T> the type of the items
+ */
+public final class RTree<T> {
+  private static final int MAX_ENTRIES = 16;
+  private static final int MIN_ENTRIES = MAX_ENTRIES / 4;
+
+  private static class Box {
+    double minX = Double.POSITIVE_INFINITY;
+    double minY = Double.POSITIVE_INFINITY;
+    double maxX = Double.NEGATIVE_INFINITY;
+    double maxY = Double.NEGATIVE_INFINITY;
+
+    double area() {
+      return (maxX - minX) * (maxY - minY);
+    }
+
+    double enlargement(Box box) {
+      return (Math.max(maxX, box.maxX) - Math.min(minX, box.minX))
+          * (Math.max(maxY, box.maxY) - Math.min(minY, box.minY)) - area();
+    }
+
+    boolean intersects(double minX, double minY, double maxX, double maxY) {
+      return this.minX <= maxX && minX <= this.maxX && this.minY <= maxY && minY <= this.maxY;
+    }
+
+    void include(Box box) {
+      minX = Math.min(minX, box.minX);
+      minY = Math.min(minY, box.minY);
+      maxX = Math.max(maxX, box.maxX);
+      maxY = Math.max(maxY, box.maxY);
+    }
+  }
+
+  private static final class Entry<T> extends Box {
+    final T item;
+    Node node;
+
+    Entry(T item, double minX, double minY, double maxX, double maxY) {
+      this.item = item;
+      this.minX = minX;
+      this.minY = minY;
+      this.maxX = maxX;
+      this.maxY = maxY;
+    }
+  }
+
+  private static final class Node extends Box {
+    final boolean leaf;
+    final List<Box> children = new ArrayList<Box>();
+    Node parent;
+
+    Node(boolean leaf) {
+      this.leaf = leaf;
+    }
+
+    void add(Box child) {
+      children.add(child);
+      adopt(child);
+      include(child);
+    }
+
+    void adopt(Box child) {
+      if (leaf) {
+        ((Entry<?>) child).node = this;
+      } else {
+        ((Node) child).parent = this;
+      }
+    }
+
+    void recompute() {
+      minX = minY = Double.POSITIVE_INFINITY;
+      maxX = maxY = Double.NEGATIVE_INFINITY;
+      for (Box child : children) {
+        include(child);
+      }
+    }
+  }
+
+  private final Map<T, Entry<T>> entries = new HashMap<T, Entry<T>>();
+  private Node root = new Node(true);
+
+  /**
+   * Returns the number of items in the tree.
+   */
+  public int size() {
+    return entries.size();
+  }
+
+  /**
+   * Returns true if the item is in the tree.
+   *
+   * @param item the item
+   */
+  public boolean contains(T item) {
+    return entries.containsKey(item);
+  }
+
+  /**
+   * Adds an item to the tree, or moves it if it is already in the tree.
+   *
+   * @param item the item
+   * @param minX the smallest x coordinate of the bounds of the item
+   * @param minY the smallest y coordinate of the bounds of the item
+   * @param maxX the largest x coordinate of the bounds of the item
+   * @param maxY the largest y coordinate of the bounds of the item
+   */
+  public void put(T item, double minX, double minY, double maxX, double maxY) {
+    remove(item);
+    Entry<T> entry = new Entry<T>(item, minX, minY, maxX, maxY);
+    entries.put(item, entry);
+    insert(entry);
+  }
+
+  /**
+   * Removes an item from the tree.
+   *
+   * @param item the item
+   * @return true if the item was in the tree
+   */
+  public boolean remove(T item) {
+    Entry<T> entry = entries.remove(item);
+    if (entry == null) {
+      return false;
+    }
+    Node node = entry.node;
+    node.children.remove(entry);
+    List<Entry<T>> orphans = new ArrayList<Entry<T>>();
+    while (node != root) {
+      Node parent = node.parent;
+      if (node.children.size() < MIN_ENTRIES) {
+        parent.children.remove(node);
+        collect(node, orphans);
+      } else {
+        node.recompute();
+      }
+      node = parent;
+    }
+    root.recompute();
+    if (!root.leaf && root.children.size() == 1) {
+      root = (Node) root.children.get(0);
+      root.parent = null;
+    } else if (!root.leaf && root.children.isEmpty()) {
+      root = new Node(true);
+    }
+    for (Entry<T> orphan : orphans) {
+      insert(orphan);
+    }
+    return true;
+  }
+
+  /**
+   * Removes all of the items.
+   */
+  public void clear() {
+    entries.clear();
+    root = new Node(true);
+  }
+
+  /**
+   * Adds the items whose bounds intersect a rectangle to a collection.
+   *
+   * @param minX the smallest x coordinate of the rectangle
+   * @param minY the smallest y coordinate of the rectangle
+   * @param maxX the largest x coordinate of the rectangle
+   * @param maxY the largest y coordinate of the rectangle
+   * @param result the collection to add the items to
+   */
+  @SuppressWarnings("unchecked")
+  public void search(double minX, double minY, double maxX, double maxY,
+      Collection<? super T> result) {
+    List<Node> pending = new ArrayList<Node>();
+    pending.add(root);
+    while (!pending.isEmpty()) {
+      Node node = pending.remove(pending.size() - 1);
+      for (Box child : node.children) {
+        if (child.intersects(minX, minY, maxX, maxY)) {
+          if (node.leaf) {
+            result.add(((Entry<T>) child).item);
+          } else {
+            pending.add((Node) child);
+          }
+        }
+      }
+    }
+  }
+
+  private void insert(Entry<T> entry) {
+    Node node = root;
+    while (!node.leaf) {
+      Node best = null;
+      double bestEnlargement = Double.POSITIVE_INFINITY;
+      for (Box child : node.children) {
+        double enlargement = child.enlargement(entry);
+        if (enlargement < bestEnlargement
+            || (enlargement == bestEnlargement && child.area() < best.area())) {
+          best = (Node) child;
+          bestEnlargement = enlargement;
+        }
+      }
+      node = best;
+    }
+    node.add(entry);
+    while (node != null) {
+      if (node.children.size() > MAX_ENTRIES) {
+        Node sibling = split(node);
+        if (node == root) {
+          root = new Node(false);
+          root.add(node);
+          root.add(sibling);
+          return;
+        }
+        node.parent.add(sibling);
+      }
+      node.recompute();
+      node = node.parent;
+    }
+  }
+
+  /*
+   * Moves about half of the children of an overflowing node to a new node, using the quadratic
+   * split of Guttman's original R-tree.
+   */
+  private static Node split(Node node) {
+    List<Box> children = new ArrayList<Box>(node.children);
+    int first = 0;
+    int second = 1;
+    double worst = Double.NEGATIVE_INFINITY;
+    for (int i = 0; i < children.size(); i++) {
+      for (int j = i + 1; j < children.size(); j++) {
+        Box a = children.get(i);
+        Box b = children.get(j);
+        double waste = a.enlargement(b) - b.area();
+        if (waste > worst) {
+          worst = waste;
+          first = i;
+          second = j;
+        }
+      }
+    }
+    Node sibling = new Node(node.leaf);
+    node.children.clear();
+    node.recompute();
+    node.add(children.get(first));
+    sibling.add(children.get(second));
+    children.remove(second);
+    children.remove(first);
+    while (!children.isEmpty()) {
+      if (node.children.size() + children.size() == MIN_ENTRIES) {
+        for (Box child : children) {
+          node.add(child);
+        }
+        break;
+      } else if (sibling.children.size() + children.size() == MIN_ENTRIES) {
+        for (Box child : children) {
+          sibling.add(child);
+        }
+        break;
+      }
+      int next = 0;
+      double preference = Double.NEGATIVE_INFINITY;
+      for (int i = 0; i < children.size(); i++) {
+        Box child = children.get(i);
+        double difference = Math.abs(node.enlargement(child) - sibling.enlargement(child));
+        if (difference > preference) {
+          preference = difference;
+          next = i;
+        }
+      }
+      Box child = children.remove(next);
+      double toNode = node.enlargement(child);
+      double toSibling = sibling.enlargement(child);
+      if (toNode < toSibling || (toNode == toSibling
+          && node.children.size() <= sibling.children.size())) {
+        node.add(child);
+      } else {
+        sibling.add(child);
+      }
+    }
+    return sibling;
+  }
+
+  @SuppressWarnings("unchecked")
+  private void collect(Node node, List<Entry<T>> result) {
+    for (Box child : node.children) {
+      if (node.leaf) {
+        result.add((Entry<T>) child);
+      } else {
+        collect((Node) child, result);
+      }
+    }
+  }
+}
@@ -0,0 +1,130 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2024 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Holds the Scheme forms sent by the Blocks Editor to the Companion until they are evaluated.
+ *
+ * <p>Each top-level block arrives wrapped in a call to process-repl-input that names the block.
+ * While a block is being edited, its definition may be sent several times before the Companion
+ * gets around to evaluating it. Only the last definition of each block in the queue is kept,
+ * because evaluating it replaces the earlier ones anyway. A definition that is identical to the
+ * one last evaluated for its block is skipped. Any other form may change what the definitions
+ * mean, for example by clearing the form, so it is always evaluated, keeps the definitions queued
+ * before it and makes every definition count as new again.</p>
+ */
+public final class ReplQueue {
+  private static final String PREFIX =
+      "(begin (require <com.google.youngandroid.runtime>) (process-repl-input \"";
+  private static final String BODY = "\" (begin ";
+  private static final String[] DEFINITIONS = {
+      "(def ", "(define-event ", "(define-generic-event "
+  };
+
+  private List<String> pending = new ArrayList<String>();
+  private final Map<String, String> evaluated = new HashMap<String, String>();
+
+  /**
+   * Adds a form to the end of the queue.
+   *
+   * @param sexp the form
+   * @return true if the queue was empty, in which case the caller has to arrange for
+   *     {@link #take()} to be called
+   */
+  public synchronized boolean add(String sexp) {
+    pending.add(sexp);
+    return pending.size() == 1;
+  }
+
+  /**
+   * Empties the queue and returns the forms that still need to be evaluated, in order.
+   * Definitions replaced by a later definition for the same block are left out, unless another
+   * form comes between them.
+   */
+  public List<String> take() {
+    List<String> forms;
+    synchronized (this) {
+      forms = pending;
+      pending = new ArrayList<String>();
+    }
+    List<String> result = new ArrayList<String>(forms.size());
+    Set<String> later = new HashSet<String>();
+    for (int i = forms.size() - 1; i >= 0; i--) {
+      String sexp = forms.get(i);
+      String blockId = getBlockId(sexp);
+      if (blockId == null || !isDefinition(sexp)) {
+        // Definitions before this form may be needed by it, so they can't be left out
+        later.clear();
+        result.add(sexp);
+      } else if (later.add(blockId)) {
+        result.add(sexp);
+      }
+    }
+    Collections.reverse(result);
+    return result;
+  }
+
+  /**
+   * Returns true if the form has to be evaluated, and remembers it as evaluated. Only
+   * definitions that are the same as the last one evaluated for their block are skipped.
+   *
+   * @param sexp the form about to be evaluated
+   */
+  public synchronized boolean shouldEvaluate(String sexp) {
+    String blockId = getBlockId(sexp);
+    if (blockId == null || !isDefinition(sexp)) {
+      evaluated.clear();
+      return true;
+    }
+    if (sexp.equals(evaluated.get(blockId))) {
+      return false;
+    }
+    evaluated.put(blockId, sexp);
+    return true;
+  }
+
+  /**
+   * Forgets the definitions evaluated so far, so that all of them are evaluated when sent again.
+   */
+  public synchronized void reset() {
+    evaluated.clear();
+  }
+
+  /*
+   * Returns the id of the block a form was sent for, or null if it isn't for a block.
+   */
+  static String getBlockId(String sexp) {
+    if (!sexp.startsWith(PREFIX)) {
+      return null;
+    }
+    int end = sexp.indexOf('"', PREFIX.length());
+    if (end < 0 || !sexp.startsWith(BODY, end)) {
+      return null;
+    }
+    return sexp.substring(PREFIX.length(), end);
+  }
+
+  /*
+   * Returns true if the form sent for a block defines an event handler, procedure or global.
+   */
+  static boolean isDefinition(String sexp) {
+    int start = sexp.indexOf(BODY, PREFIX.length()) + BODY.length();
+    for (String definition : DEFINITIONS) {
+      if (sexp.startsWith(definition, start)) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
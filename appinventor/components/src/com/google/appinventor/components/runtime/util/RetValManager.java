@@ -12,6 +12,7 @@ import com.google.appinventor.components.runtime.PhoneStatus;
 import com.google.appinventor.components.runtime.ReplForm;
 
 import java.util.ArrayList;
+import java.util.List;
 
 import org.json.JSONArray;
 import org.json.JSONException;
@@ -33,6 +34,9 @@ public class RetValManager {
   // There can be only one!
   private static ArrayList<JSONObject> currentArray = new ArrayList<JSONObject>(10);
 
+  // Number of batches in progress, see beginBatch
+  private static int batchDepth = 0;
+
   // Need a better place for this version string, but for various reasons, this is how we
   // are going to do this for now...
 
@@ -60,13 +64,7 @@ public class RetValManager {
         Log.e(LOG_TAG, "Error building retval", e);
         return;
       }
-      boolean sendNotify = currentArray.isEmpty();
-      currentArray.add(retval);
-      if (PhoneStatus.getUseWebRTC()) {
-        webRTCsendCurrent();
-      } else if (sendNotify) {
-        semaphore.notifyAll();
-      }
+      add(retval);
     }
   }
 
@@ -81,13 +79,7 @@ public class RetValManager {
         Log.e(LOG_TAG, "Error building retval", e);
         return;
       }
-      boolean sendNotify = currentArray.isEmpty();
-      currentArray.add(retval);
-      if (PhoneStatus.getUseWebRTC()) {
-        webRTCsendCurrent();
-      } else if (sendNotify) {
-        semaphore.notifyAll();
-      }
+      add(retval);
     }
   }
 
@@ -110,13 +102,7 @@ public class RetValManager {
         Log.e(LOG_TAG, "Error building retval", e);
         return;
       }
-      boolean sendNotify = currentArray.isEmpty();
-      currentArray.add(retval);
-      if (PhoneStatus.getUseWebRTC()) {
-        webRTCsendCurrent();
-      } else if (sendNotify) {
-        semaphore.notifyAll();
-      }
+      add(retval);
     }
   }
 
@@ -138,13 +124,7 @@ public class RetValManager {
         Log.e(LOG_TAG, "Error building retval", e);
         return;
       }
-      boolean sendNotify = currentArray.isEmpty();
-      currentArray.add(retval);
-      if (PhoneStatus.getUseWebRTC()) {
-        webRTCsendCurrent();
-      } else if (sendNotify) {
-        semaphore.notifyAll();
-      }
+      add(retval);
     }
   }
 
@@ -165,13 +145,29 @@ public class RetValManager {
         Log.e(LOG_TAG, "Error building retval", e);
         return;
       }
-      boolean sendNotify = currentArray.isEmpty();
-      currentArray.add(retval);
-      if (PhoneStatus.getUseWebRTC()) {
-        webRTCsendCurrent();
-      } else if (sendNotify) {
-        semaphore.notifyAll();
+      add(retval);
+    }
+  }
+
+  /*
+   * assetsTransferred -- Report several transferred assets in a single
+   * value, so that a large project doesn't flood the Blocks Editor
+   * with one message per asset.
+   *
+   * @param names names of the assets transferred
+   */
+  public static void assetsTransferred(List<String> names) {
+    synchronized (semaphore) {
+      JSONObject retval = new JSONObject();
+      try {
+        retval.put("status", "OK");
+        retval.put("type", "assetsTransferred");
+        retval.put("value", new JSONArray(names));
+      } catch (JSONException e) {
+        Log.e(LOG_TAG, "Error building retval", e);
+        return;
       }
+      add(retval);
     }
   }
 
@@ -189,12 +185,31 @@ public class RetValManager {
         Log.e(LOG_TAG, "Error building retval", e);
         return;
       }
-      boolean sendNotify = currentArray.isEmpty();
-      currentArray.add(retval);
-      if (PhoneStatus.getUseWebRTC()) {
+      add(retval);
+    }
+  }
+
+  /*
+   * beginBatch -- Hold back values sent over webrtc until the matching
+   * call to endBatch, so that the values produced while evaluating a
+   * batch of forms reach the Blocks Editor in a single message.
+   * Batches may nest.
+   */
+  public static void beginBatch() {
+    synchronized (semaphore) {
+      batchDepth++;
+    }
+  }
+
+  /*
+   * endBatch -- End a batch started by beginBatch, sending any values
+   * held back if this was the outermost batch.
+   */
+  public static void endBatch() {
+    synchronized (semaphore) {
+      batchDepth--;
+      if (batchDepth == 0 && !currentArray.isEmpty() && PhoneStatus.getUseWebRTC()) {
         webRTCsendCurrent();
-      } else if (sendNotify) {
-        semaphore.notifyAll();
       }
     }
   }
@@ -233,6 +248,20 @@ public class RetValManager {
     }
   }
 
+  // Add a value to the pending values and let the Blocks Editor know, unless
+  // a batch is in progress. Our caller is holding "semaphore".
+  private static void add(JSONObject retval) {
+    boolean sendNotify = currentArray.isEmpty();
+    currentArray.add(retval);
+    if (PhoneStatus.getUseWebRTC()) {
+      if (batchDepth == 0) {
+        webRTCsendCurrent();
+      }
+    } else if (sendNotify) {
+      semaphore.notifyAll();
+    }
+  }
+
   // Only used for webrtc. Note: Our caller is holding "semphore" so we don't
   // need to worry about multi-thread synchonization here
   private static void webRTCsendCurrent() {
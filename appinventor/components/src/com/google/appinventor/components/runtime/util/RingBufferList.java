@@ -0,0 +1,180 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2024 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime.util;
+
+import java.lang.reflect.Array;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/**
+ * A list stored in a circular array, so that adding or removing at either
+ * end takes constant time while elements can still be read by index in
+ * constant time. Adding or removing in the middle moves the elements on the
+ * shorter side of the index.
+ *
+ * <p>It is used for the entries of chart data series, where real-time data
+ * appends to the end of the series and evicts from the start.
+ *
+ * @param <E> the type of the elements
+ */
+public final class RingBufferList<E> extends AbstractList<E> implements RandomAccess {
+  private static final int DEFAULT_CAPACITY = 16;
+
+  private Object[] elements;
+  private int head;
+  private int size;
+
+  /**
+   * Creates an empty list.
+   */
+  public RingBufferList() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  /**
+   * Creates an empty list with room for the given number of elements.
+   *
+   * @param capacity the initial capacity
+   */
+  public RingBufferList(int capacity) {
+    elements = new Object[Math.max(capacity, 1)];
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public E get(int index) {
+    checkIndex(index, size);
+    return (E) elements[slot(index)];
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public E set(int index, E element) {
+    checkIndex(index, size);
+    int slot = slot(index);
+    E old = (E) elements[slot];
+    elements[slot] = element;
+    return old;
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public boolean add(E element) {
+    ensureCapacity(size + 1);
+    elements[slot(size)] = element;
+    size++;
+    modCount++;
+    return true;
+  }
+
+  @Override
+  public void add(int index, E element) {
+    checkIndex(index, size + 1);
+    ensureCapacity(size + 1);
+    if (index < size / 2) {
+      // Shift the elements before the index one slot to the left.
+      head = (head - 1 + elements.length) % elements.length;
+      for (int i = 0; i < index; i++) {
+        elements[slot(i)] = elements[slot(i + 1)];
+      }
+    } else {
+      // Shift the elements from the index one slot to the right.
+      for (int i = size; i > index; i--) {
+        elements[slot(i)] = elements[slot(i - 1)];
+      }
+    }
+    elements[slot(index)] = element;
+    size++;
+    modCount++;
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public E remove(int index) {
+    checkIndex(index, size);
+    E old = (E) elements[slot(index)];
+    if (index < size / 2) {
+      for (int i = index; i > 0; i--) {
+        elements[slot(i)] = elements[slot(i - 1)];
+      }
+      elements[head] = null;
+      head = (head + 1) % elements.length;
+    } else {
+      for (int i = index; i < size - 1; i++) {
+        elements[slot(i)] = elements[slot(i + 1)];
+      }
+      elements[slot(size - 1)] = null;
+    }
+    size--;
+    modCount++;
+    return old;
+  }
+
+  @Override
+  public Object[] toArray() {
+    Object[] array = new Object[size];
+    copyTo(array);
+    return array;
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public <T> T[] toArray(T[] array) {
+    if (array.length < size) {
+      array = (T[]) Array.newInstance(array.getClass().getComponentType(), size);
+    }
+    copyTo(array);
+    if (array.length > size) {
+      array[size] = null;
+    }
+    return array;
+  }
+
+  @Override
+  public void clear() {
+    Arrays.fill(elements, null);
+    head = 0;
+    size = 0;
+    modCount++;
+  }
+
+  private int slot(int index) {
+    int slot = head + index;
+    return slot < elements.length ? slot : slot - elements.length;
+  }
+
+  /*
+   * Copies the elements in order to the start of the array, which must be large enough.
+   */
+  private void copyTo(Object[] array) {
+    int first = Math.min(size, elements.length - head);
+    System.arraycopy(elements, head, array, 0, first);
+    System.arraycopy(elements, 0, array, first, size - first);
+  }
+
+  private void ensureCapacity(int capacity) {
+    if (capacity <= elements.length) {
+      return;
+    }
+    Object[] grown = new Object[Math.max(capacity, elements.length * 2)];
+    for (int i = 0; i < size; i++) {
+      grown[i] = elements[slot(i)];
+    }
+    elements = grown;
+    head = 0;
+  }
+
+  private static void checkIndex(int index, int limit) {
+    if (index < 0 || index >= limit) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + limit);
+    }
+  }
+}
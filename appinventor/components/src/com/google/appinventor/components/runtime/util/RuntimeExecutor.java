@@ -0,0 +1,289 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2024 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime.util;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded pool of threads for the background work of components, used by {@link AsynchUtil}.
+ *
+ * <p>At most a fixed number of pool threads run at once. Further tasks wait in a bounded queue
+ * and start in order as the pool threads become free. Background tasks may block for a long
+ * time, for example on a network request without a timeout, and a task may wait for a task that
+ * was queued after it. So that such tasks cannot stall the queue forever, a temporary thread is
+ * started whenever the queue is full, or whenever no queued task has started for a while. A
+ * temporary thread keeps taking tasks from the queue until it is empty and then exits.</p>
+ *
+ * <p>Tasks may be submitted on behalf of an owner and a group, for example a component and its
+ * form, and all tasks of an owner or group may be cancelled at once. A cancelled task that has
+ * not started is removed from the queue, and the thread of a running task is interrupted.</p>
+ *
+ * <p>Exceptions thrown by tasks are not caught, so they reach the uncaught exception handler
+ * just as they would if the task had run on its own thread.</p>
+ */
+final class RuntimeExecutor {
+  private static final String LOG_TAG = RuntimeExecutor.class.getSimpleName();
+
+  private final String name;
+  private final long stallMillis;
+  private final BlockingQueue<Runnable> queue;
+  private final ThreadPoolExecutor pool;
+  private final AtomicInteger threadCount = new AtomicInteger();
+  private final AtomicInteger activeOverflowCount = new AtomicInteger();
+  private final AtomicInteger overflowCount = new AtomicInteger();
+  private final AtomicLong startedCount = new AtomicLong();
+  private final Set<Task> tasks = new HashSet<Task>();
+  private Thread watchdog;
+
+  /**
+   * Creates an executor. Pool threads are created as they are needed.
+   *
+   * @param name the prefix of the names of the threads
+   * @param threads the maximum number of pool threads
+   * @param queueCapacity the maximum number of tasks waiting for a pool thread
+   * @param stallMillis how long queued tasks wait for a pool thread to become free before a
+   *     temporary thread is started
+   */
+  RuntimeExecutor(String name, int threads, int queueCapacity, long stallMillis) {
+    this.name = name;
+    this.stallMillis = stallMillis;
+    queue = new LinkedBlockingQueue<Runnable>(queueCapacity);
+    pool = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS, queue,
+        new ThreadFactory() {
+          @Override
+          public Thread newThread(Runnable r) {
+            return newWorkerThread(r);
+          }
+        },
+        new RejectedExecutionHandler() {
+          @Override
+          public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+            Log.w(LOG_TAG, RuntimeExecutor.this.name + " queue is full");
+            startOverflowThread(r);
+          }
+        }) {
+      @Override
+      protected void beforeExecute(Thread t, Runnable r) {
+        startedCount.incrementAndGet();
+      }
+    };
+  }
+
+  /**
+   * Lets idle pool threads exit. This needs API level 9, so callers check the API level first.
+   */
+  void allowIdleThreadsToExit() {
+    pool.allowCoreThreadTimeOut(true);
+  }
+
+  /**
+   * Runs a task in the background.
+   *
+   * @param call the task to run
+   */
+  void execute(Runnable call) {
+    pool.execute(call);
+    checkForStall();
+  }
+
+  /**
+   * Runs a task in the background on behalf of an owner and a group, so that it can be
+   * cancelled with {@link #cancel(Object)}.
+   *
+   * @param owner the owner of the task
+   * @param group the group of the owner, or null
+   * @param call the task to run
+   */
+  void execute(Object owner, Object group, Runnable call) {
+    Task task = new Task(owner, group, call);
+    synchronized (tasks) {
+      tasks.add(task);
+    }
+    execute(task);
+  }
+
+  /**
+   * Cancels the tasks of an owner or of a group.
+   *
+   * @param ownerOrGroup the owner or group of the tasks
+   * @return the number of tasks that were cancelled
+   */
+  int cancel(Object ownerOrGroup) {
+    List<Task> cancelled = new ArrayList<Task>();
+    synchronized (tasks) {
+      for (Task task : tasks) {
+        if (task.owner == ownerOrGroup || task.group == ownerOrGroup) {
+          cancelled.add(task);
+        }
+      }
+      tasks.removeAll(cancelled);
+    }
+    for (Task task : cancelled) {
+      task.cancel();
+      queue.remove(task);
+    }
+    return cancelled.size();
+  }
+
+  /**
+   * Returns the number of tasks that are running.
+   */
+  int getActiveCount() {
+    return pool.getActiveCount() + activeOverflowCount.get();
+  }
+
+  /**
+   * Returns the number of tasks that are waiting to run.
+   */
+  int getQueuedCount() {
+    return queue.size();
+  }
+
+  /**
+   * Returns the number of temporary threads started because the pool was busy.
+   */
+  int getOverflowCount() {
+    return overflowCount.get();
+  }
+
+  /**
+   * Returns the number of tasks that have started.
+   */
+  long getStartedCount() {
+    return startedCount.get();
+  }
+
+  private Thread newWorkerThread(Runnable r) {
+    Thread thread = new Thread(r, name + "-" + threadCount.incrementAndGet());
+    thread.setDaemon(true);
+    return thread;
+  }
+
+  private void startOverflowThread(final Runnable first) {
+    overflowCount.incrementAndGet();
+    activeOverflowCount.incrementAndGet();
+    newWorkerThread(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          Runnable next = first;
+          while (next != null) {
+            startedCount.incrementAndGet();
+            next.run();
+            next = queue.poll();
+          }
+        } finally {
+          activeOverflowCount.decrementAndGet();
+        }
+      }
+    }).start();
+  }
+
+  private void checkForStall() {
+    synchronized (this) {
+      if (watchdog != null || queue.isEmpty()) {
+        return;
+      }
+      watchdog = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          watch();
+        }
+      }, name + "-watchdog");
+      watchdog.setDaemon(true);
+      watchdog.start();
+    }
+  }
+
+  private void watch() {
+    long started = startedCount.get();
+    while (true) {
+      try {
+        Thread.sleep(stallMillis);
+      } catch (InterruptedException e) {
+        // Keep watching while there are queued tasks.
+      }
+      synchronized (this) {
+        if (queue.isEmpty()) {
+          watchdog = null;
+          return;
+        }
+      }
+      long now = startedCount.get();
+      if (now == started) {
+        Runnable next = queue.poll();
+        if (next != null) {
+          Log.w(LOG_TAG, name + " threads are busy; starting another thread");
+          startOverflowThread(next);
+        }
+      }
+      started = now;
+    }
+  }
+
+  private void untrack(Task task) {
+    synchronized (tasks) {
+      tasks.remove(task);
+    }
+  }
+
+  /**
+   * A task that can be cancelled before or while it runs.
+   */
+  private final class Task implements Runnable {
+    private final Object owner;
+    private final Object group;
+    private final Runnable call;
+    private Thread runner;
+    private boolean cancelled = false;
+
+    Task(Object owner, Object group, Runnable call) {
+      this.owner = owner;
+      this.group = group;
+      this.call = call;
+    }
+
+    @Override
+    public void run() {
+      synchronized (this) {
+        if (cancelled) {
+          return;
+        }
+        runner = Thread.currentThread();
+      }
+      try {
+        call.run();
+      } finally {
+        synchronized (this) {
+          runner = null;
+          // Do not leave an interrupt for the next task run by this thread.
+          Thread.interrupted();
+        }
+        untrack(this);
+      }
+    }
+
+    synchronized void cancel() {
+      cancelled = true;
+      if (runner != null) {
+        runner.interrupt();
+      }
+    }
+  }
+}
@@ -25,6 +25,9 @@ public final class TimerInternal implements Runnable {
   // Interval between timer events in ms
   private int interval;  // set in constructor
 
+  // Indicates whether timer events are withheld while the timer is enabled
+  private boolean suspended;
+
   // Component that should be called by timer
   private AlarmHandler component;
 
@@ -80,7 +83,7 @@ public final class TimerInternal implements Runnable {
    */
   public void Interval(int interval) {
     this.interval = interval;
-    if (enabled) {
+    if (enabled && !suspended) {
       handler.removeCallbacks(this);
       handler.postDelayed(this, interval);
     }
@@ -108,20 +111,42 @@ public final class TimerInternal implements Runnable {
 
     this.enabled = enabled;
 
-    if (enabled) {
+    if (enabled && !suspended) {
       handler.postDelayed(this, interval);
     }
   }
 
+  /**
+   * Stops or resumes the timer events without changing the Enabled and
+   * Interval properties, for components whose alarms are sometimes driven
+   * by something else, such as a Canvas calling its sprites once per frame.
+   *
+   * @param suspended  {@code true} withholds timer events, {@code false}
+   *                   resumes them one interval from now if the timer is
+   *                   enabled
+   */
+  public void setSuspended(boolean suspended) {
+    if (this.suspended == suspended) {
+      return;
+    }
+    this.suspended = suspended;
+    if (enabled) {
+      handler.removeCallbacks(this);
+      if (!suspended) {
+        handler.postDelayed(this, interval);
+      }
+    }
+  }
+
   // Runnable implementation
 
   public void run() {
-    if (enabled) {
+    if (enabled && !suspended) {
       component.alarm();
 
       // During the call to component.alarm, the enabled field may have changed.
       // We need to make sure that enabled is still true before we call handler.postDelayed.
-      if (enabled) {
+      if (enabled && !suspended) {
         handler.postDelayed(this, interval);
       }
     }
@@ -112,10 +112,11 @@ public class YailList extends Pair implements YailObject {
    */
 
   public String[] toStringArray() {
-    int size = this.size();
-    String[] objects = new String[size];
-    for (int i = 1; i <= size; i++) {
-      objects[i - 1] = YailListElementToString(get(i));
+    // Walk the list once rather than calling get(i), which walks the list from the start.
+    Object[] items = toArray();
+    String[] objects = new String[items.length];
+    for (int i = 0; i < items.length; i++) {
+      objects[i] = YailListElementToString(items[i]);
     }
     return objects;
   }
@@ -150,9 +151,7 @@ public class YailList extends Pair implements YailObject {
       StringBuilder json = new StringBuilder();
       String separator = "";
       json.append('[');
-      int size = this.size();
-      for (int i = 1; i <= size; i++) {
-        Object value = get(i);
+      for (Object value : toArray()) {
         json.append(separator).append(JsonUtil.getJsonRepresentation(value));
         separator = ",";
       }
@@ -0,0 +1,64 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2024 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.common;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests DoubleList.java.
+ *
+ */
+public class DoubleListTest extends TestCase {
+  public void testListOperations() {
+    DoubleList list = new DoubleList(1);
+    for (int i = 0; i < 5; i++) {
+      list.addDouble(i);
+    }
+    list.add(0, -1.0);
+    assertEquals(Arrays.asList(-1.0, 0.0, 1.0, 2.0, 3.0, 4.0), list);
+    assertEquals(2.0, list.remove(3));
+    assertEquals(Double.valueOf(3.0), list.set(3, 9.0));
+    assertEquals(Arrays.asList(-1.0, 0.0, 1.0, 9.0, 4.0), list);
+    assertEquals(5, list.size());
+    assertEquals(4.0, list.getDouble(4));
+    try {
+      list.getDouble(5);
+      fail("expected IndexOutOfBoundsException");
+    } catch (IndexOutOfBoundsException e) {
+      // Expected
+    }
+  }
+
+  public void testBulkMath() {
+    DoubleList list = new DoubleList(new double[] {2, 4, 4, 4, 5, 5, 7, 9});
+    assertEquals(40.0, list.sum());
+    assertEquals(5.0, list.mean());
+    assertEquals(4.0, list.variance());
+    assertTrue(Double.isNaN(new DoubleList().mean()));
+  }
+
+  public void testToDoubleArray() {
+    List<Double> boxed = Arrays.asList(1.5, 2.5);
+    assertTrue(Arrays.equals(new double[] {1.5, 2.5}, DoubleList.toDoubleArray(boxed)));
+    DoubleList list = new DoubleList(new double[] {1.5, 2.5});
+    double[] values = DoubleList.toDoubleArray(list);
+    values[0] = 0;
+    assertEquals(1.5, list.getDouble(0));
+  }
+
+  public void testLinearRegression() {
+    DoubleList x = new DoubleList(new double[] {1, 2, 3, 4});
+    DoubleList y = new DoubleList(new double[] {3, 5, 7, 9});
+    Map<String, Object> result = new LinearRegression().compute(x, y);
+    assertEquals(2.0, (Double) result.get("slope"), 1e-9);
+    assertEquals(1.0, (Double) result.get("Yintercept"), 1e-9);
+    assertEquals(Arrays.asList(3.0, 5.0, 7.0, 9.0), result.get("predictions"));
+  }
+}
@@ -6,6 +6,7 @@
 
 package com.google.appinventor.components.runtime;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 
 import com.google.appinventor.components.runtime.util.ErrorMessages;
@@ -21,6 +22,7 @@ import java.util.List;
 
 import org.junit.Test;
 
+import org.robolectric.Robolectric;
 import org.robolectric.annotation.Config;
 
 import org.robolectric.shadows.ShadowBluetoothAdapter;
@@ -36,6 +38,7 @@ public class BluetoothConnectionBaseTest extends RobolectricTestBase {
   private ByteArrayOutputStream outputStream;
   private int recordedErrorNumber;
   private PipedOutputStream pipe;
+  private final List<YailList> receivedMessages = new ArrayList<YailList>();
 
   @Override
   public void setUp() {
@@ -80,9 +83,30 @@ public class BluetoothConnectionBaseTest extends RobolectricTestBase {
       public boolean IsConnected() {
         return true;
       }
+
+      @Override
+      public void DataReceived(YailList messages) {
+        receivedMessages.add(messages);
+      }
     };
   }
 
+  private void startReceivingInBackground() {
+    // Queue what the reader posts to the main thread until the test runs it.
+    Robolectric.getForegroundThreadScheduler().pause();
+    connection.startBackgroundReader();
+  }
+
+  /*
+   * Waits for the background reader to have read the given number of bytes.
+   */
+  private void waitForBytesToReceive(int count) throws InterruptedException {
+    for (int i = 0; i < 200 && connection.BytesAvailableToReceive() < count; i++) {
+      Thread.sleep(10);
+    }
+    assertEquals(count, connection.BytesAvailableToReceive());
+  }
+
   @Test
   public void testSendAndReceiveText() {
     connection.SendText("Hello");
@@ -481,4 +505,76 @@ public class BluetoothConnectionBaseTest extends RobolectricTestBase {
     assertEquals((byte) 0xFF, bytes[i++]);  // 0xFF
     assertEquals((byte) 0xAB, bytes[i++]);  // 0xab
   }
+
+  @Test
+  public void testReceiveInBackgroundDoesNotBlock() throws InterruptedException {
+    connection.DelimiterByte('\n');
+    startReceivingInBackground();
+    try {
+      connection.SendText("ab\ncd");
+      waitForBytesToReceive(5);
+
+      // Not enough bytes have arrived, so nothing is received.
+      assertEquals("", connection.ReceiveText(6));
+      assertEquals(5, connection.BytesAvailableToReceive());
+
+      assertEquals("ab", connection.ReceiveText(-1));
+      // No delimiter has arrived yet.
+      assertEquals("", connection.ReceiveText(-1));
+      assertEquals("cd", connection.ReceiveText(2));
+      assertEquals(0, connection.BytesAvailableToReceive());
+      assertEquals(0, recordedErrorNumber);
+    } finally {
+      connection.Disconnect();
+    }
+  }
+
+  @Test
+  public void testDataReceivedWithDelimiter() throws InterruptedException {
+    connection.DelimiterByte('\n');
+    connection.MessageSize(-1);
+    startReceivingInBackground();
+    try {
+      connection.SendText("one\ntwo\nthr");
+      waitForBytesToReceive(11);
+      advance(100);
+      runAllEvents();
+
+      assertEquals(1, receivedMessages.size());
+      assertArrayEquals(new String[] {"one", "two"}, receivedMessages.get(0).toStringArray());
+      // The incomplete message is left in the buffer.
+      assertEquals("thr", connection.ReceiveText(3));
+    } finally {
+      connection.Disconnect();
+    }
+  }
+
+  @Test
+  public void testDataReceivedWithFixedSize() throws InterruptedException {
+    connection.MessageSize(2);
+    startReceivingInBackground();
+    try {
+      List<Object> list = new ArrayList<Object>();
+      list.add("1");
+      list.add("2");
+      list.add("3");
+      list.add("255");
+      list.add("5");
+      connection.SendBytes(YailList.makeList(list));
+      waitForBytesToReceive(5);
+      advance(100);
+      runAllEvents();
+
+      assertEquals(1, receivedMessages.size());
+      YailList messages = receivedMessages.get(0);
+      assertEquals(2, messages.size());
+      assertArrayEquals(new String[] {"1", "2"},
+          ((YailList) messages.getObject(0)).toStringArray());
+      assertArrayEquals(new String[] {"3", "255"},
+          ((YailList) messages.getObject(1)).toStringArray());
+      assertEquals(1, connection.BytesAvailableToReceive());
+    } finally {
+      connection.Disconnect();
+    }
+  }
 }
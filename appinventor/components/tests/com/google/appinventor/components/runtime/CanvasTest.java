@@ -0,0 +1,110 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2024 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.os.SystemClock;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the frame synchronized animation of the sprites of a {@link Canvas}.
+ */
+public class CanvasTest extends RobolectricTestBase {
+  private static final double DELTA = 0.0001;
+
+  private Canvas canvas;
+  private Ball ball1;
+  private Ball ball2;
+
+  @Before
+  public void setUp() {
+    super.setUp();
+    canvas = new Canvas(getForm());
+    ball1 = createBall(0, 0);
+    ball2 = createBall(0, 100);
+  }
+
+  private Ball createBall(double x, double y) {
+    Ball ball = new Ball(canvas);
+    ball.Radius(5);
+    ball.X(x);
+    ball.Y(y);
+    ball.Heading(0);
+    ball.Speed(10);
+    ball.Interval(100);
+    ball.Initialize();
+    return ball;
+  }
+
+  @Test
+  public void testSpritesMoveEveryInterval() {
+    canvas.FrameSynchronizedAnimation(true);
+    long start = SystemClock.uptimeMillis();
+
+    // The first frame schedules the first move one interval later.
+    canvas.animateFrame(start);
+    assertEquals(0, ball1.X(), DELTA);
+
+    canvas.animateFrame(start + 50);
+    assertEquals(0, ball1.X(), DELTA);
+
+    canvas.animateFrame(start + 100);
+    assertEquals(10, ball1.X(), DELTA);
+    assertEquals(10, ball2.X(), DELTA);
+
+    // Two intervals ended since the last frame.
+    canvas.animateFrame(start + 316);
+    assertEquals(30, ball1.X(), DELTA);
+    assertEquals(30, ball2.X(), DELTA);
+  }
+
+  @Test
+  public void testDisabledSpriteDoesNotMove() {
+    canvas.FrameSynchronizedAnimation(true);
+    ball2.Enabled(false);
+    long start = SystemClock.uptimeMillis();
+    canvas.animateFrame(start);
+    canvas.animateFrame(start + 100);
+    assertEquals(10, ball1.X(), DELTA);
+    assertEquals(0, ball2.X(), DELTA);
+  }
+
+  @Test
+  public void testCollisionsCheckedAfterAllSpritesMove() {
+    ball2.Y(0);
+    ball2.X(30);
+    ball2.Heading(180);
+    canvas.FrameSynchronizedAnimation(true);
+    long start = SystemClock.uptimeMillis();
+    canvas.animateFrame(start);
+    assertFalse(ball1.CollidingWith(ball2));
+
+    canvas.animateFrame(start + 100);
+    assertEquals(10, ball1.X(), DELTA);
+    assertEquals(20, ball2.X(), DELTA);
+    assertTrue(ball1.CollidingWith(ball2));
+    assertTrue(ball2.CollidingWith(ball1));
+  }
+
+  @Test
+  public void testTurningOffSynchronization() {
+    canvas.FrameSynchronizedAnimation(true);
+    assertTrue(canvas.FrameSynchronizedAnimation());
+    canvas.FrameSynchronizedAnimation(false);
+    assertFalse(canvas.FrameSynchronizedAnimation());
+
+    // The sprites move on their own timers again, so frames don't move them.
+    long start = SystemClock.uptimeMillis();
+    canvas.animateFrame(start);
+    canvas.animateFrame(start + 100);
+    assertEquals(0, ball1.X(), DELTA);
+  }
+}
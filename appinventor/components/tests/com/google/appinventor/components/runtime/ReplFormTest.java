@@ -6,17 +6,27 @@
 package com.google.appinventor.components.runtime;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
 
 import android.Manifest;
+import android.os.Handler;
+import android.os.Looper;
 import com.google.appinventor.components.runtime.util.IOUtils;
 import com.google.appinventor.components.runtime.util.QUtil;
+import com.google.appinventor.components.runtime.util.RetValManager;
+import com.google.appinventor.components.runtime.util.WebRTCNativeMgr;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import org.json.JSONObject;
 import org.junit.Before;
 import org.junit.Test;
 import org.robolectric.Shadows;
+import org.robolectric.util.Scheduler.IdleState;
 
 /**
  * Tests for the ReplForm.
@@ -64,6 +74,49 @@ public class ReplFormTest extends FormTest {
     }
   }
 
+  /**
+   * Test that the values of the forms evaluated in a pass reach the Blocks Editor in one message,
+   * even though the forms only post their evaluation to the UI thread.
+   */
+  @Test
+  public void testValuesOfAPassAreSentTogether() throws Exception {
+    final List<String> sent = new ArrayList<String>();
+    final ReplForm form = (ReplForm) getForm();
+    form.setWebRTCMgr(new WebRTCNativeMgr("", "OK") {
+      @Override
+      public void send(String output) {
+        sent.add(output);
+      }
+    });
+    final Handler handler = new Handler();
+    form.schemeInterface = form.new SchemeInterface() {
+      @Override
+      void evalForm(final String sexp) {
+        // Like process-repl-input, only post the evaluation
+        handler.post(new Runnable() {
+          @Override
+          public void run() {
+            RetValManager.appendReturnValue("-1", "OK", sexp);
+          }
+        });
+      }
+    };
+    PhoneStatus phoneStatus = new PhoneStatus(form);
+    phoneStatus.WebRTC(true);
+    try {
+      shadowOf(Looper.getMainLooper()).getScheduler().setIdleState(IdleState.PAUSED);
+      form.schemeInterface.eval("(first)");
+      form.schemeInterface.eval("(second)");
+      assertTrue(sent.isEmpty());
+      runAllEvents();
+      assertEquals(1, sent.size());
+      assertEquals(2, new JSONObject(sent.get(0)).getJSONArray("values").length());
+    } finally {
+      phoneStatus.WebRTC(false);
+      shadowOf(Looper.getMainLooper()).getScheduler().setIdleState(IdleState.UNPAUSED);
+    }
+  }
+
   /// Helper functions
 
   /**
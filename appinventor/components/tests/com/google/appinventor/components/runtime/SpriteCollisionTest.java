@@ -8,6 +8,10 @@ package com.google.appinventor.components.runtime;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
 import org.junit.Before;
 import org.junit.Test;
 
@@ -17,6 +21,7 @@ import org.junit.Test;
  */
 public class SpriteCollisionTest extends RobolectricTestBase {
 
+  private Canvas canvas;
   private Ball ball1;
   private Ball ball2;
   private ImageSprite imageSprite1;
@@ -27,7 +32,7 @@ public class SpriteCollisionTest extends RobolectricTestBase {
   @Before
   public void setUp() {
     super.setUp();
-    Canvas canvas = new Canvas(getForm());
+    canvas = new Canvas(getForm());
 
     ball1 = new Ball(canvas);
     ball2 = new Ball(canvas);
@@ -434,4 +439,91 @@ public class SpriteCollisionTest extends RobolectricTestBase {
 
     assertFalse(Sprite.colliding(ball2, ball1));
   }
+
+  @Test
+  public void testCollisionEvents() {
+    ball1.Radius(10);
+    ball1.X(100);
+    ball1.Y(100);
+    ball2.Radius(10);
+    ball2.X(300);
+    ball2.Y(300);
+    ball1.Initialize();
+    ball2.Initialize();
+    assertFalse(ball1.CollidingWith(ball2));
+
+    ball2.MoveTo(110, 100);
+    assertTrue(ball1.CollidingWith(ball2));
+    assertTrue(ball2.CollidingWith(ball1));
+
+    // Far enough that the balls no longer share a cell of the grid.
+    ball2.MoveTo(1000, 1000);
+    assertFalse(ball1.CollidingWith(ball2));
+    assertFalse(ball2.CollidingWith(ball1));
+
+    ball2.MoveTo(100, 115);
+    assertTrue(ball1.CollidingWith(ball2));
+    ball1.Visible(false);
+    assertFalse(ball1.CollidingWith(ball2));
+    assertFalse(ball2.CollidingWith(ball1));
+  }
+
+  @Test
+  public void testCollisionWithRotatedCorner() {
+    // A tall sprite whose rotated bottom corner lies outside of its unrotated bounds.
+    imageSpriteRotated1.X(500);
+    imageSpriteRotated1.Y(500);
+    imageSpriteRotated1.U(0.5);
+    imageSpriteRotated1.V(0.0);
+    imageSpriteRotated1.Width(10);
+    imageSpriteRotated1.Height(300);
+    imageSpriteRotated1.Heading(90);
+    imageSpriteRotated1.Initialize();
+
+    ball1.Radius(5);
+    ball1.OriginAtCenter(true);
+    ball1.X(500);
+    ball1.Y(200);
+    ball1.Initialize();
+    assertFalse(ball1.CollidingWith(imageSpriteRotated1));
+
+    ball1.MoveTo(793, 500);
+    assertTrue(ball1.CollidingWith(imageSpriteRotated1));
+    assertTrue(imageSpriteRotated1.CollidingWith(ball1));
+  }
+
+  @Test
+  public void testCollisionDetectionScales() {
+    // Moving a ball through an evenly spread crowd of sprites should test a
+    // similar number of candidates however large the crowd is.
+    List<Integer> maxCandidates = new ArrayList<>();
+    for (int size : new int[] {10, 20, 40}) {
+      canvas = new Canvas(getForm());
+      for (int i = 0; i < size; i++) {
+        for (int j = 0; j < size; j++) {
+          Ball ball = new Ball(canvas);
+          ball.Radius(5);
+          ball.X(i * 40);
+          ball.Y(j * 40);
+          ball.Initialize();
+        }
+      }
+      Ball mover = new Ball(canvas);
+      mover.Radius(5);
+      mover.X(20);
+      mover.Y(20);
+      mover.Initialize();
+
+      int max = 0;
+      for (int x = 20; x < size * 40; x += 3) {
+        mover.MoveTo(x, 20 + (x % 200));
+        max = Math.max(max, canvas.getSpriteGrid()
+            .getCandidates(mover, Collections.<Sprite>emptySet()).size());
+      }
+      maxCandidates.add(max);
+    }
+    for (int max : maxCandidates) {
+      assertTrue("Too many candidates: " + max, max < 20);
+    }
+  }
 }
@@ -0,0 +1,149 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2024 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+import com.google.appinventor.components.runtime.shadows.ShadowAsynchUtil;
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the log kept by {@link TinyDBStore}.
+ */
+public class TinyDBStoreTest extends RobolectricTestBase {
+  private static final String NAMESPACE = "TinyDBStoreTest";
+
+  private File logFile;
+
+  @Before
+  public void setUp() {
+    super.setUp();
+    logFile = new File(getForm().getDir("TinyDB", Context.MODE_PRIVATE), NAMESPACE + ".log");
+  }
+
+  @Test
+  public void testAppendGrowsMapping() throws Exception {
+    TinyDBStore store = TinyDBStore.open(getForm(), NAMESPACE);
+    store.clear();
+    // About 100 KB, well past the 16 KB mapped when the log is created.
+    String text = repeat('x', 1000);
+    for (int i = 0; i < 100; i++) {
+      store.put("tag" + i, "\"" + i + text + "\"");
+    }
+    store.close();
+
+    store = TinyDBStore.open(getForm(), NAMESPACE);
+    assertEquals(100, store.getTags().size());
+    for (int i = 0; i < 100; i++) {
+      assertEquals(i + text, store.get("tag" + i, null));
+    }
+    store.close();
+  }
+
+  @Test
+  public void testDamagedTailIsTruncated() throws Exception {
+    TinyDBStore store = TinyDBStore.open(getForm(), NAMESPACE);
+    store.clear();
+    store.put("first", "\"kept\"");
+    store.put("second", "\"damaged value\"");
+    store.close();
+
+    // Damage the last record, as if the app was killed while writing it.
+    RandomAccessFile file = new RandomAccessFile(logFile, "rw");
+    try {
+      byte[] contents = new byte[(int) file.length()];
+      file.readFully(contents);
+      int offset = indexOf(contents, "damaged value".getBytes(Charset.forName("UTF-8")));
+      assertTrue(offset > 0);
+      file.seek(offset);
+      file.write('D');
+    } finally {
+      file.close();
+    }
+
+    store = TinyDBStore.open(getForm(), NAMESPACE);
+    assertEquals(Arrays.asList("first"), store.getTags());
+    assertEquals("kept", store.get("first", null));
+
+    // New records replace the damaged one.
+    store.put("third", "3");
+    store.close();
+    store = TinyDBStore.open(getForm(), NAMESPACE);
+    assertEquals(Arrays.asList("first", "third"), store.getTags());
+    assertEquals(3, store.get("third", null));
+    store.close();
+  }
+
+  @Test
+  public void testCompactKeepsCurrentValues() throws Exception {
+    TinyDBStore store = TinyDBStore.open(getForm(), NAMESPACE);
+    store.clear();
+    ShadowAsynchUtil.getPendingRunnables().clear();
+    String text = repeat('y', 1000);
+    // Replace the same few values until the log is mostly old values.
+    for (int i = 0; i < 500; i++) {
+      store.put("tag" + (i % 5), "\"" + i + text + "\"");
+    }
+    store.put("list", "[1, \"two\", [3]]");
+    long sizeBefore = logFile.length();
+    assertEquals(1, ShadowAsynchUtil.getPendingRunnables().size());
+    ShadowAsynchUtil.runAllPendingRunnables();
+    assertTrue(logFile.length() < sizeBefore);
+
+    for (int i = 0; i < 5; i++) {
+      assertEquals((495 + i) + text, store.get("tag" + i, null));
+    }
+    assertEquals(6, store.getTags().size());
+
+    // The compacted log is read back the same way.
+    store.close();
+    store = TinyDBStore.open(getForm(), NAMESPACE);
+    for (int i = 0; i < 5; i++) {
+      assertEquals((495 + i) + text, store.get("tag" + i, null));
+    }
+    assertEquals(3, ((List<?>) store.get("list", null)).size());
+    store.close();
+  }
+
+  @Test
+  public void testCachedListIsNotShared() throws Exception {
+    TinyDBStore store = TinyDBStore.open(getForm(), NAMESPACE);
+    store.clear();
+    store.put("list", "[1, 2]");
+    @SuppressWarnings("unchecked")
+    List<Object> list = (List<Object>) store.get("list", null);
+    list.add(3);
+    assertEquals(2, ((List<?>) store.get("list", null)).size());
+    store.close();
+  }
+
+  private static String repeat(char c, int count) {
+    char[] chars = new char[count];
+    Arrays.fill(chars, c);
+    return new String(chars);
+  }
+
+  private static int indexOf(byte[] haystack, byte[] needle) {
+    outer:
+    for (int i = 0; i + needle.length <= haystack.length; i++) {
+      for (int j = 0; j < needle.length; j++) {
+        if (haystack[i + j] != needle[j]) {
+          continue outer;
+        }
+      }
+      return i;
+    }
+    return -1;
+  }
+}
@@ -9,7 +9,11 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import android.content.Context;
+import com.google.appinventor.components.runtime.util.YailDictionary;
+import com.google.appinventor.components.runtime.util.YailList;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import org.junit.Before;
 import org.junit.Test;
@@ -79,4 +83,30 @@ public class TinyDBTest extends RobolectricTestBase {
     assertEquals("Invalid TinyDB StoreValue","test-value-3",
         aTinyDB.GetValue("test-tag-3", "tag-not-found"));
   }
+
+  @Test
+  public void testValuesSharedBetweenComponents() {
+    aTinyDB.StoreValue("number", 42);
+    aTinyDB.StoreValue("list", YailList.makeList(Arrays.asList(1, "true", "x")));
+    TinyDB other = new TinyDB(getForm());
+    assertEquals(42, other.GetValue("number", 0));
+    Object list = other.GetValue("list", null);
+    assertTrue(list instanceof List);
+    assertEquals(Arrays.asList(1, true, "x"), list);
+    aTinyDB.ClearTag("number");
+    assertEquals("gone", other.GetValue("number", "gone"));
+  }
+
+  @Test
+  public void testMigratesSharedPreferences() {
+    getForm().getSharedPreferences("Legacy", Context.MODE_PRIVATE).edit()
+        .putString("name", "\"old value\"")
+        .putString("map", "{\"b\":2,\"a\":1}")
+        .commit();
+    aTinyDB.Namespace("Legacy");
+    assertEquals("old value", aTinyDB.GetValue("name", ""));
+    assertTrue(aTinyDB.GetValue("map", null) instanceof YailDictionary);
+    assertEquals(Arrays.asList("map", "name"), aTinyDB.GetTags());
+    assertTrue(getForm().getSharedPreferences("Legacy", Context.MODE_PRIVATE).getAll().isEmpty());
+  }
 }
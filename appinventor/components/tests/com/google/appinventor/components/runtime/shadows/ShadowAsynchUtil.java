@@ -7,6 +7,7 @@ package com.google.appinventor.components.runtime.shadows;
 
 import android.os.Handler;
 
+import com.google.appinventor.components.runtime.Component;
 import com.google.appinventor.components.runtime.util.AsynchUtil;
 import com.google.appinventor.components.runtime.util.Continuation;
 import com.google.appinventor.components.runtime.util.Synchronizer;
@@ -49,6 +50,15 @@ public class ShadowAsynchUtil {
     runnables.add(call);
   }
 
+  @Implementation
+  public static void runAsynchronously(Component component, final Runnable call) {
+    runnables.add(call);
+  }
+
+  @Implementation
+  public static void cancelTasks(Component component) {
+  }
+
   @Implementation
   public static void runAsynchronously(final Handler androidUIHandler,
                                        final Runnable call,
@@ -0,0 +1,74 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2024 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import android.graphics.Bitmap;
+import com.google.appinventor.components.runtime.RobolectricTestBase;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+/**
+ * Tests BitmapCache class.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class BitmapCacheTest extends RobolectricTestBase {
+
+  private static Bitmap newBitmap() {
+    return Bitmap.createBitmap(10, 10, Bitmap.Config.ARGB_8888);
+  }
+
+  private static int sizeOf(Bitmap bitmap) {
+    return bitmap.getRowBytes() * bitmap.getHeight();
+  }
+
+  @Test
+  public void testEvictsLeastRecentlyUsed() {
+    Bitmap a = newBitmap();
+    Bitmap b = newBitmap();
+    Bitmap c = newBitmap();
+    BitmapCache cache = new BitmapCache(2 * sizeOf(a));
+    cache.put("a", a);
+    cache.put("b", b);
+    assertSame(a, cache.get("a"));  // b is now the least recently used
+    cache.put("c", c);
+    assertSame(a, cache.get("a"));
+    assertNull(cache.get("b"));
+    assertSame(c, cache.get("c"));
+    assertEquals(2 * sizeOf(a), cache.size());
+    assertEquals(3, cache.hitCount());
+    assertEquals(1, cache.missCount());
+  }
+
+  @Test
+  public void testReplaceAndTrim() {
+    Bitmap a = newBitmap();
+    BitmapCache cache = new BitmapCache(4 * sizeOf(a));
+    cache.put("a", a);
+    cache.put("a", newBitmap());
+    cache.put("b", newBitmap());
+    assertEquals(2 * sizeOf(a), cache.size());
+    cache.trimToSize(sizeOf(a));
+    assertNull(cache.get("a"));
+    assertEquals(sizeOf(a), cache.size());
+    cache.trimToSize(0);
+    assertNull(cache.get("b"));
+    assertEquals(0, cache.size());
+  }
+
+  @Test
+  public void testTooLargeBitmapIsNotCached() {
+    Bitmap a = newBitmap();
+    BitmapCache cache = new BitmapCache(sizeOf(a) - 1);
+    cache.put("a", a);
+    assertNull(cache.get("a"));
+    assertEquals(0, cache.size());
+  }
+}
@@ -0,0 +1,93 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2024 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime.util;
+
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests ByteRingBuffer class.
+ *
+ */
+public class ByteRingBufferTest extends TestCase {
+
+  public void testCapacityIsRoundedUp() {
+    assertEquals(8, new ByteRingBuffer(5).capacity());
+    assertEquals(8, new ByteRingBuffer(8).capacity());
+    assertEquals(1, new ByteRingBuffer(1).capacity());
+  }
+
+  public void testWriteStopsWhenFull() {
+    ByteRingBuffer buffer = new ByteRingBuffer(4);
+    assertEquals(3, buffer.write(new byte[] {1, 2, 3}, 0, 3));
+    assertEquals(1, buffer.write(new byte[] {4, 5, 6}, 0, 3));
+    assertEquals(4, buffer.size());
+    assertEquals(0, buffer.write(new byte[] {7}, 0, 1));
+    assertTrue(Arrays.equals(new byte[] {1, 2, 3, 4}, buffer.read(4)));
+    assertEquals(0, buffer.size());
+  }
+
+  public void testWrapsAround() {
+    ByteRingBuffer buffer = new ByteRingBuffer(4);
+    buffer.write(new byte[] {1, 2, 3}, 0, 3);
+    assertTrue(Arrays.equals(new byte[] {1, 2}, buffer.read(2)));
+    assertEquals(3, buffer.write(new byte[] {0, 4, 5, 6}, 1, 3));
+    assertEquals(2, buffer.indexOf((byte) 5));
+    assertEquals(-1, buffer.indexOf((byte) 1));
+    assertTrue(Arrays.equals(new byte[] {3, 4, 5, 6}, buffer.read(4)));
+  }
+
+  public void testReadMoreThanSize() {
+    ByteRingBuffer buffer = new ByteRingBuffer(4);
+    buffer.write(new byte[] {1}, 0, 1);
+    try {
+      buffer.read(2);
+      fail();
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+    assertEquals(1, buffer.size());
+  }
+
+  public void testConcurrentWriterAndReader() throws InterruptedException {
+    final ByteRingBuffer buffer = new ByteRingBuffer(16);
+    final int total = 10000;
+    Thread writer = new Thread() {
+      @Override
+      public void run() {
+        byte[] chunk = new byte[7];
+        int next = 0;
+        while (next < total) {
+          int length = Math.min(chunk.length, total - next);
+          for (int i = 0; i < length; i++) {
+            chunk[i] = (byte) (next + i);
+          }
+          int written = 0;
+          while (written < length) {
+            written += buffer.write(chunk, written, length - written);
+            Thread.yield();
+          }
+          next += length;
+        }
+      }
+    };
+    writer.start();
+    int received = 0;
+    while (received < total) {
+      int size = buffer.size();
+      if (size > 0) {
+        byte[] bytes = buffer.read(size);
+        for (byte b : bytes) {
+          assertEquals((byte) received++, b);
+        }
+      }
+      Thread.yield();
+    }
+    writer.join();
+    assertEquals(0, buffer.size());
+  }
+}
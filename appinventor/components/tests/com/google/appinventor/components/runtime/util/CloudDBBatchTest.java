@@ -0,0 +1,219 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2024 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime.util;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import redis.clients.jedis.Jedis;
+
+/**
+ * Tests CloudDBBatch class against a local stand-in for Redis.
+ *
+ */
+public class CloudDBBatchTest extends TestCase {
+  private final List<List<String>> commands = new ArrayList<List<String>>();
+  private final List<String> results = new ArrayList<String>();
+  private final Map<String, String> data = new HashMap<String, String>();
+  private final Set<String> scripts = new HashSet<String>();
+  private ServerSocket server;
+  private Jedis jedis;
+
+  private final CloudDBBatch.Callback callback = new CloudDBBatch.Callback() {
+    @Override
+    public void updateDone(String tag) {
+      results.add("updateDone " + tag);
+    }
+
+    @Override
+    public void gotValue(String tag, String value, Object valueIfTagNotThere) {
+      results.add("gotValue " + tag + " " + value + " " + valueIfTagNotThere);
+    }
+  };
+
+  @Override
+  protected void setUp() throws IOException {
+    server = new ServerSocket(0);
+    Thread thread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          Socket socket = server.accept();
+          serve(new BufferedInputStream(socket.getInputStream()), socket.getOutputStream());
+          socket.close();
+        } catch (IOException e) {
+          // Closed by tearDown
+        }
+      }
+    });
+    thread.setDaemon(true);
+    thread.start();
+    jedis = new Jedis("127.0.0.1", server.getLocalPort());
+  }
+
+  @Override
+  protected void tearDown() throws IOException {
+    jedis.close();
+    server.close();
+  }
+
+  // Understands just enough of the Redis protocol for the commands CloudDBBatch sends.
+  private void serve(InputStream in, OutputStream out) throws IOException {
+    while (true) {
+      String line = readLine(in);
+      if (line == null) {
+        return;
+      }
+      List<String> command = new ArrayList<String>();
+      int count = Integer.parseInt(line.substring(1));
+      for (int i = 0; i < count; i++) {
+        int length = Integer.parseInt(readLine(in).substring(1));
+        byte[] bytes = new byte[length];
+        int read = 0;
+        while (read < length) {
+          read += in.read(bytes, read, length - read);
+        }
+        readLine(in);
+        command.add(new String(bytes, "UTF-8"));
+      }
+      synchronized (commands) {
+        commands.add(command);
+      }
+      out.write(execute(command).getBytes("UTF-8"));
+      out.flush();
+    }
+  }
+
+  private String execute(List<String> command) throws IOException {
+    String name = command.get(0).toUpperCase();
+    if (name.equals("EVALSHA") && !scripts.contains(command.get(1))) {
+      return "-NOSCRIPT No matching script. Please use EVAL.\r\n";
+    } else if (name.equals("EVAL") || name.equals("EVALSHA")) {
+      if (name.equals("EVAL")) {
+        scripts.add(sha1(command.get(1)));
+      }
+      int keys = Integer.parseInt(command.get(2));
+      String project = command.get(3 + keys);
+      for (int i = 0; i < keys; i++) {
+        data.put(project + ":" + command.get(3 + i), command.get(4 + keys + 2 * i));
+      }
+      return ":" + keys + "\r\n";
+    } else if (name.equals("MGET")) {
+      StringBuilder sb = new StringBuilder("*" + (command.size() - 1) + "\r\n");
+      for (String key : command.subList(1, command.size())) {
+        String value = data.get(key);
+        if (value == null) {
+          sb.append("$-1\r\n");
+        } else {
+          sb.append("$").append(value.getBytes("UTF-8").length).append("\r\n")
+              .append(value).append("\r\n");
+        }
+      }
+      return sb.toString();
+    }
+    return "-ERR unknown command\r\n";
+  }
+
+  private static String readLine(InputStream in) throws IOException {
+    StringBuilder sb = new StringBuilder();
+    int c;
+    while ((c = in.read()) != '\r') {
+      if (c == -1) {
+        return null;
+      }
+      sb.append((char) c);
+    }
+    in.read();
+    return sb.toString();
+  }
+
+  private static String sha1(String script) throws IOException {
+    try {
+      byte[] digest = MessageDigest.getInstance("SHA-1").digest(script.getBytes("UTF-8"));
+      return String.format("%040x", new BigInteger(1, digest));
+    } catch (NoSuchAlgorithmException e) {
+      throw new IOException(e);
+    }
+  }
+
+  public void testScriptDigest() throws IOException {
+    assertEquals(sha1(CloudDBBatch.STORE_SCRIPT), CloudDBBatch.STORE_SCRIPT_SHA1);
+  }
+
+  public void testFlushCoalescesRequests() {
+    CloudDBBatch batch = new CloudDBBatch();
+    assertTrue(batch.store("a", "1"));
+    assertFalse(batch.store("b", "2"));
+    assertFalse(batch.store("a", "3"));
+    assertFalse(batch.get("a", "x"));
+    assertFalse(batch.get("c", "y"));
+    assertFalse(batch.get("a", "z"));
+    batch.flush(jedis, "p", callback);
+
+    assertEquals(3, commands.size());
+    assertEquals("EVALSHA", commands.get(0).get(0).toUpperCase());
+    assertEquals(Arrays.asList("2", "a", "b", "p", "3", "[\"1\",\"3\"]", "2", "[\"2\"]"),
+        commands.get(1).subList(2, commands.get(1).size()));
+    assertEquals(Arrays.asList("MGET", "p:a", "p:c"), commands.get(2));
+    assertEquals(Arrays.asList("updateDone a", "updateDone b", "gotValue a 3 x",
+        "gotValue c null y", "gotValue a 3 z"), results);
+
+    // The batch is empty again, and the script is now cached by the server
+    commands.clear();
+    assertTrue(batch.store("b", "4"));
+    batch.flush(jedis, "p", callback);
+    assertEquals(1, commands.size());
+    assertEquals("EVALSHA", commands.get(0).get(0).toUpperCase());
+    assertEquals("4", data.get("p:b"));
+  }
+
+  public void testGetBeforeStoreSeesOldValue() {
+    CloudDBBatch batch = new CloudDBBatch();
+    data.put("p:a", "1");
+    assertTrue(batch.get("a", "x"));
+    assertFalse(batch.store("b", "2"));
+    assertFalse(batch.store("a", "3"));
+    assertFalse(batch.get("a", "y"));
+    batch.flush(jedis, "p", callback);
+
+    assertEquals(5, commands.size());
+    assertEquals(Arrays.asList("1", "b", "p", "2", "[\"2\"]"),
+        commands.get(1).subList(2, commands.get(1).size()));
+    assertEquals(Arrays.asList("MGET", "p:a"), commands.get(2));
+    assertEquals(Arrays.asList("1", "a", "p", "3", "[\"3\"]"),
+        commands.get(3).subList(2, commands.get(3).size()));
+    assertEquals(Arrays.asList("MGET", "p:a"), commands.get(4));
+    assertEquals(Arrays.asList("updateDone b", "gotValue a 1 x", "updateDone a",
+        "gotValue a 3 y"), results);
+  }
+
+  public void testClear() {
+    CloudDBBatch batch = new CloudDBBatch();
+    batch.store("a", "1");
+    batch.get("a", "x");
+    batch.clear();
+    batch.flush(jedis, "p", callback);
+    assertTrue(commands.isEmpty());
+    assertTrue(results.isEmpty());
+    assertTrue(batch.get("a", "x"));
+  }
+}
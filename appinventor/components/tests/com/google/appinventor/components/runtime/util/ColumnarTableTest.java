@@ -0,0 +1,94 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2024 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime.util;
+
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests ColumnarTable class.
+ *
+ */
+public class ColumnarTableTest extends TestCase {
+
+  private static List<String> list(String... cells) {
+    return Arrays.asList(cells);
+  }
+
+  private static void assertCells(YailList actual, String... expected) {
+    assertEquals(Arrays.asList(expected), Arrays.asList(actual.toArray()));
+  }
+
+  public void testCellsReadBackExactly() {
+    ColumnarTable table = new ColumnarTable();
+    table.addRow(list("a", "b", "c", "d", "e"));
+    table.addRow(list("1", "1.5", "007", "-0", "x"));
+    table.addRow(list("-12", "2.0", "8", "3", "1e3"));
+    table.addRow(list("123456789012345678", "1.0E10", "9", "4", "NaN"));
+    assertEquals(4, table.getRowCount());
+    assertEquals(5, table.getColumnCount());
+    assertCells(table.getColumn(0), "a", "1", "-12", "123456789012345678");
+    assertCells(table.getColumn(1), "b", "1.5", "2.0", "1.0E10");
+    assertCells(table.getColumn(2), "c", "007", "8", "9");
+    assertCells(table.getColumn(3), "d", "-0", "3", "4");
+    assertCells(table.getColumn(4), "e", "x", "1e3", "NaN");
+    assertCells(table.getRow(1), "1", "1.5", "007", "-0", "x");
+  }
+
+  public void testColumnChangesToStrings() {
+    ColumnarTable table = new ColumnarTable();
+    table.addRow(list("x"));
+    for (int i = 0; i < 40; i++) {
+      table.addRow(list(Integer.toString(i)));
+    }
+    table.addRow(list("2.5"));
+    table.addRow(list("text"));
+    YailList column = table.getColumn(0);
+    assertEquals(43, column.size());
+    assertEquals("39", column.getString(40));
+    assertEquals("2.5", column.getString(41));
+    assertEquals("text", column.getString(42));
+  }
+
+  public void testUnevenRows() {
+    // Rows keep their lengths and columns are padded, like the transpose of the rows.
+    ColumnarTable table = new ColumnarTable();
+    table.addRow(list("a", "b"));
+    table.addRow(list("1"));
+    table.addRow(list("2", "3", "4"));
+    assertEquals(3, table.getColumnCount());
+    assertCells(table.getRow(0), "a", "b");
+    assertCells(table.getRow(1), "1");
+    assertCells(table.getRow(2), "2", "3", "4");
+    assertCells(table.getColumn(0), "a", "1", "2");
+    assertCells(table.getColumn(1), "b", "", "3");
+    assertCells(table.getColumn(2), "", "", "4");
+    assertEquals(3, table.getRows().size());
+    assertEquals(3, table.getColumns().size());
+  }
+
+  public void testFromColumns() {
+    // Columns keep their lengths and rows are padded, like the transpose of the columns.
+    ColumnarTable table = ColumnarTable.fromColumns(Arrays.asList(
+        list("x", "1", "2", "3"), list("y", "4"), list()));
+    assertEquals(4, table.getRowCount());
+    assertCells(table.getColumn(0), "x", "1", "2", "3");
+    assertCells(table.getColumn(1), "y", "4");
+    assertEquals(0, table.getColumnLength(2));
+    assertCells(table.getRow(0), "x", "y", "");
+    assertCells(table.getRow(3), "3", "", "");
+  }
+
+  public void testEmptyTable() {
+    ColumnarTable table = new ColumnarTable();
+    assertEquals(0, table.getRowCount());
+    assertTrue(table.getRow(0).isEmpty());
+    assertTrue(table.getRows().isEmpty());
+    assertTrue(table.getColumns().isEmpty());
+  }
+}
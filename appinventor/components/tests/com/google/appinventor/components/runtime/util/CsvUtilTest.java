@@ -10,6 +10,7 @@ import com.google.appinventor.components.runtime.util.YailList;
 
 import junit.framework.TestCase;
 
+import java.io.StringReader;
 import java.util.ArrayList;
 
 /**
@@ -190,4 +191,15 @@ public class CsvUtilTest extends TestCase {
     assertEquals(list2.getObject(0), list1.getObject(0));
     assertEquals(list2.getObject(1), list1.getObject(1));
   }
+
+  public void testReadCsvTable() throws Exception {
+    String testString = "x,\"multi\r\nline\"\r\n1,2\r\n3";
+    ColumnarTable table = new ColumnarTable();
+    CsvUtil.readCsvTable(IOUtils.normalizeNewLines(new StringReader(testString)), table);
+    assertEquals(3, table.getRowCount());
+    assertEquals("multi\nline", table.getCell(0, 1));
+    assertEquals("2", table.getCell(1, 1));
+    assertEquals(1, table.getRowLength(2));
+    assertEquals("", table.getCell(2, 1));
+  }
 }
@@ -407,6 +407,30 @@ public class GeometryUtilTest {
     assertTrue(isMultiPolygon(points));
   }
 
+  @Test
+  public void testSimplify() {
+    List<GeoPoint> points = new ArrayList<GeoPoint>();
+    for (int i = 0; i <= 100; i++) {
+      points.add(new GeoPoint(i % 2 == 0 ? 0.0 : 1.0E-6, i * 0.01));
+    }
+    points.add(new GeoPoint(1.0, 1.0));
+    List<GeoPoint> simplified = GeometryUtil.simplify(points, 1.0E-4);
+    assertEquals(3, simplified.size());
+    assertSame(points.get(0), simplified.get(0));
+    assertSame(points.get(100), simplified.get(1));
+    assertSame(points.get(101), simplified.get(2));
+    assertSame(points, GeometryUtil.simplify(points, 1.0E-7));
+  }
+
+  @Test
+  public void testSimplifyRing() {
+    List<GeoPoint> ring = Arrays.asList(new GeoPoint(0.0, 0.0), new GeoPoint(0.0, 1.0),
+        new GeoPoint(1.0E-6, 1.5), new GeoPoint(0.0, 2.0), new GeoPoint(1.0, 1.0),
+        new GeoPoint(0.0, 0.0));
+    List<GeoPoint> simplified = GeometryUtil.simplify(ring, 1.0E-4);
+    assertEquals(Arrays.asList(ring.get(0), ring.get(3), ring.get(4), ring.get(5)), simplified);
+  }
+
   /**
    * Tests coverage of the "constructor".
    *
@@ -0,0 +1,300 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2024 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime.util;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.CacheRequest;
+import java.net.CacheResponse;
+import java.net.HttpURLConnection;
+import java.net.ResponseCache;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests HttpEngine class against a local NanoHTTPD server.
+ *
+ */
+public class HttpEngineTest extends TestCase {
+  private final AtomicInteger running = new AtomicInteger();
+  private final AtomicInteger maxRunning = new AtomicInteger();
+  private NanoHTTPD server;
+  private URL url;
+
+  @Override
+  protected void setUp() throws IOException {
+    ServerSocket socket = new ServerSocket(0);
+    int port = socket.getLocalPort();
+    socket.close();
+    server = new NanoHTTPD(port, null) {
+      @Override
+      public Response serve(String uri, String method, Properties header, Properties parms,
+          Properties files, Socket mySocket) {
+        int now = running.incrementAndGet();
+        synchronized (maxRunning) {
+          maxRunning.set(Math.max(maxRunning.get(), now));
+        }
+        try {
+          Thread.sleep(100);
+        } catch (InterruptedException e) {
+          // Answer early
+        }
+        running.decrementAndGet();
+        return new Response(HTTP_OK, MIME_PLAINTEXT, "hello");
+      }
+    };
+    url = new URL("http://127.0.0.1:" + port + "/poll");
+  }
+
+  @Override
+  protected void tearDown() {
+    server.stop();
+  }
+
+  private String get() throws IOException, InterruptedException {
+    return get(url, false);
+  }
+
+  private static String get(URL url, boolean useCaches)
+      throws IOException, InterruptedException {
+    HttpEngine.acquire(url);
+    try {
+      HttpURLConnection connection = HttpEngine.openConnection(url, useCaches);
+      boolean responseRead = false;
+      try {
+        InputStream in = connection.getInputStream();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+          HttpEngine.copy(in, out);
+        } finally {
+          in.close();
+        }
+        responseRead = true;
+        return out.toString("UTF-8");
+      } finally {
+        HttpEngine.finish(connection, responseRead);
+      }
+    } finally {
+      HttpEngine.release(url);
+    }
+  }
+
+  public void testRequestsPerHostAreLimited() throws InterruptedException {
+    final AtomicInteger succeeded = new AtomicInteger();
+    List<Thread> threads = new ArrayList<Thread>();
+    for (int i = 0; i < 2 * HttpEngine.MAX_REQUESTS_PER_HOST; i++) {
+      Thread thread = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            if ("hello".equals(get())) {
+              succeeded.incrementAndGet();
+            }
+          } catch (Exception e) {
+            e.printStackTrace();
+          }
+        }
+      });
+      threads.add(thread);
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join(10000);
+    }
+    assertEquals(2 * HttpEngine.MAX_REQUESTS_PER_HOST, succeeded.get());
+    assertTrue(maxRunning.get() <= HttpEngine.MAX_REQUESTS_PER_HOST);
+  }
+
+  public void testResponsesAreReusedOnlyWhenAsked() throws Exception {
+    KeepAliveServer server = new KeepAliveServer();
+    MemoryResponseCache cache = new MemoryResponseCache();
+    ResponseCache.setDefault(cache);
+    try {
+      assertEquals("hello", get(server.url, true));
+      assertEquals("hello", get(server.url, true));
+      assertEquals(1, server.requests.get());
+
+      // Connections that don't ask for the cache always reach the server.
+      assertEquals("hello", get(server.url, false));
+      assertEquals("hello", get(server.url, false));
+      assertEquals(3, server.requests.get());
+    } finally {
+      ResponseCache.setDefault(null);
+      server.stop();
+    }
+  }
+
+  public void testConnectionIsKeptAliveWhenResponseIsRead() throws Exception {
+    KeepAliveServer server = new KeepAliveServer();
+    try {
+      assertEquals("hello", get(server.url, false));
+      assertEquals("hello", get(server.url, false));
+      assertEquals(2, server.requests.get());
+      assertEquals(1, server.connections.get());
+
+      // A connection whose response wasn't read is closed rather than reused, so the next
+      // request needs a new one.
+      HttpURLConnection connection = HttpEngine.openConnection(server.url, false);
+      connection.getResponseCode();
+      HttpEngine.finish(connection, false);
+      assertEquals("hello", get(server.url, false));
+      assertEquals(2, server.connections.get());
+    } finally {
+      server.stop();
+    }
+  }
+
+  public void testCopy() throws IOException {
+    byte[] data = new byte[100000];
+    for (int i = 0; i < data.length; i++) {
+      data[i] = (byte) i;
+    }
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    HttpEngine.copy(new ByteArrayInputStream(data), out);
+    assertTrue(Arrays.equals(data, out.toByteArray()));
+  }
+
+  /**
+   * A server that answers every request on a connection, unlike NanoHTTPD, which closes the
+   * connection after each response. The responses may be cached for a minute.
+   */
+  private static class KeepAliveServer implements Runnable {
+    private final ServerSocket socket;
+    private final URL url;
+    private final AtomicInteger connections = new AtomicInteger();
+    private final AtomicInteger requests = new AtomicInteger();
+
+    KeepAliveServer() throws IOException {
+      socket = new ServerSocket(0);
+      url = new URL("http://127.0.0.1:" + socket.getLocalPort() + "/data");
+      Thread thread = new Thread(this);
+      thread.setDaemon(true);
+      thread.start();
+    }
+
+    @Override
+    public void run() {
+      try {
+        while (true) {
+          final Socket client = socket.accept();
+          connections.incrementAndGet();
+          Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+              serve(client);
+            }
+          });
+          thread.setDaemon(true);
+          thread.start();
+        }
+      } catch (IOException e) {
+        // Stopped
+      }
+    }
+
+    private void serve(Socket client) {
+      try {
+        BufferedReader in = new BufferedReader(
+            new InputStreamReader(client.getInputStream(), "US-ASCII"));
+        OutputStream out = client.getOutputStream();
+        String line;
+        while ((line = in.readLine()) != null) {
+          if (line.length() > 0) {
+            continue;
+          }
+          // End of the request headers. The requests have no body.
+          requests.incrementAndGet();
+          out.write(("HTTP/1.1 200 OK\r\n"
+              + "Content-Type: text/plain\r\n"
+              + "Content-Length: 5\r\n"
+              + "Cache-Control: max-age=60\r\n"
+              + "\r\n"
+              + "hello").getBytes("US-ASCII"));
+          out.flush();
+        }
+      } catch (IOException e) {
+        // Connection closed
+      } finally {
+        try {
+          client.close();
+        } catch (IOException e) {
+          // Ignored
+        }
+      }
+    }
+
+    void stop() throws IOException {
+      socket.close();
+    }
+  }
+
+  /**
+   * Keeps responses in memory and answers every later request for the same URI with them.
+   */
+  private static class MemoryResponseCache extends ResponseCache {
+    private final Map<URI, byte[]> bodies = new ConcurrentHashMap<URI, byte[]>();
+    private final Map<URI, Map<String, List<String>>> headers =
+        new ConcurrentHashMap<URI, Map<String, List<String>>>();
+
+    @Override
+    public CacheResponse get(URI uri, String method, Map<String, List<String>> requestHeaders) {
+      final byte[] body = bodies.get(uri);
+      if (body == null) {
+        return null;
+      }
+      final Map<String, List<String>> responseHeaders = headers.get(uri);
+      return new CacheResponse() {
+        @Override
+        public Map<String, List<String>> getHeaders() {
+          return responseHeaders;
+        }
+
+        @Override
+        public InputStream getBody() {
+          return new ByteArrayInputStream(body);
+        }
+      };
+    }
+
+    @Override
+    public CacheRequest put(final URI uri, URLConnection connection) {
+      headers.put(uri, connection.getHeaderFields());
+      final ByteArrayOutputStream body = new ByteArrayOutputStream() {
+        @Override
+        public void close() {
+          bodies.put(uri, toByteArray());
+        }
+      };
+      return new CacheRequest() {
+        @Override
+        public OutputStream getBody() {
+          return body;
+        }
+
+        @Override
+        public void abort() {
+        }
+      };
+    }
+  }
+}
@@ -0,0 +1,99 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2024 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime.util;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests RTree class against a linear search.
+ *
+ */
+public class RTreeTest extends TestCase {
+  private final Random random = new Random(42);
+  private final RTree<Integer> tree = new RTree<Integer>();
+  private final Map<Integer, double[]> bounds = new HashMap<Integer, double[]>();
+
+  private void put(int item) {
+    double x = random.nextDouble() * 360 - 180;
+    double y = random.nextDouble() * 170 - 85;
+    double[] box = { x, y, x + random.nextDouble() * 2, y + random.nextDouble() * 2 };
+    if (random.nextBoolean()) {
+      box[2] = box[0];          // A point
+      box[3] = box[1];
+    }
+    tree.put(item, box[0], box[1], box[2], box[3]);
+    bounds.put(item, box);
+  }
+
+  private void remove(int item) {
+    assertEquals(bounds.remove(item) != null, tree.remove(item));
+  }
+
+  private void assertSearch(double minX, double minY, double maxX, double maxY) {
+    Set<Integer> expected = new HashSet<Integer>();
+    for (Map.Entry<Integer, double[]> entry : bounds.entrySet()) {
+      double[] box = entry.getValue();
+      if (box[0] <= maxX && minX <= box[2] && box[1] <= maxY && minY <= box[3]) {
+        expected.add(entry.getKey());
+      }
+    }
+    Set<Integer> actual = new HashSet<Integer>();
+    tree.search(minX, minY, maxX, maxY, actual);
+    assertEquals(expected, actual);
+  }
+
+  private void assertSearches() {
+    assertEquals(bounds.size(), tree.size());
+    assertSearch(-180, -90, 180, 90);
+    for (int i = 0; i < 50; i++) {
+      double x = random.nextDouble() * 360 - 180;
+      double y = random.nextDouble() * 170 - 85;
+      double size = random.nextDouble() * 40;
+      assertSearch(x, y, x + size, y + size);
+    }
+  }
+
+  public void testEmpty() {
+    assertEquals(0, tree.size());
+    assertSearches();
+    assertFalse(tree.remove(1));
+  }
+
+  public void testSearch() {
+    for (int i = 0; i < 2000; i++) {
+      put(i);
+    }
+    assertSearches();
+  }
+
+  public void testMoveAndRemove() {
+    for (int i = 0; i < 2000; i++) {
+      put(i);
+    }
+    for (int i = 0; i < 500; i++) {
+      put(random.nextInt(2000));
+    }
+    assertSearches();
+    for (int i = 0; i < 1500; i++) {
+      remove(random.nextInt(2000));
+    }
+    assertSearches();
+    for (int i = 0; i < 2000; i++) {
+      remove(i);
+    }
+    assertEquals(0, tree.size());
+    assertSearches();
+    put(1);
+    assertTrue(tree.contains(1));
+    assertSearches();
+  }
+}
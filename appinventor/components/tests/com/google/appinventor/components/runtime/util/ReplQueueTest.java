@@ -0,0 +1,82 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2024 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime.util;
+
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests ReplQueue class.
+ *
+ */
+public class ReplQueueTest extends TestCase {
+
+  private static String form(String blockId, String code) {
+    return "(begin (require <com.google.youngandroid.runtime>) (process-repl-input \""
+        + blockId + "\" (begin " + code + ")))";
+  }
+
+  public void testGetBlockId() {
+    assertEquals("abc", ReplQueue.getBlockId(form("abc", "(def x 1)")));
+    assertNull(ReplQueue.getBlockId("(begin (require <com.google.youngandroid.runtime>) "
+        + "(process-repl-input -1 (begin (clear-current-form))))"));
+    assertNull(ReplQueue.getBlockId("#DONE#"));
+  }
+
+  public void testTakeKeepsLastDefinitionOfEachBlock() {
+    ReplQueue queue = new ReplQueue();
+    String first = form("a", "(def x 1)");
+    String other = form("b", "(define-event Button1 Click () (foo))");
+    String second = form("a", "(def x 2)");
+    assertTrue(queue.add(first));
+    assertFalse(queue.add(other));
+    assertFalse(queue.add(second));
+    assertEquals(Arrays.asList(other, second), queue.take());
+    assertTrue(queue.take().isEmpty());
+    assertTrue(queue.add(first));
+  }
+
+  public void testTakeKeepsOtherFormsInOrder() {
+    ReplQueue queue = new ReplQueue();
+    String call = form("a", "(call-component-method 'Sound1 'Play (*list-for-runtime*) '())");
+    String clear = "(clear-current-form)";
+    String define = form("b", "(def y 1)");
+    queue.add(call);
+    queue.add(clear);
+    queue.add(call);
+    queue.add(define);
+    assertEquals(Arrays.asList(call, clear, call, define), queue.take());
+  }
+
+  public void testTakeKeepsDefinitionsBeforeOtherForms() {
+    ReplQueue queue = new ReplQueue();
+    String first = form("a", "(define-event Button1 Click () (foo))");
+    String initialize = "(call-Initialize-of-components 'Button1)";
+    String second = form("a", "(define-event Button1 Click () (bar))");
+    queue.add(first);
+    queue.add(initialize);
+    queue.add(second);
+    assertEquals(Arrays.asList(first, initialize, second), queue.take());
+  }
+
+  public void testShouldEvaluateSkipsUnchangedDefinitions() {
+    ReplQueue queue = new ReplQueue();
+    String define = form("a", "(def x 1)");
+    assertTrue(queue.shouldEvaluate(define));
+    assertFalse(queue.shouldEvaluate(define));
+    assertTrue(queue.shouldEvaluate(form("a", "(def x 2)")));
+    assertTrue(queue.shouldEvaluate(define));
+    assertFalse(queue.shouldEvaluate(define));
+    assertTrue(queue.shouldEvaluate("(clear-current-form)"));
+    assertTrue(queue.shouldEvaluate(define));
+    queue.reset();
+    assertTrue(queue.shouldEvaluate(define));
+    String call = form("b", "(foo)");
+    assertTrue(queue.shouldEvaluate(call));
+    assertTrue(queue.shouldEvaluate(call));
+  }
+}
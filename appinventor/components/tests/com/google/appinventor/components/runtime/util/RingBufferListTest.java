@@ -0,0 +1,150 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2024 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests RingBufferList class.
+ *
+ */
+public class RingBufferListTest extends TestCase {
+
+  public void testAddAndGet() {
+    List<Integer> list = new RingBufferList<Integer>(2);
+    for (int i = 0; i < 10; i++) {
+      list.add(i);
+    }
+    assertEquals(10, list.size());
+    for (int i = 0; i < 10; i++) {
+      assertEquals(i, (int) list.get(i));
+    }
+  }
+
+  public void testSlidingWindow() {
+    // Appending at the end and evicting from the start, like real-time chart data.
+    List<Integer> list = new RingBufferList<Integer>(4);
+    for (int i = 0; i < 100; i++) {
+      if (list.size() >= 4) {
+        assertEquals(i - 4, (int) list.remove(0));
+      }
+      list.add(i);
+    }
+    assertEquals(4, list.size());
+    assertEquals(96, (int) list.get(0));
+    assertEquals(99, (int) list.get(3));
+  }
+
+  public void testInsertAndRemoveInMiddle() {
+    List<Integer> list = new RingBufferList<Integer>();
+    List<Integer> expected = new ArrayList<Integer>();
+    Random random = new Random(42);
+    for (int i = 0; i < 2000; i++) {
+      if (expected.isEmpty() || random.nextInt(3) > 0) {
+        int index = random.nextInt(expected.size() + 1);
+        list.add(index, i);
+        expected.add(index, i);
+      } else {
+        int index = random.nextInt(expected.size());
+        assertEquals(expected.remove(index), list.remove(index));
+      }
+      assertEquals(expected, list);
+    }
+  }
+
+  public void testBinarySearchInsertion() {
+    List<Integer> list = new RingBufferList<Integer>();
+    int[] values = {5, 1, 4, 2, 3, 0};
+    for (int value : values) {
+      int index = Collections.binarySearch(list, value);
+      list.add(-index - 1, value);
+    }
+    assertEquals(6, list.size());
+    for (int i = 0; i < 6; i++) {
+      assertEquals(i, (int) list.get(i));
+    }
+  }
+
+  public void testSet() {
+    List<String> list = new RingBufferList<String>();
+    list.add("a");
+    list.add("b");
+    assertEquals("b", list.set(1, "c"));
+    assertEquals("c", list.get(1));
+  }
+
+  public void testIteratorRemove() {
+    List<Integer> list = new RingBufferList<Integer>();
+    for (int i = 0; i < 6; i++) {
+      list.add(i);
+    }
+    for (Iterator<Integer> it = list.iterator(); it.hasNext(); ) {
+      if (it.next() % 2 == 0) {
+        it.remove();
+      }
+    }
+    assertEquals(3, list.size());
+    assertEquals(1, (int) list.get(0));
+    assertEquals(5, (int) list.get(2));
+  }
+
+  public void testClear() {
+    List<Integer> list = new RingBufferList<Integer>();
+    list.add(1);
+    list.add(2);
+    list.remove(0);
+    list.clear();
+    assertTrue(list.isEmpty());
+    list.add(3);
+    assertEquals(3, (int) list.get(0));
+  }
+
+  public void testIndexOutOfBounds() {
+    List<Integer> list = new RingBufferList<Integer>();
+    list.add(1);
+    try {
+      list.get(1);
+      fail();
+    } catch (IndexOutOfBoundsException e) {
+      // expected
+    }
+    try {
+      list.add(2, 2);
+      fail();
+    } catch (IndexOutOfBoundsException e) {
+      // expected
+    }
+    try {
+      list.remove(-1);
+      fail();
+    } catch (IndexOutOfBoundsException e) {
+      // expected
+    }
+  }
+
+  public void testToArrayAcrossWrap() {
+    List<Integer> list = new RingBufferList<Integer>(4);
+    for (int i = 0; i < 6; i++) {
+      if (list.size() >= 4) {
+        list.remove(0);
+      }
+      list.add(i);
+    }
+    assertEquals(Arrays.asList(2, 3, 4, 5), Arrays.asList(list.toArray()));
+    assertEquals(Arrays.asList(2, 3, 4, 5), Arrays.asList(list.toArray(new Integer[0])));
+    Integer[] larger = new Integer[] {9, 9, 9, 9, 9, 9};
+    assertSame(larger, list.toArray(larger));
+    assertEquals(Arrays.asList(2, 3, 4, 5, null, 9), Arrays.asList(larger));
+    assertEquals(list, new ArrayList<Integer>(list));
+  }
+}
@@ -0,0 +1,132 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2024 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime.util;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests RuntimeExecutor class.
+ *
+ */
+public class RuntimeExecutorTest extends TestCase {
+
+  private static Runnable awaiting(final CountDownLatch latch) {
+    return new Runnable() {
+      @Override
+      public void run() {
+        try {
+          latch.await();
+        } catch (InterruptedException e) {
+          // Cancelled
+        }
+      }
+    };
+  }
+
+  public void testPoolIsBounded() throws InterruptedException {
+    RuntimeExecutor executor = new RuntimeExecutor("test", 2, 10, 60000);
+    CountDownLatch release = new CountDownLatch(1);
+    for (int i = 0; i < 5; i++) {
+      executor.execute(awaiting(release));
+    }
+    Thread.sleep(100);
+    assertEquals(2, executor.getActiveCount());
+    assertEquals(3, executor.getQueuedCount());
+    release.countDown();
+    final CountDownLatch done = new CountDownLatch(1);
+    executor.execute(new Runnable() {
+      @Override
+      public void run() {
+        done.countDown();
+      }
+    });
+    assertTrue(done.await(5, TimeUnit.SECONDS));
+    assertEquals(0, executor.getOverflowCount());
+  }
+
+  public void testFullQueueStartsAnotherThread() throws InterruptedException {
+    RuntimeExecutor executor = new RuntimeExecutor("test", 1, 1, 60000);
+    CountDownLatch release = new CountDownLatch(1);
+    executor.execute(awaiting(release));
+    executor.execute(awaiting(release));
+    final CountDownLatch done = new CountDownLatch(1);
+    executor.execute(new Runnable() {
+      @Override
+      public void run() {
+        done.countDown();
+      }
+    });
+    assertTrue(done.await(5, TimeUnit.SECONDS));
+    assertEquals(1, executor.getOverflowCount());
+    release.countDown();
+  }
+
+  public void testStalledPoolStartsAnotherThread() throws InterruptedException {
+    // A task waiting for a task queued after it must not wait forever.
+    RuntimeExecutor executor = new RuntimeExecutor("test", 1, 10, 100);
+    final CountDownLatch later = new CountDownLatch(1);
+    executor.execute(awaiting(later));
+    executor.execute(new Runnable() {
+      @Override
+      public void run() {
+        later.countDown();
+      }
+    });
+    assertTrue(later.await(5, TimeUnit.SECONDS));
+    assertEquals(1, executor.getOverflowCount());
+  }
+
+  public void testCancel() throws InterruptedException {
+    RuntimeExecutor executor = new RuntimeExecutor("test", 1, 10, 60000);
+    Object form = new Object();
+    Object component = new Object();
+    Object other = new Object();
+    final AtomicBoolean interrupted = new AtomicBoolean(false);
+    final CountDownLatch started = new CountDownLatch(1);
+    final CountDownLatch finished = new CountDownLatch(1);
+    final AtomicInteger ran = new AtomicInteger();
+    executor.execute(component, form, new Runnable() {
+      @Override
+      public void run() {
+        started.countDown();
+        try {
+          Thread.sleep(60000);
+        } catch (InterruptedException e) {
+          interrupted.set(true);
+        }
+        finished.countDown();
+      }
+    });
+    Runnable count = new Runnable() {
+      @Override
+      public void run() {
+        ran.incrementAndGet();
+      }
+    };
+    executor.execute(component, form, count);
+    executor.execute(other, null, count);
+    assertTrue(started.await(5, TimeUnit.SECONDS));
+    assertEquals(2, executor.getQueuedCount());
+    assertEquals(2, executor.cancel(form));
+    assertTrue(finished.await(5, TimeUnit.SECONDS));
+    assertTrue(interrupted.get());
+    final CountDownLatch done = new CountDownLatch(1);
+    executor.execute(new Runnable() {
+      @Override
+      public void run() {
+        done.countDown();
+      }
+    });
+    assertTrue(done.await(5, TimeUnit.SECONDS));
+    assertEquals(1, ran.get());
+    assertEquals(0, executor.cancel(component));
+  }
+}